@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A coarse {@link Clock} implementation caching the system time, which is
+ * updated by a ticker thread at a certain resolution.
+ * <p>
+ * Since {@link #now()} returns the cached {@link Instant}, reading the time
+ * neither allocates nor calls the system clock, at the expense of being
+ * behind by up to the resolution. This is useful for time-aware code paths invoked per write,
+ * e.g., write-sensitive policies. The ticker thread is a daemon, and stops
+ * on {@link #close()}.
+ * </p>
+ */
+public class CachedClock extends SystemClock implements AutoCloseable {
+
+    private final Duration resolution;
+
+    private final long resolutionNanos;
+
+    private final Thread tickerThread;
+
+    // Published through a single field, since an Instant is immutable.
+    private volatile Instant instant;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates an instance updated at the given resolution.
+     *
+     * @param resolution the period of updating the cached time
+     */
+    public CachedClock(Duration resolution) {
+        Objects.requireNonNull(resolution, "resolution");
+        if (resolution.isNegative() || resolution.isZero()) {
+            String message = String.format("invalid resolution {resolution=%s}", resolution);
+            throw new IllegalArgumentException(message);
+        }
+        this.resolution = resolution;
+        this.resolutionNanos = resolution.toNanos();
+        tick();
+        String threadName = String.format("%s.ticker(%s)", CachedClock.class.getSimpleName(), resolution);
+        this.tickerThread = new Thread(this::runTicker, threadName);
+        tickerThread.setDaemon(true);
+        tickerThread.start();
+    }
+
+    private void runTicker() {
+        while (!closed) {
+            LockSupport.parkNanos(this, resolutionNanos);
+            tick();
+        }
+    }
+
+    private void tick() {
+        long currentTimeMillis = System.currentTimeMillis();
+        Instant lastInstant = instant;
+        // Avoid allocating if the time has not changed in milliseconds.
+        if (lastInstant == null || currentTimeMillis != lastInstant.toEpochMilli()) {
+            instant = Instant.ofEpochMilli(currentTimeMillis);
+        }
+    }
+
+    /**
+     * @return the period of updating the cached time
+     */
+    public Duration getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return the cached instant
+     */
+    @Override
+    public Instant now() {
+        return instant;
+    }
+
+    /**
+     * Stops the ticker thread. The time is not updated anymore afterwards.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            LockSupport.unpark(tickerThread);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachedClock{resolution=%s}", resolution);
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+/**
+ * Codecs supported for compressing rotated files.
+ *
+ * @see RotationConfig#getCompressionCodec()
+ */
+public enum CompressionCodec {
+
+    /**
+     * GZIP (i.e., DEFLATE) compression, producing {@code .gz} files.
+     */
+    GZIP(".gz"),
+
+    /**
+     * <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Frame_format.md">LZ4 frame</a>
+     * compression, producing {@code .lz4} files. Trades compression ratio
+     * for significantly less CPU per byte compared to {@link #GZIP}.
+     */
+    LZ4(".lz4");
+
+    private final String fileExtension;
+
+    CompressionCodec(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * @return the extension appended to the names of compressed files, e.g.,
+     * {@code .gz}
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+}
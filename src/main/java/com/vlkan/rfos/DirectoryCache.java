@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of directories known to exist, used to create the parent
+ * directories of rotated files on demand, e.g., for date-partitioned file
+ * patterns such as {@code /logs/%d{yyyy/MM/dd/HH}/app-%d{mmss}-%i.log},
+ * without touching the file system on every rotation.
+ * <p>
+ * Directories are evicted in least-recently-used order. Since directories
+ * might get deleted externally, callers are expected to
+ * {@link #invalidate(File) invalidate} the ones found missing.
+ * </p>
+ */
+final class DirectoryCache {
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final Map<File, Boolean> directories;
+
+    DirectoryCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    DirectoryCache(int capacity) {
+        if (capacity < 1) {
+            String message = String.format("invalid capacity {capacity=%d}", capacity);
+            throw new IllegalArgumentException(message);
+        }
+        this.directories = new LinkedHashMap<File, Boolean>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, Boolean> eldestEntry) {
+                return size() > capacity;
+            }
+
+        };
+    }
+
+    /**
+     * Creates the given directory along with its parents, unless it is known
+     * to exist.
+     *
+     * @param directory a directory
+     *
+     * @return {@code true}, if the file system is checked, that is, the
+     * directory is not cached
+     */
+    synchronized boolean createDirectories(File directory) throws IOException {
+        if (directories.get(directory) != null) {
+            return false;
+        }
+        Files.createDirectories(directory.toPath());
+        directories.put(directory, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * Removes the given directory from the cache.
+     *
+     * @param directory a directory
+     */
+    synchronized void invalidate(File directory) {
+        directories.remove(directory);
+    }
+
+    synchronized int size() {
+        return directories.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("DirectoryCache{directories=%s}", directories.keySet());
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Index of the GZIP members of a file compressed in blocks, mapping
+ * uncompressed offsets and record numbers to compressed offsets.
+ * <p>
+ * The index is stored in a {@link #FILE_SUFFIX} file next to the compressed
+ * file, if {@link RotationConfig#isCompressionIndex() enabled}. Records are
+ * assumed to be separated by {@code \n}. That is, the record number of a
+ * block denotes the number of line feeds preceding it.
+ * </p>
+ *
+ * @see GzipBlockInputStream#open(File, long)
+ * @see GzipBlockInputStream#openAtRecord(File, long)
+ */
+public final class GzipBlockIndex {
+
+    /**
+     * File name suffix of the index stored next to a compressed file.
+     */
+    public static final String FILE_SUFFIX = ".idx";
+
+    // "RFIX" in ASCII.
+    private static final int MAGIC = 0x52464958;
+
+    private static final int VERSION = 1;
+
+    private int blockCount;
+
+    private long[] uncompressedOffsets;
+
+    private long[] compressedOffsets;
+
+    private long[] recordNumbers;
+
+    GzipBlockIndex() {
+        this(16);
+    }
+
+    private GzipBlockIndex(int capacity) {
+        this.uncompressedOffsets = new long[capacity];
+        this.compressedOffsets = new long[capacity];
+        this.recordNumbers = new long[capacity];
+    }
+
+    void add(long uncompressedOffset, long compressedOffset, long recordNumber) {
+        if (blockCount == uncompressedOffsets.length) {
+            int capacity = Math.max(16, 2 * blockCount);
+            uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, capacity);
+            compressedOffsets = Arrays.copyOf(compressedOffsets, capacity);
+            recordNumbers = Arrays.copyOf(recordNumbers, capacity);
+        }
+        uncompressedOffsets[blockCount] = uncompressedOffset;
+        compressedOffsets[blockCount] = compressedOffset;
+        recordNumbers[blockCount] = recordNumber;
+        blockCount++;
+    }
+
+    /**
+     * Loads the index stored next to the given compressed file.
+     */
+    public static GzipBlockIndex load(File compressedFile) throws IOException {
+        Objects.requireNonNull(compressedFile, "compressedFile");
+        return read(new File(compressedFile.getPath() + FILE_SUFFIX));
+    }
+
+    static GzipBlockIndex read(File indexFile) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            int magic = inputStream.readInt();
+            int version = inputStream.readInt();
+            if (magic != MAGIC || version != VERSION) {
+                String message = String.format(
+                        "invalid index {indexFile=%s, magic=%x, version=%d}",
+                        indexFile, magic, version);
+                throw new IOException(message);
+            }
+            int blockCount = inputStream.readInt();
+            GzipBlockIndex index = new GzipBlockIndex(blockCount);
+            for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+                long uncompressedOffset = inputStream.readLong();
+                long compressedOffset = inputStream.readLong();
+                long recordNumber = inputStream.readLong();
+                index.add(uncompressedOffset, compressedOffset, recordNumber);
+            }
+            return index;
+        }
+    }
+
+    void write(File indexFile) throws IOException {
+        try (DataOutputStream outputStream = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(indexFile.toPath())))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(blockCount);
+            for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+                outputStream.writeLong(uncompressedOffsets[blockIndex]);
+                outputStream.writeLong(compressedOffsets[blockIndex]);
+                outputStream.writeLong(recordNumbers[blockIndex]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return the offset of the first uncompressed byte of the given block
+     */
+    public long getUncompressedOffset(int blockIndex) {
+        checkBlockIndex(blockIndex);
+        return uncompressedOffsets[blockIndex];
+    }
+
+    /**
+     * @return the offset of the GZIP member of the given block in the
+     * compressed file
+     */
+    public long getCompressedOffset(int blockIndex) {
+        checkBlockIndex(blockIndex);
+        return compressedOffsets[blockIndex];
+    }
+
+    /**
+     * @return the number of records, i.e., line feeds, preceding the given
+     * block
+     */
+    public long getRecordNumber(int blockIndex) {
+        checkBlockIndex(blockIndex);
+        return recordNumbers[blockIndex];
+    }
+
+    private void checkBlockIndex(int blockIndex) {
+        if (blockIndex < 0 || blockIndex >= blockCount) {
+            String message = String.format(
+                    "invalid block index {blockIndex=%d, blockCount=%d}",
+                    blockIndex, blockCount);
+            throw new IndexOutOfBoundsException(message);
+        }
+    }
+
+    /**
+     * @return the index of the block containing the given uncompressed
+     * offset, or {@code -1} if the index is empty
+     */
+    public int findBlockByUncompressedOffset(long uncompressedOffset) {
+        return findLastNotGreater(uncompressedOffsets, uncompressedOffset);
+    }
+
+    /**
+     * @return the index of the block containing the start of the given
+     * (zero-based) record, or {@code -1} if the index is empty
+     */
+    public int findBlockByRecordNumber(long recordNumber) {
+        // The record starts right after the line feed preceding it, hence
+        // the last block preceded by strictly less line feeds.
+        return findLastNotGreater(recordNumbers, recordNumber - 1);
+    }
+
+    private int findLastNotGreater(long[] values, long value) {
+        int lowIndex = 0;
+        int highIndex = blockCount - 1;
+        int foundIndex = blockCount > 0 ? 0 : -1;
+        while (lowIndex <= highIndex) {
+            int midIndex = (lowIndex + highIndex) >>> 1;
+            if (values[midIndex] <= value) {
+                foundIndex = midIndex;
+                lowIndex = midIndex + 1;
+            } else {
+                highIndex = midIndex - 1;
+            }
+        }
+        return foundIndex;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GzipBlockIndex{blockCount=%d}", blockCount);
+    }
+
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses files written by {@link RotatingFileOutputStream} when
+ * {@link RotationConfig#isCompress() compression} is enabled.
+ * <p>
+ * Input is read as a concatenation of GZIP members. Members carrying an
+ * {@code RD} extra field are inflated using the preset dictionary whose
+ * Adler-32 checksum, i.e., its ID, matches the one recorded in the field.
+ * The dictionary is either provided, or, for files opened by path, read from
+ * the {@link #getDictionaryFile(File, long) dictionary file} in the same
+ * directory. Plain GZIP files are decompressed as is.
+ * </p>
+ */
+public class GzipBlockInputStream extends FilterInputStream {
+
+    /**
+     * File name suffix of the preset dictionaries stored in the directory of
+     * compressed files, if {@link RotationConfig#isCompressionDictionary()
+     * dictionary compression} is enabled.
+     */
+    public static final String DICTIONARY_FILE_SUFFIX = ".dict";
+
+    private static final Pattern DICTIONARY_FILE_NAME_PATTERN =
+            Pattern.compile("[0-9a-f]{8}" + Pattern.quote(DICTIONARY_FILE_SUFFIX));
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final int FLAG_HEADER_CRC = 2;
+
+    private static final int FLAG_NAME = 8;
+
+    private static final int FLAG_COMMENT = 16;
+
+    private final File dictionaryDirectory;
+
+    private byte[] dictionary;
+
+    private long dictionaryId;
+
+    private final PushbackInputStream pushbackInputStream;
+
+    private final Inflater inflater = new Inflater(true);
+
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private final byte[] singleByteBuffer = new byte[1];
+
+    private int inputLength = 0;
+
+    private boolean memberOpen = false;
+
+    private boolean eof = false;
+
+    private boolean closed = false;
+
+    /**
+     * @param inputStream the compressed input
+     * @param dictionary the preset dictionary, can be {@code null}
+     */
+    public GzipBlockInputStream(InputStream inputStream, byte[] dictionary) {
+        this(Objects.requireNonNull(inputStream, "inputStream"), dictionary, null);
+    }
+
+    private GzipBlockInputStream(InputStream inputStream, byte[] dictionary, File dictionaryDirectory) {
+        this(new PushbackInputStream(inputStream, BUFFER_SIZE), dictionary, dictionaryDirectory);
+    }
+
+    private GzipBlockInputStream(
+            PushbackInputStream pushbackInputStream,
+            byte[] dictionary,
+            File dictionaryDirectory) {
+        super(pushbackInputStream);
+        this.pushbackInputStream = pushbackInputStream;
+        this.dictionary = dictionary;
+        this.dictionaryId = dictionary != null ? GzipCompressor.getDictionaryId(dictionary) : -1;
+        this.dictionaryDirectory = dictionaryDirectory;
+    }
+
+    /**
+     * Opens the given compressed file, reading the preset dictionaries it
+     * refers to, if there are any, from the same directory.
+     */
+    public static GzipBlockInputStream open(File compressedFile) throws IOException {
+        Objects.requireNonNull(compressedFile, "compressedFile");
+        return new GzipBlockInputStream(
+                Files.newInputStream(compressedFile.toPath()),
+                null,
+                compressedFile.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * @return the file storing the preset dictionary with the given ID, i.e.,
+     * Adler-32 checksum, in the given directory
+     */
+    public static File getDictionaryFile(File directory, long dictionaryId) {
+        Objects.requireNonNull(directory, "directory");
+        String fileName = String.format("%08x%s", dictionaryId, DICTIONARY_FILE_SUFFIX);
+        return new File(directory, fileName);
+    }
+
+    static boolean isDictionaryFile(File file) {
+        return DICTIONARY_FILE_NAME_PATTERN.matcher(file.getName()).matches();
+    }
+
+    /**
+     * @return the ID of the preset dictionary the first member of the given
+     * compressed file refers to, or {@code -1}, if there is none
+     */
+    static long readDictionaryId(File compressedFile) throws IOException {
+        try (GzipBlockInputStream inputStream = new GzipBlockInputStream(
+                Files.newInputStream(compressedFile.toPath()), null, null)) {
+            return inputStream.readMemberHeader();
+        }
+    }
+
+    /**
+     * Opens the given compressed file positioned at the given uncompressed
+     * offset. The {@link GzipBlockIndex} stored next to the file is used to
+     * seek directly to the GZIP member containing the offset.
+     */
+    public static GzipBlockInputStream open(File compressedFile, long uncompressedOffset) throws IOException {
+        Objects.requireNonNull(compressedFile, "compressedFile");
+        if (uncompressedOffset < 0) {
+            String message = String.format("invalid offset {uncompressedOffset=%d}", uncompressedOffset);
+            throw new IllegalArgumentException(message);
+        }
+        GzipBlockIndex index = GzipBlockIndex.load(compressedFile);
+        int blockIndex = index.findBlockByUncompressedOffset(uncompressedOffset);
+        GzipBlockInputStream inputStream = openBlock(compressedFile, index, blockIndex);
+        long skippedByteCount = blockIndex < 0 ? 0 : index.getUncompressedOffset(blockIndex);
+        inputStream.skipFully(uncompressedOffset - skippedByteCount);
+        return inputStream;
+    }
+
+    /**
+     * Opens the given compressed file positioned at the start of the given
+     * (zero-based) record, i.e., right after the preceding {@code \n}. The
+     * {@link GzipBlockIndex} stored next to the file is used to seek directly
+     * to the GZIP member containing the record.
+     */
+    public static GzipBlockInputStream openAtRecord(File compressedFile, long recordNumber) throws IOException {
+        Objects.requireNonNull(compressedFile, "compressedFile");
+        if (recordNumber < 0) {
+            String message = String.format("invalid record number {recordNumber=%d}", recordNumber);
+            throw new IllegalArgumentException(message);
+        }
+        GzipBlockIndex index = GzipBlockIndex.load(compressedFile);
+        int blockIndex = index.findBlockByRecordNumber(recordNumber);
+        GzipBlockInputStream inputStream = openBlock(compressedFile, index, blockIndex);
+        long skippedRecordCount = blockIndex < 0 ? 0 : index.getRecordNumber(blockIndex);
+        inputStream.skipRecords(recordNumber - skippedRecordCount);
+        return inputStream;
+    }
+
+    private static GzipBlockInputStream openBlock(
+            File compressedFile,
+            GzipBlockIndex index,
+            int blockIndex)
+            throws IOException {
+        File dictionaryDirectory = compressedFile.getAbsoluteFile().getParentFile();
+        FileChannel channel = FileChannel.open(compressedFile.toPath(), StandardOpenOption.READ);
+        try {
+            if (blockIndex > 0) {
+                channel.position(index.getCompressedOffset(blockIndex));
+            }
+            return new GzipBlockInputStream(Channels.newInputStream(channel), null, dictionaryDirectory);
+        } catch (IOException | RuntimeException error) {
+            channel.close();
+            throw error;
+        }
+    }
+
+    private void skipFully(long byteCount) throws IOException {
+        try {
+            long remainingByteCount = byteCount;
+            while (remainingByteCount > 0) {
+                long skippedByteCount = skip(remainingByteCount);
+                if (skippedByteCount <= 0) {
+                    throw new EOFException("offset is beyond the end of file");
+                }
+                remainingByteCount -= skippedByteCount;
+            }
+        } catch (IOException | RuntimeException error) {
+            close();
+            throw error;
+        }
+    }
+
+    private void skipRecords(long recordCount) throws IOException {
+        try {
+            long remainingRecordCount = recordCount;
+            byte[] buffer = new byte[1];
+            while (remainingRecordCount > 0) {
+                if (read(buffer, 0, 1) < 0) {
+                    throw new EOFException("record is beyond the end of file");
+                }
+                if (buffer[0] == '\n') {
+                    remainingRecordCount--;
+                }
+            }
+        } catch (IOException | RuntimeException error) {
+            close();
+            throw error;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int readByteCount = read(singleByteBuffer, 0, 1);
+        return readByteCount < 0 ? -1 : singleByteBuffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        Objects.requireNonNull(buffer, "buffer");
+        if (offset < 0 || length < 0 || length > buffer.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (closed) {
+            throw new IOException("closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        while (!eof) {
+            if (!memberOpen) {
+                if (!readHeader()) {
+                    eof = true;
+                    break;
+                }
+            }
+            if (inflater.finished()) {
+                readTrailer();
+                continue;
+            }
+            int inflatedByteCount = inflate(buffer, offset, length);
+            if (inflatedByteCount > 0) {
+                crc.update(buffer, offset, inflatedByteCount);
+                return inflatedByteCount;
+            }
+        }
+        return -1;
+    }
+
+    private int inflate(byte[] buffer, int offset, int length) throws IOException {
+        try {
+            if (inflater.needsInput()) {
+                int readByteCount = pushbackInputStream.read(this.buffer, 0, this.buffer.length);
+                if (readByteCount < 0) {
+                    throw new EOFException("unexpected end of GZIP member");
+                }
+                inflater.setInput(this.buffer, 0, readByteCount);
+                inputLength = readByteCount;
+            }
+            return inflater.inflate(buffer, offset, length);
+        } catch (DataFormatException error) {
+            String message = error.getMessage();
+            throw new ZipException(message != null ? message : "invalid deflate data");
+        }
+    }
+
+    /**
+     * @return {@code false} on a clean end of input, {@code true} otherwise
+     */
+    private boolean readHeader() throws IOException {
+
+        // Check for a clean end of input.
+        int firstByte = pushbackInputStream.read();
+        if (firstByte < 0) {
+            return false;
+        }
+        pushbackInputStream.unread(firstByte);
+
+        // Prepare the inflater.
+        long dictionaryChecksum = readMemberHeader();
+        inflater.reset();
+        crc.reset();
+        if (dictionaryChecksum >= 0) {
+            inflater.setDictionary(resolveDictionary(dictionaryChecksum));
+        }
+        memberOpen = true;
+        return true;
+
+    }
+
+    /**
+     * @return the Adler-32 checksum of the preset dictionary, or {@code -1},
+     * if there is none
+     */
+    private long readMemberHeader() throws IOException {
+
+        // Read the magic number.
+        int magic = readUnsignedShort();
+        if (magic != GzipCompressor.GZIP_MAGIC) {
+            throw new ZipException("not in GZIP format");
+        }
+        if (readUnsignedByte() != Deflater.DEFLATED) {
+            throw new ZipException("unsupported compression method");
+        }
+        int flags = readUnsignedByte();
+        skipBytes(6);   // modification time (int), extra flags, operating system
+
+        // Read the extra field.
+        long dictionaryChecksum = -1;
+        if ((flags & GzipCompressor.GZIP_FLAG_EXTRA) != 0) {
+            int extraLength = readUnsignedShort();
+            while (extraLength > 0) {
+                if (extraLength < 4) {
+                    throw new ZipException("corrupt GZIP extra field");
+                }
+                int subfieldId1 = readUnsignedByte();
+                int subfieldId2 = readUnsignedByte();
+                int subfieldLength = readUnsignedShort();
+                extraLength -= 4 + subfieldLength;
+                if (extraLength < 0) {
+                    throw new ZipException("corrupt GZIP extra field");
+                }
+                if (subfieldId1 == GzipCompressor.DICTIONARY_SUBFIELD_ID1 &&
+                        subfieldId2 == GzipCompressor.DICTIONARY_SUBFIELD_ID2 &&
+                        subfieldLength == 4) {
+                    dictionaryChecksum = readUnsignedInt();
+                } else {
+                    skipBytes(subfieldLength);
+                }
+            }
+        }
+
+        // Skip the optional file name, comment, and header CRC.
+        if ((flags & FLAG_NAME) != 0) {
+            skipZeroTerminatedString();
+        }
+        if ((flags & FLAG_COMMENT) != 0) {
+            skipZeroTerminatedString();
+        }
+        if ((flags & FLAG_HEADER_CRC) != 0) {
+            skipBytes(2);
+        }
+        return dictionaryChecksum;
+
+    }
+
+    private byte[] resolveDictionary(long dictionaryChecksum) throws IOException {
+        if (dictionary != null && dictionaryId == dictionaryChecksum) {
+            return dictionary;
+        }
+        File dictionaryFile = dictionaryDirectory != null
+                ? getDictionaryFile(dictionaryDirectory, dictionaryChecksum)
+                : null;
+        if (dictionaryFile != null && dictionaryFile.exists()) {
+            dictionary = Files.readAllBytes(dictionaryFile.toPath());
+            dictionaryId = GzipCompressor.getDictionaryId(dictionary);
+            if (dictionaryId == dictionaryChecksum) {
+                return dictionary;
+            }
+        } else if (dictionary == null) {
+            throw new ZipException("missing preset dictionary");
+        }
+        throw new ZipException("preset dictionary checksum mismatch");
+    }
+
+    private void readTrailer() throws IOException {
+        int remainingByteCount = inflater.getRemaining();
+        if (remainingByteCount > 0) {
+            pushbackInputStream.unread(buffer, inputLength - remainingByteCount, remainingByteCount);
+        }
+        long expectedCrc = readUnsignedInt();
+        long expectedLength = readUnsignedInt();
+        if (expectedCrc != crc.getValue()) {
+            throw new ZipException("corrupt GZIP trailer: CRC mismatch");
+        }
+        if (expectedLength != (inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+            throw new ZipException("corrupt GZIP trailer: length mismatch");
+        }
+        memberOpen = false;
+    }
+
+    private int readUnsignedByte() throws IOException {
+        int value = pushbackInputStream.read();
+        if (value < 0) {
+            throw new EOFException("unexpected end of GZIP header");
+        }
+        return value;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        return readUnsignedByte() | (readUnsignedByte() << 8);
+    }
+
+    private long readUnsignedInt() throws IOException {
+        return (readUnsignedShort() | ((long) readUnsignedShort() << 16)) & 0xFFFFFFFFL;
+    }
+
+    private void skipBytes(int count) throws IOException {
+        for (int byteIndex = 0; byteIndex < count; byteIndex++) {
+            readUnsignedByte();
+        }
+    }
+
+    private void skipZeroTerminatedString() throws IOException {
+        // noinspection StatementWithEmptyBody
+        while (readUnsignedByte() != 0) {}
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        if (byteCount <= 0) {
+            return 0;
+        }
+        byte[] skipBuffer = new byte[(int) Math.min(byteCount, BUFFER_SIZE)];
+        long remainingByteCount = byteCount;
+        while (remainingByteCount > 0) {
+            int readByteCount = read(skipBuffer, 0, (int) Math.min(remainingByteCount, skipBuffer.length));
+            if (readByteCount < 0) {
+                break;
+            }
+            remainingByteCount -= readByteCount;
+        }
+        return byteCount - remainingByteCount;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        return eof ? 0 : 1;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {}
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            inflater.end();
+            super.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GzipBlockInputStream{dictionaryLength=%d}", dictionary != null ? dictionary.length : 0);
+    }
+
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses files into the GZIP format.
+ * <p>
+ * Unlike {@link java.util.zip.GZIPOutputStream}, which is limited to a 512
+ * bytes output buffer, both the input and the output are moved in chunks of
+ * the configured buffer size using {@link FileChannel}s. This keeps the
+ * number of system calls per compressed byte low.
+ * </p><p>
+ * If a block size is set, the output is a concatenation of independent GZIP
+ * members, each containing at most that many uncompressed bytes. If a
+ * dictionary is provided, every member is deflated using it as the preset
+ * dictionary, which is signaled by an {@code RD} extra field carrying the
+ * Adler-32 checksum of the dictionary. Such members can only be decompressed
+ * by {@link GzipBlockInputStream}.
+ * </p><p>
+ * If an index file is provided, the uncompressed offset, the compressed
+ * offset, and the record number of every member is collected while
+ * compressing, and written to it as a {@link GzipBlockIndex}.
+ * </p>
+ */
+final class GzipCompressor {
+
+    static final int DICTIONARY_LENGTH = 32 * 1024;
+
+    static final int GZIP_MAGIC = 0x8b1f;
+
+    static final int GZIP_FLAG_EXTRA = 4;
+
+    static final byte DICTIONARY_SUBFIELD_ID1 = 'R';
+
+    static final byte DICTIONARY_SUBFIELD_ID2 = 'D';
+
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private static final int SAMPLE_COUNT = 4;
+
+    private static final int SAMPLE_LENGTH = 64 * 1024;
+
+    // Identical to the one written by `GZIPOutputStream`.
+    private static final byte[] GZIP_HEADER = {
+            (byte) GZIP_MAGIC,          // magic number (short)
+            (byte) (GZIP_MAGIC >> 8),   // magic number (short)
+            Deflater.DEFLATED,          // compression method
+            0,                          // flags
+            0,                          // modification time (int)
+            0,                          // modification time (int)
+            0,                          // modification time (int)
+            0,                          // modification time (int)
+            0,                          // extra flags
+            0                           // operating system
+    };
+
+    // Extra field length (short) followed by the dictionary subfield ID, its length (short), and the Adler-32 (int).
+    private static final int DICTIONARY_EXTRA_FIELD_LENGTH = 2 + 2 + 2 + 4;
+
+    private final int bufferSize;
+
+    private final int blockSize;
+
+    GzipCompressor(int bufferSize, int blockSize) {
+        this.bufferSize = bufferSize;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Compresses the given source into the target.
+     *
+     * @param dictionary the preset dictionary, can be {@code null}
+     * @param indexFile the file to write the block index to, can be {@code null}
+     */
+    void compress(File sourceFile, File targetFile, byte[] dictionary, File indexFile) throws IOException {
+        compress(sourceFile, targetFile, dictionary, indexFile, null);
+    }
+
+    /**
+     * Compresses the given source into the target, feeding the source
+     * content to the given manifest scanner as well.
+     *
+     * @param dictionary the preset dictionary, can be {@code null}
+     * @param indexFile the file to write the block index to, can be {@code null}
+     * @param scanner the manifest scanner, can be {@code null}
+     */
+    void compress(
+            File sourceFile,
+            File targetFile,
+            byte[] dictionary,
+            File indexFile,
+            SegmentManifest.Scanner scanner)
+            throws IOException {
+        try (FileChannel sourceChannel = FileChannel.open(
+                     sourceFile.toPath(),
+                     StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(
+                     targetFile.toPath(),
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            GzipBlockIndex index = indexFile != null ? new GzipBlockIndex() : null;
+            Compression compression = new Compression(targetChannel, dictionary, index, scanner);
+            try {
+                compression.run(sourceChannel);
+            } finally {
+                compression.deflater.end();
+            }
+            if (index != null) {
+                index.write(indexFile);
+            }
+        }
+    }
+
+    /**
+     * @return the ID of the given preset dictionary, i.e., its Adler-32
+     * checksum, which is recorded in the {@code RD} extra field
+     */
+    static long getDictionaryId(byte[] dictionary) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(dictionary, 0, dictionary.length);
+        return adler32.getValue();
+    }
+
+    /**
+     * Reads the last {@link #DICTIONARY_LENGTH} bytes of the given file to be
+     * used as the preset dictionary of the next compression.
+     */
+    static byte[] readDictionary(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileLength = channel.size();
+            int dictionaryLength = (int) Math.min(fileLength, DICTIONARY_LENGTH);
+            ByteBuffer dictionaryBuffer = ByteBuffer.allocate(dictionaryLength);
+            long position = fileLength - dictionaryLength;
+            while (dictionaryBuffer.hasRemaining()) {
+                int readByteCount = channel.read(dictionaryBuffer, position + dictionaryBuffer.position());
+                if (readByteCount < 0) {
+                    throw new IOException("unexpected end of file: " + file);
+                }
+            }
+            return dictionaryBuffer.array();
+        }
+    }
+
+    /**
+     * Estimates the compression ratio, i.e., {@code compressedLength / length},
+     * of the given file by deflating a few blocks sampled evenly from it.
+     * Small files are deflated in full.
+     */
+    double estimateCompressionRatio(File file) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return estimateCompressionRatio(channel, deflater);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static double estimateCompressionRatio(FileChannel channel, Deflater deflater) throws IOException {
+
+        // Determine the sample positions.
+        long fileLength = channel.size();
+        if (fileLength == 0) {
+            return 1;
+        }
+        int sampleCount = (int) Math.min(SAMPLE_COUNT, (fileLength + SAMPLE_LENGTH - 1) / SAMPLE_LENGTH);
+        long sampleStride = sampleCount > 1
+                ? (fileLength - SAMPLE_LENGTH) / (sampleCount - 1)
+                : 0;
+
+        // Deflate samples.
+        ByteBuffer inputBuffer = ByteBuffer.allocate(SAMPLE_LENGTH);
+        byte[] outputBuffer = new byte[SAMPLE_LENGTH];
+        long totalInputLength = 0;
+        long totalOutputLength = 0;
+        for (int sampleIndex = 0; sampleIndex < sampleCount; sampleIndex++) {
+            long samplePosition = sampleIndex * sampleStride;
+            inputBuffer.clear();
+            while (inputBuffer.hasRemaining()) {
+                int readByteCount = channel.read(inputBuffer, samplePosition + inputBuffer.position());
+                if (readByteCount < 0) {
+                    break;
+                }
+            }
+            int inputLength = inputBuffer.position();
+            deflater.reset();
+            deflater.setInput(inputBuffer.array(), 0, inputLength);
+            deflater.finish();
+            while (!deflater.finished()) {
+                totalOutputLength += deflater.deflate(outputBuffer);
+            }
+            totalInputLength += inputLength;
+        }
+        return (double) totalOutputLength / totalInputLength;
+
+    }
+
+    /**
+     * State of a single compression run.
+     */
+    private final class Compression {
+
+        private final FileChannel targetChannel;
+
+        private final byte[] dictionary;
+
+        private final long dictionaryId;
+
+        private final GzipBlockIndex index;
+
+        private final SegmentManifest.Scanner scanner;
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        private final CRC32 crc = new CRC32();
+
+        // `Deflater` only accepts arrays in Java 8, hence heap buffers.
+        private final ByteBuffer inputBuffer = ByteBuffer.allocate(bufferSize);
+
+        private final ByteBuffer outputBuffer = ByteBuffer
+                .allocate(Math.max(bufferSize, GZIP_HEADER.length + DICTIONARY_EXTRA_FIELD_LENGTH + GZIP_TRAILER_LENGTH))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        private int memberCount = 0;
+
+        private boolean memberOpen = false;
+
+        private long memberInputLength = 0;
+
+        private long inputLength = 0;
+
+        private long outputLength = 0;
+
+        private long recordCount = 0;
+
+        private Compression(
+                FileChannel targetChannel,
+                byte[] dictionary,
+                GzipBlockIndex index,
+                SegmentManifest.Scanner scanner) {
+            this.targetChannel = targetChannel;
+            this.dictionary = dictionary;
+            this.dictionaryId = dictionary != null ? getDictionaryId(dictionary) : -1;
+            this.index = index;
+            this.scanner = scanner;
+        }
+
+        private void run(FileChannel sourceChannel) throws IOException {
+
+            // Deflate the content.
+            byte[] inputArray = inputBuffer.array();
+            int readByteCount;
+            while ((readByteCount = sourceChannel.read(inputBuffer)) >= 0) {
+                if (scanner != null) {
+                    scanner.update(inputArray, 0, readByteCount);
+                }
+                int inputOffset = 0;
+                while (inputOffset < readByteCount) {
+                    if (!memberOpen) {
+                        startMember();
+                    }
+                    int inputLength = blockSize > 0
+                            ? (int) Math.min(readByteCount - inputOffset, blockSize - memberInputLength)
+                            : readByteCount - inputOffset;
+                    crc.update(inputArray, inputOffset, inputLength);
+                    if (index != null) {
+                        countRecords(inputArray, inputOffset, inputLength);
+                    }
+                    deflater.setInput(inputArray, inputOffset, inputLength);
+                    while (!deflater.needsInput()) {
+                        deflate();
+                    }
+                    memberInputLength += inputLength;
+                    this.inputLength += inputLength;
+                    inputOffset += inputLength;
+                    if (blockSize > 0 && memberInputLength == blockSize) {
+                        finishMember();
+                    }
+                }
+                inputBuffer.clear();
+            }
+
+            // Finish the last member. (Empty input still requires a member.)
+            if (memberOpen || memberCount == 0) {
+                if (!memberOpen) {
+                    startMember();
+                }
+                finishMember();
+            }
+            drain();
+
+        }
+
+        private void countRecords(byte[] array, int offset, int length) {
+            int endOffset = offset + length;
+            for (int byteIndex = offset; byteIndex < endOffset; byteIndex++) {
+                if (array[byteIndex] == '\n') {
+                    recordCount++;
+                }
+            }
+        }
+
+        private void startMember() throws IOException {
+            ensureOutputCapacity(GZIP_HEADER.length + DICTIONARY_EXTRA_FIELD_LENGTH);
+            if (index != null) {
+                index.add(inputLength, outputLength + outputBuffer.position(), recordCount);
+            }
+            if (dictionary == null) {
+                outputBuffer.put(GZIP_HEADER);
+            } else {
+                outputBuffer.put(GZIP_HEADER, 0, 3);
+                outputBuffer.put((byte) GZIP_FLAG_EXTRA);
+                outputBuffer.put(GZIP_HEADER, 4, GZIP_HEADER.length - 4);
+                outputBuffer.putShort((short) (DICTIONARY_EXTRA_FIELD_LENGTH - 2));
+                outputBuffer.put(DICTIONARY_SUBFIELD_ID1);
+                outputBuffer.put(DICTIONARY_SUBFIELD_ID2);
+                outputBuffer.putShort((short) 4);
+                outputBuffer.putInt((int) dictionaryId);
+            }
+            deflater.reset();
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            crc.reset();
+            memberInputLength = 0;
+            memberOpen = true;
+            memberCount++;
+        }
+
+        private void finishMember() throws IOException {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            ensureOutputCapacity(GZIP_TRAILER_LENGTH);
+            outputBuffer.putInt((int) crc.getValue());
+            outputBuffer.putInt((int) memberInputLength);
+            memberOpen = false;
+        }
+
+        private void deflate() throws IOException {
+            ensureOutputCapacity(1);
+            int deflatedByteCount = deflater.deflate(
+                    outputBuffer.array(),
+                    outputBuffer.position(),
+                    outputBuffer.remaining());
+            outputBuffer.position(outputBuffer.position() + deflatedByteCount);
+        }
+
+        private void ensureOutputCapacity(int length) throws IOException {
+            if (outputBuffer.remaining() < length) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            outputBuffer.flip();
+            while (outputBuffer.hasRemaining()) {
+                outputLength += targetChannel.write(outputBuffer);
+            }
+            outputBuffer.clear();
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GzipCompressor{bufferSize=%d, blockSize=%d}", bufferSize, blockSize);
+    }
+
+}
@@ -67,4 +67,9 @@ public class LoggingRotationCallback implements RotationCallback {
         LOGGER.error(message, error);
     }
 
+    @Override
+    public void onDelete(Instant instant, File file) {
+        LOGGER.debug("file delete {instant={}, file={}}", instant, file);
+    }
+
 }
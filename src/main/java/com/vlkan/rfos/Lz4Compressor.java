@@ -0,0 +1,458 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compresses files into the
+ * <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Frame_format.md">LZ4 frame format</a>.
+ * <p>
+ * Frames consist of independent 64 KiB blocks followed by a content checksum,
+ * and can be decompressed by the standard {@code lz4} tool. Blocks are
+ * compressed using the greedy single-probe hash table search of the
+ * reference implementation.
+ * </p><p>
+ * The hash table and the block buffers are allocated once per thread and
+ * reused across compressions. Stale hash table entries of preceding blocks
+ * are invalidated by shifting the base of stored positions rather than
+ * clearing the table.
+ * </p>
+ */
+final class Lz4Compressor {
+
+    static final int MAGIC = 0x184D2204;
+
+    // Version 01, independent blocks, content checksum.
+    static final byte FRAME_FLAGS = 0x64;
+
+    // 64 KiB maximum block size.
+    static final byte BLOCK_DESCRIPTOR = 0x40;
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    static final int UNCOMPRESSED_BLOCK_FLAG = 0x80000000;
+
+    static final int MIN_MATCH = 4;
+
+    private static final int LAST_LITERALS = 5;
+
+    private static final int MF_LIMIT = 12;
+
+    private static final int MIN_INPUT_LENGTH = MF_LIMIT + 1;
+
+    private static final int MAX_DISTANCE = 65535;
+
+    private static final int HASH_LOG = 12;
+
+    private static final int SKIP_TRIGGER = 6;
+
+    // The block size header and the worst case of incompressible input.
+    private static final int MAX_OUTPUT_LENGTH = 4 + BLOCK_SIZE + BLOCK_SIZE / 255 + 16;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    /**
+     * Per-thread buffers reused across compressions.
+     */
+    private static final class State {
+
+        private final int[] hashTable = new int[1 << HASH_LOG];
+
+        private final byte[] inputArray = new byte[BLOCK_SIZE];
+
+        private final byte[] outputArray = new byte[MAX_OUTPUT_LENGTH];
+
+        private final ByteBuffer inputBuffer = ByteBuffer.wrap(inputArray);
+
+        // Reads multiple bytes at once, which byte-by-byte assembly cannot compete with.
+        private final ByteBuffer inputView = ByteBuffer.wrap(inputArray).order(ByteOrder.LITTLE_ENDIAN);
+
+        private final ByteBuffer outputBuffer = ByteBuffer.wrap(outputArray);
+
+        private final XxHash32 contentHash = new XxHash32();
+
+        // Hash table entries are stored as `base + position`. Every block
+        // shifts the base by the block size, rendering entries of preceding
+        // blocks negative once the base is subtracted.
+        private int base = BLOCK_SIZE;
+
+        private int nextBase() {
+            if (base > Integer.MAX_VALUE - 2 * BLOCK_SIZE) {
+                Arrays.fill(hashTable, 0);
+                base = BLOCK_SIZE;
+            } else {
+                base += BLOCK_SIZE;
+            }
+            return base;
+        }
+
+    }
+
+    void compress(File sourceFile, File targetFile) throws IOException {
+        compress(sourceFile, targetFile, null);
+    }
+
+    /**
+     * Compresses the given source into the target, feeding the source
+     * content to the given manifest scanner, if not {@code null}, as well.
+     */
+    void compress(File sourceFile, File targetFile, SegmentManifest.Scanner scanner) throws IOException {
+        try (FileChannel sourceChannel = FileChannel.open(
+                     sourceFile.toPath(),
+                     StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(
+                     targetFile.toPath(),
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            compress(sourceChannel, targetChannel, STATE.get(), scanner);
+        }
+    }
+
+    private static void compress(
+            FileChannel sourceChannel,
+            FileChannel targetChannel,
+            State state,
+            SegmentManifest.Scanner scanner)
+            throws IOException {
+
+        // Write the frame header.
+        byte[] outputArray = state.outputArray;
+        writeIntLE(outputArray, 0, MAGIC);
+        outputArray[4] = FRAME_FLAGS;
+        outputArray[5] = BLOCK_DESCRIPTOR;
+        outputArray[6] = (byte) (XxHash32.hash(outputArray, 4, 2) >>> 8);
+        write(targetChannel, state.outputBuffer, 7);
+
+        // Write blocks.
+        XxHash32 contentHash = state.contentHash;
+        contentHash.reset();
+        byte[] inputArray = state.inputArray;
+        ByteBuffer inputBuffer = state.inputBuffer;
+        for (;;) {
+            int inputLength = readBlock(sourceChannel, inputBuffer);
+            if (inputLength == 0) {
+                break;
+            }
+            contentHash.update(inputArray, 0, inputLength);
+            if (scanner != null) {
+                scanner.update(inputArray, 0, inputLength);
+            }
+            int compressedLength = compressBlock(inputArray, inputLength, outputArray, 4, state);
+            if (compressedLength < inputLength) {
+                writeIntLE(outputArray, 0, compressedLength);
+                write(targetChannel, state.outputBuffer, 4 + compressedLength);
+            } else {
+                writeIntLE(outputArray, 0, UNCOMPRESSED_BLOCK_FLAG | inputLength);
+                System.arraycopy(inputArray, 0, outputArray, 4, inputLength);
+                write(targetChannel, state.outputBuffer, 4 + inputLength);
+            }
+            if (inputLength < BLOCK_SIZE) {
+                break;
+            }
+        }
+
+        // Write the end mark and the content checksum.
+        writeIntLE(outputArray, 0, 0);
+        writeIntLE(outputArray, 4, contentHash.digest());
+        write(targetChannel, state.outputBuffer, 8);
+
+    }
+
+    private static int readBlock(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int readByteCount = channel.read(buffer);
+            if (readByteCount < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Compresses the given input into an LZ4 block.
+     *
+     * @return the compressed length, which can be greater than the input length
+     */
+    private static int compressBlock(byte[] input, int inputLength, byte[] output, int outputOffset, State state) {
+        ByteBuffer inputView = state.inputView;
+        int[] hashTable = state.hashTable;
+        int base = state.nextBase();
+        int anchor = 0;
+        int outputIndex = outputOffset;
+        if (inputLength >= MIN_INPUT_LENGTH) {
+            int matchLimit = inputLength - LAST_LITERALS;
+            int matchFindLimit = inputLength - MF_LIMIT;
+            hashTable[hash(inputView.getInt(0))] = base;
+            int inputIndex = 1;
+            int searchCount = 1 << SKIP_TRIGGER;
+            while (inputIndex < matchFindLimit) {
+
+                // Find a match.
+                int sequence = inputView.getInt(inputIndex);
+                int hash = hash(sequence);
+                int reference = hashTable[hash] - base;
+                hashTable[hash] = base + inputIndex;
+                if (reference < 0 ||
+                        inputIndex - reference > MAX_DISTANCE ||
+                        inputView.getInt(reference) != sequence) {
+                    inputIndex += searchCount++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searchCount = 1 << SKIP_TRIGGER;
+
+                // Extend the match backwards.
+                while (inputIndex > anchor && reference > 0 && input[inputIndex - 1] == input[reference - 1]) {
+                    inputIndex--;
+                    reference--;
+                }
+
+                // Extend the match forwards.
+                int matchLength = MIN_MATCH;
+                while (inputIndex + matchLength + 8 <= matchLimit) {
+                    long difference =
+                            inputView.getLong(inputIndex + matchLength) ^
+                                    inputView.getLong(reference + matchLength);
+                    if (difference != 0) {
+                        matchLength += Long.numberOfTrailingZeros(difference) >>> 3;
+                        break;
+                    }
+                    matchLength += 8;
+                }
+                while (inputIndex + matchLength < matchLimit &&
+                        input[inputIndex + matchLength] == input[reference + matchLength]) {
+                    matchLength++;
+                }
+
+                // Write the sequence.
+                outputIndex = writeSequence(
+                        input, anchor, inputIndex - anchor,
+                        inputIndex - reference, matchLength,
+                        output, outputIndex);
+                inputIndex += matchLength;
+                anchor = inputIndex;
+
+                // Feed the table with a position inside the match.
+                hashTable[hash(inputView.getInt(inputIndex - 2))] = base + inputIndex - 2;
+
+            }
+        }
+
+        // Write the last literals.
+        outputIndex = writeSequence(input, anchor, inputLength - anchor, 0, 0, output, outputIndex);
+        return outputIndex - outputOffset;
+    }
+
+    private static int writeSequence(
+            byte[] input,
+            int literalOffset,
+            int literalLength,
+            int matchDistance,
+            int matchLength,
+            byte[] output,
+            int outputIndex) {
+
+        // Write the token.
+        int tokenIndex = outputIndex++;
+        int literalToken = Math.min(literalLength, 15);
+        int matchToken = matchLength > 0 ? Math.min(matchLength - MIN_MATCH, 15) : 0;
+        output[tokenIndex] = (byte) ((literalToken << 4) | matchToken);
+
+        // Write literals.
+        if (literalToken == 15) {
+            outputIndex = writeLength(literalLength - 15, output, outputIndex);
+        }
+        System.arraycopy(input, literalOffset, output, outputIndex, literalLength);
+        outputIndex += literalLength;
+
+        // Write the match.
+        if (matchLength > 0) {
+            output[outputIndex++] = (byte) matchDistance;
+            output[outputIndex++] = (byte) (matchDistance >>> 8);
+            if (matchToken == 15) {
+                outputIndex = writeLength(matchLength - MIN_MATCH - 15, output, outputIndex);
+            }
+        }
+        return outputIndex;
+
+    }
+
+    private static int writeLength(int length, byte[] output, int outputIndex) {
+        while (length >= 255) {
+            output[outputIndex++] = (byte) 255;
+            length -= 255;
+        }
+        output[outputIndex++] = (byte) length;
+        return outputIndex;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    static int readIntLE(byte[] array, int index) {
+        return (array[index] & 0xFF) |
+                (array[index + 1] & 0xFF) << 8 |
+                (array[index + 2] & 0xFF) << 16 |
+                (array[index + 3] & 0xFF) << 24;
+    }
+
+    private static void writeIntLE(byte[] array, int index, int value) {
+        array[index] = (byte) value;
+        array[index + 1] = (byte) (value >>> 8);
+        array[index + 2] = (byte) (value >>> 16);
+        array[index + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * Streaming <a href="https://github.com/Cyan4973/xxHash">xxHash32</a>
+     * with zero seed, used for the LZ4 frame checksums.
+     */
+    static final class XxHash32 {
+
+        private static final int PRIME1 = 0x9E3779B1;
+
+        private static final int PRIME2 = 0x85EBCA77;
+
+        private static final int PRIME3 = 0xC2B2AE3D;
+
+        private static final int PRIME4 = 0x27D4EB2F;
+
+        private static final int PRIME5 = 0x165667B1;
+
+        private final byte[] stripe = new byte[16];
+
+        private int stripeLength;
+
+        private long totalLength;
+
+        private int v1;
+
+        private int v2;
+
+        private int v3;
+
+        private int v4;
+
+        XxHash32() {
+            reset();
+        }
+
+        void reset() {
+            stripeLength = 0;
+            totalLength = 0;
+            v1 = PRIME1 + PRIME2;
+            v2 = PRIME2;
+            v3 = 0;
+            v4 = -PRIME1;
+        }
+
+        static int hash(byte[] array, int offset, int length) {
+            XxHash32 hash = new XxHash32();
+            hash.update(array, offset, length);
+            return hash.digest();
+        }
+
+        void update(byte[] array, int offset, int length) {
+            totalLength += length;
+            int endOffset = offset + length;
+
+            // Complete the pending stripe, if there is any.
+            if (stripeLength > 0) {
+                int copyLength = Math.min(16 - stripeLength, length);
+                System.arraycopy(array, offset, stripe, stripeLength, copyLength);
+                stripeLength += copyLength;
+                offset += copyLength;
+                if (stripeLength < 16) {
+                    return;
+                }
+                consumeStripe(stripe, 0);
+                stripeLength = 0;
+            }
+
+            // Consume full stripes.
+            while (offset <= endOffset - 16) {
+                consumeStripe(array, offset);
+                offset += 16;
+            }
+
+            // Keep the rest.
+            stripeLength = endOffset - offset;
+            System.arraycopy(array, offset, stripe, 0, stripeLength);
+        }
+
+        private void consumeStripe(byte[] array, int offset) {
+            v1 = round(v1, readIntLE(array, offset));
+            v2 = round(v2, readIntLE(array, offset + 4));
+            v3 = round(v3, readIntLE(array, offset + 8));
+            v4 = round(v4, readIntLE(array, offset + 12));
+        }
+
+        private static int round(int accumulator, int lane) {
+            return Integer.rotateLeft(accumulator + lane * PRIME2, 13) * PRIME1;
+        }
+
+        int digest() {
+            int hash = totalLength >= 16
+                    ? Integer.rotateLeft(v1, 1) +
+                    Integer.rotateLeft(v2, 7) +
+                    Integer.rotateLeft(v3, 12) +
+                    Integer.rotateLeft(v4, 18)
+                    : PRIME5;
+            hash += (int) totalLength;
+            int offset = 0;
+            while (offset <= stripeLength - 4) {
+                hash += readIntLE(stripe, offset) * PRIME3;
+                hash = Integer.rotateLeft(hash, 17) * PRIME4;
+                offset += 4;
+            }
+            while (offset < stripeLength) {
+                hash += (stripe[offset] & 0xFF) * PRIME5;
+                hash = Integer.rotateLeft(hash, 11) * PRIME1;
+                offset++;
+            }
+            hash ^= hash >>> 15;
+            hash *= PRIME2;
+            hash ^= hash >>> 13;
+            hash *= PRIME3;
+            hash ^= hash >>> 16;
+            return hash;
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "Lz4Compressor";
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Objects;
+
+/**
+ * Decompresses files in the
+ * <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Frame_format.md">LZ4 frame format</a>
+ * written by {@link Lz4Compressor}.
+ * <p>
+ * A single frame of independent blocks is read, where block and content
+ * checksums are verified, if present. Frames with linked blocks or a
+ * dictionary ID are rejected.
+ * </p>
+ */
+final class Lz4FrameInputStream extends InputStream {
+
+    private static final int FLAG_VERSION_MASK = 0xC0;
+
+    private static final int FLAG_VERSION = 0x40;
+
+    private static final int FLAG_BLOCK_INDEPENDENCE = 0x20;
+
+    private static final int FLAG_BLOCK_CHECKSUM = 0x10;
+
+    private static final int FLAG_CONTENT_SIZE = 0x08;
+
+    private static final int FLAG_CONTENT_CHECKSUM = 0x04;
+
+    private static final int FLAG_DICTIONARY_ID = 0x01;
+
+    private final InputStream inputStream;
+
+    private final boolean blockChecksum;
+
+    private final boolean contentChecksum;
+
+    private final byte[] compressedBlock;
+
+    private final byte[] block;
+
+    private final Lz4Compressor.XxHash32 contentHash = new Lz4Compressor.XxHash32();
+
+    private final byte[] intBuffer = new byte[Long.BYTES];
+
+    private final byte[] singleByteBuffer = new byte[1];
+
+    private int blockOffset = 0;
+
+    private int blockLength = 0;
+
+    private boolean eof = false;
+
+    Lz4FrameInputStream(InputStream inputStream) throws IOException {
+        this.inputStream = Objects.requireNonNull(inputStream, "inputStream");
+
+        // Read the frame descriptor.
+        readFully(intBuffer, 4);
+        int magic = Lz4Compressor.readIntLE(intBuffer, 0);
+        if (magic != Lz4Compressor.MAGIC) {
+            throw new IOException(String.format("invalid LZ4 frame magic {magic=%08x}", magic));
+        }
+        byte[] descriptor = new byte[2 + Long.BYTES];
+        readFully(descriptor, 2);
+        int flags = descriptor[0] & 0xFF;
+        if ((flags & FLAG_VERSION_MASK) != FLAG_VERSION) {
+            throw new IOException(String.format("unsupported LZ4 frame version {flags=%02x}", flags));
+        }
+        if ((flags & FLAG_BLOCK_INDEPENDENCE) == 0 || (flags & FLAG_DICTIONARY_ID) != 0) {
+            throw new IOException(String.format("unsupported LZ4 frame flags {flags=%02x}", flags));
+        }
+        int descriptorLength = 2;
+        if ((flags & FLAG_CONTENT_SIZE) != 0) {
+            readFully(intBuffer, Long.BYTES);
+            System.arraycopy(intBuffer, 0, descriptor, 2, Long.BYTES);
+            descriptorLength += Long.BYTES;
+        }
+        readFully(singleByteBuffer, 1);
+        int headerChecksum = (Lz4Compressor.XxHash32.hash(descriptor, 0, descriptorLength) >>> 8) & 0xFF;
+        if ((singleByteBuffer[0] & 0xFF) != headerChecksum) {
+            throw new IOException("LZ4 frame header checksum mismatch");
+        }
+
+        // Allocate the buffers for the maximum block size.
+        int blockSizeId = (descriptor[1] >>> 4) & 0x7;
+        if (blockSizeId < 4) {
+            String message = String.format("invalid LZ4 block maximum size {blockDescriptor=%02x}", descriptor[1]);
+            throw new IOException(message);
+        }
+        int maxBlockSize = 1 << (2 * blockSizeId + 8);
+        this.blockChecksum = (flags & FLAG_BLOCK_CHECKSUM) != 0;
+        this.contentChecksum = (flags & FLAG_CONTENT_CHECKSUM) != 0;
+        this.compressedBlock = new byte[maxBlockSize];
+        this.block = new byte[maxBlockSize];
+
+    }
+
+    /**
+     * Opens the given compressed file.
+     */
+    static Lz4FrameInputStream open(File compressedFile) throws IOException {
+        Objects.requireNonNull(compressedFile, "compressedFile");
+        InputStream inputStream = new BufferedInputStream(Files.newInputStream(compressedFile.toPath()));
+        try {
+            return new Lz4FrameInputStream(inputStream);
+        } catch (IOException error) {
+            inputStream.close();
+            throw error;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int readByteCount = read(singleByteBuffer, 0, 1);
+        return readByteCount < 0 ? -1 : singleByteBuffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        Objects.requireNonNull(buffer, "buffer");
+        if (offset < 0 || length < 0 || length > buffer.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+        while (blockOffset == blockLength) {
+            if (eof) {
+                return -1;
+            }
+            readBlock();
+        }
+        int readByteCount = Math.min(length, blockLength - blockOffset);
+        System.arraycopy(block, blockOffset, buffer, offset, readByteCount);
+        blockOffset += readByteCount;
+        return readByteCount;
+    }
+
+    private void readBlock() throws IOException {
+
+        // Read the block size, and verify the content checksum at the end mark.
+        readFully(intBuffer, 4);
+        int blockSize = Lz4Compressor.readIntLE(intBuffer, 0);
+        if (blockSize == 0) {
+            if (contentChecksum) {
+                readFully(intBuffer, 4);
+                if (Lz4Compressor.readIntLE(intBuffer, 0) != contentHash.digest()) {
+                    throw new IOException("LZ4 content checksum mismatch");
+                }
+            }
+            eof = true;
+            return;
+        }
+        boolean uncompressed = (blockSize & Lz4Compressor.UNCOMPRESSED_BLOCK_FLAG) != 0;
+        int compressedLength = blockSize & ~Lz4Compressor.UNCOMPRESSED_BLOCK_FLAG;
+        if (compressedLength > compressedBlock.length) {
+            String message = String.format("LZ4 block exceeds the maximum size {blockSize=%d}", compressedLength);
+            throw new IOException(message);
+        }
+
+        // Read the block, and verify its checksum, if present.
+        readFully(compressedBlock, compressedLength);
+        if (blockChecksum) {
+            readFully(intBuffer, 4);
+            if (Lz4Compressor.readIntLE(intBuffer, 0) !=
+                    Lz4Compressor.XxHash32.hash(compressedBlock, 0, compressedLength)) {
+                throw new IOException("LZ4 block checksum mismatch");
+            }
+        }
+
+        // Decompress the block.
+        if (uncompressed) {
+            System.arraycopy(compressedBlock, 0, block, 0, compressedLength);
+            blockLength = compressedLength;
+        } else {
+            blockLength = decompressBlock(compressedBlock, compressedLength, block);
+        }
+        blockOffset = 0;
+        contentHash.update(block, 0, blockLength);
+
+    }
+
+    /**
+     * Decompresses the given LZ4 block into the given output.
+     *
+     * @return the decompressed length
+     */
+    static int decompressBlock(byte[] input, int inputLength, byte[] output) throws IOException {
+        int inputIndex = 0;
+        int outputIndex = 0;
+        try {
+            for (;;) {
+                int token = input[inputIndex++] & 0xFF;
+
+                // Copy literals.
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int lengthByte;
+                    do {
+                        lengthByte = input[inputIndex++] & 0xFF;
+                        literalLength += lengthByte;
+                    } while (lengthByte == 255);
+                }
+                if (inputIndex + literalLength > inputLength) {
+                    throw new IOException("malformed LZ4 block: literals exceed the block");
+                }
+                System.arraycopy(input, inputIndex, output, outputIndex, literalLength);
+                inputIndex += literalLength;
+                outputIndex += literalLength;
+                if (inputIndex == inputLength) {
+                    return outputIndex;
+                }
+
+                // Copy the match, which might overlap its own output.
+                int distance = (input[inputIndex] & 0xFF) | (input[inputIndex + 1] & 0xFF) << 8;
+                inputIndex += 2;
+                if (distance == 0 || distance > outputIndex) {
+                    throw new IOException("malformed LZ4 block: invalid match distance");
+                }
+                int matchLength = token & 0xF;
+                if (matchLength == 15) {
+                    int lengthByte;
+                    do {
+                        lengthByte = input[inputIndex++] & 0xFF;
+                        matchLength += lengthByte;
+                    } while (lengthByte == 255);
+                }
+                matchLength += Lz4Compressor.MIN_MATCH;
+                if (outputIndex + matchLength > output.length) {
+                    throw new IOException("malformed LZ4 block: match exceeds the block");
+                }
+                for (int byteIndex = 0; byteIndex < matchLength; byteIndex++) {
+                    output[outputIndex] = output[outputIndex - distance];
+                    outputIndex++;
+                }
+            }
+        } catch (IndexOutOfBoundsException error) {
+            throw new IOException("malformed LZ4 block", error);
+        }
+    }
+
+    private void readFully(byte[] buffer, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int readByteCount = inputStream.read(buffer, offset, length - offset);
+            if (readByteCount < 0) {
+                throw new EOFException("truncated LZ4 frame");
+            }
+            offset += readByteCount;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+}
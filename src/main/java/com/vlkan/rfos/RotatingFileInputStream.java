@@ -0,0 +1,477 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import com.vlkan.rfos.policy.RotationPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link InputStream} following the active file of a
+ * {@link RotatingFileOutputStream} across rotations, similar to
+ * {@code tail -F}.
+ * <p>
+ * Every new file appearing at the path is opened right away and queued
+ * behind the one being read. The stream keeps reading a file, even after it
+ * is renamed by a rotation, until its end, and only then switches to the
+ * next one. Hence, neither the bytes written right before a rotation are
+ * lost, nor a renamed file is read forever. New files are detected by the
+ * {@link RotationCallback#onOpen(RotationPolicy, Instant, OutputStream)}
+ * callback, if the stream is registered to the followed stream, and by the
+ * {@link WatchService} of the directory otherwise. The latter compares
+ * {@link BasicFileAttributes#fileKey() file keys}, and hence might miss
+ * files rotated faster than it is notified. If the file is truncated, it
+ * is read from the beginning. If the file is recycled, i.e.,
+ * {@link RotationConfig#isSegmentRecycling()} is enabled, it is not read
+ * past the logical length recorded in its {@code .length} sidecar file,
+ * since the rest consists of stale bytes.
+ * </p><p>
+ * Reads block until there are bytes available. Waiting readers are woken up
+ * by the callbacks and the watch service, and at the latest after
+ * {@link #getMaxWaitMillis()}. Once {@link #close() closed}, reads return
+ * {@code -1}.
+ * </p>
+ */
+public class RotatingFileInputStream extends InputStream implements RotationCallback {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RotatingFileInputStream.class);
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final long DEFAULT_MAX_WAIT_MILLIS = 1_000;
+
+    private static final class OpenFile {
+
+        private final FileChannel channel;
+
+        private final Object fileKey;
+
+        private OpenFile(FileChannel channel, Object fileKey) {
+            this.channel = channel;
+            this.fileKey = fileKey;
+        }
+
+    }
+
+    private final Path path;
+
+    private final Path lengthPath;
+
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(Long.BYTES);
+
+    private final long maxWaitMillis;
+
+    private final ByteBuffer buffer;
+
+    private final byte[] singleByteBuffer = new byte[1];
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    private final WatchService watchService;
+
+    private final Thread watchThread;
+
+    private final ArrayDeque<OpenFile> pendingFiles = new ArrayDeque<>();
+
+    private OpenFile currentFile;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates an instance following the given file.
+     *
+     * @param file the active file of a {@link RotatingFileOutputStream}
+     */
+    public RotatingFileInputStream(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * Creates an instance following the given file.
+     *
+     * @param file the active file of a {@link RotatingFileOutputStream}
+     * @param bufferSize the size of the buffer used for reading the file
+     * @param maxWaitMillis the maximum duration in milliseconds to block
+     *                      before checking the file for changes, in case
+     *                      notifications are missed
+     */
+    public RotatingFileInputStream(File file, int bufferSize, long maxWaitMillis) throws IOException {
+        Objects.requireNonNull(file, "file");
+        if (bufferSize < 1) {
+            String message = String.format("invalid buffer size {bufferSize=%d}", bufferSize);
+            throw new IllegalArgumentException(message);
+        }
+        if (maxWaitMillis < 1) {
+            String message = String.format("invalid max wait {maxWaitMillis=%d}", maxWaitMillis);
+            throw new IllegalArgumentException(message);
+        }
+        this.path = file.getAbsoluteFile().toPath();
+        this.lengthPath = Paths.get(path + RotatingFileOutputStream.LENGTH_FILE_SUFFIX);
+        this.maxWaitMillis = maxWaitMillis;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        buffer.flip();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            path.getParent().register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            trackFile(false);
+        } catch (IOException error) {
+            watchService.close();
+            throw error;
+        }
+        String threadName = String.format("%s.watch(%s)", RotatingFileInputStream.class.getSimpleName(), file);
+        this.watchThread = new Thread(this::watch, threadName);
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * @return the maximum duration in milliseconds to block before checking
+     * the file for changes
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    private void watch() {
+        try {
+            for (;;) {
+                WatchKey watchKey = watchService.take();
+                // Track on every event, since filtering by the file name is
+                // more expensive than a spurious check.
+                watchKey.pollEvents();
+                watchKey.reset();
+                trackFile(false);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // The stream is closed.
+        } catch (IOException error) {
+            LOGGER.error("file watch failure {path={}}", path, error);
+        }
+    }
+
+    /**
+     * Opens and queues the file at the path, if it is a new one, and wakes up
+     * the waiting readers.
+     *
+     * @param opened {@code true}, if the file is known to be (re)created
+     */
+    private void trackFile(boolean opened) throws IOException {
+        lock.lock();
+        try {
+            if (!closed) {
+                unsafeTrackFile(opened);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void unsafeTrackFile(boolean opened) throws IOException {
+        for (;;) {
+
+            // Skip known files.
+            Object fileKey = readFileKey();
+            if (fileKey == null && !opened) {
+                return;
+            }
+            OpenFile lastFile = pendingFiles.isEmpty() ? currentFile : pendingFiles.getLast();
+            if (lastFile != null && fileKey != null && fileKey.equals(lastFile.fileKey)) {
+                return;
+            }
+
+            // Open the file and verify that it is not replaced in the meantime.
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            } catch (NoSuchFileException ignored) {
+                return;
+            }
+            if (!Objects.equals(fileKey, readFileKey())) {
+                channel.close();
+                continue;
+            }
+            LOGGER.debug("opened file {path={}, fileKey={}}", path, fileKey);
+            pendingFiles.add(new OpenFile(channel, fileKey));
+            return;
+
+        }
+    }
+
+    private Object readFileKey() throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException ignored) {
+            return null;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int readByteCount = read(singleByteBuffer, 0, 1);
+        return readByteCount < 0 ? -1 : singleByteBuffer[0] & 0xFF;
+    }
+
+    /**
+     * Reads the available bytes, blocking until there is at least one.
+     *
+     * @return the number of bytes read, or {@code -1}, if closed
+     */
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        Objects.requireNonNull(bytes, "bytes");
+        if (offset < 0 || length < 0 || length > bytes.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            while (!buffer.hasRemaining()) {
+                if (closed) {
+                    return -1;
+                }
+                if (!unsafeFillBuffer()) {
+                    unsafeAwait();
+                }
+            }
+            int readByteCount = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, readByteCount);
+            return readByteCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code true}, if the buffer has bytes to read
+     */
+    private boolean unsafeFillBuffer() throws IOException {
+        for (;;) {
+
+            // Switch to the next file, if there is none.
+            if (currentFile == null) {
+                currentFile = pendingFiles.poll();
+                if (currentFile == null) {
+                    return false;
+                }
+            }
+
+            // Read the file. If there is a next file, the current one is not
+            // written anymore. Though, bytes might have been written between
+            // the last read and the creation of the next file. Hence, the
+            // existence of the next file is checked prior to the read.
+            boolean switchable = !pendingFiles.isEmpty();
+            buffer.clear();
+            if (!switchable) {
+                unsafeLimitBuffer();
+            }
+            int readByteCount = currentFile.channel.read(buffer);
+            buffer.flip();
+            if (readByteCount > 0) {
+                return true;
+            }
+
+            // Switch to the next file, once the current one is drained.
+            if (switchable) {
+                LOGGER.debug("switching to the next file {path={}}", path);
+                unsafeCloseCurrentFile();
+                continue;
+            }
+            if (!pendingFiles.isEmpty()) {
+                continue;
+            }
+
+            // Check if the file is truncated.
+            FileChannel channel = currentFile.channel;
+            if (channel.size() < channel.position()) {
+                LOGGER.debug("file truncated, reading from the beginning {path={}}", path);
+                channel.position(0);
+                continue;
+            }
+            return false;
+
+        }
+    }
+
+    /**
+     * Limits the buffer to not to read the current file past its logical
+     * length, if it is recycled. A rotation truncates the file to its logical
+     * length before the sidecar file is reused. Hence, the limit never
+     * exposes stale bytes, even if the current file is already rotated.
+     */
+    private void unsafeLimitBuffer() throws IOException {
+        long length = readLength();
+        if (length < 0) {
+            return;
+        }
+        long remainingByteCount = Math.max(0, length - currentFile.channel.position());
+        if (remainingByteCount < buffer.remaining()) {
+            buffer.limit((int) remainingByteCount);
+        }
+    }
+
+    /**
+     * @return the logical length recorded in the sidecar file of a recycled
+     * file, or {@code -1}, if there is none
+     */
+    private long readLength() throws IOException {
+        FileChannel lengthChannel;
+        try {
+            lengthChannel = FileChannel.open(lengthPath, StandardOpenOption.READ);
+        } catch (NoSuchFileException ignored) {
+            return -1;
+        }
+        try {
+            lengthBuffer.clear();
+            while (lengthBuffer.hasRemaining()) {
+                if (lengthChannel.read(lengthBuffer, lengthBuffer.position()) < 0) {
+                    return -1;
+                }
+            }
+            return lengthBuffer.getLong(0);
+        } finally {
+            lengthChannel.close();
+        }
+    }
+
+    private void unsafeCloseCurrentFile() throws IOException {
+        try {
+            currentFile.channel.close();
+        } finally {
+            currentFile = null;
+        }
+    }
+
+    private void unsafeAwait() throws IOException {
+        try {
+            boolean signalled = changed.await(maxWaitMillis, TimeUnit.MILLISECONDS);
+            // Check the file for changes, in case notifications are missed.
+            if (!signalled && !closed) {
+                unsafeTrackFile(false);
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the file");
+        }
+    }
+
+    @Override
+    public int available() {
+        lock.lock();
+        try {
+            return buffer.remaining();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops following the file and wakes up the waiting readers.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            changed.signalAll();
+            if (currentFile != null) {
+                unsafeCloseCurrentFile();
+            }
+            for (OpenFile pendingFile : pendingFiles) {
+                pendingFile.channel.close();
+            }
+            pendingFiles.clear();
+        } finally {
+            lock.unlock();
+        }
+        watchService.close();
+        watchThread.interrupt();
+    }
+
+    @Override
+    public void onTrigger(RotationPolicy policy, Instant instant) {
+        // Do nothing.
+    }
+
+    /**
+     * Opens and queues the new file, and wakes up the waiting readers.
+     */
+    @Override
+    public void onOpen(RotationPolicy policy, Instant instant, OutputStream stream) {
+        try {
+            trackFile(true);
+        } catch (IOException error) {
+            LOGGER.error("file open failure {path={}}", path, error);
+        }
+    }
+
+    @Override
+    public void onClose(RotationPolicy policy, Instant instant, OutputStream stream) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onSuccess(RotationPolicy policy, Instant instant, File file) {
+        // Do nothing.
+    }
+
+    @Override
+    public void onFailure(RotationPolicy policy, Instant instant, File file, Exception error) {
+        // Do nothing.
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RotatingFileInputStream{path=%s}", path);
+    }
+
+}
@@ -24,24 +24,43 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
-import java.util.zip.GZIPOutputStream;
+import java.util.function.Predicate;
 
 /**
  * A thread-safe {@link OutputStream} targeting a file where rotation of the
@@ -64,14 +83,138 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RotatingFileOutputStream.class);
 
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final String MIGRATING_FILE_SUFFIX = ".migrating";
+
+    private static final String RECYCLED_FILE_SUFFIX = ".recycled";
+
+    static final String LENGTH_FILE_SUFFIX = ".length";
+
+    private static final String INCOMPRESSIBLE_FILE_SUFFIX = ".incompressible";
+
     private final RotationConfig config;
 
     private final List<RotationCallback> callbacks;
 
     private final List<RotationPolicy> writeSensitivePolicies;
 
+    /**
+     * The size-based policy writes are split at, if any is in the exact mode.
+     */
+    private final SizeBasedRotationPolicy exactSizePolicy;
+
+    private final GzipCompressor gzipCompressor;
+
+    private final Lz4Compressor lz4Compressor = new Lz4Compressor();
+
+    private final Set<File> compressingFiles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The rotated files being migrated, if tiered storage is enabled.
+     */
+    private final Set<File> migratingFiles = ConcurrentHashMap.newKeySet();
+
     private volatile ByteCountingOutputStream stream;
 
+    /**
+     * The preset dictionary of the next compression, sampled from the tail of
+     * the previously compressed rotated file, if enabled.
+     */
+    private final AtomicReference<byte[]> compressionDictionary = new AtomicReference<>();
+
+    private final SegmentCatalog segmentCatalog = new SegmentCatalog();
+
+    private volatile boolean segmentCatalogLoaded = false;
+
+    /**
+     * Set while a segment catalog load is queued or running, to avoid
+     * piling up retries of a failing one.
+     */
+    private final AtomicBoolean segmentCatalogLoading = new AtomicBoolean(false);
+
+    private final ScheduledFuture<?> diskSpaceGuardFuture;
+
+    /**
+     * Set while the usable space is below the hard floor, if enabled.
+     */
+    private volatile boolean diskSpaceExhausted = false;
+
+    /**
+     * The manifest of rotated files, if enabled.
+     */
+    private final SegmentManifest manifest;
+
+    /**
+     * The instant of the first write to the active file, if the manifest is
+     * enabled.
+     */
+    private Instant firstWriteInstant;
+
+    /**
+     * The file the last rotated file would be named with the first sequence,
+     * identifying the time bucket of the last rotation, if the
+     * {@code filePattern} contains a {@code %i} directive.
+     */
+    private File lastSequenceBucketFile;
+
+    /**
+     * The sequence of the last rotated file, if the {@code filePattern}
+     * contains a {@code %i} directive.
+     */
+    private int lastSequence;
+
+    /**
+     * The directories rotated files are moved to, known to exist.
+     */
+    private final DirectoryCache directoryCache = new DirectoryCache();
+
+    /**
+     * The file written to, that is, either the {@code file}, or its target on
+     * a volume, if {@code volumePlacement} is enabled.
+     */
+    private File activeFile;
+
+    /**
+     * The root of the volume the active file is placed on, if any.
+     */
+    private File activeVolume;
+
+    /**
+     * The retired backup to be reused as the next active file, if
+     * {@code segmentRecycling} is enabled.
+     */
+    private File recyclableFile;
+
+    /**
+     * The channel of the active file, if it is recycled.
+     */
+    private FileChannel recycledChannel;
+
+    /**
+     * The memory-mapped sidecar file tracking the logical length of the
+     * active file, if it is recycled, or {@code -1} otherwise. Mapped on the
+     * first recycling.
+     */
+    private MappedByteBuffer lengthBuffer;
+
+    /**
+     * Coordinator of the rotations across processes, if multi-process mode
+     * is enabled.
+     */
+    private final RotationCoordinator coordinator;
+
+    /**
+     * Generation of the shared rotation state the active file is opened at.
+     */
+    private long generation;
+
+    /**
+     * Indicates that the file is to be opened, and the policies are to be
+     * started, on the first write, if lazy open is enabled.
+     */
+    private boolean lazyOpenPending;
+
     /**
      * Constructs an instance using the given configuration
      *
@@ -81,8 +224,28 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
         this.config = Objects.requireNonNull(config, "config");
         this.callbacks = new ArrayList<>(config.getCallbacks());
         this.writeSensitivePolicies = collectWriteSensitivePolicies(config.getPolicies());
-        this.stream = open(null, config.getClock().now());
-        startPolicies();
+        this.exactSizePolicy = findExactSizePolicy(config.getPolicies());
+        this.gzipCompressor = new GzipCompressor(config.getCompressionBufferSize(), config.getCompressionBlockSize());
+        this.manifest = config.isManifest() ? loadManifest(config) : null;
+        if (config.isSegmentRecycling()) {
+            recoverRecycledFile();
+        }
+        this.coordinator = config.isMultiProcess() ? openCoordinator(config) : null;
+        if (config.isLazyOpen()) {
+            lazyOpenPending = true;
+        } else {
+            start();
+        }
+        if (config.isTieredStorage()) {
+            asyncRecoverMigrations();
+        }
+        if (config.isCompress()) {
+            asyncRecoverCompressions();
+        }
+        if (config.isRetentionEnabled() || config.getDiskSpaceLowWatermark() > 0) {
+            asyncLoadSegmentCatalog();
+        }
+        this.diskSpaceGuardFuture = config.isDiskSpaceGuardEnabled() ? startDiskSpaceGuard() : null;
     }
 
     private static List<RotationPolicy> collectWriteSensitivePolicies(Set<RotationPolicy> policies) {
@@ -95,6 +258,60 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
         return writeSensitivePolicies;
     }
 
+    /**
+     * @return the exact size-based policy with the smallest threshold, if any
+     */
+    private static SizeBasedRotationPolicy findExactSizePolicy(Set<RotationPolicy> policies) {
+        SizeBasedRotationPolicy exactSizePolicy = null;
+        for (RotationPolicy policy : policies) {
+            if (policy instanceof SizeBasedRotationPolicy) {
+                SizeBasedRotationPolicy sizePolicy = (SizeBasedRotationPolicy) policy;
+                boolean smaller = exactSizePolicy == null ||
+                        sizePolicy.getMaxByteCount() < exactSizePolicy.getMaxByteCount();
+                if (sizePolicy.isExact() && smaller) {
+                    exactSizePolicy = sizePolicy;
+                }
+            }
+        }
+        return exactSizePolicy;
+    }
+
+    private static SegmentManifest loadManifest(RotationConfig config) {
+        try {
+            SegmentManifest manifest = SegmentManifest.load(SegmentManifest.getFile(config), true);
+            manifest.compact();
+            return manifest;
+        } catch (IOException error) {
+            String message = String.format("manifest load failure {file=%s}", config.getFile());
+            throw new RuntimeException(message, error);
+        }
+    }
+
+    private static RotationCoordinator openCoordinator(RotationConfig config) {
+        try {
+            return new RotationCoordinator(config.getFile());
+        } catch (IOException error) {
+            String message = String.format("rotation coordinator open failure {file=%s}", config.getFile());
+            throw new RuntimeException(message, error);
+        }
+    }
+
+    /**
+     * Opens the file and starts the policies.
+     */
+    private void start() {
+        // Read the generation before opening the file, so that a concurrent
+        // rotation is followed on the first write.
+        if (coordinator != null) {
+            generation = coordinator.readGeneration();
+        }
+        stream = open(null, config.getClock().now());
+        if (coordinator != null) {
+            coordinator.initSize(stream.size());
+        }
+        startPolicies();
+    }
+
     private void startPolicies() {
         for (RotationPolicy policy : config.getPolicies()) {
             policy.start(this);
@@ -107,7 +324,22 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
                     StandardOpenOption.CREATE,
                     this.config.isAppend() ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING
             };
-            OutputStream outputStream = Files.newOutputStream(this.config.getFile().toPath(), openOptions);
+            activeFile = placeFile();
+            boolean recycled = recyclableFile != null;
+            OutputStream outputStream = recycled
+                    ? openRecycledFile()
+                    : Files.newOutputStream(activeFile.toPath(), openOptions);
+            if (!activeFile.equals(config.getFile())) {
+                linkFile(activeFile);
+            }
+            // Count the bytes written by callbacks to a recycled file, since its
+            // physical length is stale.
+            if (recycled) {
+                ByteCountingOutputStream countingOutputStream = new ByteCountingOutputStream(outputStream, 0);
+                invokeCallbacks(callback -> callback.onOpen(policy, instant, countingOutputStream));
+                lengthBuffer.putLong(0, countingOutputStream.size());
+                return countingOutputStream;
+            }
             invokeCallbacks(callback -> callback.onOpen(policy, instant, outputStream));
             long size = config.isAppend() ? readFileLength() : 0;
             return new ByteCountingOutputStream(outputStream, size);
@@ -117,153 +349,1375 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
         }
     }
 
-    @Override
-    public void rotate(RotationPolicy policy, Instant instant) {
-        try {
-            unsafeRotate(policy, instant);
-        } catch (Exception error) {
-            String message = String.format("rotation failure {instant=%s}", instant);
-            RuntimeException extendedError = new RuntimeException(message, error);
-            invokeCallbacks(callback -> callback.onFailure(policy, instant, null, extendedError));
-        }
+    /**
+     * Truncates the active file to the logical length recorded in the
+     * sidecar file, and deletes the backup retired to be recycled, if the
+     * stream is not closed after recycling the file, e.g., due to a crash.
+     */
+    private void recoverRecycledFile() {
+        File file = config.getFile();
+        File lengthFile = getLengthFile();
+        try {
+            File retiredFile = getRetiredFile();
+            if (Files.deleteIfExists(retiredFile.toPath())) {
+                LOGGER.debug("deleted retired backup {retiredFile={}}", retiredFile);
+            }
+            if (!lengthFile.exists()) {
+                return;
+            }
+            byte[] lengthBytes = Files.readAllBytes(lengthFile.toPath());
+            long length = lengthBytes.length == Long.BYTES ? ByteBuffer.wrap(lengthBytes).getLong() : 0;
+            if (length >= 0 && file.exists()) {
+                LOGGER.debug("truncating recycled file {file={}, length={}}", file, length);
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(length);
+                }
+            }
+            Files.delete(lengthFile.toPath());
+        } catch (IOException error) {
+            String message = String.format("recycled file recovery failure {file=%s}", file);
+            throw new RuntimeException(message, error);
+        }
+    }
+
+    private File getLengthFile() {
+        return new File(config.getFile().getPath() + LENGTH_FILE_SUFFIX);
+    }
+
+    /**
+     * Moves the recyclable file into place to be overwritten from the start.
+     * The logical length is recorded first, so that stale bytes are never
+     * mistaken for written ones. It is then updated after every write
+     * through a memory mapping, which survives a crash of the process
+     * without a system call per write.
+     */
+    private OutputStream openRecycledFile() throws IOException {
+        File file = config.getFile();
+        LOGGER.debug("recycling file {recyclableFile={}, file={}}", recyclableFile, file);
+        if (lengthBuffer == null) {
+            try (FileChannel lengthChannel = FileChannel.open(
+                    getLengthFile().toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                lengthBuffer = lengthChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            }
+        }
+        lengthBuffer.putLong(0, 0);
+        renameFile(recyclableFile, file);
+        recyclableFile = null;
+        recycledChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        return Channels.newOutputStream(recycledChannel);
+    }
+
+    /**
+     * Truncates the recycled active file, if any, to its logical length, and
+     * marks the sidecar file inactive. Must be called before closing the
+     * stream.
+     */
+    private void unsafeTruncateRecycledFile() throws IOException {
+        if (recycledChannel == null) {
+            return;
+        }
+        recycledChannel.truncate(stream.size());
+        recycledChannel = null;
+        lengthBuffer.putLong(0, -1);
+    }
+
+    /**
+     * Deletes the sidecar file, if any. Must be called after truncating the
+     * recycled active file.
+     */
+    private void unsafeDeleteLengthFile() {
+        if (lengthBuffer == null) {
+            return;
+        }
+        lengthBuffer = null;
+        File lengthFile = getLengthFile();
+        try {
+            Files.delete(lengthFile.toPath());
+        } catch (IOException error) {
+            // Mapped files cannot be deleted on Windows. Though, the inactive
+            // sidecar file left behind is ignored by readers and recovery.
+            LOGGER.debug("length file deletion failure {lengthFile={}}", lengthFile, error);
+        }
+    }
+
+    /**
+     * Retires the oldest backup, if any, to be reused as the next active file.
+     */
+    private void retireOldestBackup() throws IOException {
+        File oldestFile = getBackupFile(config.getMaxBackupCount() - 1);
+        if (oldestFile.exists()) {
+            File retiredFile = getRetiredFile();
+            LOGGER.debug("retiring backup {oldestFile={}, retiredFile={}}", oldestFile, retiredFile);
+            renameFile(oldestFile, retiredFile);
+            recyclableFile = retiredFile;
+        }
+    }
+
+    private File getRetiredFile() {
+        return new File(config.getFile().getPath() + RECYCLED_FILE_SUFFIX);
+    }
+
+    /**
+     * Determines the file to write to. If {@code volumePlacement} is enabled,
+     * this is a file on the picked volume, unless an existing one is appended.
+     */
+    private File placeFile() throws IOException {
+
+        // Write to the file, if placement is disabled.
+        VolumePlacement volumePlacement = config.getVolumePlacement();
+        File file = config.getFile();
+        if (volumePlacement == null) {
+            return file;
+        }
+
+        // Keep on appending to the existing file, if enabled.
+        Path link = file.getAbsoluteFile().toPath();
+        if (config.isAppend()) {
+            if (Files.isSymbolicLink(link)) {
+                Path target = link.resolveSibling(Files.readSymbolicLink(link));
+                if (Files.exists(target)) {
+                    activeVolume = volumePlacement.acquire(target.toFile());
+                    return target.toFile();
+                }
+            } else if (Files.exists(link)) {
+                activeVolume = null;
+                return file;
+            }
+        }
+
+        // Place the file on a volume.
+        activeVolume = volumePlacement.acquire();
+        File placedFile = VolumePlacement.resolve(activeVolume, file);
+        LOGGER.debug("placing file {file={}, placedFile={}}", file, placedFile);
+        directoryCache.createDirectories(placedFile.getParentFile());
+        return placedFile;
+
+    }
+
+    /**
+     * Atomically replaces the {@code file} with a symbolic link to the given
+     * file, so that readers can keep on using a stable path.
+     */
+    private void linkFile(File targetFile) throws IOException {
+        Path link = config.getFile().getAbsoluteFile().toPath();
+        if (Files.isSymbolicLink(link) && Files.readSymbolicLink(link).equals(targetFile.toPath())) {
+            return;
+        }
+        Path tempLink = link.resolveSibling(link.getFileName() + TEMP_FILE_SUFFIX);
+        Files.deleteIfExists(tempLink);
+        Files.createSymbolicLink(tempLink, targetFile.toPath());
+        Files.move(tempLink, link, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Releases the volume of the active file, if any.
+     */
+    private void releaseVolume(long byteCount) {
+        if (activeVolume != null) {
+            config.getVolumePlacement().release(activeVolume, byteCount);
+            activeVolume = null;
+        }
+    }
+
+    @Override
+    public void rotate(RotationPolicy policy, Instant instant) {
+        try {
+            unsafeRotate(policy, instant);
+        } catch (Exception error) {
+            String message = String.format("rotation failure {instant=%s}", instant);
+            RuntimeException extendedError = new RuntimeException(message, error);
+            invokeCallbacks(callback -> callback.onFailure(policy, instant, null, extendedError));
+        }
+    }
+
+    private synchronized void unsafeRotate(RotationPolicy policy, Instant instant) throws Exception {
+
+        // Check arguments.
+        Objects.requireNonNull(instant, "instant");
+
+        // Skip rotation if the file is not opened yet, i.e., nothing is written.
+        if (lazyOpenPending) {
+            LOGGER.debug("file is not opened yet, skipping rotation {file={}}", config.getFile());
+            return;
+        }
+
+        // Check the state.
+        unsafeCheckStream();
+
+        // Notify the trigger listeners.
+        invokeCallbacks(callback -> callback.onTrigger(policy, instant));
+
+        // Elect a single process to rotate the file, if shared.
+        if (coordinator != null) {
+            unsafeRotateShared(policy, instant);
+        } else {
+            unsafeRotateFile(policy, instant);
+        }
+
+    }
+
+    /**
+     * Rotates the file, if this process is elected, that is, it acquires the
+     * lock, and no other process has rotated the file in the meantime.
+     * Otherwise, the rotation is skipped, and the file is re-opened, if it is
+     * already rotated by another process.
+     */
+    private void unsafeRotateShared(RotationPolicy policy, Instant instant) throws Exception {
+        if (!coordinator.tryAcquire()) {
+            return;
+        }
+        try {
+            boolean rotated = coordinator.readGeneration() != generation ||
+                    !coordinator.readRotationInstant().isBefore(instant);
+            if (rotated) {
+                LOGGER.debug("file is already rotated by another process {file={}}", config.getFile());
+                unsafeFollowRotation();
+            } else if (unsafeRotateFile(policy, instant)) {
+                generation = coordinator.publishRotation(instant);
+            }
+        } finally {
+            coordinator.release();
+        }
+    }
+
+    /**
+     * Claims the compression of the given rotated file before it is renamed
+     * into place, if enabled, so that the recovery does not compress it,
+     * while it is renamed, synced, or migrated.
+     */
+    private void claimCompression(File rotatedFile) {
+        if (config.isCompress()) {
+            compressingFiles.add(rotatedFile);
+        }
+    }
+
+    /**
+     * @return {@code true}, if the file is rotated; {@code false}, if skipped
+     * due to being empty
+     */
+    private boolean unsafeRotateFile(RotationPolicy policy, Instant instant) throws Exception {
+
+        // Skip rotation if the file is empty.
+        stream.flush();
+        long length = recycledChannel != null ? stream.size() : readFileLength();
+        if (length == 0) {
+            LOGGER.debug("empty file, skipping rotation {file={}}", config.getFile());
+            return false;
+        }
+
+        // Close the file. (Required before rename on Windows!)
+        invokeCallbacks(callback -> callback.onClose(policy, instant, stream));
+        unsafeTruncateRecycledFile();
+        stream.close();
+        releaseVolume(stream.size());
+
+        // Backup file, if enabled.
+        File rotatedFile;
+        File migratingFile = null;
+        if (config.getMaxBackupCount() > 0) {
+            if (config.isSegmentRecycling()) {
+                retireOldestBackup();
+            }
+            renameBackups();
+            rotatedFile = backupFile();
+            claimCompression(rotatedFile);
+        }
+
+        // Rename next to the file to be moved in the background, if enabled.
+        else if (config.isTieredStorage()) {
+            rotatedFile = createRotatedFile(instant);
+            claimCompression(rotatedFile);
+            migratingFiles.add(rotatedFile);
+            migratingFile = getMigratingFile(rotatedFile);
+            LOGGER.debug("renaming for migration {file={}, migratingFile={}}", activeFile, migratingFile);
+            renameFile(activeFile, migratingFile);
+        }
+
+        // Otherwise, rename using the provided file pattern.
+        else {
+            rotatedFile = createRotatedFile(instant);
+            claimCompression(rotatedFile);
+            LOGGER.debug("renaming {file={}, rotatedFile={}}", activeFile, rotatedFile);
+            renameRotatedFile(activeFile, rotatedFile);
+        }
+
+        // Re-open the file.
+        LOGGER.debug("re-opening file {file={}}", config.getFile());
+        File rotatedActiveFile = activeFile;
+        stream = open(policy, instant);
+        Instant rotatedFirstWriteInstant = firstWriteInstant;
+        firstWriteInstant = null;
+
+        // Migrate the old file, if necessary.
+        if (migratingFile != null) {
+            asyncMigrate(
+                    policy, instant, rotatedActiveFile, migratingFile, rotatedFile, rotatedFirstWriteInstant);
+        }
+
+        // Sync the old file, if necessary.
+        else if (config.getRotationDurability() != RotationDurability.NONE) {
+            asyncSyncRotation(policy, instant, rotatedActiveFile, rotatedFile, rotatedFirstWriteInstant);
+        }
+
+        // Otherwise, complete the rotation right away.
+        else {
+            completeRotation(policy, instant, rotatedFile, rotatedFirstWriteInstant);
+        }
+        return true;
+
+    }
+
+    /**
+     * Re-opens the file, if it is rotated by another process since it is
+     * opened.
+     */
+    private void unsafeFollowRotation() throws IOException {
+        if (coordinator == null || coordinator.readGeneration() == generation) {
+            return;
+        }
+        Instant instant = config.getClock().now();
+        LOGGER.debug("re-opening file rotated by another process {file={}}", config.getFile());
+        invokeCallbacks(callback -> callback.onClose(null, instant, stream));
+        stream.close();
+        generation = coordinator.readGeneration();
+        stream = open(null, instant);
+        firstWriteInstant = null;
+    }
+
+    /**
+     * @return the number of bytes written to the active file so far, shared
+     * across processes, if multi-process mode is enabled
+     */
+    private long unsafeSize() {
+        return coordinator != null ? coordinator.readSize() : stream.size();
+    }
+
+    private void unsafeTrackSize(int byteCount) {
+        if (coordinator != null) {
+            coordinator.addSize(byteCount);
+        }
+        if (recycledChannel != null) {
+            lengthBuffer.putLong(0, stream.size());
+        }
+    }
+
+    private void asyncSyncRotation(
+            RotationPolicy policy,
+            Instant instant,
+            File srcFile,
+            File rotatedFile,
+            Instant firstWriteInstant) {
+        config.getExecutorService().execute(new Runnable() {
+
+            private final String displayName =
+                    String.format(
+                            "%s.syncRotation(%s)",
+                            RotatingFileOutputStream.class.getSimpleName(), rotatedFile);
+
+            @Override
+            public void run() {
+                try {
+                    unsafeSyncRotation(srcFile, rotatedFile);
+                } catch (Exception error) {
+                    String message = String.format(
+                            "rotation sync failure {instant=%s, rotatedFile=%s}",
+                            instant, rotatedFile);
+                    RuntimeException extendedError = new RuntimeException(message, error);
+                    invokeCallbacks(callback -> callback.onFailure(policy, instant, rotatedFile, extendedError));
+                    compressingFiles.remove(rotatedFile);
+                    return;
+                }
+                completeRotation(policy, instant, rotatedFile, firstWriteInstant);
+            }
+
+            @Override
+            public String toString() {
+                return displayName;
+            }
+
+        });
+    }
+
+    /**
+     * Forces the given file renamed from the given source file to the disk,
+     * along with the directories of both, depending on the durability level.
+     */
+    private void unsafeSyncRotation(File srcFile, File dstFile) throws IOException {
+        RotationDurability durability = config.getRotationDurability();
+        if (durability == RotationDurability.NONE) {
+            return;
+        }
+        LOGGER.debug("syncing file {file={}}", dstFile);
+        syncFile(dstFile);
+        if (durability == RotationDurability.FILE_AND_DIRECTORY) {
+            File dstDirectory = dstFile.getAbsoluteFile().getParentFile();
+            syncDirectory(dstDirectory);
+            File srcDirectory = srcFile.getAbsoluteFile().getParentFile();
+            if (!srcDirectory.equals(dstDirectory)) {
+                syncDirectory(srcDirectory);
+            }
+        }
+    }
+
+    private static void syncFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private void syncDirectoryIfEnabled(File directory) throws IOException {
+        if (config.getRotationDurability() == RotationDurability.FILE_AND_DIRECTORY) {
+            syncDirectory(directory);
+        }
+    }
+
+    private static void syncDirectory(File directory) throws IOException {
+        // Directories cannot be opened for syncing on Windows.
+        if (File.separatorChar == '\\') {
+            return;
+        }
+        LOGGER.debug("syncing directory {directory={}}", directory);
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void completeRotation(
+            RotationPolicy policy,
+            Instant instant,
+            File rotatedFile,
+            Instant firstWriteInstant) {
+
+        // Compress the old file, if necessary.
+        if (config.isCompress()) {
+            asyncCompress(policy, instant, rotatedFile, firstWriteInstant, true);
+            return;
+        }
+
+        // So far, so good;
+        invokeCallbacks(callback -> callback.onSuccess(policy, instant, rotatedFile));
+        registerSegment(null, rotatedFile);
+        if (manifest != null) {
+            asyncRecordManifest(policy, instant, rotatedFile, firstWriteInstant);
+        }
+
+    }
+
+    private long readFileLength() throws IOException {
+        File file = config.getFile();
+        // Reading the file length is a tricky business.
+        // We will retry some.
+        Exception lastError = null;
+        for (int trialIndex = 0; trialIndex < 5; trialIndex++) {
+            long fileLength = file.length();
+            if (fileLength != 0) {
+                return fileLength;
+            }
+            // `File#length()` can return 0 due to I/O failures.
+            // We are falling back to NIO for a second attempt.
+            else {
+                Path path = file.toPath();
+                try {
+                    return Files.size(path);
+                } catch (IOException error) {
+                    lastError = error;
+                }
+            }
+            // Scientifically proven retry practice: wait a bit.
+            LockSupport.parkNanos(1);
+        }
+        String message = String.format("file length read failure {file=%s}", file);
+        throw new IOException(message, lastError);
+    }
+
+    /**
+     * Creates the file to rotate to. If the pattern is sequenced, the sequence
+     * is incremented within the same time bucket and reset otherwise, and
+     * existing files, e.g., of a previous run, are skipped.
+     */
+    private File createRotatedFile(Instant instant) {
+        RotatingFilePattern filePattern = config.getFilePattern();
+        if (!filePattern.isSequenced()) {
+            return filePattern.create(instant).getAbsoluteFile();
+        }
+        File bucketFile = filePattern.create(instant, 0).getAbsoluteFile();
+        int sequence = bucketFile.equals(lastSequenceBucketFile) ? lastSequence + 1 : 0;
+        String compressionExtension = config.getCompressionCodec().getFileExtension();
+        File rotatedFile;
+        for (;; sequence++) {
+            rotatedFile = sequence == 0 ? bucketFile : filePattern.create(instant, sequence).getAbsoluteFile();
+            if (!rotatedFile.exists() && !new File(rotatedFile.getPath() + compressionExtension).exists()) {
+                break;
+            }
+        }
+        lastSequenceBucketFile = bucketFile;
+        lastSequence = sequence;
+        return rotatedFile;
+    }
+
+    /**
+     * Moves the given file to the given rotated file, creating the parent
+     * directories of the latter, if necessary. Directories known to exist are
+     * cached to avoid checking the file system on every rotation.
+     */
+    private void renameRotatedFile(File srcFile, File dstFile) throws IOException {
+        File directory = dstFile.getParentFile();
+        if (directoryCache.createDirectories(directory)) {
+            LOGGER.debug("ensured directory {directory={}}", directory);
+        }
+        try {
+            moveActiveFile(srcFile, dstFile);
+        } catch (NoSuchFileException error) {
+            // The directory might have been deleted since it is cached.
+            if (directory.isDirectory()) {
+                throw error;
+            }
+            LOGGER.debug("re-creating deleted directory {directory={}}", directory);
+            directoryCache.invalidate(directory);
+            directoryCache.createDirectories(directory);
+            moveActiveFile(srcFile, dstFile);
+        }
+    }
+
+    /**
+     * Moves the given active file to the given rotated file either by
+     * renaming, or, if {@code copyTruncate} is enabled, by copying and
+     * truncating. In the latter, the copy is moved into place only once it
+     * is complete.
+     */
+    private void moveActiveFile(File srcFile, File dstFile) throws IOException {
+        if (!config.isCopyTruncate()) {
+            renameFile(srcFile, dstFile);
+            return;
+        }
+        File tempFile = new File(dstFile.getPath() + TEMP_FILE_SUFFIX);
+        LOGGER.debug("copying {srcFile={}, tempFile={}}", srcFile, tempFile);
+        transferFile(srcFile, tempFile, false);
+        atomicRenameFile(tempFile, dstFile);
+        LOGGER.debug("truncating {srcFile={}}", srcFile);
+        try (FileChannel channel = FileChannel.open(srcFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+    }
+
+    /**
+     * @return the file next to the active file, where the given rotated file
+     * is kept until it is migrated, named after the active file and the path
+     * of the rotated file relative to the base directory of the file pattern,
+     * so that rotated files sharing a name in different directories do not
+     * collide
+     */
+    private File getMigratingFile(File rotatedFile) {
+        File directory = activeFile.getAbsoluteFile().getParentFile();
+        Path baseDirectory = config.getFilePattern().getBaseDirectory().toPath();
+        String relativePath = baseDirectory
+                .relativize(rotatedFile.getAbsoluteFile().toPath())
+                .toString()
+                .replace(File.separatorChar, '/');
+        String encodedPath;
+        try {
+            encodedPath = URLEncoder.encode(relativePath, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException error) {
+            throw new IllegalStateException(error);
+        }
+        String name = config.getFile().getName() + '.' + encodedPath + MIGRATING_FILE_SUFFIX;
+        return new File(directory, name);
+    }
+
+    /**
+     * @return the rotated file the given migrating file is kept for, or
+     * {@code null}, if it is not a migrating file of this stream
+     *
+     * @see #getMigratingFile(File)
+     */
+    private File readMigratingFile(File migratingFile) {
+        String prefix = config.getFile().getName() + '.';
+        String name = migratingFile.getName();
+        if (!name.startsWith(prefix) || !name.endsWith(MIGRATING_FILE_SUFFIX)) {
+            return null;
+        }
+        String encodedPath = name.substring(prefix.length(), name.length() - MIGRATING_FILE_SUFFIX.length());
+        String relativePath;
+        try {
+            relativePath = URLDecoder.decode(encodedPath, StandardCharsets.UTF_8.name());
+        } catch (IllegalArgumentException | UnsupportedEncodingException ignored) {
+            return null;
+        }
+        return new File(config.getFilePattern().getBaseDirectory(), relativePath);
+    }
+
+    private void asyncMigrate(
+            RotationPolicy policy,
+            Instant instant,
+            File srcFile,
+            File migratingFile,
+            File rotatedFile,
+            Instant firstWriteInstant) {
+        config.getExecutorService().execute(new Runnable() {
+
+            private final String displayName =
+                    String.format(
+                            "%s.migrate(%s)",
+                            RotatingFileOutputStream.class.getSimpleName(), rotatedFile);
+
+            @Override
+            public void run() {
+                try {
+                    unsafeSyncRotation(srcFile, migratingFile);
+                    unsafeSyncMigrate(migratingFile, rotatedFile);
+                } catch (Exception error) {
+                    String message = String.format(
+                            "migration failure {instant=%s, migratingFile=%s, rotatedFile=%s}",
+                            instant, migratingFile, rotatedFile);
+                    RuntimeException extendedError = new RuntimeException(message, error);
+                    invokeCallbacks(callback -> callback.onFailure(policy, instant, migratingFile, extendedError));
+                    compressingFiles.remove(rotatedFile);
+                    return;
+                } finally {
+                    migratingFiles.remove(rotatedFile);
+                }
+                completeRotation(policy, instant, rotatedFile, firstWriteInstant);
+            }
+
+            @Override
+            public String toString() {
+                return displayName;
+            }
+
+        });
+    }
+
+    /**
+     * Moves the given file to the given rotated file. If they are on
+     * different file systems, the content is transferred to a temporary file
+     * first, which is verified and moved into place only then. Hence, a
+     * failure never leaves a partial rotated file behind, and the source is
+     * deleted only after a successful migration.
+     */
+    private void unsafeSyncMigrate(File migratingFile, File rotatedFile) throws IOException {
+
+        // Create the parent directories, if necessary.
+        File directory = rotatedFile.getParentFile();
+        if (directoryCache.createDirectories(directory)) {
+            LOGGER.debug("ensured directory {directory={}}", directory);
+        }
+
+        // Try renaming, which succeeds on the same file system.
+        try {
+            Files.move(migratingFile.toPath(), rotatedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("renamed migrating file {migratingFile={}, rotatedFile={}}", migratingFile, rotatedFile);
+            syncDirectoryIfEnabled(directory);
+            syncDirectoryIfEnabled(migratingFile.getAbsoluteFile().getParentFile());
+            return;
+        } catch (AtomicMoveNotSupportedException ignored) {
+            // Fall back to transferring the content.
+        }
+
+        // Transfer the content to a temporary file.
+        File tempFile = new File(rotatedFile.getPath() + TEMP_FILE_SUFFIX);
+        LOGGER.debug("transferring migrating file {migratingFile={}, tempFile={}}", migratingFile, tempFile);
+        transferFile(migratingFile, tempFile, true);
+        Files.setLastModifiedTime(tempFile.toPath(), Files.getLastModifiedTime(migratingFile.toPath()));
+
+        // Move the temporary file into place and delete the source.
+        LOGGER.debug("renaming migrated file {tempFile={}, rotatedFile={}}", tempFile, rotatedFile);
+        atomicRenameFile(tempFile, rotatedFile);
+        syncDirectoryIfEnabled(directory);
+        LOGGER.debug("deleting migrated file {migratingFile={}}", migratingFile);
+        Files.delete(migratingFile.toPath());
+
+    }
+
+    /**
+     * Copies the given source file to the given target file using
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * which lets the kernel copy the content without passing it through the
+     * heap, forces the target to the disk, if requested, and verifies its
+     * length.
+     */
+    static void transferFile(File srcFile, File dstFile, boolean force) throws IOException {
+        try (FileChannel srcChannel = FileChannel.open(srcFile.toPath(), StandardOpenOption.READ);
+             FileChannel dstChannel = FileChannel.open(
+                     dstFile.toPath(),
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE)) {
+            long length = srcChannel.size();
+            long position = 0;
+            while (position < length) {
+                long transferredByteCount = srcChannel.transferTo(position, length - position, dstChannel);
+                if (transferredByteCount <= 0) {
+                    break;
+                }
+                position += transferredByteCount;
+            }
+            if (force) {
+                dstChannel.force(true);
+            }
+            long dstLength = dstChannel.size();
+            if (dstLength != length) {
+                String message = String.format(
+                        "transferred file length mismatch {srcFile=%s, dstFile=%s, length=%d, dstLength=%d}",
+                        srcFile, dstFile, length, dstLength);
+                throw new IOException(message);
+            }
+        }
+    }
+
+    private void renameBackups() throws IOException {
+        File dstFile = getBackupFile(config.getMaxBackupCount() - 1);
+        for (int backupIndex = config.getMaxBackupCount() - 2; backupIndex >= 0; backupIndex--) {
+            File srcFile = getBackupFile(backupIndex);
+            if (srcFile.exists()) {
+                LOGGER.debug("renaming backup {srcFile={}, dstFile={}}", srcFile, dstFile);
+                renameFile(srcFile, dstFile);
+            }
+            dstFile = srcFile;
+        }
+    }
+
+    private File backupFile() throws IOException {
+        File dstFile = getBackupFile(0);
+        File srcFile = config.getFile();
+        LOGGER.debug("renaming for backup {srcFile={}, dstFile={}}", srcFile, dstFile);
+        moveActiveFile(srcFile, dstFile);
+        return dstFile;
+    }
+
+    private static void renameFile(File srcFile, File dstFile) throws IOException {
+        Files.move(
+                srcFile.toPath(),
+                dstFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING/*,      // The rest of the arguments (atomic & copy-attr) are pretty
+                StandardCopyOption.ATOMIC_MOVE,             // much platform-dependent and JVM throws an "unsupported
+                StandardCopyOption.COPY_ATTRIBUTES*/);      // option" exception at runtime.
+    }
+
+    private static void atomicRenameFile(File srcFile, File dstFile) throws IOException {
+        try {
+            Files.move(
+                    srcFile.toPath(),
+                    dstFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ignored) {
+            renameFile(srcFile, dstFile);
+        }
+    }
+
+    private File getBackupFile(int backupIndex) {
+        String parent = config.getFile().getParent();
+        if (parent == null) {
+            parent = ".";
+        }
+        String fileName = config.getFile().getName() + '.' + backupIndex;
+        return Paths.get(parent, fileName).toFile();
+    }
+
+    /**
+     * Discovers rotated files left pending migration by a previous run, e.g.,
+     * due to a JVM crash, and migrates them in the background. Stale
+     * temporary files of interrupted transfers are deleted.
+     */
+    private void asyncRecoverMigrations() {
+        config.getExecutorService().execute(new Runnable() {
+
+            private final String displayName =
+                    String.format(
+                            "%s.recoverMigrations(%s)",
+                            RotatingFileOutputStream.class.getSimpleName(), config.getFile());
+
+            @Override
+            public void run() {
+                try {
+                    unsafeRecoverMigrations();
+                } catch (Exception error) {
+                    Instant instant = config.getClock().now();
+                    String message = String.format(
+                            "migration recovery failure {instant=%s, file=%s}",
+                            instant, config.getFile());
+                    RuntimeException extendedError = new RuntimeException(message, error);
+                    invokeCallbacks(callback -> callback.onFailure(null, instant, null, extendedError));
+                }
+            }
+
+            @Override
+            public String toString() {
+                return displayName;
+            }
+
+        });
+    }
+
+    private void unsafeRecoverMigrations() throws IOException {
+
+        // Collect the directories migrating files are kept in.
+        List<File> directories = new ArrayList<>();
+        VolumePlacement volumePlacement = config.getVolumePlacement();
+        if (volumePlacement != null) {
+            for (File root : volumePlacement.getRoots()) {
+                directories.add(VolumePlacement.resolve(root, config.getFile()).getParentFile());
+            }
+        } else {
+            directories.add(config.getFile().getAbsoluteFile().getParentFile());
+        }
+
+        // Enqueue migrations, unless they are in progress right now.
+        Instant instant = config.getClock().now();
+        for (File directory : directories) {
+            File[] foundFiles = directory.listFiles();
+            if (foundFiles == null) {
+                continue;
+            }
+            for (File foundFile : foundFiles) {
+                File rotatedFile = readMigratingFile(foundFile);
+                if (rotatedFile != null && migratingFiles.add(rotatedFile)) {
+                    LOGGER.debug(
+                            "recovering migration {migratingFile={}, rotatedFile={}}",
+                            foundFile, rotatedFile);
+                    claimCompression(rotatedFile);
+                    asyncMigrate(null, instant, foundFile, foundFile, rotatedFile, null);
+                }
+            }
+        }
+
+        // Delete stale temporary files of transfers, unless they are being written right now.
+        RotatingFilePattern filePattern = config.getFilePattern();
+        for (File foundFile : filePattern.findFiles()) {
+            if (TEMP_FILE_SUFFIX.equals(filePattern.findSuffix(foundFile))) {
+                File rotatedFile = stripSuffix(foundFile, TEMP_FILE_SUFFIX);
+                if (!migratingFiles.contains(rotatedFile)) {
+                    LOGGER.debug("deleting stale migration output {tempFile={}}", foundFile);
+                    Files.deleteIfExists(foundFile.toPath());
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Discovers rotated files left uncompressed by a previous run, e.g., due
+     * to a JVM crash, and compresses them in the background.
+     */
+    private void asyncRecoverCompressions() {
+        config.getExecutorService().execute(new Runnable() {
+
+            private final String displayName =
+                    String.format(
+                            "%s.recoverCompressions(%s)",
+                            RotatingFileOutputStream.class.getSimpleName(), config.getFile());
+
+            @Override
+            public void run() {
+                try {
+                    unsafeRecoverCompressions();
+                } catch (Exception error) {
+                    Instant instant = config.getClock().now();
+                    String message = String.format(
+                            "compression recovery failure {instant=%s, filePattern=%s}",
+                            instant, config.getFilePattern());
+                    RuntimeException extendedError = new RuntimeException(message, error);
+                    invokeCallbacks(callback -> callback.onFailure(null, instant, null, extendedError));
+                }
+            }
+
+            @Override
+            public String toString() {
+                return displayName;
+            }
+
+        });
+    }
+
+    private void unsafeRecoverCompressions() throws IOException {
+
+        // Collect uncompressed files and partial compression outputs.
+        RotatingFilePattern filePattern = config.getFilePattern();
+        File activeFile = config.getFile().getAbsoluteFile();
+        String compressionExtension = config.getCompressionCodec().getFileExtension();
+        List<File> uncompressedFiles = new ArrayList<>();
+        List<File> partialFiles = new ArrayList<>();
+        Set<File> incompressibleFiles = new HashSet<>();
+        for (File foundFile : filePattern.findFiles()) {
+            String suffix = filePattern.findSuffix(foundFile);
+            if (suffix.isEmpty() && !foundFile.equals(activeFile)) {
+                uncompressedFiles.add(foundFile);
+            } else if (suffix.startsWith(compressionExtension) && suffix.endsWith(TEMP_FILE_SUFFIX)) {
+                partialFiles.add(foundFile);
+            } else if (INCOMPRESSIBLE_FILE_SUFFIX.equals(suffix)) {
+                incompressibleFiles.add(stripSuffix(foundFile, suffix));
+            }
+        }
+
+        // Exclude files that are already found to be incompressible.
+        uncompressedFiles.removeAll(incompressibleFiles);
+
+        // Delete partial outputs, unless they are being written right now.
+        for (File partialFile : partialFiles) {
+            File rotatedFile = stripSuffix(partialFile, filePattern.findSuffix(partialFile));
+            if (!compressingFiles.contains(rotatedFile)) {
+                LOGGER.debug("deleting partial compression output {partialFile={}}", partialFile);
+                Files.deleteIfExists(partialFile.toPath());
+            }
+        }
+
+        // Enqueue compressions.
+        if (!uncompressedFiles.isEmpty()) {
+            Instant instant = config.getClock().now();
+            for (File uncompressedFile : uncompressedFiles) {
+                LOGGER.debug("recovering compression {uncompressedFile={}}", uncompressedFile);
+                asyncCompress(null, instant, uncompressedFile, null, false);
+            }
+        }
+
+    }
+
+    private static File stripSuffix(File file, String suffix) {
+        String path = file.getPath();
+        return new File(path.substring(0, path.length() - suffix.length()));
+    }
+
+    private void asyncCompress(
+            RotationPolicy policy,
+            Instant instant,
+            File rotatedFile,
+            Instant firstWriteInstant,
+            boolean claimed) {
+
+        // Skip if the file is already being compressed, e.g., by the recovery.
+        if (!claimed && !compressingFiles.add(rotatedFile)) {
+            LOGGER.debug("skipping compression in progress {rotatedFile={}}", rotatedFile);
+            return;
+        }
+
+        config.getExecutorService().execute(new Runnable() {
+
+            private final String displayName =
+                    String.format(
+                            "%s.compress(%s)",
+                            RotatingFileOutputStream.class.getSimpleName(), rotatedFile);
+
+            @Override
+            public void run() {
+                File compressedFile = getCompressedFile(rotatedFile);
+                try {
+                    // The file might have already been compressed by a preceding task.
+                    if (rotatedFile.exists()) {
+                        BasicFileAttributes attributes = manifest != null
+                                ? Files.readAttributes(rotatedFile.toPath(), BasicFileAttributes.class)
+                                : null;
+                        SegmentManifest.Scanner scanner = manifest != null ? new SegmentManifest.Scanner() : null;
+                        File resultFile = unsafeSyncCompress(rotatedFile, compressedFile, scanner);
+                        if (manifest != null) {
+                            unsafeRecordCompression(rotatedFile, resultFile, attributes, scanner, firstWriteInstant);
+                        }
+                        invokeCallbacks(callback -> callback.onSuccess(policy, instant, resultFile));
+                        registerSegment(rotatedFile, resultFile);
+                    }
+                } catch (Exception error) {
+                    String message = String.format(
+                            "compression failure {instant=%s, rotatedFile=%s, compressedFile=%s}",
+                            instant, rotatedFile, compressedFile);
+                    RuntimeException extendedError = new RuntimeException(message, error);
+                    invokeCallbacks(callback -> callback.onFailure(policy, instant, rotatedFile, extendedError));
+                } finally {
+                    compressingFiles.remove(rotatedFile);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return displayName;
+            }
+
+        });
+    }
+
+    /**
+     * Appends the segment record of the given compressed file to the manifest.
+     *
+     * @param firstWriteInstant the instant of the first write, if known;
+     *                          otherwise, the one already recorded, if any,
+     *                          is used, e.g., while recovering compressions
+     */
+    private void unsafeRecordCompression(
+            File rotatedFile,
+            File resultFile,
+            BasicFileAttributes attributes,
+            SegmentManifest.Scanner scanner,
+            Instant firstWriteInstant)
+            throws IOException {
+        SegmentManifest.Entry recordedEntry = manifest.findEntry(rotatedFile);
+        if (firstWriteInstant == null && recordedEntry != null) {
+            firstWriteInstant = recordedEntry.getFirstWriteInstant();
+        }
+        // Skipped compressions do not read the entire file.
+        if (resultFile.equals(rotatedFile)) {
+            manifest.appendSegment(SegmentManifest.Entry.scan(rotatedFile, firstWriteInstant));
+        } else {
+            SegmentManifest.Entry entry = SegmentManifest.Entry
+                    .create(rotatedFile, firstWriteInstant, attributes, scanner)
+                    .withCompressedFile(resultFile);
+            manifest.appendSegment(entry);
+            // Replace the record of the uncompressed file, if any.
+            if (recordedEntry != null) {
+                manifest.appendDeletion(rotatedFile);
+            }
+        }
+    }
+
+    private void asyncRecordManifest(RotationPolicy policy, Instant instant, File rotatedFile, Instant firstWriteInstant) {
+        config.getExecutorService().execute(new Runnable() {
+
+            private final String displayName =
+                    String.format(
+                            "%s.recordManifest(%s)",
+                            RotatingFileOutputStream.class.getSimpleName(), rotatedFile);
+
+            @Override
+            public void run() {
+                try {
+                    manifest.appendSegment(SegmentManifest.Entry.scan(rotatedFile, firstWriteInstant));
+                } catch (Exception error) {
+                    String message = String.format(
+                            "manifest record failure {instant=%s, rotatedFile=%s}",
+                            instant, rotatedFile);
+                    RuntimeException extendedError = new RuntimeException(message, error);
+                    invokeCallbacks(callback -> callback.onFailure(policy, instant, rotatedFile, extendedError));
+                }
+            }
+
+            @Override
+            public String toString() {
+                return displayName;
+            }
+
+        });
+    }
+
+    private static File getIncompressibleMarkerFile(File rotatedFile) {
+        return new File(rotatedFile.getPath() + INCOMPRESSIBLE_FILE_SUFFIX);
     }
 
-    private synchronized void unsafeRotate(RotationPolicy policy, Instant instant) throws Exception {
+    private File getCompressedFile(File rotatedFile) {
+        String compressedFileName = rotatedFile.getAbsolutePath() + config.getCompressionCodec().getFileExtension();
+        return new File(compressedFileName);
+    }
 
-        // Check arguments.
-        Objects.requireNonNull(instant, "instant");
+    /**
+     * @return the compressed file, or the rotated file if compression is skipped
+     */
+    private File unsafeSyncCompress(
+            File rotatedFile,
+            File compressedFile,
+            SegmentManifest.Scanner scanner)
+            throws IOException {
 
-        // Check the state.
-        unsafeCheckStream();
+        // Skip incompressible content, if enabled.
+        double skipRatio = config.getCompressionSkipRatio();
+        if (skipRatio > 0) {
+            double ratio = gzipCompressor.estimateCompressionRatio(rotatedFile);
+            if (ratio >= skipRatio) {
+                LOGGER.debug(
+                        "skipping incompressible file {rotatedFile={}, ratio={}, skipRatio={}}",
+                        rotatedFile, ratio, skipRatio);
+                // Persist the decision, so that the recovery doesn't pick up
+                // the file again after a restart.
+                Files.write(getIncompressibleMarkerFile(rotatedFile).toPath(), new byte[0]);
+                return rotatedFile;
+            }
+        }
 
-        // Notify the trigger listeners.
-        invokeCallbacks(callback -> callback.onTrigger(policy, instant));
+        // Compress the file to a temporary file first. Hence, a crash during
+        // compression never leaves a truncated compressed file behind.
+        File tempFile = new File(compressedFile.getPath() + TEMP_FILE_SUFFIX);
+        File indexFile = new File(compressedFile.getPath() + GzipBlockIndex.FILE_SUFFIX);
+        File indexTempFile = config.isCompressionIndex()
+                ? new File(indexFile.getPath() + TEMP_FILE_SUFFIX)
+                : null;
+        LOGGER.debug("compressing {rotatedFile={}, tempFile={}}", rotatedFile, tempFile);
+        if (config.getCompressionCodec() == CompressionCodec.LZ4) {
+            lz4Compressor.compress(rotatedFile, tempFile, scanner);
+        } else {
+            byte[] dictionary = config.isCompressionDictionary()
+                    ? unsafeStoreCompressionDictionary(compressedFile)
+                    : null;
+            gzipCompressor.compress(rotatedFile, tempFile, dictionary, indexTempFile, scanner);
+            if (config.isCompressionDictionary()) {
+                unsafeRollCompressionDictionary(rotatedFile);
+            }
+        }
 
-        // Skip rotation if the file is empty.
-        stream.flush();
-        if (readFileLength() == 0) {
-            LOGGER.debug("empty file, skipping rotation {file={}}", config.getFile());
-            return;
+        // Move the index into place, or delete a stale one.
+        if (indexTempFile != null) {
+            LOGGER.debug("renaming compression index {indexTempFile={}, indexFile={}}", indexTempFile, indexFile);
+            atomicRenameFile(indexTempFile, indexFile);
+        } else {
+            Files.deleteIfExists(indexFile.toPath());
         }
 
-        // Close the file. (Required before rename on Windows!)
-        invokeCallbacks(callback -> callback.onClose(policy, instant, stream));
-        stream.close();
+        // Carry over the modification time, which retention and readers
+        // treat as the instant of the last write, rather than the instant of
+        // the compression, e.g., recovered long after the rotation.
+        Files.setLastModifiedTime(tempFile.toPath(), Files.getLastModifiedTime(rotatedFile.toPath()));
 
-        // Backup file, if enabled.
-        File rotatedFile;
-        if (config.getMaxBackupCount() > 0) {
-            renameBackups();
-            rotatedFile = backupFile();
+        // Move the compressed file into place, after syncing it, if enabled.
+        // Hence, the rotated file is never deleted before its compressed
+        // counterpart is durable.
+        if (config.getRotationDurability() != RotationDurability.NONE) {
+            syncFile(tempFile);
         }
+        LOGGER.debug("renaming compressed file {tempFile={}, compressedFile={}}", tempFile, compressedFile);
+        atomicRenameFile(tempFile, compressedFile);
+        syncDirectoryIfEnabled(compressedFile.getAbsoluteFile().getParentFile());
 
-        // Otherwise, rename using the provided file pattern.
-        else {
-        	rotatedFile = config.getFilePattern().create(instant).getAbsoluteFile();
-            LOGGER.debug("renaming {file={}, rotatedFile={}}", config.getFile(), rotatedFile);
-            renameFile(config.getFile(), rotatedFile);
+        // Delete the rotated file. (On Windows, delete must take place after closing the file channel!)
+        LOGGER.debug("deleting old file {rotatedFile={}}", rotatedFile);
+        boolean deleted = rotatedFile.delete();
+        if (!deleted) {
+            String message = String.format("failed deleting old file {rotatedFile=%s}", rotatedFile);
+            throw new IOException(message);
         }
+        return compressedFile;
 
-        // Re-open the file.
-        LOGGER.debug("re-opening file {file={}}", config.getFile());
-        stream = open(policy, instant);
+    }
 
-        // Compress the old file, if necessary.
-        if (config.isCompress()) {
-            asyncCompress(policy, instant, rotatedFile);
-            return;
+    /**
+     * Gets the current compression dictionary, and stores it in the directory
+     * of the given compressed file, unless it is already there, since it is
+     * required for decompression.
+     *
+     * @return the current compression dictionary, or {@code null}, if no
+     * rotated file is compressed yet
+     */
+    private byte[] unsafeStoreCompressionDictionary(File compressedFile) throws IOException {
+
+        // Skip the first compression, which has no preceding rotated file.
+        byte[] dictionary = compressionDictionary.get();
+        if (dictionary == null) {
+            return null;
         }
 
-        // So far, so good;
-        invokeCallbacks(callback -> callback.onSuccess(policy, instant, rotatedFile));
+        // Store the dictionary, if it is not already stored in the directory.
+        // (Concurrent compressions share the temporary file, hence the lock.)
+        File directory = compressedFile.getAbsoluteFile().getParentFile();
+        File dictionaryFile = GzipBlockInputStream.getDictionaryFile(directory, GzipCompressor.getDictionaryId(dictionary));
+        synchronized (compressionDictionary) {
+            if (!dictionaryFile.exists()) {
+                File dictionaryTempFile = new File(dictionaryFile.getPath() + TEMP_FILE_SUFFIX);
+                LOGGER.debug("writing compression dictionary {dictionaryFile={}}", dictionaryFile);
+                Files.write(dictionaryTempFile.toPath(), dictionary);
+                if (config.getRotationDurability() != RotationDurability.NONE) {
+                    syncFile(dictionaryTempFile);
+                }
+                atomicRenameFile(dictionaryTempFile, dictionaryFile);
+            }
+        }
+        return dictionary;
 
     }
 
-    private long readFileLength() throws IOException {
-        File file = config.getFile();
-        // Reading the file length is a tricky business.
-        // We will retry some.
-        Exception lastError = null;
-        for (int trialIndex = 0; trialIndex < 5; trialIndex++) {
-            long fileLength = file.length();
-            if (fileLength != 0) {
-                return fileLength;
-            }
-            // `File#length()` can return 0 due to I/O failures.
-            // We are falling back to NIO for a second attempt.
-            else {
-                Path path = file.toPath();
+    /**
+     * Replaces the current compression dictionary with the one sampled from
+     * the tail of the given rotated file, i.e., the content the next segment
+     * most likely resembles. Hence, the dictionary follows the drift of the
+     * content. Compressed files refer to their dictionaries by ID, and
+     * retention deletes the ones no longer referred to.
+     */
+    private void unsafeRollCompressionDictionary(File rotatedFile) throws IOException {
+        byte[] dictionary = GzipCompressor.readDictionary(rotatedFile);
+        if (dictionary.length > 0) {
+            LOGGER.debug(
+                    "sampled compression dictionary {rotatedFile={}, dictionaryLength={}}",
+                    rotatedFile, dictionary.length);
+            compressionDictionary.set(dictionary);
+        }
+    }
+
+    /**
+     * Lists the directory once to populate the catalog of rotated files used
+     * for enforcing retention limits, and then enforces them. On failure, the
+     * load is retried on the next rotation, or on the next disk space check
+     * below the low watermark.
+     */
+    private void asyncLoadSegmentCatalog() {
+        if (!segmentCatalogLoading.compareAndSet(false, true)) {
+            return;
+        }
+        config.getExecutorService().execute(new Runnable() {
+
+            private final String displayName =
+                    String.format(
+                            "%s.loadSegmentCatalog(%s)",
+                            RotatingFileOutputStream.class.getSimpleName(), config.getFile());
+
+            @Override
+            public void run() {
                 try {
-                    return Files.size(path);
-                } catch (IOException error) {
-                    lastError = error;
+                    // A rotation might have requested a load while the
+                    // previous one was completing. Listing again would
+                    // restore the files deleted by its retention in the
+                    // meantime, hence only enforce the retention.
+                    if (segmentCatalogLoaded) {
+                        unsafeApplyRetention();
+                    } else {
+                        unsafeLoadSegmentCatalog();
+                    }
+                } catch (Exception error) {
+                    Instant instant = config.getClock().now();
+                    String message = String.format(
+                            "segment catalog load failure {instant=%s, filePattern=%s}",
+                            instant, config.getFilePattern());
+                    RuntimeException extendedError = new RuntimeException(message, error);
+                    invokeCallbacks(callback -> callback.onFailure(null, instant, null, extendedError));
+                } finally {
+                    segmentCatalogLoading.set(false);
                 }
             }
-            // Scientifically proven retry practice: wait a bit.
-            LockSupport.parkNanos(1);
-        }
-        String message = String.format("file length read failure {file=%s}", file);
-        throw new IOException(message, lastError);
+
+            @Override
+            public String toString() {
+                return displayName;
+            }
+
+        });
     }
 
-    private void renameBackups() throws IOException {
-        File dstFile = getBackupFile(config.getMaxBackupCount() - 1);
-        for (int backupIndex = config.getMaxBackupCount() - 2; backupIndex >= 0; backupIndex--) {
-            File srcFile = getBackupFile(backupIndex);
-            if (srcFile.exists()) {
-                LOGGER.debug("renaming backup {srcFile={}, dstFile={}}", srcFile, dstFile);
-                renameFile(srcFile, dstFile);
+    private void unsafeLoadSegmentCatalog() throws IOException {
+        RotatingFilePattern filePattern = config.getFilePattern();
+        File activeFile = config.getFile().getAbsoluteFile();
+        String compressionExtension = config.getCompressionCodec().getFileExtension();
+        List<File> uncompressedFiles = new ArrayList<>();
+        Set<File> incompressibleFiles = new HashSet<>();
+        for (File foundFile : filePattern.findFiles()) {
+            String suffix = filePattern.findSuffix(foundFile);
+            if (suffix.isEmpty() && !foundFile.equals(activeFile)) {
+                uncompressedFiles.add(foundFile);
+            } else if (config.isCompress() && compressionExtension.equals(suffix)) {
+                segmentCatalog.add(foundFile);
+            } else if (config.isCompress() && INCOMPRESSIBLE_FILE_SUFFIX.equals(suffix)) {
+                incompressibleFiles.add(stripSuffix(foundFile, suffix));
             }
-            dstFile = srcFile;
         }
+        // Uncompressed files are registered once compressed, if enabled,
+        // unless they are already found to be incompressible.
+        for (File uncompressedFile : uncompressedFiles) {
+            if (!config.isCompress() || incompressibleFiles.contains(uncompressedFile)) {
+                segmentCatalog.add(uncompressedFile);
+            }
+        }
+        LOGGER.debug("loaded segment catalog {file={}, segmentCatalog={}}", config.getFile(), segmentCatalog);
+        segmentCatalogLoaded = true;
+        unsafeApplyRetention();
     }
 
-    private File backupFile() throws IOException {
-        File dstFile = getBackupFile(0);
-        File srcFile = config.getFile();
-        LOGGER.debug("renaming for backup {srcFile={}, dstFile={}}", srcFile, dstFile);
-        renameFile(srcFile, dstFile);
-        return dstFile;
+    /**
+     * Registers the given file to the catalog of rotated files, if either
+     * retention or disk space pruning is enabled, and enforces the retention
+     * limits in the background.
+     *
+     * @param replacedFile the file replaced by the given one, e.g., due to
+     *                     compression; can be {@code null}
+     */
+    private void registerSegment(File replacedFile, File file) {
+        if (!config.isRetentionEnabled() && config.getDiskSpaceLowWatermark() <= 0) {
+            return;
+        }
+        if (replacedFile != null) {
+            segmentCatalog.remove(replacedFile);
+        }
+        segmentCatalog.add(file);
+        if (!segmentCatalogLoaded) {
+            asyncLoadSegmentCatalog();
+        } else if (config.isRetentionEnabled()) {
+            asyncApplyRetention();
+        }
     }
 
-    private static void renameFile(File srcFile, File dstFile) throws IOException {
-        Files.move(
-                srcFile.toPath(),
-                dstFile.toPath(),
-                StandardCopyOption.REPLACE_EXISTING/*,      // The rest of the arguments (atomic & copy-attr) are pretty
-                StandardCopyOption.ATOMIC_MOVE,             // much platform-dependent and JVM throws an "unsupported
-                StandardCopyOption.COPY_ATTRIBUTES*/);      // option" exception at runtime.
+    private void asyncApplyRetention() {
+        config.getExecutorService().execute(new Runnable() {
+
+            private final String displayName =
+                    String.format(
+                            "%s.applyRetention(%s)",
+                            RotatingFileOutputStream.class.getSimpleName(), config.getFile());
+
+            @Override
+            public void run() {
+                unsafeApplyRetention();
+            }
+
+            @Override
+            public String toString() {
+                return displayName;
+            }
+
+        });
     }
 
-    private File getBackupFile(int backupIndex) {
-        String parent = config.getFile().getParent();
-        if (parent == null) {
-            parent = ".";
+    private void unsafeApplyRetention() {
+
+        // Wait for the catalog to be loaded. Otherwise, newer files might be
+        // deleted in place of the older ones that are not registered yet.
+        if (!segmentCatalogLoaded) {
+            return;
         }
-        String fileName = config.getFile().getName() + '.' + backupIndex;
-        return Paths.get(parent, fileName).toFile();
+
+        // Determine the limits.
+        Instant instant = config.getClock().now();
+        long maxTotalBytes = config.getRetentionMaxTotalBytes();
+        int maxFileCount = config.getRetentionMaxFileCount();
+        Duration maxAge = config.getRetentionMaxAge();
+        long minLastModifiedMillis = maxAge.isZero()
+                ? Long.MIN_VALUE
+                : instant.minus(maxAge).toEpochMilli();
+
+        // Delete the oldest files, as long as the limits are exceeded.
+        Set<File> directories = new HashSet<>();
+        SegmentCatalog.Segment segment;
+        while ((segment = segmentCatalog.pollExpired(maxTotalBytes, maxFileCount, minLastModifiedMillis)) != null) {
+            File file = segment.getFile();
+            LOGGER.debug("deleting expired file {segment={}}", segment);
+            try {
+                deleteSegmentFiles(file);
+                directories.add(file.getAbsoluteFile().getParentFile());
+                if (manifest != null) {
+                    manifest.appendDeletion(file);
+                }
+                invokeCallbacks(callback -> callback.onDelete(instant, file));
+            } catch (Exception error) {
+                String message = String.format("retention failure {instant=%s, file=%s}", instant, file);
+                RuntimeException extendedError = new RuntimeException(message, error);
+                invokeCallbacks(callback -> callback.onFailure(null, instant, file, extendedError));
+            }
+        }
+        deleteUnusedDictionaries(directories);
+
     }
 
-    private void asyncCompress(RotationPolicy policy, Instant instant, File rotatedFile) {
-        config.getExecutorService().execute(new Runnable() {
+    private ScheduledFuture<?> startDiskSpaceGuard() {
+        long checkIntervalMillis = config.getDiskSpaceCheckInterval().toMillis();
+        return config.getExecutorService().scheduleWithFixedDelay(new Runnable() {
 
             private final String displayName =
                     String.format(
-                            "%s.compress(%s)",
-                            RotatingFileOutputStream.class.getSimpleName(), rotatedFile);
+                            "%s.guardDiskSpace(%s)",
+                            RotatingFileOutputStream.class.getSimpleName(), config.getFile());
 
             @Override
             public void run() {
-                File compressedFile = getCompressedFile(rotatedFile);
+                Instant instant = config.getClock().now();
                 try {
-                    unsafeSyncCompress(rotatedFile, compressedFile);
-                    invokeCallbacks(callback -> callback.onSuccess(policy, instant, compressedFile));
+                    unsafeGuardDiskSpace(instant);
                 } catch (Exception error) {
                     String message = String.format(
-                            "compression failure {instant=%s, rotatedFile=%s, compressedFile=%s}",
-                            instant, rotatedFile, compressedFile);
+                            "disk space guard failure {instant=%s, file=%s}",
+                            instant, config.getFile());
                     RuntimeException extendedError = new RuntimeException(message, error);
-                    invokeCallbacks(callback -> callback.onFailure(policy, instant, rotatedFile, extendedError));
+                    invokeCallbacks(callback -> callback.onFailure(null, instant, null, extendedError));
                 }
             }
 
@@ -272,52 +1726,212 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
                 return displayName;
             }
 
-        });
+        }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
     }
 
-    private File getCompressedFile(File rotatedFile) {
-        String compressedFileName = String.format("%s.gz", rotatedFile.getAbsolutePath());
-        return new File(compressedFileName);
+    private void unsafeGuardDiskSpace(Instant instant) throws IOException {
+
+        // Delete the oldest files on the file store of the rotated files,
+        // compressed ones first, while it is below the low watermark, until
+        // the high watermark is reached. (The active file might reside on
+        // another file store, e.g., due to volume placement, where deleting
+        // rotated files would not free any space.)
+        long lowWatermark = config.getDiskSpaceLowWatermark();
+        if (lowWatermark > 0) {
+            FileStore segmentFileStore = readFileStore(findExistingDirectory(config.getFilePattern().getBaseDirectory()));
+            long segmentUsableSpace = readUsableSpace(segmentFileStore);
+            if (segmentUsableSpace < lowWatermark && !segmentCatalogLoaded) {
+                asyncLoadSegmentCatalog();
+            } else if (segmentUsableSpace < lowWatermark) {
+                LOGGER.debug(
+                        "usable space is below the low watermark {file={}, usableSpace={}, lowWatermark={}}",
+                        config.getFile(), segmentUsableSpace, lowWatermark);
+                unsafePruneSegments(instant, segmentFileStore, segmentUsableSpace);
+            }
+        }
+
+        // Toggle the write failures, if the hard floor is set.
+        long usableSpace = readUsableSpace(readFileStore(config.getFile().getAbsoluteFile().getParentFile()));
+        long hardFloor = config.getDiskSpaceHardFloor();
+        boolean exhausted = usableSpace < hardFloor;
+        if (exhausted != diskSpaceExhausted) {
+            diskSpaceExhausted = exhausted;
+            if (exhausted) {
+                String message = String.format(
+                        "usable space is below the hard floor {instant=%s, usableSpace=%d, hardFloor=%d}",
+                        instant, usableSpace, hardFloor);
+                RuntimeException error = new RuntimeException(message);
+                invokeCallbacks(callback -> callback.onFailure(null, instant, config.getFile(), error));
+            } else {
+                LOGGER.debug(
+                        "usable space is above the hard floor {file={}, usableSpace={}, hardFloor={}}",
+                        config.getFile(), usableSpace, hardFloor);
+            }
+        }
+
     }
 
-    private static void unsafeSyncCompress(File rotatedFile, File compressedFile) throws IOException {
+    private void unsafePruneSegments(
+            Instant instant,
+            FileStore segmentFileStore,
+            long segmentUsableSpace)
+            throws IOException {
+
+        // Determine the file stores of the rotated files by their directories.
+        Map<File, FileStore> fileStoreByDirectory = new HashMap<>();
+        Predicate<File> storedFilePredicate = file -> {
+            File directory = file.getAbsoluteFile().getParentFile();
+            FileStore fileStore = fileStoreByDirectory.computeIfAbsent(directory, ignored -> {
+                try {
+                    return readFileStore(directory);
+                } catch (IOException error) {
+                    LOGGER.debug("failed reading file store {directory={}, error={}}", directory, error.toString());
+                    return null;
+                }
+            });
+            return segmentFileStore.equals(fileStore);
+        };
 
-        // Compress the file.
-        LOGGER.debug("compressing {rotatedFile={}, compressedFile={}}", rotatedFile, compressedFile);
-        try (InputStream sourceStream = Files.newInputStream(rotatedFile.toPath())) {
-            try (FileOutputStream targetStream = new FileOutputStream(compressedFile);
-                 GZIPOutputStream gzipTargetStream = new GZIPOutputStream(targetStream)) {
-                copy(sourceStream, gzipTargetStream);
+        // Delete files, compressed ones first.
+        long highWatermark = Math.max(config.getDiskSpaceLowWatermark(), config.getDiskSpaceHighWatermark());
+        String compressionExtension = config.getCompressionCodec().getFileExtension();
+        Predicate<File> compressedFilePredicate = file -> file.getName().endsWith(compressionExtension);
+        Set<File> directories = new HashSet<>();
+        SegmentCatalog.Segment segment;
+        while (segmentUsableSpace < highWatermark &&
+                ((segment = segmentCatalog.pollOldest(compressedFilePredicate.and(storedFilePredicate))) != null ||
+                        (segment = segmentCatalog.pollOldest(storedFilePredicate)) != null)) {
+            File file = segment.getFile();
+            LOGGER.debug("deleting file to free disk space {segment={}}", segment);
+            try {
+                deleteSegmentFiles(file);
+                directories.add(file.getAbsoluteFile().getParentFile());
+                if (manifest != null) {
+                    manifest.appendDeletion(file);
+                }
+                invokeCallbacks(callback -> callback.onDelete(instant, file));
+            } catch (Exception error) {
+                String message = String.format("disk space pruning failure {instant=%s, file=%s}", instant, file);
+                RuntimeException extendedError = new RuntimeException(message, error);
+                invokeCallbacks(callback -> callback.onFailure(null, instant, file, extendedError));
             }
+            segmentUsableSpace = readUsableSpace(segmentFileStore);
         }
+        deleteUnusedDictionaries(directories);
 
-        // Delete the rotated file. (On Windows, delete must take place after closing the file input stream!)
-        LOGGER.debug("deleting old file {rotatedFile={}}", rotatedFile);
-        boolean deleted = rotatedFile.delete();
-        if (!deleted) {
-            String message = String.format("failed deleting old file {rotatedFile=%s}", rotatedFile);
-            throw new IOException(message);
+    }
+
+    /**
+     * @return the given directory, if it exists; otherwise, its closest
+     * existing ancestor
+     */
+    private static File findExistingDirectory(File directory) {
+        File existingDirectory = directory;
+        while (!existingDirectory.exists() && existingDirectory.getParentFile() != null) {
+            existingDirectory = existingDirectory.getParentFile();
         }
+        return existingDirectory;
+    }
+
+    /**
+     * @return the file store containing the given directory
+     */
+    FileStore readFileStore(File directory) throws IOException {
+        return Files.getFileStore(directory.toPath());
+    }
 
+    /**
+     * @return the usable space of the given file store
+     */
+    long readUsableSpace(FileStore fileStore) throws IOException {
+        return fileStore.getUsableSpace();
     }
 
-    private static void copy(InputStream source, OutputStream target) throws IOException {
-        byte[] buffer = new byte[8192];
-        int readByteCount;
-        while ((readByteCount = source.read(buffer)) > 0) {
-            target.write(buffer, 0, readByteCount);
+    /**
+     * Deletes the compression dictionaries in the given directories that are
+     * neither in use, nor referred to by the compressed files left, if
+     * enabled. Dictionaries of a directory containing an unreadable
+     * compressed file are kept.
+     */
+    private void deleteUnusedDictionaries(Set<File> directories) {
+        if (!config.isCompressionDictionary() || directories.isEmpty()) {
+            return;
+        }
+        byte[] dictionary = compressionDictionary.get();
+        long dictionaryId = dictionary != null ? GzipCompressor.getDictionaryId(dictionary) : -1;
+        String compressionExtension = config.getCompressionCodec().getFileExtension();
+        for (File directory : directories) {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                continue;
+            }
+            List<File> dictionaryFiles = new ArrayList<>();
+            Set<File> usedDictionaryFiles = new HashSet<>();
+            if (dictionaryId >= 0) {
+                usedDictionaryFiles.add(GzipBlockInputStream.getDictionaryFile(directory, dictionaryId));
+            }
+            try {
+                for (File file : files) {
+                    String fileName = file.getName();
+                    if (GzipBlockInputStream.isDictionaryFile(file)) {
+                        dictionaryFiles.add(file);
+                    } else if (fileName.endsWith(compressionExtension) ||
+                            fileName.endsWith(compressionExtension + TEMP_FILE_SUFFIX)) {
+                        long usedDictionaryId = GzipBlockInputStream.readDictionaryId(file);
+                        if (usedDictionaryId >= 0) {
+                            usedDictionaryFiles.add(GzipBlockInputStream.getDictionaryFile(directory, usedDictionaryId));
+                        }
+                    }
+                }
+            } catch (IOException error) {
+                LOGGER.debug("keeping compression dictionaries {directory={}, error={}}", directory, error.toString());
+                continue;
+            }
+            for (File dictionaryFile : dictionaryFiles) {
+                if (!usedDictionaryFiles.contains(dictionaryFile)) {
+                    LOGGER.debug("deleting unused compression dictionary {dictionaryFile={}}", dictionaryFile);
+                    try {
+                        Files.deleteIfExists(dictionaryFile.toPath());
+                    } catch (IOException error) {
+                        Instant instant = config.getClock().now();
+                        String message = String.format(
+                                "compression dictionary deletion failure {instant=%s, dictionaryFile=%s}",
+                                instant, dictionaryFile);
+                        RuntimeException extendedError = new RuntimeException(message, error);
+                        invokeCallbacks(callback -> callback.onFailure(null, instant, dictionaryFile, extendedError));
+                    }
+                }
+            }
         }
     }
 
+    private static void deleteSegmentFiles(File file) throws IOException {
+        Files.deleteIfExists(file.toPath());
+        String path = file.getPath();
+        Files.deleteIfExists(Paths.get(path + GzipBlockIndex.FILE_SUFFIX));
+        Files.deleteIfExists(Paths.get(path + INCOMPRESSIBLE_FILE_SUFFIX));
+    }
+
     @Override
     public RotationConfig getConfig() {
         return config;
     }
 
+    /**
+     * @return the manifest of rotated files, if {@link RotationConfig#isManifest() enabled};
+     * otherwise, {@code null}
+     */
+    public SegmentManifest getManifest() {
+        return manifest;
+    }
+
     @Override
     public synchronized void write(int b) throws IOException {
         unsafeCheckStream();
-        long byteCount = stream.size() + 1;
+        unsafeCheckDiskSpace();
+        unsafeFollowRotation();
+        unsafeTrackFirstWrite();
+        long byteCount = unsafeSize() + 1;
         // noinspection ForLoopReplaceableByForEach (avoid iterator instantion)
         for (int writeSensitivePolicyIndex = 0;
              writeSensitivePolicyIndex < writeSensitivePolicies.size();
@@ -327,12 +1941,23 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
             writeSensitivePolicy.acceptWrite(b);
         }
         stream.write(b);
+        unsafeTrackSize(1);
+        if (exactSizePolicy != null && stream.size() >= exactSizePolicy.getMaxByteCount()) {
+            rotate(exactSizePolicy, config.getClock().now());
+        }
     }
 
     @Override
     public synchronized void write(byte[] b) throws IOException {
+        if (exactSizePolicy != null) {
+            unsafeWriteExact(b, 0, b.length);
+            return;
+        }
         unsafeCheckStream();
-        long byteCount = stream.size() + b.length;
+        unsafeCheckDiskSpace();
+        unsafeFollowRotation();
+        unsafeTrackFirstWrite();
+        long byteCount = unsafeSize() + b.length;
         // noinspection ForLoopReplaceableByForEach (avoid iterator instantion)
         for (int writeSensitivePolicyIndex = 0;
              writeSensitivePolicyIndex < writeSensitivePolicies.size();
@@ -342,12 +1967,46 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
             writeSensitivePolicy.acceptWrite(b);
         }
         stream.write(b);
+        unsafeTrackSize(b.length);
     }
 
     @Override
     public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (exactSizePolicy != null) {
+            unsafeWriteExact(b, off, len);
+            return;
+        }
+        unsafeWrite(b, off, len);
+    }
+
+    /**
+     * Splits the write at the threshold of the exact size-based policy, and
+     * rotates in between. If a rotation fails, the rest is written as is to
+     * not to lose data.
+     */
+    private void unsafeWriteExact(byte[] b, int off, int len) throws IOException {
+        long maxByteCount = exactSizePolicy.getMaxByteCount();
+        while (len > 0) {
+            unsafeCheckStream();
+            long remainingByteCount = maxByteCount - stream.size();
+            int chunkLength = remainingByteCount > 0
+                    ? (int) Math.min(len, remainingByteCount)
+                    : len;
+            unsafeWrite(b, off, chunkLength);
+            off += chunkLength;
+            len -= chunkLength;
+            if (stream.size() >= maxByteCount) {
+                rotate(exactSizePolicy, config.getClock().now());
+            }
+        }
+    }
+
+    private void unsafeWrite(byte[] b, int off, int len) throws IOException {
         unsafeCheckStream();
-        long byteCount = stream.size() + len;
+        unsafeCheckDiskSpace();
+        unsafeFollowRotation();
+        unsafeTrackFirstWrite();
+        long byteCount = unsafeSize() + len;
         // noinspection ForLoopReplaceableByForEach (avoid iterator instantion)
         for (int writeSensitivePolicyIndex = 0;
              writeSensitivePolicyIndex < writeSensitivePolicies.size();
@@ -357,6 +2016,7 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
             writeSensitivePolicy.acceptWrite(b, off, len);
         }
         stream.write(b, off, len);
+        unsafeTrackSize(len);
     }
 
     @Override
@@ -373,16 +2033,44 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
     @Override
     public synchronized void close() throws IOException {
         if (stream == null) {
+            if (lazyOpenPending) {
+                unsafeCloseUnopened();
+            }
             return;
         }
         invokeCallbacks(callback -> callback.onClose(null, config.getClock().now(), stream));
         stopPolicies();
+        if (diskSpaceGuardFuture != null) {
+            diskSpaceGuardFuture.cancel(false);
+        }
+        unsafeTruncateRecycledFile();
+        unsafeDeleteLengthFile();
         stream.close();
+        releaseVolume(stream.size());
         stream = null;
+        if (coordinator != null) {
+            coordinator.close();
+        }
+    }
+
+    /**
+     * Releases the resources of a stream closed before its first write,
+     * without creating the file.
+     */
+    private void unsafeCloseUnopened() throws IOException {
+        lazyOpenPending = false;
+        if (diskSpaceGuardFuture != null) {
+            diskSpaceGuardFuture.cancel(false);
+        }
+        if (coordinator != null) {
+            coordinator.close();
+        }
     }
 
     private void stopPolicies() {
-        config.getPolicies().forEach(RotationPolicy::stop);
+        for (RotationPolicy policy : config.getPolicies()) {
+            policy.stop(this);
+        }
     }
 
     private void invokeCallbacks(Consumer<RotationCallback> invoker) {
@@ -395,7 +2083,27 @@ public class RotatingFileOutputStream extends OutputStream implements Rotatable
 
     private void unsafeCheckStream() throws IOException {
         if (stream == null) {
-            throw new IOException("either closed or not initialized yet");
+            if (!lazyOpenPending) {
+                throw new IOException("either closed or not initialized yet");
+            }
+            LOGGER.debug("opening file on the first write {file={}}", config.getFile());
+            start();
+            lazyOpenPending = false;
+        }
+    }
+
+    private void unsafeTrackFirstWrite() {
+        if (manifest != null && firstWriteInstant == null) {
+            firstWriteInstant = config.getClock().now();
+        }
+    }
+
+    private void unsafeCheckDiskSpace() throws IOException {
+        if (diskSpaceExhausted) {
+            String message = String.format(
+                    "usable space is below the hard floor {file=%s, hardFloor=%d}",
+                    config.getFile(), config.getDiskSpaceHardFloor());
+            throw new IOException(message);
         }
     }
 
@@ -17,10 +17,21 @@
 package com.vlkan.rfos;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.zone.ZoneOffsetTransition;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Creates file names for rotated files to be moved to.
@@ -39,9 +50,15 @@ public class RotatingFilePattern {
 
     private static final char DATE_TIME_BLOCK_END_CHAR = '}';
 
+    private static final char SEQUENCE_DIRECTIVE_CHAR = 'i';
+
+    private static final char NORMALIZED_SEPARATOR_CHAR = '/';
+
     private interface Field {
 
-        void render(StringBuilder builder, Instant instant);
+        void render(StringBuilder builder, Instant instant, int sequence);
+
+        void renderRegex(StringBuilder builder);
 
     }
 
@@ -54,24 +71,242 @@ public class RotatingFilePattern {
         }
 
         @Override
-        public void render(StringBuilder builder, Instant ignored) {
+        public void render(StringBuilder builder, Instant ignoredInstant, int ignoredSequence) {
             builder.append(text);
         }
 
+        @Override
+        public void renderRegex(StringBuilder builder) {
+            builder.append(Pattern.quote(normalizeSeparators(text)));
+        }
+
+    }
+
+    private static class SequenceField implements Field {
+
+        private static final SequenceField INSTANCE = new SequenceField();
+
+        @Override
+        public void render(StringBuilder builder, Instant ignored, int sequence) {
+            builder.append(sequence);
+        }
+
+        @Override
+        public void renderRegex(StringBuilder builder) {
+            builder.append("[0-9]+");
+        }
+
+    }
+
+    /**
+     * Formatted text of a date time pattern shared by the instants in
+     * {@code [startEpochMillis, endEpochMillis)}.
+     */
+    private static final class DateTimeBucket {
+
+        private final long startEpochMillis;
+
+        private final long endEpochMillis;
+
+        private final String text;
+
+        private DateTimeBucket(long startEpochMillis, long endEpochMillis, String text) {
+            this.startEpochMillis = startEpochMillis;
+            this.endEpochMillis = endEpochMillis;
+            this.text = text;
+        }
+
     }
 
     private static class DateTimeField implements Field {
 
+        private final String dateTimePattern;
+
         private final DateTimeFormatter dateTimeFormatter;
 
-        private DateTimeField(DateTimeFormatter dateTimeFormatter) {
+        private final ZoneId timeZoneId;
+
+        private final ChronoUnit bucketUnit;
+
+        private volatile DateTimeBucket bucket;
+
+        private DateTimeField(String dateTimePattern, DateTimeFormatter dateTimeFormatter, ZoneId timeZoneId) {
+            this.dateTimePattern = dateTimePattern;
             this.dateTimeFormatter = dateTimeFormatter;
+            this.timeZoneId = timeZoneId;
+            this.bucketUnit = readBucketUnit(dateTimePattern);
         }
 
+        /**
+         * Determines the finest time unit the output of the date time pattern
+         * depends on. Units coarser than a day are reduced to a day, and
+         * sub-millisecond ones disable caching.
+         */
+        private static ChronoUnit readBucketUnit(String dateTimePattern) {
+            ChronoUnit bucketUnit = ChronoUnit.DAYS;
+            int charCount = dateTimePattern.length();
+            for (int charIndex = 0; charIndex < charCount;) {
+                char c = dateTimePattern.charAt(charIndex);
+                if (c == '\'') {
+                    int literalEndIndex = dateTimePattern.indexOf('\'', charIndex + 1);
+                    charIndex = literalEndIndex < 0 ? charCount : literalEndIndex + 1;
+                    continue;
+                }
+                int letterCount = 1;
+                while (charIndex + letterCount < charCount && dateTimePattern.charAt(charIndex + letterCount) == c) {
+                    letterCount++;
+                }
+                ChronoUnit letterUnit = readLetterUnit(c, letterCount);
+                if (letterUnit.compareTo(bucketUnit) < 0) {
+                    bucketUnit = letterUnit;
+                }
+                charIndex += letterCount;
+            }
+            return bucketUnit;
+        }
+
+        private static ChronoUnit readLetterUnit(char letter, int letterCount) {
+            switch (letter) {
+                case 'n': case 'N':
+                    return ChronoUnit.NANOS;
+                case 'S':
+                    return letterCount <= 3 ? ChronoUnit.MILLIS : ChronoUnit.NANOS;
+                case 'A':
+                    return ChronoUnit.MILLIS;
+                case 's':
+                    return ChronoUnit.SECONDS;
+                case 'm':
+                    return ChronoUnit.MINUTES;
+                case 'H': case 'k': case 'K': case 'h': case 'a': case 'B':
+                    return ChronoUnit.HOURS;
+                default:
+                    return ChronoUnit.DAYS;
+            }
+        }
+
+        @Override
+        public void render(StringBuilder builder, Instant instant, int ignored) {
+            if (bucketUnit == ChronoUnit.NANOS) {
+                dateTimeFormatter.formatTo(instant, builder);
+                return;
+            }
+            long epochMillis = instant.toEpochMilli();
+            DateTimeBucket bucket = this.bucket;
+            if (bucket == null || epochMillis < bucket.startEpochMillis || epochMillis >= bucket.endEpochMillis) {
+                this.bucket = bucket = createBucket(instant);
+            }
+            builder.append(bucket.text);
+        }
+
+        private DateTimeBucket createBucket(Instant instant) {
+            ZonedDateTime startDateTime = instant.atZone(timeZoneId).truncatedTo(bucketUnit);
+            Instant startInstant = startDateTime.toInstant();
+            Instant endInstant = startDateTime.plus(1, bucketUnit).toInstant();
+            // Offset changes can alter the text within the bucket.
+            ZoneOffsetTransition transition = timeZoneId.getRules().nextTransition(startInstant);
+            if (transition != null && transition.getInstant().isBefore(endInstant)) {
+                endInstant = transition.getInstant();
+            }
+            String text = dateTimeFormatter.format(instant);
+            // Fall back to formatting the instant alone, if the truncation
+            // fails to cover it, e.g., due to a gap.
+            if (instant.isBefore(startInstant) || !instant.isBefore(endInstant)) {
+                long epochMillis = instant.toEpochMilli();
+                return new DateTimeBucket(epochMillis, epochMillis + 1, text);
+            }
+            return new DateTimeBucket(startInstant.toEpochMilli(), endInstant.toEpochMilli(), text);
+        }
+
+        /**
+         * Renders a regular expression matching the output of the date time
+         * pattern. This is a best-effort approximation: numeric fields are
+         * matched by digits and textual ones by letters.
+         */
         @Override
-        public void render(StringBuilder builder, Instant instant) {
-            String formattedDateTime = dateTimeFormatter.format(instant);
-            builder.append(formattedDateTime);
+        public void renderRegex(StringBuilder builder) {
+            int charCount = dateTimePattern.length();
+            for (int charIndex = 0; charIndex < charCount;) {
+                char c = dateTimePattern.charAt(charIndex);
+
+                // Read quoted literals.
+                if (c == '\'') {
+                    int literalEndIndex = dateTimePattern.indexOf('\'', charIndex + 1);
+                    if (literalEndIndex < 0) {
+                        literalEndIndex = charCount;
+                    }
+                    String literal = charIndex + 1 == literalEndIndex
+                            ? "'"       // `''` denotes a single quote
+                            : dateTimePattern.substring(charIndex + 1, literalEndIndex);
+                    builder.append(Pattern.quote(literal));
+                    charIndex = literalEndIndex + 1;
+                }
+
+                // Read optional sections.
+                else if (c == '[') {
+                    builder.append("(?:");
+                    charIndex++;
+                } else if (c == ']') {
+                    builder.append(")?");
+                    charIndex++;
+                }
+
+                // Read pattern letters.
+                else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                    int letterCount = 1;
+                    while (charIndex + letterCount < charCount && dateTimePattern.charAt(charIndex + letterCount) == c) {
+                        letterCount++;
+                    }
+                    renderLetterRegex(builder, c, letterCount);
+                    charIndex += letterCount;
+                }
+
+                // Read other literals.
+                else {
+                    builder.append(Pattern.quote(normalizeSeparators(String.valueOf(c))));
+                    charIndex++;
+                }
+
+            }
+        }
+
+        private static void renderLetterRegex(StringBuilder builder, char letter, int letterCount) {
+            switch (letter) {
+
+                // Text fields: era, day-of-week, AM/PM, zone names.
+                case 'G': case 'E': case 'a': case 'V': case 'z': case 'O':
+                    builder.append("[\\p{L}\\p{N}.+\\-:]+?");
+                    return;
+
+                // Offsets, e.g., `Z`, `+01`, `+0100`, `+01:00`.
+                case 'X': case 'x': case 'Z':
+                    builder.append("(?:Z|[+\\-][0-9:]+)");
+                    return;
+
+                // Fields that are either numeric or textual depending on the letter count.
+                case 'M': case 'L': case 'Q': case 'q': case 'e': case 'c':
+                    if (letterCount >= 3) {
+                        builder.append("\\p{L}+\\.?");
+                        return;
+                    }
+                    break;
+
+                // Years can get wider than the letter count.
+                case 'y': case 'u': case 'Y':
+                    if (letterCount != 2) {
+                        builder.append("[+\\-]?[0-9]{").append(letterCount).append(",}");
+                        return;
+                    }
+                    break;
+
+                default:
+                    break;
+
+            }
+            if (letterCount == 1) {
+                builder.append("[0-9]+");
+            } else {
+                builder.append("[0-9]{").append(letterCount).append('}');
+            }
         }
 
     }
@@ -82,18 +317,30 @@ public class RotatingFilePattern {
 
     private final ZoneId timeZoneId;
 
-    private final List<Field> fields;
+    private final Field[] fields;
+
+    private final boolean sequenced;
+
+    private final File baseDirectory;
+
+    private final int maxDepth;
+
+    private final Pattern regex;
 
     private RotatingFilePattern(Builder builder) {
         this.pattern = builder.pattern;
         this.locale = builder.locale;
         this.timeZoneId = builder.timeZoneId;
         this.fields = readPattern(pattern, locale, timeZoneId);
+        this.sequenced = Arrays.stream(fields).anyMatch(field -> field instanceof SequenceField);
+        this.baseDirectory = readBaseDirectory(fields);
+        this.maxDepth = readMaxDepth(fields, baseDirectory);
+        this.regex = compileRegex(fields, baseDirectory);
     }
 
-    private static List<Field> readPattern(String pattern, Locale locale, ZoneId timeZoneId) {
+    private static Field[] readPattern(String pattern, Locale locale, ZoneId timeZoneId) {
 
-        List<Field> fields = new LinkedList<>();
+        List<Field> fields = new ArrayList<>();
         StringBuilder textBuilder = new StringBuilder();
         int totalCharCount = pattern.length();
         boolean foundDateTimeDirective = false;
@@ -121,7 +368,14 @@ public class RotatingFilePattern {
                     textBuilder = new StringBuilder();
                 }
 
-                // Try to read the directive.
+                // Try to read the sequence directive.
+                if (hasOneMoreChar && pattern.charAt(charIndex + 1) == SEQUENCE_DIRECTIVE_CHAR) {
+                    fields.add(SequenceField.INSTANCE);
+                    charIndex += 2;
+                    continue;
+                }
+
+                // Try to read the date time directive.
                 boolean hasSufficientDateTimeChars = (totalCharCount - charIndex - 3) > 0;
                 if (hasSufficientDateTimeChars) {
                     char c1 = pattern.charAt(charIndex + 1);
@@ -144,7 +398,7 @@ public class RotatingFilePattern {
                                             charIndex, pattern, dateTimePattern);
                                     throw new RotatingFilePatternException(message, error);
                                 }
-                                DateTimeField dateTimeField = new DateTimeField(dateTimeFormatter);
+                                DateTimeField dateTimeField = new DateTimeField(dateTimePattern, dateTimeFormatter, timeZoneId);
                                 fields.add(dateTimeField);
                                 foundDateTimeDirective = true;
                                 charIndex = blockEndIndex + 1;
@@ -180,24 +434,165 @@ public class RotatingFilePattern {
         }
 
         // Return collected fields so far.
-        return fields;
+        return fields.toArray(new Field[0]);
+
+    }
+
+    /**
+     * Determines the deepest directory whose path does not depend on the
+     * formatted instant, e.g., {@code /tmp} for {@code /tmp/app-%d{yyyy}.log}.
+     */
+    private static File readBaseDirectory(Field[] fields) {
+        Field firstField = fields[0];
+        String fixedPrefix = firstField instanceof TextField
+                ? normalizeSeparators(((TextField) firstField).text)
+                : "";
+        int lastSeparatorIndex = fixedPrefix.lastIndexOf(NORMALIZED_SEPARATOR_CHAR);
+        if (lastSeparatorIndex < 0) {
+            return new File("").getAbsoluteFile();
+        }
+        // Keep the separator to not to lose the root, e.g., `/`.
+        String baseDirectoryPath = fixedPrefix.substring(0, lastSeparatorIndex + 1);
+        return new File(baseDirectoryPath).getAbsoluteFile();
+    }
+
+    private static int readMaxDepth(Field[] fields, File baseDirectory) {
+        StringBuilder regexBuilder = new StringBuilder();
+        renderRelativeRegex(regexBuilder, fields, baseDirectory);
+        int separatorCount = 0;
+        for (int charIndex = 0; charIndex < regexBuilder.length(); charIndex++) {
+            if (regexBuilder.charAt(charIndex) == NORMALIZED_SEPARATOR_CHAR) {
+                separatorCount++;
+            }
+        }
+        return separatorCount + 1;
+    }
+
+    private static Pattern compileRegex(Field[] fields, File baseDirectory) {
+        StringBuilder regexBuilder = new StringBuilder();
+        String baseDirectoryPath = normalizeSeparators(baseDirectory.getPath());
+        if (!baseDirectoryPath.endsWith(String.valueOf(NORMALIZED_SEPARATOR_CHAR))) {
+            baseDirectoryPath += NORMALIZED_SEPARATOR_CHAR;
+        }
+        regexBuilder.append(Pattern.quote(baseDirectoryPath));
+        renderRelativeRegex(regexBuilder, fields, baseDirectory);
+        return Pattern.compile(regexBuilder.toString());
+    }
+
+    /**
+     * Renders the regular expression of the pattern relative to the given base directory.
+     */
+    private static void renderRelativeRegex(StringBuilder builder, Field[] fields, File baseDirectory) {
+        boolean firstField = true;
+        for (Field field : fields) {
+            if (firstField && field instanceof TextField) {
+                String text = normalizeSeparators(((TextField) field).text);
+                int lastSeparatorIndex = text.lastIndexOf(NORMALIZED_SEPARATOR_CHAR);
+                String relativeText = text.substring(lastSeparatorIndex + 1);
+                if (!relativeText.isEmpty()) {
+                    builder.append(Pattern.quote(relativeText));
+                }
+            } else {
+                field.renderRegex(builder);
+            }
+            firstField = false;
+        }
+    }
+
+    private static String normalizeSeparators(String path) {
+        return path.replace(File.separatorChar, NORMALIZED_SEPARATOR_CHAR);
+    }
+
+    /**
+     * @return the longest directory of this pattern that contains no
+     * directives, where all the matching files reside
+     */
+    File getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    /**
+     * Finds the existing files that could have been created by this pattern,
+     * optionally followed by a suffix, e.g., {@code .gz}.
+     * <p>
+     * Matching is best-effort: each {@code %d{...}} directive is matched by
+     * the shape of the text its date time pattern produces, e.g., digits for
+     * numeric fields.
+     * </p>
+     *
+     * @return the existing files matching this pattern
+     *
+     * @throws IOException on directory traversal failures
+     *
+     * @see #findSuffix(File)
+     */
+    List<File> findFiles() throws IOException {
+        if (!baseDirectory.isDirectory()) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> paths = Files.walk(baseDirectory.toPath(), maxDepth)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .map(Path::toFile)
+                    .filter(file -> findSuffix(file) != null)
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException error) {
+            throw error.getCause();
+        }
+    }
 
+    /**
+     * @param file a file
+     *
+     * @return the text following the part of the given file's absolute path
+     * matching this pattern, e.g., {@code .gz}; {@code null}, if there is no
+     * match
+     */
+    String findSuffix(File file) {
+        String path = normalizeSeparators(file.getAbsolutePath());
+        Matcher matcher = regex.matcher(path);
+        return matcher.lookingAt()
+                ? path.substring(matcher.end())
+                : null;
     }
 
     /**
      * @param instant an instant used to format timestamps in the pattern
      *
-     * @return a file, where the name is formatted by this pattern and the given instant
+     * @return a file, where the name is formatted by this pattern and the
+     * given instant, and {@code %i} directives are rendered as {@code 0}
      */
     public File create(Instant instant) {
-        StringBuilder pathNameBuilder = new StringBuilder();
-        for (Field field : fields) {
-            field.render(pathNameBuilder, instant);
+        return create(instant, 0);
+    }
+
+    /**
+     * Formatted timestamps are cached per time bucket, that is, consecutive
+     * instants rendering the same text do not cause formatting.
+     *
+     * @param instant an instant used to format timestamps in the pattern
+     * @param sequence the number {@code %i} directives are rendered with
+     *
+     * @return a file, where the name is formatted by this pattern, the given
+     * instant, and the given sequence
+     */
+    public File create(Instant instant, int sequence) {
+        StringBuilder pathNameBuilder = new StringBuilder(pattern.length() + 32);
+        // noinspection ForLoopReplaceableByForEach (avoid iterator instantion)
+        for (int fieldIndex = 0; fieldIndex < fields.length; fieldIndex++) {
+            fields[fieldIndex].render(pathNameBuilder, instant, sequence);
         }
         String pathName = pathNameBuilder.toString();
         return new File(pathName);
     }
 
+    /**
+     * @return {@code true}, if the pattern contains a {@code %i} directive
+     */
+    public boolean isSequenced() {
+        return sequenced;
+    }
+
     /**
      * @return the formatting pattern used
      */
@@ -277,8 +672,10 @@ public class RotatingFilePattern {
          * Sets the pattern for formatting the created file names, e.g.,
          * {@code /tmp/app-%d{yyyyMMdd-HHmmss.SSS}.log}. The value passed inside
          * {@code %d{...}} directive will be rendered using a
-         * {@link DateTimeFormatter}. {@code %%} directive renders a single
-         * {@code %} character.
+         * {@link DateTimeFormatter}. {@code %i} directive renders a sequence
+         * number distinguishing files created in the same time bucket, that is,
+         * files whose names would otherwise be the same. {@code %%} directive
+         * renders a single {@code %} character.
          *
          * @param pattern the formatting pattern, e.g.,
          *                {@code /tmp/app-%d{yyyyMMdd-HHmmss.SSS}.log}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads the content written by a {@link RotatingFileOutputStream} in a given
+ * instant range, spanning rotated, compressed, and active files in order.
+ * <p>
+ * Files are selected using the {@link SegmentManifest manifest}, if
+ * {@link RotationConfig#isManifest() enabled} and present, along with the
+ * uncompressed files matching the {@code filePattern} that are not recorded
+ * yet, e.g., due to compression in progress. Otherwise, the files matching
+ * the {@code filePattern} are listed and ordered by their modification
+ * time, which compression preserves, where each file is assumed to cover
+ * the time since the modification of the previous one. The active file is
+ * read last, if it overlaps the range. Note that files are selected as a
+ * whole, that is, records are not filtered by their timestamps.
+ * </p><p>
+ * GZIP and LZ4 files are decompressed transparently. Files are read and decompressed
+ * ahead of the reader on a background thread into a bounded set of reusable
+ * chunks. Files deleted after the selection, e.g., due to retention, are
+ * skipped, and rotated files compressed after the selection are read from
+ * their compressed counterparts.
+ * </p>
+ */
+public final class RotatingFileRangeInputStream extends InputStream {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RotatingFileRangeInputStream.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int CHUNK_COUNT = 16;
+
+    private static final class Chunk {
+
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+
+        private int length;
+
+        private IOException error;
+
+    }
+
+    private final List<File> files;
+
+    private final BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(CHUNK_COUNT);
+
+    private final BlockingQueue<Chunk> filledChunks = new ArrayBlockingQueue<>(CHUNK_COUNT);
+
+    private final Thread prefetchThread;
+
+    private final String compressionExtension;
+
+    private Chunk chunk;
+
+    private int chunkOffset;
+
+    private boolean eof = false;
+
+    private volatile boolean closed = false;
+
+    private RotatingFileRangeInputStream(File file, List<File> files, String compressionExtension) {
+        this.files = Collections.unmodifiableList(files);
+        this.compressionExtension = compressionExtension;
+        for (int chunkIndex = 0; chunkIndex < CHUNK_COUNT; chunkIndex++) {
+            freeChunks.add(new Chunk());
+        }
+        String threadName = String.format("%s.prefetch(%s)", RotatingFileRangeInputStream.class.getSimpleName(), file);
+        this.prefetchThread = new Thread(this::prefetch, threadName);
+        prefetchThread.setDaemon(true);
+        prefetchThread.start();
+    }
+
+    /**
+     * Opens a stream reading the files of the given configuration written in
+     * the given (inclusive) instant range.
+     *
+     * @param config the configuration of the {@link RotatingFileOutputStream}
+     * @param fromInstant the inclusive start of the range
+     * @param toInstant the inclusive end of the range
+     *
+     * @return a stream reading the selected files in order
+     */
+    public static RotatingFileRangeInputStream open(
+            RotationConfig config,
+            Instant fromInstant,
+            Instant toInstant)
+            throws IOException {
+        Objects.requireNonNull(config, "config");
+        Objects.requireNonNull(fromInstant, "fromInstant");
+        Objects.requireNonNull(toInstant, "toInstant");
+        if (config.getFilePattern() == null) {
+            throw new IllegalArgumentException("range reads require a filePattern");
+        }
+        List<File> files = selectFiles(config, fromInstant, toInstant);
+        LOGGER.debug(
+                "selected files {fromInstant={}, toInstant={}, files={}}",
+                fromInstant, toInstant, files);
+        return new RotatingFileRangeInputStream(
+                config.getFile(), files, config.getCompressionCodec().getFileExtension());
+    }
+
+    private static List<File> selectFiles(
+            RotationConfig config,
+            Instant fromInstant,
+            Instant toInstant)
+            throws IOException {
+
+        // Select the rotated files.
+        List<File> files = new ArrayList<>();
+        File manifestFile = SegmentManifest.getFile(config);
+        Instant lastRotationInstant = Instant.EPOCH;
+        if (config.isManifest() && manifestFile.exists()) {
+
+            // Collect the recorded files, and the ones rotated, but not
+            // recorded yet, e.g., due to compression in progress.
+            List<SegmentManifest.Entry> entries = new ArrayList<>(SegmentManifest.load(manifestFile).getEntries());
+            entries.sort(Comparator.comparing(SegmentManifest.Entry::getLastWriteInstant));
+            Set<File> recordedFiles = new HashSet<>();
+            for (SegmentManifest.Entry entry : entries) {
+                recordedFiles.add(entry.getFile());
+            }
+            List<File> pendingFiles = findRotatedFiles(config, false);
+            pendingFiles.removeIf(recordedFiles::contains);
+
+            // Merge both in the order of their last writes.
+            int entryIndex = 0;
+            int pendingFileIndex = 0;
+            while (entryIndex < entries.size() || pendingFileIndex < pendingFiles.size()) {
+                SegmentManifest.Entry entry = entryIndex < entries.size() ? entries.get(entryIndex) : null;
+                File pendingFile = pendingFileIndex < pendingFiles.size() ? pendingFiles.get(pendingFileIndex) : null;
+                Instant pendingInstant = pendingFile != null ? Instant.ofEpochMilli(pendingFile.lastModified()) : null;
+                if (pendingInstant == null || (entry != null && !entry.getLastWriteInstant().isAfter(pendingInstant))) {
+                    if (entry.overlaps(fromInstant, toInstant)) {
+                        files.add(entry.getFile());
+                    }
+                    lastRotationInstant = entry.getLastWriteInstant();
+                    entryIndex++;
+                } else {
+                    if (overlaps(lastRotationInstant, pendingInstant, fromInstant, toInstant)) {
+                        files.add(pendingFile);
+                    }
+                    lastRotationInstant = pendingInstant;
+                    pendingFileIndex++;
+                }
+            }
+
+        } else {
+            for (File rotatedFile : findRotatedFiles(config, true)) {
+                Instant lastModifiedInstant = Instant.ofEpochMilli(rotatedFile.lastModified());
+                if (overlaps(lastRotationInstant, lastModifiedInstant, fromInstant, toInstant)) {
+                    files.add(rotatedFile);
+                }
+                lastRotationInstant = lastModifiedInstant;
+            }
+        }
+
+        // Select the active file.
+        if (!lastRotationInstant.isAfter(toInstant) && config.getFile().exists()) {
+            files.add(config.getFile());
+        }
+        return files;
+
+    }
+
+    /**
+     * @param compressed if {@code true}, compressed files are included as
+     *                   well; otherwise, only uncompressed ones are
+     *
+     * @return the rotated files matching the file pattern, in the order they
+     * are last modified
+     */
+    private static List<File> findRotatedFiles(RotationConfig config, boolean compressed) throws IOException {
+        RotatingFilePattern filePattern = config.getFilePattern();
+        File activeFile = config.getFile().getAbsoluteFile();
+        String compressionExtension = config.getCompressionCodec().getFileExtension();
+        List<File> rotatedFiles = new ArrayList<>();
+        for (File foundFile : filePattern.findFiles()) {
+            String suffix = filePattern.findSuffix(foundFile);
+            boolean rotated = (compressed && compressionExtension.equals(suffix)) ||
+                    (suffix.isEmpty() && !foundFile.equals(activeFile));
+            if (rotated) {
+                rotatedFiles.add(foundFile);
+            }
+        }
+        rotatedFiles.sort(Comparator.comparingLong(File::lastModified).thenComparing(File::getPath));
+        return rotatedFiles;
+    }
+
+    /**
+     * @return {@code true}, if the file rotated at the given instant after
+     * the preceding rotation is written in the given (inclusive) range
+     */
+    private static boolean overlaps(
+            Instant lastRotationInstant,
+            Instant rotationInstant,
+            Instant fromInstant,
+            Instant toInstant) {
+        return !lastRotationInstant.isAfter(toInstant) && !rotationInstant.isBefore(fromInstant);
+    }
+
+    /**
+     * @return the selected files in the order they are read
+     */
+    public List<File> getFiles() {
+        return files;
+    }
+
+    private void prefetch() {
+        try {
+            for (File file : files) {
+                prefetch(file);
+            }
+            Chunk endChunk = freeChunks.take();
+            endChunk.length = -1;
+            filledChunks.put(endChunk);
+        } catch (InterruptedException ignored) {
+            // The stream is closed.
+        } catch (IOException error) {
+            try {
+                // The reader eventually returns a chunk, unless closed.
+                Chunk errorChunk = freeChunks.take();
+                errorChunk.error = error;
+                filledChunks.put(errorChunk);
+            } catch (InterruptedException ignored) {
+                // The stream is closed.
+            }
+        }
+    }
+
+    private void prefetch(File file) throws IOException, InterruptedException {
+        InputStream inputStream = openFile(file);
+        if (inputStream == null) {
+            LOGGER.debug("skipping missing file {file={}}", file);
+            return;
+        }
+        try {
+            for (;;) {
+                Chunk chunk = freeChunks.take();
+                int length = readFully(inputStream, chunk.buffer);
+                if (length == 0) {
+                    freeChunks.put(chunk);
+                    break;
+                }
+                chunk.length = length;
+                filledChunks.put(chunk);
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * @return a stream reading the content of the given file, or {@code null}
+     * if neither the file nor its compressed counterpart exists
+     */
+    private InputStream openFile(File file) throws IOException {
+        if (!file.exists() && !file.getName().endsWith(compressionExtension)) {
+            file = new File(file.getPath() + compressionExtension);
+        }
+        try {
+            if (file.getName().endsWith(CompressionCodec.GZIP.getFileExtension())) {
+                return GzipBlockInputStream.open(file);
+            } else if (file.getName().endsWith(CompressionCodec.LZ4.getFileExtension())) {
+                return Lz4FrameInputStream.open(file);
+            }
+            return Files.newInputStream(file.toPath());
+        } catch (NoSuchFileException ignored) {
+            return null;
+        }
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int readByteCount = inputStream.read(buffer, length, buffer.length - length);
+            if (readByteCount < 0) {
+                break;
+            }
+            length += readByteCount;
+        }
+        return length;
+    }
+
+    /**
+     * @return {@code true}, if there are bytes to read in the current chunk
+     */
+    private boolean unsafeFillChunk() throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        if (eof) {
+            return false;
+        }
+        if (chunk != null) {
+            if (chunkOffset < chunk.length) {
+                return true;
+            }
+            freeChunks.add(chunk);
+            chunk = null;
+        }
+        Chunk filledChunk;
+        try {
+            filledChunk = filledChunks.take();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the prefetch");
+        }
+        if (filledChunk.error != null) {
+            eof = true;
+            throw new IOException("prefetch failure", filledChunk.error);
+        }
+        if (filledChunk.length < 0) {
+            eof = true;
+            return false;
+        }
+        chunk = filledChunk;
+        chunkOffset = 0;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!unsafeFillChunk()) {
+            return -1;
+        }
+        return chunk.buffer[chunkOffset++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        Objects.requireNonNull(buffer, "buffer");
+        if (offset < 0 || length < 0 || length > buffer.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (!unsafeFillChunk()) {
+            return -1;
+        }
+        int readByteCount = Math.min(length, chunk.length - chunkOffset);
+        System.arraycopy(chunk.buffer, chunkOffset, buffer, offset, readByteCount);
+        chunkOffset += readByteCount;
+        return readByteCount;
+    }
+
+    @Override
+    public int available() {
+        return chunk != null ? chunk.length - chunkOffset : 0;
+    }
+
+    /**
+     * Stops the background prefetch.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            prefetchThread.interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RotatingFileRangeInputStream{files=%s}", files);
+    }
+
+}
@@ -94,4 +94,19 @@ public interface RotationCallback {
      */
     void onFailure(RotationPolicy policy, Instant instant, File file, Exception error);
 
+    /**
+     * Invoked by {@link RotatingFileOutputStream} after deleting a rotated
+     * file to enforce the retention limits.
+     *
+     * @param instant   the deletion instant
+     * @param file      the deleted file
+     *
+     * @see RotationConfig#getRetentionMaxFileCount()
+     * @see RotationConfig#getRetentionMaxTotalBytes()
+     * @see RotationConfig#getRetentionMaxAge()
+     */
+    default void onDelete(Instant instant, File file) {
+        // Do nothing.
+    }
+
 }
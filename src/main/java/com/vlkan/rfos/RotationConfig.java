@@ -17,8 +17,10 @@
 package com.vlkan.rfos;
 
 import com.vlkan.rfos.policy.RotationPolicy;
+import com.vlkan.rfos.policy.SizeBasedRotationPolicy;
 
 import java.io.File;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Objects;
@@ -36,6 +38,18 @@ public class RotationConfig {
 
     private static final boolean DEFAULT_COMPRESS = false;
 
+    private static final CompressionCodec DEFAULT_COMPRESSION_CODEC = CompressionCodec.GZIP;
+
+    private static final int DEFAULT_COMPRESSION_BUFFER_SIZE = 64 * 1024;
+
+    private static final double DEFAULT_COMPRESSION_SKIP_RATIO = 0;
+
+    private static final int DEFAULT_COMPRESSION_BLOCK_SIZE = 0;
+
+    private static final boolean DEFAULT_COMPRESSION_DICTIONARY = false;
+
+    private static final boolean DEFAULT_COMPRESSION_INDEX = false;
+
     private static final Clock DEFAULT_CLOCK = SystemClock.getInstance();
 
     private static final Set<RotationCallback> DEFAULT_CALLBACKS =
@@ -43,6 +57,38 @@ public class RotationConfig {
 
     private static final int DEFAULT_MAX_BACKUP_COUNT = -1;
 
+    private static final long DEFAULT_RETENTION_MAX_TOTAL_BYTES = 0;
+
+    private static final int DEFAULT_RETENTION_MAX_FILE_COUNT = 0;
+
+    private static final Duration DEFAULT_RETENTION_MAX_AGE = Duration.ZERO;
+
+    private static final long DEFAULT_DISK_SPACE_LOW_WATERMARK = 0;
+
+    private static final long DEFAULT_DISK_SPACE_HIGH_WATERMARK = 0;
+
+    private static final long DEFAULT_DISK_SPACE_HARD_FLOOR = 0;
+
+    private static final Duration DEFAULT_DISK_SPACE_CHECK_INTERVAL = Duration.ofSeconds(10);
+
+    private static final boolean DEFAULT_MANIFEST = false;
+
+    private static final Duration DEFAULT_ROTATION_STAGGER = Duration.ZERO;
+
+    private static final boolean DEFAULT_TIERED_STORAGE = false;
+
+    private static final VolumePlacement DEFAULT_VOLUME_PLACEMENT = null;
+
+    private static final RotationDurability DEFAULT_ROTATION_DURABILITY = RotationDurability.NONE;
+
+    private static final boolean DEFAULT_SEGMENT_RECYCLING = false;
+
+    private static final boolean DEFAULT_COPY_TRUNCATE = false;
+
+    private static final boolean DEFAULT_MULTI_PROCESS = false;
+
+    private static final boolean DEFAULT_LAZY_OPEN = false;
+
     private enum DefaultExecutorServiceHolder {;
 
         private static final ScheduledExecutorService INSTANCE = createDefaultExecutorService();
@@ -87,8 +133,52 @@ public class RotationConfig {
 
     private final boolean compress;
 
+    private final CompressionCodec compressionCodec;
+
+    private final int compressionBufferSize;
+
+    private final double compressionSkipRatio;
+
+    private final int compressionBlockSize;
+
+    private final boolean compressionDictionary;
+
+    private final boolean compressionIndex;
+
     private final int maxBackupCount;
 
+    private final long retentionMaxTotalBytes;
+
+    private final int retentionMaxFileCount;
+
+    private final Duration retentionMaxAge;
+
+    private final long diskSpaceLowWatermark;
+
+    private final long diskSpaceHighWatermark;
+
+    private final long diskSpaceHardFloor;
+
+    private final Duration diskSpaceCheckInterval;
+
+    private final boolean manifest;
+
+    private final Duration rotationStagger;
+
+    private final boolean tieredStorage;
+
+    private final VolumePlacement volumePlacement;
+
+    private final RotationDurability rotationDurability;
+
+    private final boolean segmentRecycling;
+
+    private final boolean copyTruncate;
+
+    private final boolean multiProcess;
+
+    private final boolean lazyOpen;
+
     private final Clock clock;
 
     private final Set<RotationCallback> callbacks;
@@ -100,7 +190,29 @@ public class RotationConfig {
         this.policies = Collections.unmodifiableSet(builder.policies);
         this.append = builder.append;
         this.compress = builder.compress;
+        this.compressionCodec = builder.compressionCodec;
+        this.compressionBufferSize = builder.compressionBufferSize;
+        this.compressionSkipRatio = builder.compressionSkipRatio;
+        this.compressionBlockSize = builder.compressionBlockSize;
+        this.compressionDictionary = builder.compressionDictionary;
+        this.compressionIndex = builder.compressionIndex;
         this.maxBackupCount = builder.maxBackupCount;
+        this.retentionMaxTotalBytes = builder.retentionMaxTotalBytes;
+        this.retentionMaxFileCount = builder.retentionMaxFileCount;
+        this.retentionMaxAge = builder.retentionMaxAge;
+        this.diskSpaceLowWatermark = builder.diskSpaceLowWatermark;
+        this.diskSpaceHighWatermark = builder.diskSpaceHighWatermark;
+        this.diskSpaceHardFloor = builder.diskSpaceHardFloor;
+        this.diskSpaceCheckInterval = builder.diskSpaceCheckInterval;
+        this.manifest = builder.manifest;
+        this.rotationStagger = builder.rotationStagger;
+        this.tieredStorage = builder.tieredStorage;
+        this.volumePlacement = builder.volumePlacement;
+        this.rotationDurability = builder.rotationDurability;
+        this.segmentRecycling = builder.segmentRecycling;
+        this.copyTruncate = builder.copyTruncate;
+        this.multiProcess = builder.multiProcess;
+        this.lazyOpen = builder.lazyOpen;
         this.clock = builder.clock;
         this.callbacks = Collections.unmodifiableSet(builder.callbacks);
     }
@@ -194,6 +306,11 @@ public class RotationConfig {
      * Gets the {@code compress} flag, indicating, if true, rotated files will
      * be compressed in the background.
      * <p>
+     * Compressed files are first written to a temporary file, which is then
+     * atomically renamed. At start, rotated files matching the
+     * {@code filePattern} that are left uncompressed by a previous run, e.g.,
+     * due to a crash, are compressed in the background.
+     * </p><p>
      * Note that this option cannot be combined with {@code maxBackupCount}.
      * </p>
      *
@@ -206,6 +323,178 @@ public class RotationConfig {
         return compress;
     }
 
+    /**
+     * @return the default compression codec, that is, {@link CompressionCodec#GZIP}
+     */
+    public static CompressionCodec getDefaultCompressionCodec() {
+        return DEFAULT_COMPRESSION_CODEC;
+    }
+
+    /**
+     * Gets the codec used for compressing rotated files.
+     * <p>
+     * {@link CompressionCodec#LZ4} spends far less CPU per byte than
+     * {@link CompressionCodec#GZIP} at the expense of compression ratio.
+     * {@link #getCompressionBufferSize()}, {@link #getCompressionBlockSize()},
+     * {@link #isCompressionDictionary()}, and {@link #isCompressionIndex()}
+     * only apply to {@link CompressionCodec#GZIP}.
+     * </p>
+     *
+     * @return the codec used for compressing rotated files
+     *
+     * @see #isCompress()
+     */
+    public CompressionCodec getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    /**
+     * @return the default size of the buffers used for reading the rotated
+     * file and writing the compressed file
+     */
+    public static int getDefaultCompressionBufferSize() {
+        return DEFAULT_COMPRESSION_BUFFER_SIZE;
+    }
+
+    /**
+     * Gets the size of the buffers used for reading the rotated file and
+     * writing the compressed file. Larger buffers reduce the number of system
+     * calls issued during compression at the expense of memory.
+     *
+     * @return the size of the buffers used for reading the rotated file and
+     * writing the compressed file
+     *
+     * @see #isCompress()
+     */
+    public int getCompressionBufferSize() {
+        return compressionBufferSize;
+    }
+
+    /**
+     * @return the default value of the {@code compressionSkipRatio}, that is,
+     * {@code 0}, denoting that rotated files are compressed regardless of
+     * their content
+     */
+    public static double getDefaultCompressionSkipRatio() {
+        return DEFAULT_COMPRESSION_SKIP_RATIO;
+    }
+
+    /**
+     * Gets the {@code compressionSkipRatio}, indicating, if greater than zero,
+     * rotated files will be left uncompressed when the ratio of their
+     * compressed length to their original length, estimated by deflating a
+     * few sampled blocks, is greater than or equal to this value.
+     * <p>
+     * This avoids burning CPU on already compressed or encrypted content. The
+     * {@link RotationCallback#onSuccess(RotationPolicy, java.time.Instant, File)}
+     * callback of a skipped compression receives the rotated file. The
+     * decision is persisted in an empty {@code <rotatedFile>.incompressible}
+     * marker file, so that the compression recovery ignores the rotated file
+     * after a restart.
+     * </p>
+     *
+     * @return the {@code compressionSkipRatio}, indicating, if greater than
+     * zero, rotated files will be left uncompressed when their estimated
+     * compression ratio is greater than or equal to this value
+     *
+     * @see #isCompress()
+     */
+    public double getCompressionSkipRatio() {
+        return compressionSkipRatio;
+    }
+
+    /**
+     * @return the default value of the {@code compressionBlockSize}, that is,
+     * {@code 0}, denoting that every rotated file is compressed into a single
+     * GZIP member
+     */
+    public static int getDefaultCompressionBlockSize() {
+        return DEFAULT_COMPRESSION_BLOCK_SIZE;
+    }
+
+    /**
+     * Gets the {@code compressionBlockSize}, indicating, if greater than zero,
+     * rotated files will be compressed into a concatenation of independent
+     * GZIP members, each containing at most this many uncompressed bytes.
+     * <p>
+     * The output is still a valid GZIP file, which can be decompressed using
+     * standard tools, unless {@link #isCompressionDictionary()} is enabled.
+     * </p>
+     *
+     * @return the {@code compressionBlockSize}, indicating, if greater than
+     * zero, rotated files will be compressed into GZIP members containing at
+     * most this many uncompressed bytes
+     *
+     * @see #isCompress()
+     */
+    public int getCompressionBlockSize() {
+        return compressionBlockSize;
+    }
+
+    /**
+     * @return the default value of the {@code compressionDictionary}, that is,
+     * {@code false}
+     */
+    public static boolean getDefaultCompressionDictionary() {
+        return DEFAULT_COMPRESSION_DICTIONARY;
+    }
+
+    /**
+     * Gets the {@code compressionDictionary}, indicating, if {@code true},
+     * the last 32 KiB of the previously compressed rotated file will be used
+     * as the preset dictionary while compressing the next one.
+     * <p>
+     * This improves the compression ratio of small, similar segments, e.g.,
+     * structured log files rotated often or compressed in small blocks. The
+     * dictionary rolls over with every compression, and hence follows the
+     * drift of the content. The first rotated file compressed since start
+     * gets no dictionary. Each dictionary is stored once per directory in a
+     * {@code <id>.dict} file, where {@code <id>} is its Adler-32 checksum
+     * recorded in every compressed file using it. It is required to decompress the content using
+     * {@link GzipBlockInputStream#open(File)}, and deleted by retention once
+     * no compressed file refers to it. Standard GZIP tools cannot decompress
+     * such files.
+     * </p>
+     *
+     * @return the {@code compressionDictionary}, indicating, if {@code true},
+     * the previously compressed rotated file will be used as the preset
+     * dictionary while compressing the next one
+     *
+     * @see #isCompress()
+     */
+    public boolean isCompressionDictionary() {
+        return compressionDictionary;
+    }
+
+    /**
+     * @return the default value of the {@code compressionIndex}, that is,
+     * {@code false}
+     */
+    public static boolean getDefaultCompressionIndex() {
+        return DEFAULT_COMPRESSION_INDEX;
+    }
+
+    /**
+     * Gets the {@code compressionIndex}, indicating, if {@code true}, a
+     * {@link GzipBlockIndex} mapping uncompressed offsets and record numbers
+     * to the GZIP members of the compressed file will be written next to it
+     * in the same pass.
+     * <p>
+     * This allows {@link GzipBlockInputStream#open(File, long)} and
+     * {@link GzipBlockInputStream#openAtRecord(File, long)} to seek directly
+     * into large archives. Requires {@link #getCompressionBlockSize()} to be
+     * greater than zero.
+     * </p>
+     *
+     * @return the {@code compressionIndex}, indicating, if {@code true}, a
+     * block index will be written next to the compressed file
+     *
+     * @see #isCompress()
+     */
+    public boolean isCompressionIndex() {
+        return compressionIndex;
+    }
+
     /**
      * @return the default value of the {@code maxBackupCount}, indicating, if
      * greater than zero, rotated files will be named as {@code file.0},
@@ -235,6 +524,450 @@ public class RotationConfig {
 		return maxBackupCount;
 	}
 
+    /**
+     * @return the default value of the {@code retentionMaxTotalBytes}, that
+     * is, {@code 0}, denoting no limit
+     */
+    public static long getDefaultRetentionMaxTotalBytes() {
+        return DEFAULT_RETENTION_MAX_TOTAL_BYTES;
+    }
+
+    /**
+     * Gets the {@code retentionMaxTotalBytes}, indicating, if greater than
+     * zero, the oldest rotated files will be deleted as long as the total
+     * length of rotated files exceeds this value.
+     * <p>
+     * Retention limits are enforced in the background after every
+     * successful rotation, using an in-memory catalog of rotated files
+     * populated by listing the directory once at start. Compressed files
+     * count with their compressed length. Retention requires
+     * {@code filePattern}.
+     * </p>
+     *
+     * @return the {@code retentionMaxTotalBytes}, indicating, if greater than
+     * zero, the maximum total length of rotated files
+     */
+    public long getRetentionMaxTotalBytes() {
+        return retentionMaxTotalBytes;
+    }
+
+    /**
+     * @return the default value of the {@code retentionMaxFileCount}, that
+     * is, {@code 0}, denoting no limit
+     */
+    public static int getDefaultRetentionMaxFileCount() {
+        return DEFAULT_RETENTION_MAX_FILE_COUNT;
+    }
+
+    /**
+     * Gets the {@code retentionMaxFileCount}, indicating, if greater than
+     * zero, the oldest rotated files will be deleted as long as the number of
+     * rotated files exceeds this value.
+     *
+     * @return the {@code retentionMaxFileCount}, indicating, if greater than
+     * zero, the maximum number of rotated files
+     *
+     * @see #getRetentionMaxTotalBytes()
+     */
+    public int getRetentionMaxFileCount() {
+        return retentionMaxFileCount;
+    }
+
+    /**
+     * @return the default value of the {@code retentionMaxAge}, that is,
+     * {@link Duration#ZERO}, denoting no limit
+     */
+    public static Duration getDefaultRetentionMaxAge() {
+        return DEFAULT_RETENTION_MAX_AGE;
+    }
+
+    /**
+     * Gets the {@code retentionMaxAge}, indicating, if greater than zero,
+     * rotated files last modified earlier than this long ago will be deleted.
+     *
+     * @return the {@code retentionMaxAge}, indicating, if greater than zero,
+     * the maximum age of rotated files
+     *
+     * @see #getRetentionMaxTotalBytes()
+     */
+    public Duration getRetentionMaxAge() {
+        return retentionMaxAge;
+    }
+
+    /**
+     * @return {@code true}, if any of the retention limits is set
+     */
+    boolean isRetentionEnabled() {
+        return retentionMaxTotalBytes > 0 || retentionMaxFileCount > 0 || !retentionMaxAge.isZero();
+    }
+
+    /**
+     * @return the default value of the {@code diskSpaceLowWatermark}, that
+     * is, {@code 0}, denoting no pruning
+     */
+    public static long getDefaultDiskSpaceLowWatermark() {
+        return DEFAULT_DISK_SPACE_LOW_WATERMARK;
+    }
+
+    /**
+     * Gets the {@code diskSpaceLowWatermark}, indicating, if greater than
+     * zero, the oldest rotated files will be deleted, compressed ones first,
+     * once the usable space of the file store containing the rotated files,
+     * i.e., the base directory of the {@code filePattern}, drops below this
+     * many bytes, until it reaches the
+     * {@link #getDiskSpaceHighWatermark() high watermark}. Only rotated files
+     * on that file store are deleted.
+     * <p>
+     * The usable space is checked periodically on the
+     * {@link #getExecutorService() executor} every
+     * {@link #getDiskSpaceCheckInterval() check interval}. Every deleted file
+     * is reported via
+     * {@link RotationCallback#onDelete(java.time.Instant, File)}. Pruning
+     * requires {@code filePattern}.
+     * </p>
+     *
+     * @return the {@code diskSpaceLowWatermark}, indicating, if greater than
+     * zero, the usable space in bytes to start deleting rotated files below
+     */
+    public long getDiskSpaceLowWatermark() {
+        return diskSpaceLowWatermark;
+    }
+
+    /**
+     * @return the default value of the {@code diskSpaceHighWatermark}, that
+     * is, {@code 0}, denoting the {@code diskSpaceLowWatermark}
+     */
+    public static long getDefaultDiskSpaceHighWatermark() {
+        return DEFAULT_DISK_SPACE_HIGH_WATERMARK;
+    }
+
+    /**
+     * Gets the {@code diskSpaceHighWatermark}, that is, the usable space in
+     * bytes to stop deleting rotated files once reached. If zero, the
+     * {@code diskSpaceLowWatermark} is used.
+     *
+     * @return the {@code diskSpaceHighWatermark}, that is, the usable space
+     * in bytes to stop deleting rotated files once reached
+     *
+     * @see #getDiskSpaceLowWatermark()
+     */
+    public long getDiskSpaceHighWatermark() {
+        return diskSpaceHighWatermark;
+    }
+
+    /**
+     * @return the default value of the {@code diskSpaceHardFloor}, that is,
+     * {@code 0}, denoting no limit
+     */
+    public static long getDefaultDiskSpaceHardFloor() {
+        return DEFAULT_DISK_SPACE_HARD_FLOOR;
+    }
+
+    /**
+     * Gets the {@code diskSpaceHardFloor}, indicating, if greater than zero,
+     * writes will fail fast with an {@link java.io.IOException} while the
+     * usable space is below this many bytes, rather than filling up the disk.
+     * <p>
+     * The usable space is checked along with the
+     * {@link #getDiskSpaceLowWatermark() low watermark}, hence writes only
+     * need to read a flag. Entering this state is reported via
+     * {@link RotationCallback#onFailure(RotationPolicy, java.time.Instant, File, Exception)}.
+     * </p>
+     *
+     * @return the {@code diskSpaceHardFloor}, indicating, if greater than
+     * zero, the usable space in bytes to fail writes below
+     */
+    public long getDiskSpaceHardFloor() {
+        return diskSpaceHardFloor;
+    }
+
+    /**
+     * @return the default value of the {@code diskSpaceCheckInterval}, that
+     * is, 10 seconds
+     */
+    public static Duration getDefaultDiskSpaceCheckInterval() {
+        return DEFAULT_DISK_SPACE_CHECK_INTERVAL;
+    }
+
+    /**
+     * @return the period of checking the usable space, if either the
+     * {@code diskSpaceLowWatermark} or the {@code diskSpaceHardFloor} is set
+     */
+    public Duration getDiskSpaceCheckInterval() {
+        return diskSpaceCheckInterval;
+    }
+
+    /**
+     * @return {@code true}, if either the low watermark or the hard floor is set
+     */
+    boolean isDiskSpaceGuardEnabled() {
+        return diskSpaceLowWatermark > 0 || diskSpaceHardFloor > 0;
+    }
+
+    /**
+     * @return the default value of the {@code manifest}, that is,
+     * {@code false}
+     */
+    public static boolean getDefaultManifest() {
+        return DEFAULT_MANIFEST;
+    }
+
+    /**
+     * Gets the {@code manifest}, indicating, if {@code true}, an append-only
+     * {@link SegmentManifest} of rotated files will be maintained next to the
+     * file.
+     * <p>
+     * Each rotated file is recorded along with its first and last write
+     * instants, byte and record counts, compressed length, and checksum once
+     * it is compressed, or right after rotation if compression is disabled.
+     * Requires {@code filePattern}.
+     * </p>
+     *
+     * @return the {@code manifest}, indicating, if {@code true}, a manifest of
+     * rotated files will be maintained
+     *
+     * @see SegmentManifest#load(RotationConfig)
+     */
+    public boolean isManifest() {
+        return manifest;
+    }
+
+    /**
+     * @return the default value of the {@code rotationStagger}, that is, zero, i.e.,
+     * rotations are not staggered
+     */
+    public static Duration getDefaultRotationStagger() {
+        return DEFAULT_ROTATION_STAGGER;
+    }
+
+    /**
+     * Gets the {@code rotationStagger}, that is, the window time-based
+     * rotations are spread over.
+     * <p>
+     * Each stream delays its time-based rotations by a deterministic offset
+     * within this window, derived from the hash of its file path, to avoid
+     * streams sharing a policy rotating at the very same instant. The
+     * rotation instant passed to the {@code filePattern} and callbacks is still
+     * the logical trigger instant, e.g., midnight. The window should be well
+     * below the policy period.
+     * </p>
+     *
+     * @return the {@code rotationStagger}, that is, the window time-based
+     * rotations are spread over
+     */
+    public Duration getRotationStagger() {
+        return rotationStagger;
+    }
+
+    /**
+     * @return the default value of the {@code tieredStorage}, that is,
+     * {@code false}
+     */
+    public static boolean getDefaultTieredStorage() {
+        return DEFAULT_TIERED_STORAGE;
+    }
+
+    /**
+     * Gets the {@code tieredStorage}, indicating, if {@code true}, rotated
+     * files will be moved to the {@code filePattern} in the background.
+     * <p>
+     * Rotation renames the file next to itself, i.e., on the same file
+     * system, and a background task moves it to its final path, e.g., on an
+     * archive volume. If the final path is on a different file system, the
+     * content is transferred to a temporary file, forced to the disk,
+     * verified, and moved into place, and then the source is deleted. Hence,
+     * rotation never blocks writers with a copy. Callbacks are notified
+     * with the final path. Migrations interrupted by a crash are resumed at
+     * start. Requires {@code filePattern}.
+     * </p>
+     *
+     * @return the {@code tieredStorage}, indicating, if {@code true}, rotated
+     * files will be moved to the {@code filePattern} in the background
+     */
+    public boolean isTieredStorage() {
+        return tieredStorage;
+    }
+
+    /**
+     * @return the default value of the {@code volumePlacement}, that is,
+     * {@code null}, i.e., the active file is written to {@code file}
+     */
+    public static VolumePlacement getDefaultVolumePlacement() {
+        return DEFAULT_VOLUME_PLACEMENT;
+    }
+
+    /**
+     * Gets the {@code volumePlacement}, that is, the volumes active files are
+     * spread over, if any.
+     * <p>
+     * Every new active file is created on a volume picked by the placement,
+     * and the {@code file} is replaced with a symbolic link to it. Rotated
+     * files are renamed next to themselves, i.e., on the same volume, and
+     * moved to the {@code filePattern} in the background by
+     * {@code tieredStorage}. Hence, rotation never copies across devices
+     * while blocking writers. Requires {@code tieredStorage}.
+     * </p>
+     *
+     * @return the {@code volumePlacement}, that is, the volumes active files
+     * are spread over, if any
+     */
+    public VolumePlacement getVolumePlacement() {
+        return volumePlacement;
+    }
+
+    /**
+     * @return the default value of the {@code rotationDurability}, that is,
+     * {@link RotationDurability#NONE}
+     */
+    public static RotationDurability getDefaultRotationDurability() {
+        return DEFAULT_ROTATION_DURABILITY;
+    }
+
+    /**
+     * Gets the {@code rotationDurability}, that is, the level of durability
+     * guaranteed for rotated files against crashes.
+     * <p>
+     * Rotated files, and their compressed counterparts, are forced to the
+     * disk, and so are the directories they are moved in and out, depending
+     * on the level. Syncs are performed on the executor before
+     * {@link RotationCallback#onSuccess(RotationPolicy, java.time.Instant, File) onSuccess()}
+     * is invoked, and a compressed file is synced before its source is
+     * deleted.
+     * </p>
+     *
+     * @return the {@code rotationDurability}, that is, the level of
+     * durability guaranteed for rotated files against crashes
+     */
+    public RotationDurability getRotationDurability() {
+        return rotationDurability;
+    }
+
+    /**
+     * @return the default value of the {@code segmentRecycling}, that is,
+     * {@code false}
+     */
+    public static boolean getDefaultSegmentRecycling() {
+        return DEFAULT_SEGMENT_RECYCLING;
+    }
+
+    /**
+     * Gets the {@code segmentRecycling}, indicating, if {@code true}, the
+     * oldest backup will be reused as the next active file.
+     * <p>
+     * Instead of deleting the oldest backup and creating a fresh file, the
+     * oldest backup is renamed into place and overwritten from the start.
+     * Hence, steady-state rotations allocate neither inodes nor extents on
+     * the file system. The logical length of a recycled active file is
+     * tracked in a memory-mapped {@code .length} sidecar file next to it,
+     * updated on every write, and the file is truncated to its logical
+     * length when it gets rotated or closed, or the stream is restarted
+     * after a crash. Note that until then, the active file contains stale
+     * bytes past its logical length. {@link RotatingFileInputStream} does
+     * not read them, though other readers must not read past the length in
+     * the sidecar file. Requires {@code maxBackupCount}.
+     * </p>
+     *
+     * @return the {@code segmentRecycling}, indicating, if {@code true}, the
+     * oldest backup will be reused as the next active file
+     */
+    public boolean isSegmentRecycling() {
+        return segmentRecycling;
+    }
+
+    /**
+     * @return the default value of the {@code copyTruncate}, that is,
+     * {@code false}
+     */
+    public static boolean getDefaultCopyTruncate() {
+        return DEFAULT_COPY_TRUNCATE;
+    }
+
+    /**
+     * Gets the {@code copyTruncate}, indicating, if {@code true}, the file
+     * will be copied to the rotated file and truncated, instead of being
+     * renamed.
+     * <p>
+     * This allows external processes keeping the file open, e.g., agents
+     * unable to follow renames, to keep on reading the same file. The copy
+     * is performed using {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * i.e., by the kernel without a copy in the user space, while writes
+     * are blocked. Bytes written to the file by other processes during the
+     * copy are lost. This option cannot be combined with
+     * {@code tieredStorage}, {@code volumePlacement}, or
+     * {@code segmentRecycling}.
+     * </p>
+     *
+     * @return the {@code copyTruncate}, indicating, if {@code true}, the file
+     * will be copied to the rotated file and truncated
+     */
+    public boolean isCopyTruncate() {
+        return copyTruncate;
+    }
+
+    /**
+     * @return the default value of the {@code multiProcess}, that is,
+     * {@code false}
+     */
+    public static boolean getDefaultMultiProcess() {
+        return DEFAULT_MULTI_PROCESS;
+    }
+
+    /**
+     * Gets the {@code multiProcess}, indicating, if {@code true}, multiple
+     * processes write to the same file, each using its own stream.
+     * <p>
+     * Writes are appended using {@code O_APPEND}, and hence are not
+     * interleaved. The size of the file and the rotation state are shared
+     * through a memory-mapped control file, i.e., {@code <file>.control}.
+     * On a rotation, the process acquiring the lock of the lock file, i.e.,
+     * {@code <file>.lock}, using
+     * {@link java.nio.channels.FileChannel#tryLock(long, long, boolean)}
+     * renames the file, and the rest re-open the file on their next write.
+     * Bytes written by the rest during the rename end up in the rotated file.
+     * A process finding no other writers at start resets the shared size to
+     * the length of the file, discarding the one left by a previous run.
+     * Requires {@code append}, and cannot be combined with
+     * {@code tieredStorage}, {@code volumePlacement},
+     * {@code segmentRecycling}, {@code copyTruncate}, or exact size-based
+     * policies. Neither can it be combined with {@code compress},
+     * {@code manifest}, retention limits, or
+     * {@code diskSpaceLowWatermark}, since their state is kept per
+     * process.
+     * </p>
+     *
+     * @return the {@code multiProcess}, indicating, if {@code true}, multiple
+     * processes write to the same file
+     */
+    public boolean isMultiProcess() {
+        return multiProcess;
+    }
+
+    /**
+     * @return the default value of the {@code lazyOpen}, that is,
+     * {@code false}
+     */
+    public static boolean getDefaultLazyOpen() {
+        return DEFAULT_LAZY_OPEN;
+    }
+
+    /**
+     * Gets the {@code lazyOpen}, indicating, if {@code true}, the file is
+     * opened, and the policies are started, on the first write, instead of
+     * on construction.
+     * <p>
+     * This speeds up the startup of applications creating many streams, and
+     * no file is created for streams that are never written to. Until the
+     * first write, neither the {@code onOpen} callbacks are invoked, nor
+     * rotations are performed.
+     * </p>
+     *
+     * @return the {@code lazyOpen}, indicating, if {@code true}, the file is
+     * opened on the first write
+     */
+    public boolean isLazyOpen() {
+        return lazyOpen;
+    }
+
     /**
      * @return the default clock implementation
      */
@@ -280,7 +1013,29 @@ public class RotationConfig {
         RotationConfig that = (RotationConfig) instance;
         return append == that.append &&
                 compress == that.compress &&
+                compressionCodec == that.compressionCodec &&
+                compressionBufferSize == that.compressionBufferSize &&
+                Double.compare(compressionSkipRatio, that.compressionSkipRatio) == 0 &&
+                compressionBlockSize == that.compressionBlockSize &&
+                compressionDictionary == that.compressionDictionary &&
+                compressionIndex == that.compressionIndex &&
 				maxBackupCount == that.maxBackupCount &&
+                retentionMaxTotalBytes == that.retentionMaxTotalBytes &&
+                retentionMaxFileCount == that.retentionMaxFileCount &&
+                Objects.equals(retentionMaxAge, that.retentionMaxAge) &&
+                diskSpaceLowWatermark == that.diskSpaceLowWatermark &&
+                diskSpaceHighWatermark == that.diskSpaceHighWatermark &&
+                diskSpaceHardFloor == that.diskSpaceHardFloor &&
+                Objects.equals(diskSpaceCheckInterval, that.diskSpaceCheckInterval) &&
+                manifest == that.manifest &&
+                Objects.equals(rotationStagger, that.rotationStagger) &&
+                tieredStorage == that.tieredStorage &&
+                Objects.equals(volumePlacement, that.volumePlacement) &&
+                Objects.equals(rotationDurability, that.rotationDurability) &&
+                segmentRecycling == that.segmentRecycling &&
+                copyTruncate == that.copyTruncate &&
+                multiProcess == that.multiProcess &&
+                lazyOpen == that.lazyOpen &&
                 Objects.equals(file, that.file) &&
                 Objects.equals(filePattern, that.filePattern) &&
                 Objects.equals(executorService, that.executorService) &&
@@ -298,7 +1053,29 @@ public class RotationConfig {
                 policies,
                 append,
                 compress,
+                compressionCodec,
+                compressionBufferSize,
+                compressionSkipRatio,
+                compressionBlockSize,
+                compressionDictionary,
+                compressionIndex,
                 maxBackupCount,
+                retentionMaxTotalBytes,
+                retentionMaxFileCount,
+                retentionMaxAge,
+                diskSpaceLowWatermark,
+                diskSpaceHighWatermark,
+                diskSpaceHardFloor,
+                diskSpaceCheckInterval,
+                manifest,
+                rotationStagger,
+                tieredStorage,
+                volumePlacement,
+                rotationDurability,
+                segmentRecycling,
+                copyTruncate,
+                multiProcess,
+                lazyOpen,
                 clock,
                 callbacks);
     }
@@ -325,24 +1102,68 @@ public class RotationConfig {
         return new Builder();
     }
 
-    /**
-     * The rotation configuration builder.
-     */
-    public static class Builder {
+    /**
+     * The rotation configuration builder.
+     */
+    public static class Builder {
+
+        private File file;
+
+        private RotatingFilePattern filePattern;
+
+        private ScheduledExecutorService executorService;
+
+        private Set<RotationPolicy> policies;
+
+        private boolean append = DEFAULT_APPEND;
+
+        private boolean compress = DEFAULT_COMPRESS;
+
+        private CompressionCodec compressionCodec = DEFAULT_COMPRESSION_CODEC;
+
+        private int compressionBufferSize = DEFAULT_COMPRESSION_BUFFER_SIZE;
+
+        private double compressionSkipRatio = DEFAULT_COMPRESSION_SKIP_RATIO;
+
+        private int compressionBlockSize = DEFAULT_COMPRESSION_BLOCK_SIZE;
+
+        private boolean compressionDictionary = DEFAULT_COMPRESSION_DICTIONARY;
+
+        private boolean compressionIndex = DEFAULT_COMPRESSION_INDEX;
+
+        private int maxBackupCount = DEFAULT_MAX_BACKUP_COUNT;
+
+        private long retentionMaxTotalBytes = DEFAULT_RETENTION_MAX_TOTAL_BYTES;
+
+        private int retentionMaxFileCount = DEFAULT_RETENTION_MAX_FILE_COUNT;
+
+        private Duration retentionMaxAge = DEFAULT_RETENTION_MAX_AGE;
+
+        private long diskSpaceLowWatermark = DEFAULT_DISK_SPACE_LOW_WATERMARK;
+
+        private long diskSpaceHighWatermark = DEFAULT_DISK_SPACE_HIGH_WATERMARK;
+
+        private long diskSpaceHardFloor = DEFAULT_DISK_SPACE_HARD_FLOOR;
+
+        private Duration diskSpaceCheckInterval = DEFAULT_DISK_SPACE_CHECK_INTERVAL;
 
-        private File file;
+        private boolean manifest = DEFAULT_MANIFEST;
 
-        private RotatingFilePattern filePattern;
+        private Duration rotationStagger = DEFAULT_ROTATION_STAGGER;
 
-        private ScheduledExecutorService executorService;
+        private boolean tieredStorage = DEFAULT_TIERED_STORAGE;
 
-        private Set<RotationPolicy> policies;
+        private VolumePlacement volumePlacement = DEFAULT_VOLUME_PLACEMENT;
 
-        private boolean append = DEFAULT_APPEND;
+        private RotationDurability rotationDurability = DEFAULT_ROTATION_DURABILITY;
 
-        private boolean compress = DEFAULT_COMPRESS;
+        private boolean segmentRecycling = DEFAULT_SEGMENT_RECYCLING;
 
-        private int maxBackupCount = DEFAULT_MAX_BACKUP_COUNT;
+        private boolean copyTruncate = DEFAULT_COPY_TRUNCATE;
+
+        private boolean multiProcess = DEFAULT_MULTI_PROCESS;
+
+        private boolean lazyOpen = DEFAULT_LAZY_OPEN;
 
         private Clock clock = DEFAULT_CLOCK;
 
@@ -358,7 +1179,29 @@ public class RotationConfig {
             this.policies = config.policies;
             this.append = config.append;
             this.compress = config.append;
+            this.compressionCodec = config.compressionCodec;
+            this.compressionBufferSize = config.compressionBufferSize;
+            this.compressionSkipRatio = config.compressionSkipRatio;
+            this.compressionBlockSize = config.compressionBlockSize;
+            this.compressionDictionary = config.compressionDictionary;
+            this.compressionIndex = config.compressionIndex;
             this.maxBackupCount = config.maxBackupCount;
+            this.retentionMaxTotalBytes = config.retentionMaxTotalBytes;
+            this.retentionMaxFileCount = config.retentionMaxFileCount;
+            this.retentionMaxAge = config.retentionMaxAge;
+            this.diskSpaceLowWatermark = config.diskSpaceLowWatermark;
+            this.diskSpaceHighWatermark = config.diskSpaceHighWatermark;
+            this.diskSpaceHardFloor = config.diskSpaceHardFloor;
+            this.diskSpaceCheckInterval = config.diskSpaceCheckInterval;
+            this.manifest = config.manifest;
+            this.rotationStagger = config.rotationStagger;
+            this.tieredStorage = config.tieredStorage;
+            this.volumePlacement = config.volumePlacement;
+            this.rotationDurability = config.rotationDurability;
+            this.segmentRecycling = config.segmentRecycling;
+            this.copyTruncate = config.copyTruncate;
+            this.multiProcess = config.multiProcess;
+            this.lazyOpen = config.lazyOpen;
             this.clock = config.clock;
             this.callbacks = config.callbacks;
         }
@@ -519,6 +1362,112 @@ public class RotationConfig {
             return this;
         }
 
+        /**
+         * Sets the codec used for compressing rotated files.
+         *
+         * @param compressionCodec the codec used for compressing rotated files
+         *
+         * @return this builder
+         *
+         * @see #getDefaultCompressionCodec()
+         */
+        public Builder compressionCodec(CompressionCodec compressionCodec) {
+            this.compressionCodec = compressionCodec;
+            return this;
+        }
+
+        /**
+         * Sets the size of the buffers used for reading the rotated file and
+         * writing the compressed file.
+         *
+         * @param compressionBufferSize the size of the buffers used for
+         *                              reading the rotated file and writing
+         *                              the compressed file
+         *
+         * @return this builder
+         *
+         * @see #getDefaultCompressionBufferSize()
+         */
+        public Builder compressionBufferSize(int compressionBufferSize) {
+            this.compressionBufferSize = compressionBufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the {@code compressionSkipRatio}, indicating, if greater than
+         * zero, rotated files will be left uncompressed when the ratio of
+         * their compressed length to their original length, estimated by
+         * deflating a few sampled blocks, is greater than or equal to this
+         * value, e.g., {@code 0.9}.
+         *
+         * @param compressionSkipRatio if greater than zero, rotated files will
+         *                             be left uncompressed when their
+         *                             estimated compression ratio is greater
+         *                             than or equal to this value
+         *
+         * @return this builder
+         *
+         * @see #getDefaultCompressionSkipRatio()
+         */
+        public Builder compressionSkipRatio(double compressionSkipRatio) {
+            this.compressionSkipRatio = compressionSkipRatio;
+            return this;
+        }
+
+        /**
+         * Sets the {@code compressionBlockSize}, indicating, if greater than
+         * zero, rotated files will be compressed into a concatenation of
+         * independent GZIP members, each containing at most this many
+         * uncompressed bytes.
+         *
+         * @param compressionBlockSize if greater than zero, the maximum number
+         *                             of uncompressed bytes per GZIP member
+         *
+         * @return this builder
+         *
+         * @see #getDefaultCompressionBlockSize()
+         */
+        public Builder compressionBlockSize(int compressionBlockSize) {
+            this.compressionBlockSize = compressionBlockSize;
+            return this;
+        }
+
+        /**
+         * Sets the {@code compressionDictionary}, indicating, if {@code true},
+         * the last 32 KiB of the previously compressed rotated file will be
+         * used as the preset dictionary while compressing the next one.
+         *
+         * @param compressionDictionary if {@code true}, the previously
+         *                              compressed rotated file will be used
+         *                              as the preset dictionary while
+         *                              compressing the next one
+         *
+         * @return this builder
+         *
+         * @see #getDefaultCompressionDictionary()
+         */
+        public Builder compressionDictionary(boolean compressionDictionary) {
+            this.compressionDictionary = compressionDictionary;
+            return this;
+        }
+
+        /**
+         * Sets the {@code compressionIndex}, indicating, if {@code true}, a
+         * {@link GzipBlockIndex} will be written next to the compressed file,
+         * allowing readers to seek directly into it.
+         *
+         * @param compressionIndex if {@code true}, a block index will be
+         *                         written next to the compressed file
+         *
+         * @return this builder
+         *
+         * @see #getDefaultCompressionIndex()
+         */
+        public Builder compressionIndex(boolean compressionIndex) {
+            this.compressionIndex = compressionIndex;
+            return this;
+        }
+
         /**
          * Gets the {@code maxBackupCount}, indicating, if greater than zero,
          * rotated files will be named as {@code file.0}, {@code file.1},
@@ -542,6 +1491,268 @@ public class RotationConfig {
             return this;
         }
 
+        /**
+         * Sets the {@code retentionMaxTotalBytes}, indicating, if greater
+         * than zero, the oldest rotated files will be deleted as long as the
+         * total length of rotated files exceeds this value.
+         *
+         * @param retentionMaxTotalBytes if greater than zero, the maximum
+         *                               total length of rotated files
+         *
+         * @return this builder
+         *
+         * @see #getDefaultRetentionMaxTotalBytes()
+         */
+        public Builder retentionMaxTotalBytes(long retentionMaxTotalBytes) {
+            this.retentionMaxTotalBytes = retentionMaxTotalBytes;
+            return this;
+        }
+
+        /**
+         * Sets the {@code retentionMaxFileCount}, indicating, if greater than
+         * zero, the oldest rotated files will be deleted as long as the number
+         * of rotated files exceeds this value.
+         *
+         * @param retentionMaxFileCount if greater than zero, the maximum
+         *                              number of rotated files
+         *
+         * @return this builder
+         *
+         * @see #getDefaultRetentionMaxFileCount()
+         */
+        public Builder retentionMaxFileCount(int retentionMaxFileCount) {
+            this.retentionMaxFileCount = retentionMaxFileCount;
+            return this;
+        }
+
+        /**
+         * Sets the {@code retentionMaxAge}, indicating, if greater than zero,
+         * rotated files last modified earlier than this long ago will be
+         * deleted.
+         *
+         * @param retentionMaxAge if greater than zero, the maximum age of
+         *                        rotated files
+         *
+         * @return this builder
+         *
+         * @see #getDefaultRetentionMaxAge()
+         */
+        public Builder retentionMaxAge(Duration retentionMaxAge) {
+            this.retentionMaxAge = retentionMaxAge;
+            return this;
+        }
+
+        /**
+         * Sets the {@code diskSpaceLowWatermark}, indicating, if greater than
+         * zero, the oldest rotated files will be deleted, compressed ones
+         * first, once the usable space drops below this many bytes.
+         *
+         * @param diskSpaceLowWatermark if greater than zero, the usable space
+         *                              in bytes to start deleting rotated
+         *                              files below
+         *
+         * @return this builder
+         *
+         * @see #getDefaultDiskSpaceLowWatermark()
+         */
+        public Builder diskSpaceLowWatermark(long diskSpaceLowWatermark) {
+            this.diskSpaceLowWatermark = diskSpaceLowWatermark;
+            return this;
+        }
+
+        /**
+         * Sets the {@code diskSpaceHighWatermark}, that is, the usable space
+         * in bytes to stop deleting rotated files once reached.
+         *
+         * @param diskSpaceHighWatermark the usable space in bytes to stop
+         *                               deleting rotated files once reached
+         *
+         * @return this builder
+         *
+         * @see #getDefaultDiskSpaceHighWatermark()
+         */
+        public Builder diskSpaceHighWatermark(long diskSpaceHighWatermark) {
+            this.diskSpaceHighWatermark = diskSpaceHighWatermark;
+            return this;
+        }
+
+        /**
+         * Sets the {@code diskSpaceHardFloor}, indicating, if greater than
+         * zero, writes will fail fast while the usable space is below this
+         * many bytes.
+         *
+         * @param diskSpaceHardFloor if greater than zero, the usable space in
+         *                           bytes to fail writes below
+         *
+         * @return this builder
+         *
+         * @see #getDefaultDiskSpaceHardFloor()
+         */
+        public Builder diskSpaceHardFloor(long diskSpaceHardFloor) {
+            this.diskSpaceHardFloor = diskSpaceHardFloor;
+            return this;
+        }
+
+        /**
+         * Sets the period of checking the usable space.
+         *
+         * @param diskSpaceCheckInterval the period of checking the usable space
+         *
+         * @return this builder
+         *
+         * @see #getDefaultDiskSpaceCheckInterval()
+         */
+        public Builder diskSpaceCheckInterval(Duration diskSpaceCheckInterval) {
+            this.diskSpaceCheckInterval = diskSpaceCheckInterval;
+            return this;
+        }
+
+        /**
+         * Sets the {@code manifest}, indicating, if {@code true}, an
+         * append-only {@link SegmentManifest} of rotated files will be
+         * maintained next to the file.
+         *
+         * @param manifest if {@code true}, a manifest of rotated files will
+         *                 be maintained
+         *
+         * @return this builder
+         *
+         * @see #getDefaultManifest()
+         */
+        public Builder manifest(boolean manifest) {
+            this.manifest = manifest;
+            return this;
+        }
+
+        /**
+         * Sets the window time-based rotations are spread over.
+         *
+         * @param rotationStagger the window time-based rotations are spread over
+         *
+         * @return this builder
+         *
+         * @see #getDefaultRotationStagger()
+         */
+        public Builder rotationStagger(Duration rotationStagger) {
+            this.rotationStagger = rotationStagger;
+            return this;
+        }
+
+        /**
+         * Sets the {@code tieredStorage}, indicating, if {@code true},
+         * rotated files will be moved to the {@code filePattern}, e.g., on
+         * an archive volume, in the background.
+         *
+         * @param tieredStorage if {@code true}, rotated files will be moved
+         *                      to the {@code filePattern} in the background
+         *
+         * @return this builder
+         *
+         * @see #getDefaultTieredStorage()
+         */
+        public Builder tieredStorage(boolean tieredStorage) {
+            this.tieredStorage = tieredStorage;
+            return this;
+        }
+
+        /**
+         * Sets the {@code volumePlacement}, that is, the volumes active
+         * files are spread over. Streams sharing the same placement are
+         * placed with respect to each other.
+         *
+         * @param volumePlacement the volumes active files are spread over
+         *
+         * @return this builder
+         *
+         * @see #getDefaultVolumePlacement()
+         */
+        public Builder volumePlacement(VolumePlacement volumePlacement) {
+            this.volumePlacement = volumePlacement;
+            return this;
+        }
+
+        /**
+         * Sets the {@code rotationDurability}, that is, the level of
+         * durability guaranteed for rotated files against crashes.
+         *
+         * @param rotationDurability the level of durability guaranteed for
+         *                           rotated files against crashes
+         *
+         * @return this builder
+         *
+         * @see #getDefaultRotationDurability()
+         */
+        public Builder rotationDurability(RotationDurability rotationDurability) {
+            this.rotationDurability = rotationDurability;
+            return this;
+        }
+
+        /**
+         * Sets the {@code segmentRecycling}, indicating, if {@code true},
+         * the oldest backup will be reused as the next active file.
+         *
+         * @param segmentRecycling if {@code true}, the oldest backup will be
+         *                         reused as the next active file
+         *
+         * @return this builder
+         *
+         * @see #getDefaultSegmentRecycling()
+         */
+        public Builder segmentRecycling(boolean segmentRecycling) {
+            this.segmentRecycling = segmentRecycling;
+            return this;
+        }
+
+        /**
+         * Sets the {@code copyTruncate}, indicating, if {@code true}, the
+         * file will be copied to the rotated file and truncated, instead of
+         * being renamed.
+         *
+         * @param copyTruncate if {@code true}, the file will be copied to the
+         *                     rotated file and truncated
+         *
+         * @return this builder
+         *
+         * @see #getDefaultCopyTruncate()
+         */
+        public Builder copyTruncate(boolean copyTruncate) {
+            this.copyTruncate = copyTruncate;
+            return this;
+        }
+
+        /**
+         * Sets the {@code multiProcess}, indicating, if {@code true}, multiple
+         * processes write to the same file, each using its own stream.
+         *
+         * @param multiProcess if {@code true}, rotations are coordinated
+         *                     across processes writing to the same file
+         *
+         * @return this builder
+         *
+         * @see #getDefaultMultiProcess()
+         */
+        public Builder multiProcess(boolean multiProcess) {
+            this.multiProcess = multiProcess;
+            return this;
+        }
+
+        /**
+         * Sets the {@code lazyOpen}, indicating, if {@code true}, the file is
+         * opened, and the policies are started, on the first write, instead
+         * of on construction.
+         *
+         * @param lazyOpen if {@code true}, the file is opened on the first
+         *                 write
+         *
+         * @return this builder
+         *
+         * @see #getDefaultLazyOpen()
+         */
+        public Builder lazyOpen(boolean lazyOpen) {
+            this.lazyOpen = lazyOpen;
+            return this;
+        }
+
         /**
          * Sets the clock implementation to be used.
          *
@@ -619,6 +1830,182 @@ public class RotationConfig {
             if (policies == null || policies.isEmpty()) {
                 throw new IllegalArgumentException("no rotation policy is provided");
             }
+            if (manifest && filePattern == null) {
+                throw new IllegalArgumentException("manifest requires a filePattern");
+            }
+            if (rotationStagger == null || rotationStagger.isNegative()) {
+                String message = String.format("invalid rotation stagger {rotationStagger=%s}", rotationStagger);
+                throw new IllegalArgumentException(message);
+            }
+            if (tieredStorage && filePattern == null) {
+                throw new IllegalArgumentException("tieredStorage requires a filePattern");
+            }
+            if (volumePlacement != null && !tieredStorage) {
+                throw new IllegalArgumentException("volumePlacement requires tieredStorage");
+            }
+            if (rotationDurability == null) {
+                throw new IllegalArgumentException("no rotation durability is provided");
+            }
+            if (segmentRecycling && maxBackupCount <= 0) {
+                throw new IllegalArgumentException("segmentRecycling requires a maxBackupCount");
+            }
+            if (copyTruncate) {
+                String conflictingField = null;
+                if (tieredStorage) {
+                    conflictingField = "tieredStorage";
+                } else if (volumePlacement != null) {
+                    conflictingField = "volumePlacement";
+                } else if (segmentRecycling) {
+                    conflictingField = "segmentRecycling";
+                }
+                if (conflictingField != null) {
+                    throw new IllegalArgumentException(
+                            "copyTruncate and " + conflictingField + " cannot be combined");
+                }
+            }
+            if (multiProcess) {
+                validateMultiProcess();
+            }
+            validateRetention();
+            validateDiskSpaceGuard();
+            if (compressionCodec == null) {
+                throw new IllegalArgumentException("no compression codec is provided");
+            }
+            if (compressionCodec != CompressionCodec.GZIP) {
+                String conflictingField = null;
+                if (compressionBlockSize > 0) {
+                    conflictingField = "compressionBlockSize";
+                } else if (compressionDictionary) {
+                    conflictingField = "compressionDictionary";
+                } else if (compressionIndex) {
+                    conflictingField = "compressionIndex";
+                }
+                if (conflictingField != null) {
+                    String message = String.format(
+                            "%s is not supported by the compression codec {compressionCodec=%s}",
+                            conflictingField, compressionCodec);
+                    throw new IllegalArgumentException(message);
+                }
+            }
+            if (compressionBufferSize < 1) {
+                String message = String.format(
+                        "invalid compression buffer size {compressionBufferSize=%d}",
+                        compressionBufferSize);
+                throw new IllegalArgumentException(message);
+            }
+            if (!(compressionSkipRatio >= 0)) {
+                String message = String.format(
+                        "invalid compression skip ratio {compressionSkipRatio=%s}",
+                        compressionSkipRatio);
+                throw new IllegalArgumentException(message);
+            }
+            if (compressionBlockSize < 0) {
+                String message = String.format(
+                        "invalid compression block size {compressionBlockSize=%d}",
+                        compressionBlockSize);
+                throw new IllegalArgumentException(message);
+            }
+            if (compressionIndex && compressionBlockSize == 0) {
+                throw new IllegalArgumentException("compressionIndex requires a compressionBlockSize");
+            }
+        }
+
+        private void validateMultiProcess() {
+            if (!append) {
+                throw new IllegalArgumentException("multiProcess requires append");
+            }
+            String conflictingField = null;
+            if (tieredStorage) {
+                conflictingField = "tieredStorage";
+            } else if (volumePlacement != null) {
+                conflictingField = "volumePlacement";
+            } else if (segmentRecycling) {
+                conflictingField = "segmentRecycling";
+            } else if (copyTruncate) {
+                conflictingField = "copyTruncate";
+            } else if (compress) {
+                conflictingField = "compress";
+            } else if (manifest) {
+                conflictingField = "manifest";
+            } else if (retentionMaxTotalBytes > 0 || retentionMaxFileCount > 0 ||
+                    (retentionMaxAge != null && !retentionMaxAge.isZero())) {
+                conflictingField = "retention limits";
+            } else if (diskSpaceLowWatermark > 0) {
+                conflictingField = "diskSpaceLowWatermark";
+            }
+            if (conflictingField != null) {
+                throw new IllegalArgumentException(
+                        "multiProcess and " + conflictingField + " cannot be combined");
+            }
+            for (RotationPolicy policy : policies) {
+                boolean exact = policy instanceof SizeBasedRotationPolicy &&
+                        ((SizeBasedRotationPolicy) policy).isExact();
+                if (exact) {
+                    throw new IllegalArgumentException(
+                            "multiProcess and exact size-based policies cannot be combined");
+                }
+            }
+        }
+
+        private void validateRetention() {
+            if (retentionMaxTotalBytes < 0) {
+                String message = String.format(
+                        "invalid retention max total bytes {retentionMaxTotalBytes=%d}",
+                        retentionMaxTotalBytes);
+                throw new IllegalArgumentException(message);
+            }
+            if (retentionMaxFileCount < 0) {
+                String message = String.format(
+                        "invalid retention max file count {retentionMaxFileCount=%d}",
+                        retentionMaxFileCount);
+                throw new IllegalArgumentException(message);
+            }
+            if (retentionMaxAge == null || retentionMaxAge.isNegative()) {
+                String message = String.format(
+                        "invalid retention max age {retentionMaxAge=%s}",
+                        retentionMaxAge);
+                throw new IllegalArgumentException(message);
+            }
+            boolean retentionEnabled =
+                    retentionMaxTotalBytes > 0 ||
+                            retentionMaxFileCount > 0 ||
+                            !retentionMaxAge.isZero();
+            if (retentionEnabled && filePattern == null) {
+                throw new IllegalArgumentException("retention limits require a filePattern");
+            }
+        }
+
+        private void validateDiskSpaceGuard() {
+            if (diskSpaceLowWatermark < 0) {
+                String message = String.format(
+                        "invalid disk space low watermark {diskSpaceLowWatermark=%d}",
+                        diskSpaceLowWatermark);
+                throw new IllegalArgumentException(message);
+            }
+            if (diskSpaceHighWatermark < 0 ||
+                    (diskSpaceHighWatermark > 0 && diskSpaceHighWatermark < diskSpaceLowWatermark)) {
+                String message = String.format(
+                        "invalid disk space high watermark {diskSpaceLowWatermark=%d, diskSpaceHighWatermark=%d}",
+                        diskSpaceLowWatermark, diskSpaceHighWatermark);
+                throw new IllegalArgumentException(message);
+            }
+            if (diskSpaceHardFloor < 0) {
+                String message = String.format(
+                        "invalid disk space hard floor {diskSpaceHardFloor=%d}",
+                        diskSpaceHardFloor);
+                throw new IllegalArgumentException(message);
+            }
+            if (diskSpaceCheckInterval == null ||
+                    diskSpaceCheckInterval.isNegative() ||
+                    diskSpaceCheckInterval.isZero()) {
+                String message = String.format(
+                        "invalid disk space check interval {diskSpaceCheckInterval=%s}",
+                        diskSpaceCheckInterval);
+                throw new IllegalArgumentException(message);
+            }
+            if (diskSpaceLowWatermark > 0 && filePattern == null) {
+                throw new IllegalArgumentException("diskSpaceLowWatermark requires a filePattern");
+            }
         }
 
     }
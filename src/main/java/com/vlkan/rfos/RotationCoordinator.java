@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Coordinates the rotations of streams in multiple processes writing to the
+ * same file.
+ * <p>
+ * The rotation state is shared through a memory-mapped control file next to
+ * the file, i.e., {@code <file>.control}, containing the generation
+ * incremented on every rotation, the approximate size of the active file,
+ * and the instant of the last rotation. The process renaming the file is
+ * elected via an exclusive lock on the first byte of the lock file, i.e.,
+ * {@code <file>.lock}, and the rest re-open the file once they observe the
+ * new generation. Since the control file is updated without atomic
+ * operations, the size might lag behind under contention.
+ * </p><p>
+ * Writers hold a shared lock on the second byte of the lock file. A writer
+ * acquiring it exclusively at start is the only one, and hence the size in
+ * the control file, e.g., left behind by a previous run, is stale. Note
+ * that file locks are held on behalf of the entire JVM. Hence, the lock is
+ * held by the first stream of a process only.
+ * </p>
+ */
+final class RotationCoordinator implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RotationCoordinator.class);
+
+    static final String CONTROL_FILE_SUFFIX = ".control";
+
+    static final String LOCK_FILE_SUFFIX = ".lock";
+
+    private static final int GENERATION_OFFSET = 0;
+
+    private static final int SIZE_OFFSET = GENERATION_OFFSET + Long.BYTES;
+
+    private static final int ROTATION_EPOCH_MILLIS_OFFSET = SIZE_OFFSET + Long.BYTES;
+
+    private static final int CONTROL_FILE_LENGTH = ROTATION_EPOCH_MILLIS_OFFSET + Long.BYTES;
+
+    private static final long ROTATION_LOCK_POSITION = 0;
+
+    private static final long WRITER_LOCK_POSITION = 1;
+
+    private final File file;
+
+    private final FileChannel controlChannel;
+
+    private final MappedByteBuffer controlBuffer;
+
+    private final FileChannel lockChannel;
+
+    /**
+     * Indicates that no other writers are found at start.
+     */
+    private final boolean alone;
+
+    private final FileLock writerLock;
+
+    private FileLock lock;
+
+    RotationCoordinator(File file) throws IOException {
+        this.file = file;
+        File controlFile = new File(file.getPath() + CONTROL_FILE_SUFFIX);
+        File lockFile = new File(file.getPath() + LOCK_FILE_SUFFIX);
+        // Mapping past the end of the file zero-fills it, hence the control
+        // file needs no initialization.
+        this.controlChannel = FileChannel.open(
+                controlFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            this.controlBuffer = controlChannel.map(FileChannel.MapMode.READ_WRITE, 0, CONTROL_FILE_LENGTH);
+            this.lockChannel = FileChannel.open(
+                    lockFile.toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException error) {
+            controlChannel.close();
+            throw error;
+        }
+        try {
+            // File locks cannot be downgraded, hence the exclusive one is
+            // released first. Another writer starting in between might find
+            // itself alone too, which is harmless, since both reset the size
+            // to the length of the file.
+            FileLock exclusiveWriterLock = tryLock(WRITER_LOCK_POSITION, false);
+            this.alone = exclusiveWriterLock != null;
+            if (alone) {
+                exclusiveWriterLock.release();
+            }
+            this.writerLock = tryLock(WRITER_LOCK_POSITION, true);
+        } catch (IOException error) {
+            try {
+                lockChannel.close();
+            } finally {
+                controlChannel.close();
+            }
+            throw error;
+        }
+        LOGGER.debug("registered writer {file={}, alone={}}", file, alone);
+    }
+
+    /**
+     * @return the lock acquired, or {@code null}, if it is held by another
+     * process, or another stream in the same process
+     */
+    private FileLock tryLock(long position, boolean shared) throws IOException {
+        try {
+            return lockChannel.tryLock(position, 1, shared);
+        } catch (OverlappingFileLockException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of rotations performed so far
+     */
+    long readGeneration() {
+        return controlBuffer.getLong(GENERATION_OFFSET);
+    }
+
+    /**
+     * @return the approximate size of the active file
+     */
+    long readSize() {
+        return controlBuffer.getLong(SIZE_OFFSET);
+    }
+
+    /**
+     * Initializes the size of the active file. Unless no other writers are
+     * found at start, the tracked size is only raised, since it might
+     * already include writes yet to be observed.
+     *
+     * @param size the size of the active file
+     */
+    void initSize(long size) {
+        if (alone || readSize() < size) {
+            controlBuffer.putLong(SIZE_OFFSET, size);
+        }
+    }
+
+    /**
+     * Adds the given byte count to the size of the active file.
+     *
+     * @param byteCount the number of bytes written
+     */
+    void addSize(long byteCount) {
+        controlBuffer.putLong(SIZE_OFFSET, readSize() + byteCount);
+    }
+
+    /**
+     * @return the instant of the last rotation, or {@link Instant#EPOCH}, if
+     * there is none
+     */
+    Instant readRotationInstant() {
+        return Instant.ofEpochMilli(controlBuffer.getLong(ROTATION_EPOCH_MILLIS_OFFSET));
+    }
+
+    /**
+     * Tries to acquire the right to rotate the file, without blocking.
+     *
+     * @return {@code true}, if acquired, and hence {@link #release()} needs to
+     * be called; {@code false}, if another stream is rotating the file
+     */
+    boolean tryAcquire() throws IOException {
+        lock = tryLock(ROTATION_LOCK_POSITION, false);
+        if (lock == null) {
+            LOGGER.debug("rotation lock is held by another stream {file={}}", file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Publishes a rotation performed while holding the lock.
+     *
+     * @param instant the instant of the rotation
+     *
+     * @return the new generation
+     */
+    long publishRotation(Instant instant) {
+        long generation = readGeneration() + 1;
+        controlBuffer.putLong(SIZE_OFFSET, 0);
+        controlBuffer.putLong(ROTATION_EPOCH_MILLIS_OFFSET, instant.toEpochMilli());
+        controlBuffer.putLong(GENERATION_OFFSET, generation);
+        LOGGER.debug("published rotation {file={}, generation={}}", file, generation);
+        return generation;
+    }
+
+    /**
+     * Releases the lock acquired by {@link #tryAcquire()}.
+     */
+    void release() throws IOException {
+        if (lock != null) {
+            lock.release();
+            lock = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            release();
+            if (writerLock != null) {
+                writerLock.release();
+            }
+            lockChannel.close();
+        } finally {
+            controlChannel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RotationCoordinator{file=%s}", file);
+    }
+
+}
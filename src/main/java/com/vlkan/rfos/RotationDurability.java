@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos;
+
+import java.io.File;
+
+/**
+ * Levels of durability guaranteed for rotated files against crashes, e.g.,
+ * power losses, before they are reported via
+ * {@link RotationCallback#onSuccess(com.vlkan.rfos.policy.RotationPolicy, java.time.Instant, File) onSuccess()}.
+ * Syncs are performed on the executor, i.e., writers are not stalled.
+ *
+ * @see RotationConfig#getRotationDurability()
+ */
+public enum RotationDurability {
+
+    /**
+     * Leaves flushing to the operating system. Rotated files might turn out
+     * to be missing or truncated after a crash.
+     */
+    NONE,
+
+    /**
+     * Forces the content of rotated (and compressed) files to the disk.
+     * Renames might still get lost after a crash.
+     */
+    FILE,
+
+    /**
+     * In addition to {@link #FILE}, forces the directories renamed files
+     * are moved in and out to the disk, so that renames survive crashes.
+     * Directories cannot be synced on Windows, hence this is equivalent to
+     * {@link #FILE} there.
+     */
+    FILE_AND_DIRECTORY
+
+}
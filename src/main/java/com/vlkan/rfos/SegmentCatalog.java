@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * In-memory catalog of rotated files, i.e., segments, ordered from the oldest
+ * to the newest.
+ * <p>
+ * The catalog is populated by listing the directory once, and then kept up
+ * to date by the stream as it rotates, compresses, and deletes files. Hence,
+ * enforcing retention limits never requires listing the directory again.
+ * </p>
+ */
+final class SegmentCatalog {
+
+    static final class Segment {
+
+        private final File file;
+
+        private final long length;
+
+        private final long lastModifiedMillis;
+
+        private Segment(File file, long length, long lastModifiedMillis) {
+            this.file = file;
+            this.length = length;
+            this.lastModifiedMillis = lastModifiedMillis;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        long getLastModifiedMillis() {
+            return lastModifiedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Segment{file=%s, length=%d, lastModifiedMillis=%d}",
+                    file, length, lastModifiedMillis);
+        }
+
+    }
+
+    private static final Comparator<Segment> SEGMENT_COMPARATOR = Comparator
+            .comparingLong(Segment::getLastModifiedMillis)
+            .thenComparing(Segment::getFile);
+
+    private final TreeSet<Segment> segments = new TreeSet<>(SEGMENT_COMPARATOR);
+
+    private final Map<File, Segment> segmentByFile = new HashMap<>();
+
+    private long totalLength = 0;
+
+    /**
+     * Adds the given file reading its length and modification time, or
+     * replaces it if it is already known.
+     */
+    void add(File file) {
+        add(file, file.length(), file.lastModified());
+    }
+
+    synchronized void add(File file, long length, long lastModifiedMillis) {
+        remove(file);
+        Segment segment = new Segment(file, length, lastModifiedMillis);
+        segments.add(segment);
+        segmentByFile.put(file, segment);
+        totalLength += length;
+    }
+
+    synchronized void remove(File file) {
+        Segment segment = segmentByFile.remove(file);
+        if (segment != null) {
+            segments.remove(segment);
+            totalLength -= segment.length;
+        }
+    }
+
+    /**
+     * Removes the oldest segment violating any of the given limits.
+     *
+     * @param maxTotalLength if greater than zero, the maximum total length
+     * @param maxCount if greater than zero, the maximum number of segments
+     * @param minLastModifiedMillis segments modified before this are expired
+     *
+     * @return the removed segment, or {@code null} if there are no violations
+     */
+    synchronized Segment pollExpired(long maxTotalLength, int maxCount, long minLastModifiedMillis) {
+        if (segments.isEmpty()) {
+            return null;
+        }
+        Segment oldestSegment = segments.first();
+        boolean expired =
+                (maxTotalLength > 0 && totalLength > maxTotalLength) ||
+                        (maxCount > 0 && segments.size() > maxCount) ||
+                        oldestSegment.lastModifiedMillis < minLastModifiedMillis;
+        if (!expired) {
+            return null;
+        }
+        remove(oldestSegment.file);
+        return oldestSegment;
+    }
+
+    /**
+     * Removes the oldest segment whose file matches the given filter.
+     *
+     * @return the removed segment, or {@code null} if there are no matches
+     */
+    synchronized Segment pollOldest(Predicate<File> fileFilter) {
+        for (Segment segment : segments) {
+            if (fileFilter.test(segment.file)) {
+                remove(segment.file);
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    synchronized int size() {
+        return segments.size();
+    }
+
+    synchronized long getTotalLength() {
+        return totalLength;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SegmentCatalog{size=%d, totalLength=%d}", segments.size(), totalLength);
+    }
+
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only manifest of the rotated files, i.e., segments, of a stream.
+ * <p>
+ * The manifest is stored in a {@link #FILE_SUFFIX} file next to the active
+ * file, if {@link RotationConfig#isManifest() enabled}. A segment record is
+ * appended once a rotated file is compressed, or right after rotation if
+ * compression is disabled. A deletion record is appended once a segment is
+ * deleted due to retention or low disk space. Hence, consumers can discover
+ * segments without listing directories or parsing file names.
+ * </p><p>
+ * Each record is a line of tab-separated fields: {@code S}, path, first and
+ * last write instants, byte count, record (i.e., line feed) count,
+ * compressed length ({@code -1}, if not compressed), and the CRC-32 of the
+ * uncompressed content in hex for segments; {@code D} and path for
+ * deletions. A trailing record torn by a crash is ignored while loading,
+ * and truncated by the stream at start.
+ * </p>
+ */
+public final class SegmentManifest {
+
+    /**
+     * File name suffix of the manifest stored next to the active file.
+     */
+    public static final String FILE_SUFFIX = ".manifest";
+
+    private static final String SEGMENT_RECORD_TYPE = "S";
+
+    private static final String DELETION_RECORD_TYPE = "D";
+
+    private static final int SEGMENT_RECORD_FIELD_COUNT = 8;
+
+    /**
+     * Metadata of a segment recorded in the manifest.
+     */
+    public static final class Entry {
+
+        private final File file;
+
+        private final Instant firstWriteInstant;
+
+        private final Instant lastWriteInstant;
+
+        private final long byteCount;
+
+        private final long recordCount;
+
+        private final long compressedLength;
+
+        private final long checksum;
+
+        Entry(
+                File file,
+                Instant firstWriteInstant,
+                Instant lastWriteInstant,
+                long byteCount,
+                long recordCount,
+                long compressedLength,
+                long checksum) {
+            this.file = file;
+            this.firstWriteInstant = firstWriteInstant;
+            this.lastWriteInstant = lastWriteInstant;
+            this.byteCount = byteCount;
+            this.recordCount = recordCount;
+            this.compressedLength = compressedLength;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Scans the given uncompressed file to create an entry.
+         *
+         * @param firstWriteInstant the instant of the first write, if known;
+         *                          otherwise, the creation time of the file
+         *                          is used
+         */
+        static Entry scan(File file, Instant firstWriteInstant) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            Scanner scanner = new Scanner();
+            byte[] buffer = new byte[8192];
+            try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+                int readByteCount;
+                while ((readByteCount = inputStream.read(buffer)) > 0) {
+                    scanner.update(buffer, 0, readByteCount);
+                }
+            }
+            return create(file, firstWriteInstant, attributes, scanner);
+        }
+
+        /**
+         * Creates an entry from the given attributes and the content fed to
+         * the given scanner, e.g., while compressing the file.
+         *
+         * @param firstWriteInstant the instant of the first write, if known;
+         *                          otherwise, the creation time of the file
+         *                          is used
+         */
+        static Entry create(
+                File file,
+                Instant firstWriteInstant,
+                BasicFileAttributes attributes,
+                Scanner scanner) {
+            Instant lastWriteInstant = attributes.lastModifiedTime().toInstant();
+            if (firstWriteInstant == null) {
+                Instant creationInstant = attributes.creationTime().toInstant();
+                firstWriteInstant = creationInstant.isAfter(lastWriteInstant) ? lastWriteInstant : creationInstant;
+            }
+            // File system timestamps can be coarser than the clock.
+            else if (firstWriteInstant.isAfter(lastWriteInstant)) {
+                lastWriteInstant = firstWriteInstant;
+            }
+            return new Entry(
+                    file, firstWriteInstant, lastWriteInstant,
+                    scanner.byteCount, scanner.recordCount, -1, scanner.crc.getValue());
+        }
+
+        /**
+         * @return a copy of this entry pointing to the given compressed file
+         */
+        Entry withCompressedFile(File compressedFile) {
+            return new Entry(
+                    compressedFile, firstWriteInstant, lastWriteInstant,
+                    byteCount, recordCount, compressedFile.length(), checksum);
+        }
+
+        /**
+         * @return the segment file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the instant of the first write to the segment
+         */
+        public Instant getFirstWriteInstant() {
+            return firstWriteInstant;
+        }
+
+        /**
+         * @return the instant of the last write to the segment
+         */
+        public Instant getLastWriteInstant() {
+            return lastWriteInstant;
+        }
+
+        /**
+         * @return the uncompressed length of the segment
+         */
+        public long getByteCount() {
+            return byteCount;
+        }
+
+        /**
+         * @return the number of records, i.e., line feeds, in the segment
+         */
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return the length of the compressed file, or {@code -1}, if the
+         * segment is not compressed
+         */
+        public long getCompressedLength() {
+            return compressedLength;
+        }
+
+        /**
+         * @return the CRC-32 of the uncompressed content
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * @return {@code true}, if the segment was written in the given
+         * (inclusive) instant range
+         */
+        public boolean overlaps(Instant fromInstant, Instant toInstant) {
+            return !firstWriteInstant.isAfter(toInstant) && !lastWriteInstant.isBefore(fromInstant);
+        }
+
+        private String format() {
+            return String.format(
+                    "%s\t%s\t%s\t%s\t%d\t%d\t%d\t%08x\n",
+                    SEGMENT_RECORD_TYPE,
+                    file.getPath(),
+                    firstWriteInstant,
+                    lastWriteInstant,
+                    byteCount,
+                    recordCount,
+                    compressedLength,
+                    checksum);
+        }
+
+        @Override
+        public boolean equals(Object instance) {
+            if (this == instance) return true;
+            if (instance == null || getClass() != instance.getClass()) return false;
+            Entry that = (Entry) instance;
+            return byteCount == that.byteCount &&
+                    recordCount == that.recordCount &&
+                    compressedLength == that.compressedLength &&
+                    checksum == that.checksum &&
+                    Objects.equals(file, that.file) &&
+                    Objects.equals(firstWriteInstant, that.firstWriteInstant) &&
+                    Objects.equals(lastWriteInstant, that.lastWriteInstant);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                    file,
+                    firstWriteInstant,
+                    lastWriteInstant,
+                    byteCount,
+                    recordCount,
+                    compressedLength,
+                    checksum);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Entry{file=%s, firstWriteInstant=%s, lastWriteInstant=%s, byteCount=%d, recordCount=%d, compressedLength=%d, checksum=%08x}",
+                    file, firstWriteInstant, lastWriteInstant, byteCount, recordCount, compressedLength, checksum);
+        }
+
+    }
+
+    /**
+     * Collects the byte count, the record count, and the checksum of the
+     * content fed in chunks.
+     */
+    static final class Scanner {
+
+        private final CRC32 crc = new CRC32();
+
+        private long byteCount = 0;
+
+        private long recordCount = 0;
+
+        void update(byte[] buffer, int offset, int length) {
+            crc.update(buffer, offset, length);
+            byteCount += length;
+            int endOffset = offset + length;
+            for (int byteIndex = offset; byteIndex < endOffset; byteIndex++) {
+                if (buffer[byteIndex] == '\n') {
+                    recordCount++;
+                }
+            }
+        }
+
+    }
+
+    private final File file;
+
+    private final Map<File, Entry> entryByFile = new LinkedHashMap<>();
+
+    private int recordCount = 0;
+
+    private SegmentManifest(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the manifest file of the given configuration
+     */
+    public static File getFile(RotationConfig config) {
+        Objects.requireNonNull(config, "config");
+        return new File(config.getFile().getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the manifest of the given configuration.
+     *
+     * @see #load(File)
+     */
+    public static SegmentManifest load(RotationConfig config) throws IOException {
+        return load(getFile(config));
+    }
+
+    /**
+     * Loads the given manifest file into memory. A missing file is treated
+     * as an empty manifest, and a torn trailing record is ignored.
+     */
+    public static SegmentManifest load(File manifestFile) throws IOException {
+        Objects.requireNonNull(manifestFile, "manifestFile");
+        return load(manifestFile, false);
+    }
+
+    /**
+     * Loads the given manifest file into memory.
+     *
+     * @param repair if {@code true}, a torn trailing record is truncated,
+     *               which is only safe for the writer of the manifest
+     */
+    static SegmentManifest load(File manifestFile, boolean repair) throws IOException {
+        SegmentManifest manifest = new SegmentManifest(manifestFile);
+        if (!manifestFile.exists()) {
+            return manifest;
+        }
+        byte[] content = Files.readAllBytes(manifestFile.toPath());
+        int lineStartIndex = 0;
+        int lineNumber = 1;
+        for (int byteIndex = 0; byteIndex < content.length; byteIndex++) {
+            if (content[byteIndex] == '\n') {
+                String line = new String(content, lineStartIndex, byteIndex - lineStartIndex, StandardCharsets.UTF_8);
+                manifest.readRecord(line, lineNumber);
+                lineStartIndex = byteIndex + 1;
+                lineNumber++;
+            }
+        }
+        // Truncate the last record, if torn by a crash. Otherwise, the next
+        // append would corrupt it.
+        if (repair && lineStartIndex < content.length) {
+            try (FileChannel fileChannel = FileChannel.open(manifestFile.toPath(), StandardOpenOption.WRITE)) {
+                fileChannel.truncate(lineStartIndex);
+            }
+        }
+        return manifest;
+    }
+
+    private void readRecord(String line, int lineNumber) throws IOException {
+        String[] fields = line.split("\t", -1);
+        try {
+            if (SEGMENT_RECORD_TYPE.equals(fields[0]) && fields.length == SEGMENT_RECORD_FIELD_COUNT) {
+                Entry entry = new Entry(
+                        new File(fields[1]),
+                        Instant.parse(fields[2]),
+                        Instant.parse(fields[3]),
+                        Long.parseLong(fields[4]),
+                        Long.parseLong(fields[5]),
+                        Long.parseLong(fields[6]),
+                        Long.parseLong(fields[7], 16));
+                putEntry(entry);
+                return;
+            } else if (DELETION_RECORD_TYPE.equals(fields[0]) && fields.length == 2) {
+                removeEntry(new File(fields[1]));
+                return;
+            }
+        } catch (NumberFormatException | DateTimeParseException ignored) {
+            // Fall through to the failure below.
+        }
+        String message = String.format("invalid manifest record {file=%s, lineNumber=%d}", file, lineNumber);
+        throw new IOException(message);
+    }
+
+    private void putEntry(Entry entry) {
+        // Remove first to move the entry to the end.
+        entryByFile.remove(entry.file);
+        entryByFile.put(entry.file, entry);
+        recordCount++;
+    }
+
+    private void removeEntry(File file) {
+        entryByFile.remove(file);
+        recordCount++;
+    }
+
+    /**
+     * Appends a segment record, replacing the entry of the same file, if any.
+     */
+    synchronized void appendSegment(Entry entry) throws IOException {
+        append(entry.format());
+        putEntry(entry);
+    }
+
+    /**
+     * Appends a deletion record, unless the given file is not known.
+     */
+    synchronized void appendDeletion(File file) throws IOException {
+        if (entryByFile.containsKey(file)) {
+            append(DELETION_RECORD_TYPE + '\t' + file.getPath() + '\n');
+            removeEntry(file);
+        }
+    }
+
+    private void append(String record) throws IOException {
+        Files.write(
+                file.toPath(),
+                record.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Rewrites the manifest file with only the live entries, if the
+     * majority of its records are obsolete.
+     */
+    synchronized void compact() throws IOException {
+        if (recordCount <= 2 * entryByFile.size()) {
+            return;
+        }
+        StringBuilder contentBuilder = new StringBuilder();
+        for (Entry entry : entryByFile.values()) {
+            contentBuilder.append(entry.format());
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        Files.write(tempFile.toPath(), contentBuilder.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(
+                tempFile.toPath(),
+                file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        recordCount = entryByFile.size();
+    }
+
+    /**
+     * @return the live entry of the given file, or {@code null}, if there is
+     * none
+     */
+    synchronized Entry findEntry(File file) {
+        return entryByFile.get(file);
+    }
+
+    /**
+     * @return the manifest file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the live entries in the order they are recorded, that is,
+     * from the oldest to the newest
+     */
+    public synchronized List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entryByFile.values()));
+    }
+
+    /**
+     * Finds the live entries written in the given range, without touching
+     * the file system.
+     *
+     * @param fromInstant the inclusive start of the range
+     * @param toInstant the inclusive end of the range
+     *
+     * @return the overlapping entries, from the oldest to the newest
+     */
+    public synchronized List<Entry> findEntries(Instant fromInstant, Instant toInstant) {
+        Objects.requireNonNull(fromInstant, "fromInstant");
+        Objects.requireNonNull(toInstant, "toInstant");
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : entryByFile.values()) {
+            if (entry.overlaps(fromInstant, toInstant)) {
+                entries.add(entry);
+            }
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SegmentManifest{file=%s, entryCount=%d}", file, entryByFile.size());
+    }
+
+}
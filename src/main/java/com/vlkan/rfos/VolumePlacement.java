@@ -0,0 +1,236 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Places the active files of {@link RotatingFileOutputStream}s on a set of
+ * volumes, e.g., data disks, to spread the write load across devices.
+ * <p>
+ * Every time a stream opens a new active file, i.e., at start and after each
+ * rotation, a volume is picked using the {@link Strategy strategy}, and the
+ * file is created at the same absolute path under the volume root, e.g.,
+ * {@code /disk2/var/log/app.log} for {@code /var/log/app.log}. The
+ * configured file is then atomically replaced with a symbolic link to it.
+ * Hence, readers can keep on using a stable path. Streams sharing the same
+ * instance form a group, that is, they are placed with respect to each
+ * other.
+ * </p>
+ *
+ * @see RotationConfig#getVolumePlacement()
+ */
+public final class VolumePlacement {
+
+    /**
+     * Strategies to pick the volume of a new active file.
+     */
+    public enum Strategy {
+
+        /**
+         * Picks the volumes in turns.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Picks the volume with the most usable space.
+         */
+        MOST_FREE_SPACE,
+
+        /**
+         * Picks the volume with the fewest active files of the group, where
+         * ties are broken by the least recent write load, that is, the
+         * exponentially decaying sum of the lengths of the files written on
+         * the volume.
+         */
+        LEAST_WRITE_LOAD
+
+    }
+
+    private static final class Volume {
+
+        private final File root;
+
+        private int activeFileCount = 0;
+
+        private long recentByteCount = 0;
+
+        private Volume(File root) {
+            this.root = root;
+        }
+
+    }
+
+    private final Strategy strategy;
+
+    private final List<File> roots;
+
+    private final Volume[] volumes;
+
+    private int nextVolumeIndex = 0;
+
+    /**
+     * Creates an instance placing files on the given volumes.
+     *
+     * @param strategy the strategy to pick the volume of a new active file
+     * @param roots the root directories of the volumes
+     */
+    public VolumePlacement(Strategy strategy, List<File> roots) {
+        this.strategy = Objects.requireNonNull(strategy, "strategy");
+        Objects.requireNonNull(roots, "roots");
+        if (roots.isEmpty()) {
+            throw new IllegalArgumentException("no volume roots are provided");
+        }
+        List<File> absoluteRoots = new ArrayList<>(roots.size());
+        for (File root : roots) {
+            Objects.requireNonNull(root, "root");
+            absoluteRoots.add(root.getAbsoluteFile());
+        }
+        this.roots = Collections.unmodifiableList(absoluteRoots);
+        this.volumes = new Volume[absoluteRoots.size()];
+        for (int volumeIndex = 0; volumeIndex < volumes.length; volumeIndex++) {
+            volumes[volumeIndex] = new Volume(absoluteRoots.get(volumeIndex));
+        }
+    }
+
+    /**
+     * @return the strategy to pick the volume of a new active file
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the absolute root directories of the volumes
+     */
+    public List<File> getRoots() {
+        return roots;
+    }
+
+    /**
+     * Picks the volume of a new active file.
+     *
+     * @return the root of the picked volume
+     */
+    synchronized File acquire() {
+        Volume volume;
+        switch (strategy) {
+            case MOST_FREE_SPACE:
+                volume = findMostFreeVolume();
+                break;
+            case LEAST_WRITE_LOAD:
+                volume = findLeastLoadedVolume();
+                break;
+            default:
+                volume = volumes[nextVolumeIndex];
+                nextVolumeIndex = (nextVolumeIndex + 1) % volumes.length;
+                break;
+        }
+        volume.activeFileCount++;
+        return volume.root;
+    }
+
+    private Volume findMostFreeVolume() {
+        Volume mostFreeVolume = null;
+        long mostUsableSpace = -1;
+        // noinspection ForLoopReplaceableByForEach (avoid iterator instantion)
+        for (int volumeIndex = 0; volumeIndex < volumes.length; volumeIndex++) {
+            Volume volume = volumes[volumeIndex];
+            long usableSpace = volume.root.getUsableSpace();
+            if (usableSpace > mostUsableSpace) {
+                mostFreeVolume = volume;
+                mostUsableSpace = usableSpace;
+            }
+        }
+        return mostFreeVolume;
+    }
+
+    private Volume findLeastLoadedVolume() {
+        Volume leastLoadedVolume = volumes[0];
+        for (int volumeIndex = 1; volumeIndex < volumes.length; volumeIndex++) {
+            Volume volume = volumes[volumeIndex];
+            int countComparison = Integer.compare(volume.activeFileCount, leastLoadedVolume.activeFileCount);
+            if (countComparison < 0 ||
+                    (countComparison == 0 && volume.recentByteCount < leastLoadedVolume.recentByteCount)) {
+                leastLoadedVolume = volume;
+            }
+        }
+        return leastLoadedVolume;
+    }
+
+    /**
+     * Registers an existing active file, e.g., appended after a restart.
+     *
+     * @param file an active file
+     *
+     * @return the root of the volume containing the given file, or
+     * {@code null}, if there is none
+     */
+    synchronized File acquire(File file) {
+        Path path = file.getAbsoluteFile().toPath();
+        // noinspection ForLoopReplaceableByForEach (avoid iterator instantion)
+        for (int volumeIndex = 0; volumeIndex < volumes.length; volumeIndex++) {
+            Volume volume = volumes[volumeIndex];
+            if (path.startsWith(volume.root.toPath())) {
+                volume.activeFileCount++;
+                return volume.root;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Releases the volume of an active file, once it is rotated or closed.
+     *
+     * @param root the root of the volume
+     * @param byteCount the number of bytes written to the file
+     */
+    synchronized void release(File root, long byteCount) {
+        // noinspection ForLoopReplaceableByForEach (avoid iterator instantion)
+        for (int volumeIndex = 0; volumeIndex < volumes.length; volumeIndex++) {
+            Volume volume = volumes[volumeIndex];
+            if (volume.root.equals(root)) {
+                volume.activeFileCount--;
+                volume.recentByteCount = volume.recentByteCount / 2 + byteCount;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param root the root of a volume
+     * @param file a file
+     *
+     * @return the file at the same absolute path as the given file under the
+     * given volume root
+     */
+    static File resolve(File root, File file) {
+        Path path = file.getAbsoluteFile().toPath();
+        Path relativePath = path.getRoot().relativize(path);
+        return root.toPath().resolve(relativePath).toFile();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VolumePlacement{strategy=%s, roots=%s}", strategy, roots);
+    }
+
+}
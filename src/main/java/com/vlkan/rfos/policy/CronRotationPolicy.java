@@ -0,0 +1,279 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos.policy;
+
+import com.vlkan.rfos.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+
+/**
+ * Policy for triggering a rotation at the instants matching a cron
+ * expression in a certain time zone.
+ * <p>
+ * Expressions consist of 5 space-separated fields: minute (0-59), hour
+ * (0-23), day of month (1-31), month (1-12), and day of week (0-7, where
+ * both 0 and 7 denote Sunday). Each field is either {@code *} or a
+ * comma-separated list of values ({@code 5}), ranges ({@code 1-5}), and
+ * steps ({@code *}{@code /15}, {@code 0-30/10}, {@code 5/20}). If both day
+ * fields are restricted, a day matching either of them matches, as in
+ * standard cron. For instance, {@code 0 9-17 * * 1-5} triggers at every
+ * hour from 9 to 17 on weekdays.
+ * </p><p>
+ * Local times skipped by a daylight saving time transition trigger right
+ * after the transition, i.e., shifted forward by the length of the gap.
+ * Local times repeated by a transition trigger only once, at their earlier
+ * occurrence. (Use {@link IntervalRotationPolicy} for rotations at fixed
+ * elapsed intervals instead.) Trigger instants are precomputed in batches.
+ * </p>
+ */
+public class CronRotationPolicy extends TimeBasedRotationPolicy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CronRotationPolicy.class);
+
+    // Limit the search for matching times to cover leap days and
+    // non-existent dates, e.g., February 30.
+    private static final int MAX_SEARCH_YEARS = 8;
+
+    private final String expression;
+
+    private final ZoneId zoneId;
+
+    private final long minutes;
+
+    private final long hours;
+
+    private final long daysOfMonth;
+
+    private final long months;
+
+    private final long daysOfWeek;
+
+    private final boolean dayOfMonthRestricted;
+
+    private final boolean dayOfWeekRestricted;
+
+    private final TriggerSchedule schedule;
+
+    /**
+     * Constructs an instance using the given expression in UTC.
+     *
+     * @param expression a cron expression
+     */
+    public CronRotationPolicy(String expression) {
+        this(expression, ZoneOffset.UTC);
+    }
+
+    /**
+     * Constructs an instance using the given expression in the given time zone.
+     *
+     * @param expression a cron expression
+     * @param zoneId the time zone the expression is evaluated in
+     */
+    public CronRotationPolicy(String expression, ZoneId zoneId) {
+        Objects.requireNonNull(expression, "expression");
+        Objects.requireNonNull(zoneId, "zoneId");
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            String message = String.format("invalid cron expression field count {expression=%s}", expression);
+            throw new IllegalArgumentException(message);
+        }
+        this.expression = expression;
+        this.zoneId = zoneId;
+        this.minutes = parseField(expression, fields[0], 0, 59);
+        this.hours = parseField(expression, fields[1], 0, 23);
+        this.daysOfMonth = parseField(expression, fields[2], 1, 31);
+        this.months = parseField(expression, fields[3], 1, 12);
+        long daysOfWeek = parseField(expression, fields[4], 0, 7);
+        // Map Sunday from 7 to 0.
+        this.daysOfWeek = (daysOfWeek | (daysOfWeek >>> 7)) & 0x7F;
+        this.dayOfMonthRestricted = !"*".equals(fields[2]);
+        this.dayOfWeekRestricted = !"*".equals(fields[4]);
+        LocalDateTime searchStartTime = LocalDateTime.of(2000, 1, 1, 0, 0);
+        if (findNextMatch(searchStartTime) == null) {
+            String message = String.format("cron expression never matches {expression=%s}", expression);
+            throw new IllegalArgumentException(message);
+        }
+        this.schedule = new TriggerSchedule(this::findNextTriggerEpochMillis);
+    }
+
+    private static long parseField(String expression, String field, int min, int max) {
+        long bits = 0;
+        for (String part : field.split(",", -1)) {
+            try {
+
+                // Determine the step.
+                int step = 1;
+                int stepIndex = part.indexOf('/');
+                String range = part;
+                if (stepIndex >= 0) {
+                    step = Integer.parseInt(part.substring(stepIndex + 1));
+                    range = part.substring(0, stepIndex);
+                }
+
+                // Determine the range.
+                int start;
+                int end;
+                if ("*".equals(range)) {
+                    start = min;
+                    end = max;
+                } else {
+                    int rangeIndex = range.indexOf('-');
+                    if (rangeIndex >= 0) {
+                        start = Integer.parseInt(range.substring(0, rangeIndex));
+                        end = Integer.parseInt(range.substring(rangeIndex + 1));
+                    } else {
+                        start = Integer.parseInt(range);
+                        end = stepIndex >= 0 ? max : start;
+                    }
+                }
+
+                // Set the bits.
+                if (step < 1 || start < min || end > max || start > end) {
+                    throw new IllegalArgumentException();
+                }
+                for (int value = start; value <= end; value += step) {
+                    bits |= 1L << value;
+                }
+
+            } catch (IllegalArgumentException ignored) {
+                String message = String.format(
+                        "invalid cron expression field {expression=%s, field=%s}",
+                        expression, field);
+                throw new IllegalArgumentException(message);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @return the cron expression
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return the time zone the expression is evaluated in
+     */
+    public ZoneId getZoneId() {
+        return zoneId;
+    }
+
+    private long findNextTriggerEpochMillis(long epochMillis) {
+        Instant instant = Instant.ofEpochMilli(epochMillis);
+        LocalDateTime time = LocalDateTime.ofInstant(instant, zoneId);
+        for (;;) {
+            time = findNextMatch(time);
+            if (time == null) {
+                String message = String.format(
+                        "cron expression does not match anymore {expression=%s, instant=%s}",
+                        expression, instant);
+                throw new IllegalStateException(message);
+            }
+            // Resolve gaps forward and overlaps to the earlier offset. The
+            // latter can precede the instant, if it is in the repeated period.
+            long triggerEpochMillis = ZonedDateTime.ofLocal(time, zoneId, null).toInstant().toEpochMilli();
+            if (triggerEpochMillis > epochMillis) {
+                return triggerEpochMillis;
+            }
+        }
+    }
+
+    /**
+     * @return the first matching local time after the given one, or
+     * {@code null}, if there is none within {@link #MAX_SEARCH_YEARS}
+     */
+    private LocalDateTime findNextMatch(LocalDateTime after) {
+        LocalDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        LocalDateTime limit = time.plusYears(MAX_SEARCH_YEARS);
+        while (time.isBefore(limit)) {
+            LocalDate date = time.toLocalDate();
+            if (!isSet(months, time.getMonthValue())) {
+                time = date.withDayOfMonth(1).plusMonths(1).atStartOfDay();
+            } else if (!matchesDay(date)) {
+                time = date.plusDays(1).atStartOfDay();
+            } else if (!isSet(hours, time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else {
+                // Find the first matching minute of the hour.
+                long remainingMinutes = minutes & (-1L << time.getMinute());
+                if (remainingMinutes == 0) {
+                    time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+                } else {
+                    return time.withMinute(Long.numberOfTrailingZeros(remainingMinutes));
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean matchesDay(LocalDate date) {
+        boolean dayOfMonthMatched = isSet(daysOfMonth, date.getDayOfMonth());
+        DayOfWeek dayOfWeek = date.getDayOfWeek();
+        boolean dayOfWeekMatched = isSet(daysOfWeek, dayOfWeek.getValue() % 7);
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return dayOfMonthMatched || dayOfWeekMatched;
+        }
+        return dayOfMonthMatched && dayOfWeekMatched;
+    }
+
+    private static boolean isSet(long bits, int value) {
+        return (bits & (1L << value)) != 0;
+    }
+
+    /**
+     * @return the upcoming instant matching the expression
+     */
+    @Override
+    public Instant getTriggerInstant(Clock clock) {
+        long epochMillis = clock.now().toEpochMilli();
+        return Instant.ofEpochMilli(schedule.getNextTriggerEpochMillis(epochMillis));
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOGGER;
+    }
+
+    @Override
+    public boolean equals(Object instance) {
+        if (this == instance) return true;
+        if (instance == null || getClass() != instance.getClass()) return false;
+        CronRotationPolicy that = (CronRotationPolicy) instance;
+        return expression.equals(that.expression) && zoneId.equals(that.zoneId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(expression, zoneId);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CronRotationPolicy{expression=%s, zoneId=%s}", expression, zoneId);
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos.policy;
+
+import com.vlkan.rfos.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Objects;
+
+/**
+ * Policy for triggering a rotation at fixed intervals, e.g., every 15
+ * minutes, aligned to the start of each day in a certain time zone.
+ * <p>
+ * Intervals are measured in elapsed time starting from the local start of each
+ * day, and the start of the next day is always a trigger. Hence, if the
+ * interval does not divide the day, the last interval of the day is shorter,
+ * and days shortened or lengthened by daylight saving time transitions have
+ * one less or one more interval, respectively. Trigger instants are
+ * precomputed in batches.
+ * </p>
+ */
+public class IntervalRotationPolicy extends TimeBasedRotationPolicy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IntervalRotationPolicy.class);
+
+    private static final Duration MAX_INTERVAL = Duration.ofDays(1);
+
+    private final Duration interval;
+
+    private final ZoneId zoneId;
+
+    private final long intervalMillis;
+
+    private final TriggerSchedule schedule;
+
+    /**
+     * Constructs an instance aligned to UTC days.
+     *
+     * @param interval the interval between rotations
+     */
+    public IntervalRotationPolicy(Duration interval) {
+        this(interval, ZoneOffset.UTC);
+    }
+
+    /**
+     * Constructs an instance aligned to the days of the given time zone.
+     *
+     * @param interval the interval between rotations, at least a millisecond
+     *                 and at most a day
+     * @param zoneId the time zone determining the start of days
+     */
+    public IntervalRotationPolicy(Duration interval, ZoneId zoneId) {
+        Objects.requireNonNull(interval, "interval");
+        Objects.requireNonNull(zoneId, "zoneId");
+        if (interval.toMillis() < 1 || interval.compareTo(MAX_INTERVAL) > 0) {
+            String message = String.format("invalid interval {interval=%s}", interval);
+            throw new IllegalArgumentException(message);
+        }
+        this.interval = interval;
+        this.zoneId = zoneId;
+        this.intervalMillis = interval.toMillis();
+        this.schedule = new TriggerSchedule(this::findNextTriggerEpochMillis);
+    }
+
+    /**
+     * @return the interval between rotations
+     */
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the time zone determining the start of days
+     */
+    public ZoneId getZoneId() {
+        return zoneId;
+    }
+
+    private long findNextTriggerEpochMillis(long epochMillis) {
+        LocalDate date = Instant.ofEpochMilli(epochMillis).atZone(zoneId).toLocalDate();
+        long dayStartEpochMillis = date.atStartOfDay(zoneId).toInstant().toEpochMilli();
+        long nextDayStartEpochMillis = date.plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+        long intervalCount = Math.floorDiv(epochMillis - dayStartEpochMillis, intervalMillis) + 1;
+        long triggerEpochMillis = dayStartEpochMillis + intervalCount * intervalMillis;
+        return Math.min(triggerEpochMillis, nextDayStartEpochMillis);
+    }
+
+    /**
+     * @return the instant of the upcoming interval boundary
+     */
+    @Override
+    public Instant getTriggerInstant(Clock clock) {
+        long epochMillis = clock.now().toEpochMilli();
+        return Instant.ofEpochMilli(schedule.getNextTriggerEpochMillis(epochMillis));
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOGGER;
+    }
+
+    @Override
+    public boolean equals(Object instance) {
+        if (this == instance) return true;
+        if (instance == null || getClass() != instance.getClass()) return false;
+        IntervalRotationPolicy that = (IntervalRotationPolicy) instance;
+        return interval.equals(that.interval) && zoneId.equals(that.zoneId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(interval, zoneId);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IntervalRotationPolicy{interval=%s, zoneId=%s}", interval, zoneId);
+    }
+
+}
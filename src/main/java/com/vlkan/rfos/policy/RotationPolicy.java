@@ -37,6 +37,18 @@ public interface RotationPolicy {
      */
     default void stop() {}
 
+    /**
+     * Stops the policy for the given rotatable. That is, if it is a
+     * time-based policy shared by multiple rotatables, it can cancel the
+     * scheduled next rotation task of the given one only. By default, it
+     * calls {@link #stop()}.
+     *
+     * @param rotatable the rotatable accessing this policy
+     */
+    default void stop(Rotatable rotatable) {
+        stop();
+    }
+
     /**
      * @return {@code true}, if the policy intercepts write operations via
      * {@code #acceptWrite()} methods
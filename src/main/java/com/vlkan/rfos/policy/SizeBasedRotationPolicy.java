@@ -25,6 +25,14 @@ import java.util.Objects;
 
 /**
  * Policy for triggering a rotation when a certain byte count threshold is exceeded.
+ * <p>
+ * By default, the decision is made before each write, hence a single write
+ * can make the file exceed the threshold. In the exact mode, the
+ * {@link com.vlkan.rfos.RotatingFileOutputStream} splits writes at the
+ * threshold and rotates in between. Hence, every rotated file is exactly
+ * {@link #getMaxByteCount()} bytes long, which allows offset arithmetic
+ * across files.
+ * </p>
  */
 public class SizeBasedRotationPolicy implements RotationPolicy {
 
@@ -32,6 +40,8 @@ public class SizeBasedRotationPolicy implements RotationPolicy {
 
     private final long maxByteCount;
 
+    private final boolean exact;
+
     private Rotatable rotatable;
 
     /**
@@ -40,11 +50,24 @@ public class SizeBasedRotationPolicy implements RotationPolicy {
      * @param maxByteCount the maximum byte count threshold triggering a rotation when exceeded
      */
     public SizeBasedRotationPolicy(long maxByteCount) {
+        this(maxByteCount, false);
+    }
+
+    /**
+     * Constructs an instance using the given threshold.
+     *
+     * @param maxByteCount the maximum byte count threshold triggering a rotation when exceeded
+     * @param exact if {@code true}, writes are split at the threshold, and
+     *              hence, every rotated file is exactly {@code maxByteCount}
+     *              bytes long
+     */
+    public SizeBasedRotationPolicy(long maxByteCount, boolean exact) {
         if (maxByteCount < 1) {
             String message = String.format("invalid size {maxByteCount=%d}", maxByteCount);
             throw new IllegalArgumentException(message);
         }
         this.maxByteCount = maxByteCount;
+        this.exact = exact;
     }
 
     /**
@@ -54,6 +77,14 @@ public class SizeBasedRotationPolicy implements RotationPolicy {
         return maxByteCount;
     }
 
+    /**
+     * @return {@code true}, if writes are split at the threshold, and hence,
+     * every rotated file is exactly {@link #getMaxByteCount()} bytes long
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
     /**
      * @return {@code true}, always.
      */
@@ -86,17 +117,18 @@ public class SizeBasedRotationPolicy implements RotationPolicy {
         if (this == instance) return true;
         if (instance == null || getClass() != instance.getClass()) return false;
         SizeBasedRotationPolicy that = (SizeBasedRotationPolicy) instance;
-        return maxByteCount == that.maxByteCount;
+        return maxByteCount == that.maxByteCount &&
+                exact == that.exact;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(maxByteCount);
+        return Objects.hash(maxByteCount, exact);
     }
 
     @Override
     public String toString() {
-        return String.format("SizeBasedRotationPolicy{maxByteCount=%d}", maxByteCount);
+        return String.format("SizeBasedRotationPolicy{maxByteCount=%d, exact=%s}", maxByteCount, exact);
     }
 
 }
@@ -23,18 +23,25 @@ import org.slf4j.Logger;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Base class for implementing periodically triggered time-based policies.
+ * <p>
+ * Trigger state is kept per {@link Rotatable}, hence a single instance can be
+ * shared by many streams. Rotations are scheduled on a {@link TimerWheel}
+ * shared by all time-based policies running on the same executor, and
+ * delayed by a per-stream offset within the
+ * {@link RotationConfig#getRotationStagger() rotation stagger} window, if set.
+ * </p>
  *
  * @see DailyRotationPolicy
  * @see WeeklyRotationPolicy
  */
 public abstract class TimeBasedRotationPolicy implements RotationPolicy {
 
-    private volatile ScheduledFuture<?> scheduledFuture;
+    private final Map<Rotatable, TimerWheel.Timeout> timeouts = new ConcurrentHashMap<>();
 
     /**
      * @return {@code false}, always
@@ -55,44 +62,96 @@ public abstract class TimeBasedRotationPolicy implements RotationPolicy {
     }
 
     @Override
-    public synchronized void start(Rotatable rotatable) {
-        start(rotatable, null);
+    public void start(Rotatable rotatable) {
+        TimerWheel.Timeout timeout = schedule(rotatable, null);
+        TimerWheel.Timeout oldTimeout = timeouts.put(rotatable, timeout);
+        if (oldTimeout != null) {
+            oldTimeout.cancel();
+        }
     }
 
-    private void start(Rotatable rotatable, Instant lastTriggerInstant) {
+    private TimerWheel.Timeout schedule(Rotatable rotatable, Instant lastTriggerInstant) {
         RotationConfig config = rotatable.getConfig();
         Clock clock = config.getClock();
         Instant currentInstant = clock.now();
         Instant triggerInstant = getTriggerInstant(clock);
-        long triggerDelayNanos = Duration.between(currentInstant, triggerInstant).toNanos();
+        long triggerDelayNanos = Duration.between(currentInstant, triggerInstant).toNanos() + getStaggerNanos(config);
         Runnable task = createTask(rotatable, lastTriggerInstant, triggerInstant);
-        this.scheduledFuture = config
-                .getExecutorService()
-                .schedule(task, triggerDelayNanos, TimeUnit.NANOSECONDS);
+        return TimerWheel
+                .getInstance(config.getExecutorService())
+                .schedule(task, triggerDelayNanos);
+    }
+
+    /**
+     * @return the deterministic offset of the given stream within the
+     * {@link RotationConfig#getRotationStagger() rotation stagger} window
+     */
+    static long getStaggerNanos(RotationConfig config) {
+        Duration stagger = config.getRotationStagger();
+        if (stagger.isZero()) {
+            return 0;
+        }
+        // Spread the hash bits, since the hashes of similar paths are close.
+        long hash = config.getFile().getAbsolutePath().hashCode() * 0x9E3779B97F4A7C15L;
+        return Math.floorMod(hash, stagger.toNanos());
     }
 
     private Runnable createTask(Rotatable rotatable, Instant lastTriggerInstant, Instant triggerInstant) {
-        return () -> {
-            // Avoid triggering repeatedly for the very same instant.
-            // This can happen due to:
-            // 1. Code execution is faster than the time resolution provided by the clock
-            // 2. Clocks can return a value twice (due to daylight time savings, monotonically-increasing design, etc.)
-            boolean validTriggerInstant = lastTriggerInstant == null || triggerInstant.isAfter(lastTriggerInstant);
-            if (validTriggerInstant) {
-                getLogger().debug("triggering {triggerInstant={}}", triggerInstant);
-                rotatable.rotate(TimeBasedRotationPolicy.this, triggerInstant);
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                // Avoid triggering repeatedly for the very same instant.
+                // This can happen due to:
+                // 1. Code execution is faster than the time resolution provided by the clock
+                // 2. Clocks can return a value twice (due to daylight time savings, monotonically-increasing design, etc.)
+                boolean validTriggerInstant = lastTriggerInstant == null || triggerInstant.isAfter(lastTriggerInstant);
+                if (validTriggerInstant) {
+                    getLogger().debug("triggering {triggerInstant={}}", triggerInstant);
+                    rotatable.rotate(TimeBasedRotationPolicy.this, triggerInstant);
+                }
+                reschedule(rotatable, this, triggerInstant);
+            }
+
+            @Override
+            public String toString() {
+                return String.format("%s.task(%s)", TimeBasedRotationPolicy.this, triggerInstant);
             }
-            start(rotatable, triggerInstant);
+
         };
     }
 
+    private void reschedule(Rotatable rotatable, Runnable task, Instant lastTriggerInstant) {
+        // Skip, if the policy is stopped for the rotatable in the meantime.
+        TimerWheel.Timeout timeout = timeouts.get(rotatable);
+        if (timeout == null || timeout.task != task) {
+            return;
+        }
+        TimerWheel.Timeout nextTimeout = schedule(rotatable, lastTriggerInstant);
+        if (!timeouts.replace(rotatable, timeout, nextTimeout)) {
+            nextTimeout.cancel();
+        }
+    }
+
+    /**
+     * Cancels the scheduled rotation of the given rotatable.
+     */
     @Override
-    public synchronized void stop() {
-        if (scheduledFuture != null) {
-            scheduledFuture.cancel(true);
+    public void stop(Rotatable rotatable) {
+        TimerWheel.Timeout timeout = timeouts.remove(rotatable);
+        if (timeout != null) {
+            timeout.cancel();
         }
     }
 
+    /**
+     * Cancels the scheduled rotations of all rotatables.
+     */
+    @Override
+    public void stop() {
+        timeouts.keySet().forEach(this::stop);
+    }
+
     /**
      * @param clock a clock implementation
      *
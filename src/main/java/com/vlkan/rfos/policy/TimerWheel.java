@@ -0,0 +1,360 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos.policy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timer wheel shared by time-based policies running on the same
+ * executor.
+ * <p>
+ * Timeouts are hashed into a fixed number of slots by their deadline tick,
+ * and each slot holds a doubly-linked list of timeouts. Hence, both
+ * scheduling and cancellation are O(1), and a stream costs a single timeout
+ * node, irrespective of the number of streams. A single tick task is parked
+ * on the executor until the earliest deadline, with a resolution of
+ * {@link #TICK_NANOS}, and submits all the timeouts due to the executor in
+ * one batch. While there are no timeouts, the wheel is idle.
+ * </p>
+ */
+final class TimerWheel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class);
+
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final int SLOT_COUNT = 512;
+
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+
+    // Wheels are referenced weakly, since they reference executors too.
+    private static final Map<ScheduledExecutorService, WeakReference<TimerWheel>> INSTANCES = new WeakHashMap<>();
+
+    /**
+     * Timeout scheduled in a wheel.
+     */
+    static final class Timeout implements Runnable {
+
+        private final TimerWheel wheel;
+
+        final Runnable task;
+
+        private final long deadlineTick;
+
+        private int slotIndex = -1;
+
+        private Timeout prev;
+
+        private Timeout next;
+
+        private volatile boolean cancelled = false;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Cancels the timeout, unless it is already run.
+         */
+        void cancel() {
+            wheel.cancel(this);
+        }
+
+        /**
+         * Runs the task, unless the timeout is cancelled in the meantime.
+         */
+        @Override
+        public void run() {
+            if (!cancelled) {
+                try {
+                    task.run();
+                } catch (Exception error) {
+                    LOGGER.error("timeout failure {timeout={}}", this, error);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("TimerWheel.Timeout{task=%s, cancelled=%s}", task, cancelled);
+        }
+
+    }
+
+    private final ScheduledExecutorService executorService;
+
+    private final LongSupplier nanoTimeSupplier;
+
+    private final long startNanos;
+
+    private final Timeout[] slotHeads = new Timeout[SLOT_COUNT];
+
+    private final String tickTaskDisplayName;
+
+    private long nextTick = 1;
+
+    private int timeoutCount = 0;
+
+    private ScheduledFuture<?> tickFuture;
+
+    private long tickFutureTick;
+
+    // Incremented on every tick cancellation to discard the stale ticks.
+    private long tickGeneration = 0;
+
+    private TimerWheel(ScheduledExecutorService executorService, LongSupplier nanoTimeSupplier) {
+        this.executorService = executorService;
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.startNanos = nanoTimeSupplier.getAsLong();
+        this.tickTaskDisplayName = String.format("%s.tick(%s)", TimerWheel.class.getSimpleName(), executorService);
+    }
+
+    /**
+     * @param executorService the executor running the wheel
+     *
+     * @return the wheel shared by all policies running on the given executor
+     */
+    static TimerWheel getInstance(ScheduledExecutorService executorService) {
+        return getInstance(executorService, System::nanoTime);
+    }
+
+    /**
+     * @param executorService the executor running the wheel
+     * @param nanoTimeSupplier the time source of the wheel, if created, e.g.,
+     *                         a manual one to tick deterministically in tests
+     *
+     * @return the wheel shared by all policies running on the given executor
+     */
+    static TimerWheel getInstance(ScheduledExecutorService executorService, LongSupplier nanoTimeSupplier) {
+        Objects.requireNonNull(executorService, "executorService");
+        Objects.requireNonNull(nanoTimeSupplier, "nanoTimeSupplier");
+        synchronized (INSTANCES) {
+            WeakReference<TimerWheel> wheelRef = INSTANCES.get(executorService);
+            TimerWheel wheel = wheelRef != null ? wheelRef.get() : null;
+            if (wheel == null) {
+                wheel = new TimerWheel(executorService, nanoTimeSupplier);
+                INSTANCES.put(executorService, new WeakReference<>(wheel));
+            }
+            return wheel;
+        }
+    }
+
+    /**
+     * Schedules the given task to run after the given delay.
+     *
+     * @param task the task to be run
+     * @param delayNanos the delay in nanoseconds
+     *
+     * @return the timeout, which can be used for cancellation
+     */
+    synchronized Timeout schedule(Runnable task, long delayNanos) {
+        Objects.requireNonNull(task, "task");
+        long elapsedNanos = nanoTimeSupplier.getAsLong() - startNanos;
+
+        // Catch up with the current tick, if idle. Otherwise, the first tick
+        // needs to visit every slot passed in the meantime.
+        if (timeoutCount == 0) {
+            nextTick = Math.max(nextTick, elapsedNanos / TICK_NANOS + 1);
+        }
+
+        // Hash the timeout into its slot.
+        long deadlineNanos = elapsedNanos + Math.max(0, delayNanos);
+        long deadlineTick = Math.max(nextTick, (deadlineNanos + TICK_NANOS - 1) / TICK_NANOS);
+        Timeout timeout = new Timeout(this, task, deadlineTick);
+        unsafeLink(timeout, (int) (deadlineTick & SLOT_MASK));
+
+        // Start ticking, if idle, or wake up earlier, if parked for later.
+        if (tickFuture == null || deadlineTick < tickFutureTick) {
+            unsafeCancelTick();
+            unsafeScheduleTick(deadlineTick);
+        }
+        return timeout;
+    }
+
+    private synchronized void cancel(Timeout timeout) {
+        timeout.cancelled = true;
+        if (timeout.slotIndex >= 0) {
+            unsafeUnlink(timeout);
+            // Leave the tick parked otherwise, it reparks, if woken up early.
+            if (timeoutCount == 0) {
+                unsafeCancelTick();
+            }
+        }
+    }
+
+    private void tick(long generation) {
+
+        // Collect the due timeouts of the passed ticks.
+        List<Timeout> dueTimeouts = new ArrayList<>();
+        synchronized (this) {
+            if (generation != tickGeneration) {
+                return;
+            }
+            // Visit the slots of the passed ticks, each at most once, since
+            // the tick might have been parked for more than a round.
+            long currentTick = (nanoTimeSupplier.getAsLong() - startNanos) / TICK_NANOS;
+            long lastVisitedTick = Math.min(currentTick, nextTick + SLOT_MASK);
+            for (long visitedTick = nextTick; visitedTick <= lastVisitedTick; visitedTick++) {
+                Timeout timeout = slotHeads[(int) (visitedTick & SLOT_MASK)];
+                while (timeout != null) {
+                    Timeout nextTimeout = timeout.next;
+                    if (timeout.deadlineTick <= currentTick) {
+                        unsafeUnlink(timeout);
+                        dueTimeouts.add(timeout);
+                    }
+                    timeout = nextTimeout;
+                }
+            }
+            nextTick = Math.max(nextTick, currentTick + 1);
+
+            // Park until the earliest deadline, if there are timeouts left.
+            if (timeoutCount > 0) {
+                unsafeScheduleTick(unsafeFindEarliestDeadlineTick());
+            } else {
+                tickFuture = null;
+            }
+
+        }
+
+        // Submit the due timeouts in one batch, outside the lock, since tasks
+        // schedule their next timeouts, and a slow task should not delay the
+        // others.
+        if (!dueTimeouts.isEmpty()) {
+            LOGGER.debug("submitting due timeouts {count={}}", dueTimeouts.size());
+        }
+        // noinspection ForLoopReplaceableByForEach (avoid iterator instantion)
+        for (int timeoutIndex = 0; timeoutIndex < dueTimeouts.size(); timeoutIndex++) {
+            Timeout timeout = dueTimeouts.get(timeoutIndex);
+            try {
+                executorService.execute(timeout);
+            } catch (RejectedExecutionException error) {
+                LOGGER.error("timeout submission failure {timeout={}}", timeout, error);
+            }
+        }
+
+    }
+
+    private long unsafeFindEarliestDeadlineTick() {
+
+        // Look for a deadline within the next round first, which is the
+        // common case, by visiting the slots in order.
+        for (long tick = nextTick; tick <= nextTick + SLOT_MASK; tick++) {
+            for (Timeout timeout = slotHeads[(int) (tick & SLOT_MASK)]; timeout != null; timeout = timeout.next) {
+                if (timeout.deadlineTick == tick) {
+                    return tick;
+                }
+            }
+        }
+
+        // Otherwise, visit all timeouts.
+        long earliestDeadlineTick = Long.MAX_VALUE;
+        for (Timeout slotHead : slotHeads) {
+            for (Timeout timeout = slotHead; timeout != null; timeout = timeout.next) {
+                earliestDeadlineTick = Math.min(earliestDeadlineTick, timeout.deadlineTick);
+            }
+        }
+        return earliestDeadlineTick;
+
+    }
+
+    private void unsafeCancelTick() {
+        if (tickFuture != null) {
+            tickFuture.cancel(false);
+            tickFuture = null;
+            tickGeneration++;
+        }
+    }
+
+    private void unsafeScheduleTick(long tick) {
+        long delayNanos = Math.max(0, startNanos + tick * TICK_NANOS - nanoTimeSupplier.getAsLong());
+        long generation = tickGeneration;
+        Runnable tickTask = new Runnable() {
+
+            @Override
+            public void run() {
+                tick(generation);
+            }
+
+            @Override
+            public String toString() {
+                return tickTaskDisplayName;
+            }
+
+        };
+        try {
+            tickFuture = executorService.schedule(tickTask, delayNanos, TimeUnit.NANOSECONDS);
+            tickFutureTick = tick;
+        } catch (RejectedExecutionException error) {
+            LOGGER.error("tick scheduling failure {executorService={}}", executorService, error);
+            tickFuture = null;
+        }
+    }
+
+    private void unsafeLink(Timeout timeout, int slotIndex) {
+        Timeout head = slotHeads[slotIndex];
+        timeout.slotIndex = slotIndex;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        slotHeads[slotIndex] = timeout;
+        timeoutCount++;
+    }
+
+    private void unsafeUnlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slotHeads[timeout.slotIndex] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slotIndex = -1;
+        timeoutCount--;
+    }
+
+    /**
+     * @return the number of scheduled timeouts
+     */
+    synchronized int getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TimerWheel{executorService=%s}", executorService);
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos.policy;
+
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Caches the upcoming trigger instants of a schedule in batches.
+ * <p>
+ * Trigger instants are computed by the given function in batches of
+ * {@link #BATCH_SIZE}, and looked up by a binary search afterwards. Hence,
+ * lookups neither allocate nor repeat the (zone-aware) calendar arithmetic,
+ * unless the batch is exhausted or the clock goes backwards.
+ * </p>
+ */
+final class TriggerSchedule {
+
+    static final int BATCH_SIZE = 64;
+
+    private static final class Batch {
+
+        private final long afterEpochMillis;
+
+        private final long[] triggerEpochMillis;
+
+        private Batch(long afterEpochMillis, long[] triggerEpochMillis) {
+            this.afterEpochMillis = afterEpochMillis;
+            this.triggerEpochMillis = triggerEpochMillis;
+        }
+
+    }
+
+    private final LongUnaryOperator nextTriggerFinder;
+
+    private volatile Batch batch;
+
+    /**
+     * @param nextTriggerFinder the function returning the first trigger
+     *                          instant (in epoch milliseconds) after the given
+     *                          one
+     */
+    TriggerSchedule(LongUnaryOperator nextTriggerFinder) {
+        this.nextTriggerFinder = nextTriggerFinder;
+    }
+
+    /**
+     * @param epochMillis an instant in epoch milliseconds
+     *
+     * @return the first trigger instant after the given one
+     */
+    long getNextTriggerEpochMillis(long epochMillis) {
+        Batch batch = this.batch;
+        if (batch == null || !covers(batch, epochMillis)) {
+            batch = createBatch(epochMillis);
+            this.batch = batch;
+        }
+        long[] triggerEpochMillis = batch.triggerEpochMillis;
+        int index = Arrays.binarySearch(triggerEpochMillis, epochMillis);
+        // Skip the exact match, otherwise use the insertion point.
+        index = index >= 0 ? index + 1 : -index - 1;
+        return triggerEpochMillis[index];
+    }
+
+    private static boolean covers(Batch batch, long epochMillis) {
+        long[] triggerEpochMillis = batch.triggerEpochMillis;
+        return batch.afterEpochMillis <= epochMillis &&
+                epochMillis < triggerEpochMillis[triggerEpochMillis.length - 1];
+    }
+
+    private Batch createBatch(long afterEpochMillis) {
+        long[] triggerEpochMillis = new long[BATCH_SIZE];
+        long lastEpochMillis = afterEpochMillis;
+        for (int triggerIndex = 0; triggerIndex < BATCH_SIZE; triggerIndex++) {
+            long nextEpochMillis = nextTriggerFinder.applyAsLong(lastEpochMillis);
+            if (nextEpochMillis <= lastEpochMillis) {
+                String message = String.format(
+                        "non-increasing trigger instant {lastEpochMillis=%d, nextEpochMillis=%d}",
+                        lastEpochMillis, nextEpochMillis);
+                throw new IllegalStateException(message);
+            }
+            triggerEpochMillis[triggerIndex] = lastEpochMillis = nextEpochMillis;
+        }
+        return new Batch(afterEpochMillis, triggerEpochMillis);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+class CachedClockTest {
+
+    @Test
+    void test_invalid_resolution() {
+        for (Duration invalidResolution : new Duration[]{Duration.ZERO, Duration.ofMillis(-1)}) {
+            Assertions
+                    .assertThatThrownBy(() -> new CachedClock(invalidResolution))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("invalid resolution");
+        }
+    }
+
+    @Test
+    void test_caching() {
+        try (CachedClock clock = new CachedClock(Duration.ofHours(1))) {
+
+            // Verify that the instant is cached.
+            Instant instant = clock.now();
+            Assertions.assertThat(clock.now()).isSameAs(instant);
+
+            // Verify that the instant is close to the system time.
+            Assertions.assertThat(System.currentTimeMillis() - instant.toEpochMilli()).isBetween(0L, 60_000L);
+
+            // Verify the midnight computation.
+            Assertions.assertThat(clock.midnight()).isEqualTo(new SystemClock() {
+                @Override
+                public Instant now() {
+                    return instant;
+                }
+            }.midnight());
+
+        }
+    }
+
+    @Test
+    void test_ticking() throws InterruptedException {
+        CachedClock clock = new CachedClock(Duration.ofMillis(1));
+        try {
+
+            // Verify that the instant advances.
+            Instant instant = clock.now();
+            long deadlineMillis = System.currentTimeMillis() + 5_000;
+            while (clock.now() == instant) {
+                Assertions.assertThat(System.currentTimeMillis()).isLessThan(deadlineMillis);
+                Thread.sleep(1);
+            }
+            Assertions.assertThat(clock.now()).isAfter(instant);
+
+        } finally {
+            clock.close();
+        }
+
+        // Verify that the instant is frozen after close.
+        Thread.sleep(10);
+        Instant instant = clock.now();
+        Thread.sleep(10);
+        Assertions.assertThat(clock.now()).isSameAs(instant);
+
+    }
+
+}
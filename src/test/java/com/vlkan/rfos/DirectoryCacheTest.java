@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+class DirectoryCacheTest {
+
+    @TempDir
+    File tmpDir;
+
+    @Test
+    void test_createDirectories() throws IOException {
+
+        // Verify the creation of nested directories.
+        DirectoryCache cache = new DirectoryCache(2);
+        File directory1 = new File(tmpDir, "2020/01/01/00");
+        Assertions.assertThat(cache.createDirectories(directory1)).isTrue();
+        Assertions.assertThat(directory1).isDirectory();
+
+        // Verify that cached directories are not checked.
+        Files.delete(directory1.toPath());
+        Assertions.assertThat(cache.createDirectories(directory1)).isFalse();
+        Assertions.assertThat(directory1).doesNotExist();
+
+        // Verify the invalidation.
+        cache.invalidate(directory1);
+        Assertions.assertThat(cache.createDirectories(directory1)).isTrue();
+        Assertions.assertThat(directory1).isDirectory();
+
+        // Verify that the least recently used directory is evicted.
+        File directory2 = new File(tmpDir, "2020/01/01/01");
+        File directory3 = new File(tmpDir, "2020/01/01/02");
+        Assertions.assertThat(cache.createDirectories(directory2)).isTrue();
+        Assertions.assertThat(cache.createDirectories(directory1)).isFalse();
+        Assertions.assertThat(cache.createDirectories(directory3)).isTrue();
+        Assertions.assertThat(cache.size()).isEqualTo(2);
+        Assertions.assertThat(cache.createDirectories(directory1)).isFalse();
+        Assertions.assertThat(cache.createDirectories(directory2)).isTrue();
+
+    }
+
+}
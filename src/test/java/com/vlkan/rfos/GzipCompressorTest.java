@@ -0,0 +1,258 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+class GzipCompressorTest {
+
+    private static final Random RANDOM = new Random(0);
+
+    @TempDir
+    File tmpDir;
+
+    @Test
+    void test_round_trip() throws IOException {
+        int[] bufferSizes = {1, 7, 512, 8 * 1024, RotationConfig.getDefaultCompressionBufferSize()};
+        int[] contentLengths = {0, 1, 100, 64 * 1024 + 1, 1024 * 1024};
+        for (int bufferSize : bufferSizes) {
+            GzipCompressor compressor = new GzipCompressor(bufferSize, 0);
+            for (int contentLength : contentLengths) {
+                byte[] content = generateContent(contentLength);
+                File sourceFile = new File(tmpDir, "source-" + bufferSize + "-" + contentLength);
+                File targetFile = new File(tmpDir, "target-" + bufferSize + "-" + contentLength + ".gz");
+                Files.write(sourceFile.toPath(), content);
+                compressor.compress(sourceFile, targetFile, null, null);
+                Assertions
+                        .assertThat(targetFile.length())
+                        .as("bufferSize=%d, contentLength=%d", bufferSize, contentLength)
+                        .isEqualTo(gzip(content).length);
+                Assertions
+                        .assertThat(gunzip(targetFile))
+                        .as("bufferSize=%d, contentLength=%d", bufferSize, contentLength)
+                        .isEqualTo(content);
+            }
+        }
+    }
+
+    @Test
+    void test_round_trip_with_blocks_and_dictionary() throws IOException {
+        byte[] dictionary = generateContent(GzipCompressor.DICTIONARY_LENGTH);
+        int[] blockSizes = {100, 1000, 64 * 1024};
+        int[] contentLengths = {0, 1, 100, 64 * 1024 + 1, 256 * 1024};
+        for (int blockSize : blockSizes) {
+            GzipCompressor compressor = new GzipCompressor(8 * 1024, blockSize);
+            for (int contentLength : contentLengths) {
+                byte[] content = generateContent(contentLength);
+                File sourceFile = new File(tmpDir, "source-" + blockSize + "-" + contentLength);
+                Files.write(sourceFile.toPath(), content);
+
+                // Verify the plain output using standard tools.
+                File plainFile = new File(tmpDir, "plain-" + blockSize + "-" + contentLength + ".gz");
+                compressor.compress(sourceFile, plainFile, null, null);
+                Assertions
+                        .assertThat(gunzip(plainFile))
+                        .as("blockSize=%d, contentLength=%d", blockSize, contentLength)
+                        .isEqualTo(content);
+
+                // Verify the output using a dictionary.
+                File dictionaryFile = new File(tmpDir, "dictionary-" + blockSize + "-" + contentLength + ".gz");
+                compressor.compress(sourceFile, dictionaryFile, dictionary, null);
+                Assertions
+                        .assertThat(readFully(new GzipBlockInputStream(
+                                Files.newInputStream(dictionaryFile.toPath()), dictionary)))
+                        .as("blockSize=%d, contentLength=%d", blockSize, contentLength)
+                        .isEqualTo(content);
+
+                // Verify missing dictionary failure.
+                Assertions
+                        .assertThatThrownBy(() -> readFully(new GzipBlockInputStream(
+                                Files.newInputStream(dictionaryFile.toPath()), null)))
+                        .isInstanceOf(ZipException.class)
+                        .hasMessage("missing preset dictionary");
+
+            }
+        }
+    }
+
+    @Test
+    void test_dictionary_improves_ratio_of_similar_content() throws IOException {
+        byte[] previousContent = generateSimilarLines(64 * 1024);
+        File previousFile = new File(tmpDir, "previous");
+        Files.write(previousFile.toPath(), previousContent);
+        byte[] dictionary = GzipCompressor.readDictionary(previousFile);
+        Assertions.assertThat(dictionary).hasSize(GzipCompressor.DICTIONARY_LENGTH);
+        File sourceFile = new File(tmpDir, "source");
+        Files.write(sourceFile.toPath(), generateSimilarLines(4 * 1024));
+        GzipCompressor compressor = new GzipCompressor(RotationConfig.getDefaultCompressionBufferSize(), 0);
+        File plainFile = new File(tmpDir, "plain.gz");
+        compressor.compress(sourceFile, plainFile, null, null);
+        File dictionaryFile = new File(tmpDir, "dictionary.gz");
+        compressor.compress(sourceFile, dictionaryFile, dictionary, null);
+        Assertions.assertThat(dictionaryFile.length()).isLessThan(plainFile.length());
+    }
+
+    @Test
+    void test_index() throws IOException {
+
+        // Compress numbered lines using a dictionary and an index.
+        StringBuilder contentBuilder = new StringBuilder();
+        int lineCount = 10_000;
+        for (int lineIndex = 0; lineIndex < lineCount; lineIndex++) {
+            contentBuilder.append("line-").append(lineIndex).append('\n');
+        }
+        byte[] content = contentBuilder.toString().getBytes(StandardCharsets.US_ASCII);
+        File sourceFile = new File(tmpDir, "source");
+        Files.write(sourceFile.toPath(), content);
+        File targetFile = new File(tmpDir, "target.gz");
+        File indexFile = new File(targetFile.getPath() + GzipBlockIndex.FILE_SUFFIX);
+        byte[] dictionary = generateSimilarLines(1024);
+        File dictionaryFile = GzipBlockInputStream.getDictionaryFile(tmpDir, GzipCompressor.getDictionaryId(dictionary));
+        Files.write(dictionaryFile.toPath(), dictionary);
+        int blockSize = 1000;
+        GzipCompressor compressor = new GzipCompressor(4096, blockSize);
+        compressor.compress(sourceFile, targetFile, dictionary, indexFile);
+
+        // Verify the index.
+        GzipBlockIndex index = GzipBlockIndex.load(targetFile);
+        int blockCount = (content.length + blockSize - 1) / blockSize;
+        Assertions.assertThat(index.getBlockCount()).isEqualTo(blockCount);
+        Assertions.assertThat(index.getCompressedOffset(0)).isEqualTo(0);
+        Assertions.assertThat(index.getCompressedOffset(blockCount - 1)).isLessThan(targetFile.length());
+        for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+            long uncompressedOffset = (long) blockIndex * blockSize;
+            Assertions.assertThat(index.getUncompressedOffset(blockIndex)).isEqualTo(uncompressedOffset);
+            long recordNumber = 0;
+            for (int byteIndex = 0; byteIndex < uncompressedOffset; byteIndex++) {
+                if (content[byteIndex] == '\n') {
+                    recordNumber++;
+                }
+            }
+            Assertions.assertThat(index.getRecordNumber(blockIndex)).isEqualTo(recordNumber);
+        }
+
+        // Verify seeking to offsets.
+        int[] offsets = {0, 1, blockSize - 1, blockSize, content.length / 2, content.length - 1, content.length};
+        for (int offset : offsets) {
+            byte[] expectedContent = Arrays.copyOfRange(content, offset, content.length);
+            Assertions
+                    .assertThat(readFully(GzipBlockInputStream.open(targetFile, offset)))
+                    .as("offset=%d", offset)
+                    .isEqualTo(expectedContent);
+        }
+
+        // Verify seeking to records.
+        int[] recordNumbers = {0, 1, 99, 100, lineCount / 2, lineCount - 1};
+        for (int recordNumber : recordNumbers) {
+            try (InputStream inputStream = GzipBlockInputStream.openAtRecord(targetFile, recordNumber)) {
+                byte[] lineBytes = new byte[("line-" + recordNumber + '\n').length()];
+                int readByteCount = inputStream.read(lineBytes);
+                while (readByteCount < lineBytes.length) {
+                    readByteCount += inputStream.read(lineBytes, readByteCount, lineBytes.length - readByteCount);
+                }
+                Assertions
+                        .assertThat(new String(lineBytes, StandardCharsets.US_ASCII))
+                        .isEqualTo("line-" + recordNumber + '\n');
+            }
+        }
+
+    }
+
+    @Test
+    void test_estimateCompressionRatio() throws IOException {
+        GzipCompressor compressor = new GzipCompressor(RotationConfig.getDefaultCompressionBufferSize(), 0);
+        int contentLength = 1024 * 1024;
+
+        // Verify random content.
+        byte[] randomContent = new byte[contentLength];
+        RANDOM.nextBytes(randomContent);
+        File randomFile = new File(tmpDir, "random");
+        Files.write(randomFile.toPath(), randomContent);
+        Assertions.assertThat(compressor.estimateCompressionRatio(randomFile)).isGreaterThan(0.99);
+
+        // Verify repetitive content.
+        byte[] repetitiveContent = new byte[contentLength];
+        for (int byteIndex = 0; byteIndex < contentLength; byteIndex++) {
+            repetitiveContent[byteIndex] = (byte) ('a' + byteIndex % 26);
+        }
+        File repetitiveFile = new File(tmpDir, "repetitive");
+        Files.write(repetitiveFile.toPath(), repetitiveContent);
+        Assertions.assertThat(compressor.estimateCompressionRatio(repetitiveFile)).isLessThan(0.1);
+
+    }
+
+    private static byte[] generateContent(int length) {
+        // Mix repetitive and random bytes to exercise both matches and literals.
+        byte[] content = new byte[length];
+        for (int byteIndex = 0; byteIndex < length; byteIndex++) {
+            content[byteIndex] = byteIndex % 3 == 0
+                    ? (byte) RANDOM.nextInt()
+                    : (byte) ('a' + byteIndex % 26);
+        }
+        return content;
+    }
+
+    private static byte[] generateSimilarLines(int length) {
+        StringBuilder builder = new StringBuilder(length + 128);
+        while (builder.length() < length) {
+            builder
+                    .append("{\"level\":\"INFO\",\"logger\":\"com.acme.RequestHandler\",\"traceId\":\"")
+                    .append(Long.toHexString(RANDOM.nextLong()))
+                    .append("\",\"message\":\"request completed\"}\n");
+        }
+        return builder.substring(0, length).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(content);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] gunzip(File file) throws IOException {
+        return readFully(new GZIPInputStream(Files.newInputStream(file.toPath())));
+    }
+
+    static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream closedInputStream = inputStream) {
+            byte[] buffer = new byte[8192];
+            int readByteCount;
+            while ((readByteCount = closedInputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, readByteCount);
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+class Lz4CompressorTest {
+
+    private static final Random RANDOM = new Random(0);
+
+    @TempDir
+    File tmpDir;
+
+    @Test
+    void test_xxHash32() {
+        Assertions.assertThat(xxHash32("")).isEqualTo(0x02CC5D05);
+        Assertions.assertThat(xxHash32("a")).isEqualTo(0x550D7456);
+        Assertions.assertThat(xxHash32("abc")).isEqualTo(0x32D153FF);
+        // Verify streaming across stripe boundaries.
+        byte[] content = new byte[1000];
+        RANDOM.nextBytes(content);
+        int expectedHash = Lz4Compressor.XxHash32.hash(content, 0, content.length);
+        Lz4Compressor.XxHash32 hash = new Lz4Compressor.XxHash32();
+        for (int offset = 0; offset < content.length; offset += 7) {
+            hash.update(content, offset, Math.min(7, content.length - offset));
+        }
+        Assertions.assertThat(hash.digest()).isEqualTo(expectedHash);
+    }
+
+    private static int xxHash32(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return Lz4Compressor.XxHash32.hash(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void test_round_trip() throws IOException {
+        Lz4Compressor compressor = new Lz4Compressor();
+        int[] contentLengths = {0, 1, 12, 13, 100, Lz4Compressor.BLOCK_SIZE, Lz4Compressor.BLOCK_SIZE + 1, 1024 * 1024};
+        for (int contentLength : contentLengths) {
+            for (String contentType : new String[]{"random", "repetitive", "mixed"}) {
+                byte[] content = generateContent(contentType, contentLength);
+                File sourceFile = new File(tmpDir, "source-" + contentType + "-" + contentLength);
+                File targetFile = new File(tmpDir, "target-" + contentType + "-" + contentLength + ".lz4");
+                Files.write(sourceFile.toPath(), content);
+                compressor.compress(sourceFile, targetFile);
+                byte[] compressedContent = Files.readAllBytes(targetFile.toPath());
+                Assertions
+                        .assertThat(decompress(compressedContent))
+                        .as("contentType=%s, contentLength=%d", contentType, contentLength)
+                        .isEqualTo(content);
+                if ("repetitive".equals(contentType) && contentLength > 1024) {
+                    Assertions.assertThat(compressedContent.length).isLessThan(contentLength / 10);
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_frame_input_stream() throws IOException {
+        Lz4Compressor compressor = new Lz4Compressor();
+        int[] contentLengths = {0, 1, 100, Lz4Compressor.BLOCK_SIZE + 1, 1024 * 1024};
+        for (int contentLength : contentLengths) {
+            for (String contentType : new String[]{"random", "repetitive", "mixed"}) {
+                byte[] content = generateContent(contentType, contentLength);
+                File sourceFile = new File(tmpDir, "source-" + contentType + "-" + contentLength);
+                File targetFile = new File(tmpDir, "target-" + contentType + "-" + contentLength + ".lz4");
+                Files.write(sourceFile.toPath(), content);
+                compressor.compress(sourceFile, targetFile);
+                try (InputStream inputStream = Lz4FrameInputStream.open(targetFile)) {
+                    Assertions
+                            .assertThat(GzipCompressorTest.readFully(inputStream))
+                            .as("contentType=%s, contentLength=%d", contentType, contentLength)
+                            .isEqualTo(content);
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_frame_input_stream_checksum_mismatch() throws IOException {
+        File sourceFile = new File(tmpDir, "source");
+        File targetFile = new File(tmpDir, "target.lz4");
+        Files.write(sourceFile.toPath(), generateContent("mixed", 1_000));
+        new Lz4Compressor().compress(sourceFile, targetFile);
+        byte[] frame = Files.readAllBytes(targetFile.toPath());
+        frame[frame.length - 1] ^= 1;
+        Files.write(targetFile.toPath(), frame);
+        try (InputStream inputStream = Lz4FrameInputStream.open(targetFile)) {
+            Assertions
+                    .assertThatThrownBy(() -> GzipCompressorTest.readFully(inputStream))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("LZ4 content checksum mismatch");
+        }
+    }
+
+    @Test
+    void test_frame_header() throws IOException {
+        File sourceFile = new File(tmpDir, "source");
+        File targetFile = new File(tmpDir, "target.lz4");
+        Files.write(sourceFile.toPath(), new byte[0]);
+        new Lz4Compressor().compress(sourceFile, targetFile);
+        // Identical to the header written by `lz4 -B4`.
+        Assertions
+                .assertThat(Files.readAllBytes(targetFile.toPath()))
+                .startsWith(0x04, 0x22, 0x4D, 0x18, 0x64, 0x40, 0xA7)
+                .hasSize(7 + 4 + 4);
+    }
+
+    private static byte[] generateContent(String contentType, int length) {
+        byte[] content = new byte[length];
+        switch (contentType) {
+            case "random":
+                RANDOM.nextBytes(content);
+                break;
+            case "repetitive":
+                for (int byteIndex = 0; byteIndex < length; byteIndex++) {
+                    content[byteIndex] = (byte) ('a' + byteIndex % 26);
+                }
+                break;
+            default:
+                for (int byteIndex = 0; byteIndex < length; byteIndex++) {
+                    content[byteIndex] = byteIndex % 3 == 0
+                            ? (byte) RANDOM.nextInt(4)
+                            : (byte) ('a' + byteIndex % 26);
+                }
+        }
+        return content;
+    }
+
+    /**
+     * Decompresses an LZ4 frame as written by {@link Lz4Compressor}.
+     */
+    static byte[] decompress(byte[] frame) {
+        Assertions.assertThat(Lz4Compressor.readIntLE(frame, 0)).isEqualTo(Lz4Compressor.MAGIC);
+        Assertions.assertThat(frame[4]).isEqualTo(Lz4Compressor.FRAME_FLAGS);
+        Assertions.assertThat(frame[5]).isEqualTo(Lz4Compressor.BLOCK_DESCRIPTOR);
+        Assertions.assertThat(frame[6]).isEqualTo((byte) (Lz4Compressor.XxHash32.hash(frame, 4, 2) >>> 8));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int frameIndex = 7;
+        for (;;) {
+            int blockLength = Lz4Compressor.readIntLE(frame, frameIndex);
+            frameIndex += 4;
+            if (blockLength == 0) {
+                break;
+            }
+            if ((blockLength & Lz4Compressor.UNCOMPRESSED_BLOCK_FLAG) != 0) {
+                blockLength &= ~Lz4Compressor.UNCOMPRESSED_BLOCK_FLAG;
+                outputStream.write(frame, frameIndex, blockLength);
+            } else {
+                byte[] block = decompressBlock(frame, frameIndex, blockLength);
+                Assertions.assertThat(block.length).isLessThanOrEqualTo(Lz4Compressor.BLOCK_SIZE);
+                outputStream.write(block, 0, block.length);
+            }
+            frameIndex += blockLength;
+        }
+        byte[] content = outputStream.toByteArray();
+        Assertions
+                .assertThat(Lz4Compressor.readIntLE(frame, frameIndex))
+                .isEqualTo(Lz4Compressor.XxHash32.hash(content, 0, content.length));
+        Assertions.assertThat(frame.length).isEqualTo(frameIndex + 4);
+        return content;
+    }
+
+    private static byte[] decompressBlock(byte[] input, int inputOffset, int inputLength) {
+        byte[] output = new byte[Lz4Compressor.BLOCK_SIZE];
+        int outputIndex = 0;
+        int inputIndex = inputOffset;
+        int inputEndIndex = inputOffset + inputLength;
+        int lastMatchStartIndex = -1;
+        int lastMatchEndIndex = -1;
+        for (;;) {
+            int token = input[inputIndex++] & 0xFF;
+
+            // Copy literals.
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int lengthByte;
+                do {
+                    lengthByte = input[inputIndex++] & 0xFF;
+                    literalLength += lengthByte;
+                } while (lengthByte == 255);
+            }
+            System.arraycopy(input, inputIndex, output, outputIndex, literalLength);
+            inputIndex += literalLength;
+            outputIndex += literalLength;
+            if (inputIndex == inputEndIndex) {
+                break;
+            }
+
+            // Copy the match.
+            int distance = (input[inputIndex] & 0xFF) | (input[inputIndex + 1] & 0xFF) << 8;
+            inputIndex += 2;
+            Assertions.assertThat(distance).isBetween(1, outputIndex);
+            int matchLength = token & 0xF;
+            if (matchLength == 15) {
+                int lengthByte;
+                do {
+                    lengthByte = input[inputIndex++] & 0xFF;
+                    matchLength += lengthByte;
+                } while (lengthByte == 255);
+            }
+            matchLength += Lz4Compressor.MIN_MATCH;
+            lastMatchStartIndex = outputIndex;
+            lastMatchEndIndex = outputIndex + matchLength;
+            for (int byteIndex = 0; byteIndex < matchLength; byteIndex++) {
+                output[outputIndex] = output[outputIndex - distance];
+                outputIndex++;
+            }
+        }
+        // Verify the end of block restrictions of the specification.
+        if (lastMatchStartIndex >= 0) {
+            Assertions.assertThat(outputIndex - lastMatchStartIndex).isGreaterThanOrEqualTo(12);
+            Assertions.assertThat(outputIndex - lastMatchEndIndex).isGreaterThanOrEqualTo(5);
+        }
+        return Arrays.copyOf(output, outputIndex);
+    }
+
+}
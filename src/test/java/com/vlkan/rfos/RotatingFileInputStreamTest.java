@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import com.vlkan.rfos.policy.RotationPolicy;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class RotatingFileInputStreamTest {
+
+    @TempDir
+    File tmpDir;
+
+    private ScheduledExecutorService executorService;
+
+    private ExecutorService readerExecutorService;
+
+    @BeforeEach
+    void setupExecutorServices() {
+        executorService = new ScheduledThreadPoolExecutor(2);
+        readerExecutorService = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void stopExecutorServices() {
+        executorService.shutdownNow();
+        readerExecutorService.shutdownNow();
+    }
+
+    @Test
+    void test_following_with_callback() throws Exception {
+        test_following(true);
+    }
+
+    @Test
+    void test_following_without_callback() throws Exception {
+        test_following(false);
+    }
+
+    private void test_following(boolean callbackRegistered) throws Exception {
+
+        // Create the follower before the file.
+        String fileNamePrefix = "following-" + callbackRegistered;
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyyMMddHHmmssSSS}.log").getAbsolutePath();
+        RotatingFileInputStream inputStream = new RotatingFileInputStream(file, 1024, 10_000);
+
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationConfig.Builder configBuilder = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .filePattern(fileNamePattern)
+                .policy(policy);
+        if (callbackRegistered) {
+            configBuilder.callback(inputStream);
+        }
+        RotatingFileOutputStream outputStream = new RotatingFileOutputStream(configBuilder.build());
+
+        // Read concurrently.
+        ByteArrayOutputStream expectedContentStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream contentStream = new ByteArrayOutputStream();
+        AtomicInteger readByteCount = new AtomicInteger();
+        int lineCount = 1_000;
+        int expectedLength = 0;
+        for (int lineIndex = 0; lineIndex < lineCount; lineIndex++) {
+            expectedLength += String.format("line %d%n", lineIndex).length();
+        }
+        int finalExpectedLength = expectedLength;
+        Future<?> readFuture = readerExecutorService.submit(() -> {
+            byte[] buffer = new byte[100];
+            while (readByteCount.get() < finalExpectedLength) {
+                int length = inputStream.read(buffer, 0, Math.min(buffer.length, finalExpectedLength - readByteCount.get()));
+                Assertions.assertThat(length).isPositive();
+                contentStream.write(buffer, 0, length);
+                readByteCount.addAndGet(length);
+            }
+            return null;
+        });
+
+        // Write while rotating. Without the callback, the watch service might
+        // miss files rotated faster than it is notified. Hence, rotations
+        // wait for the reader to catch up.
+        Instant instant = Instant.parse("2020-01-01T00:00:00Z");
+        for (int lineIndex = 0; lineIndex < lineCount; lineIndex++) {
+            byte[] line = String.format("line %d%n", lineIndex).getBytes(StandardCharsets.US_ASCII);
+            outputStream.write(line);
+            expectedContentStream.write(line);
+            if (lineIndex % 100 == 99) {
+                if (!callbackRegistered) {
+                    awaitReadByteCount(readByteCount, expectedContentStream.size());
+                }
+                instant = instant.plusMillis(1);
+                outputStream.rotate(policy, instant);
+            }
+        }
+
+        // Verify the content. Since the max wait is long, the reader needs
+        // notifications to complete in time.
+        readFuture.get(5, TimeUnit.SECONDS);
+        Assertions.assertThat(contentStream.toByteArray()).isEqualTo(expectedContentStream.toByteArray());
+
+        // Verify that writes after rotation are followed too.
+        byte[] lastLine = "last line\n".getBytes(StandardCharsets.US_ASCII);
+        Future<byte[]> contentFuture = readerExecutorService.submit(() -> readFully(inputStream, lastLine.length));
+        outputStream.rotate(policy, instant.plusMillis(1));
+        outputStream.write(lastLine);
+        Assertions.assertThat(contentFuture.get(5, TimeUnit.SECONDS)).isEqualTo(lastLine);
+
+        // Verify that close unblocks the reader.
+        CompletableFuture<Integer> lastReadFuture = CompletableFuture.supplyAsync(() -> {
+            try {
+                return inputStream.read();
+            } catch (IOException error) {
+                throw new RuntimeException(error);
+            }
+        }, readerExecutorService);
+        inputStream.close();
+        Assertions.assertThat(lastReadFuture.get(5, TimeUnit.SECONDS)).isEqualTo(-1);
+        outputStream.close();
+
+    }
+
+    @Test
+    void test_truncation() throws Exception {
+        File file = new File(tmpDir, "truncation.log");
+        Files.write(file.toPath(), "first\n".getBytes(StandardCharsets.US_ASCII));
+        try (RotatingFileInputStream inputStream = new RotatingFileInputStream(file, 1024, 10_000)) {
+            Assertions.assertThat(readFully(inputStream, 6)).isEqualTo("first\n".getBytes(StandardCharsets.US_ASCII));
+            Future<byte[]> contentFuture = readerExecutorService.submit(() -> readFully(inputStream, 3));
+            Files.write(file.toPath(), "2nd".getBytes(StandardCharsets.US_ASCII));
+            Assertions.assertThat(contentFuture.get(5, TimeUnit.SECONDS)).isEqualTo("2nd".getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void test_segment_recycling() throws Exception {
+
+        // Create the streams.
+        File file = new File(tmpDir, "segmentRecycling.log");
+        RotatingFileInputStream inputStream = new RotatingFileInputStream(file, 1024, 100);
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .maxBackupCount(1)
+                .segmentRecycling(true)
+                .policy(policy)
+                .callback(inputStream)
+                .build();
+        RotatingFileOutputStream outputStream = new RotatingFileOutputStream(config);
+        Instant instant = Instant.parse("2020-01-01T00:00:00Z");
+
+        // Fill the backup.
+        outputStream.write("aaaaaaaa".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(readFully(inputStream, 8)).isEqualTo("aaaaaaaa".getBytes(StandardCharsets.US_ASCII));
+        outputStream.rotate(policy, instant);
+        outputStream.write("bbbbbbbb".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(readFully(inputStream, 8)).isEqualTo("bbbbbbbb".getBytes(StandardCharsets.US_ASCII));
+
+        // Verify that stale bytes of the recycled file are not read.
+        outputStream.rotate(policy, instant);
+        outputStream.write("cc".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(readFully(inputStream, 2)).isEqualTo("cc".getBytes(StandardCharsets.US_ASCII));
+        Future<byte[]> contentFuture = readerExecutorService.submit(() -> readFully(inputStream, 1));
+        Thread.sleep(200);
+        Assertions.assertThat(contentFuture).isNotDone();
+        outputStream.write("d".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(contentFuture.get(5, TimeUnit.SECONDS)).isEqualTo("d".getBytes(StandardCharsets.US_ASCII));
+        inputStream.close();
+        outputStream.close();
+
+    }
+
+    private static void awaitReadByteCount(AtomicInteger readByteCount, int expectedReadByteCount) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (readByteCount.get() < expectedReadByteCount) {
+            Assertions.assertThat(System.nanoTime()).isLessThan(deadlineNanos);
+            Thread.sleep(1);
+        }
+    }
+
+    private static byte[] readFully(RotatingFileInputStream inputStream, int length) throws IOException {
+        byte[] content = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int readByteCount = inputStream.read(content, offset, length - offset);
+            Assertions.assertThat(readByteCount).isPositive();
+            offset += readByteCount;
+        }
+        return content;
+    }
+
+}
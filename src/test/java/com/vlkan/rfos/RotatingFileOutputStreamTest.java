@@ -35,17 +35,28 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 class RotatingFileOutputStreamTest {
@@ -181,7 +192,7 @@ class RotatingFileOutputStreamTest {
                         Mockito.isNull(),
                         Mockito.any(Instant.class),
                         Mockito.any(OutputStream.class));
-        Mockito.verify(policy).stop();
+        Mockito.verify(policy).stop(stream);
 
         // Verify no more interactions.
         Mockito.verifyNoMoreInteractions(callback);
@@ -201,144 +212,198 @@ class RotatingFileOutputStreamTest {
     }
 
     @Test
-    void test_write_sensitive_policy() throws Exception {
+    void test_compression_recovery() throws Exception {
 
         // Determine file names.
-        String fileNamePrefix = "writeSensitivePolicy";
+        String fileNamePrefix = "compressionRecovery";
         File file = new File(tmpDir, fileNamePrefix + ".log");
-        String fileName = file.getAbsolutePath();
-        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyy}.log").getAbsolutePath();
-        File rotatedFile = new File(fileNamePattern.replace("%d{yyyy}", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))));
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyyMMdd}.log").getAbsolutePath();
+        File rotatedFile = new File(tmpDir, fileNamePrefix + "-20200101.log");
+        File partialFile = new File(tmpDir, fileNamePrefix + "-20200101.log.gz.tmp");
+        File compressedFile = new File(tmpDir, fileNamePrefix + "-20200101.log.gz");
+        File unrelatedFile = new File(tmpDir, fileNamePrefix + "-unrelated.log");
+
+        // Mimic a crash in the middle of compression.
+        byte[] payload = "rotated before the crash".getBytes(StandardCharsets.UTF_8);
+        Files.write(rotatedFile.toPath(), payload);
+        Files.write(partialFile.toPath(), new byte[]{0x1f});
+        Files.write(unrelatedFile.toPath(), payload);
 
         // Create the stream.
-        int maxByteCount = 1024;
-        SizeBasedRotationPolicy policy = new SizeBasedRotationPolicy(maxByteCount);
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
         RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
-        InOrder callbackInOrder = Mockito.inOrder(callback);
         RotationConfig config = RotationConfig
                 .builder()
                 .executorService(executorService)
-                .file(fileName)
+                .compress(true)
+                .file(file)
                 .filePattern(fileNamePattern)
                 .policy(policy)
                 .callbacks(Collections.singleton(callback))
                 .build();
         RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
 
-        // Verify the initial file open.
-        callbackInOrder
-                .verify(callback)
-                .onOpen(Mockito.isNull(),
+        // Verify the recovered compression.
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onSuccess(
+                        Mockito.isNull(),
                         Mockito.any(Instant.class),
-                        Mockito.any(OutputStream.class));
-
-        // Verify no rotations so far.
-        Mockito.verifyNoMoreInteractions(callback);
-
-        // Increase the size of the file just to the edge.
-        LOGGER.trace("writing to file");
-        for (int byteIndex = 0; byteIndex < maxByteCount; byteIndex++) {
-            stream.write(byteIndex);
+                        Mockito.eq(compressedFile));
+        Assertions.assertThat(rotatedFile).doesNotExist();
+        Assertions.assertThat(partialFile).doesNotExist();
+        Assertions.assertThat(unrelatedFile).hasBinaryContent(payload);
+        try (InputStream inputStream = new GZIPInputStream(new FileInputStream(compressedFile))) {
+            byte[] decompressedPayload = new byte[payload.length];
+            int readByteCount = inputStream.read(decompressedPayload);
+            Assertions.assertThat(readByteCount).isEqualTo(payload.length);
+            Assertions.assertThat(decompressedPayload).isEqualTo(payload);
         }
-        Assertions.assertThat(file.length()).isEqualTo(maxByteCount);
 
-        // Verify no rotations so far.
-        Mockito.verifyNoMoreInteractions(callback);
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
 
-        // Push the file size off the threshold.
-        LOGGER.trace("writing more bytes to file");
-        stream.write(0xDEADBEEF);
+    }
 
-        // Verify the rotation trigger.
-        callbackInOrder
-                .verify(callback)
-                .onTrigger(
-                        Mockito.same(policy),
-                        Mockito.any(Instant.class));
+    @Test
+    void test_compression_skip() throws Exception {
 
-        // Verify the rotation file close.
-        callbackInOrder
-                .verify(callback)
-                .onClose(
-                        Mockito.same(policy),
-                        Mockito.any(Instant.class),
-                        Mockito.any(OutputStream.class));
+        // Determine file names.
+        String fileNamePrefix = "compressionSkip";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyy}.log").getAbsolutePath();
+        Instant now = Instant.now();
+        File rotatedFile = new File(
+                fileNamePattern.replace(
+                        "%d{yyyy}",
+                        String.valueOf(now.atZone(UtcHelper.ZONE_ID).getYear())));
 
-        // Verify the rotation file open.
-        callbackInOrder
-                .verify(callback)
-                .onOpen(Mockito.same(policy),
-                        Mockito.any(Instant.class),
-                        Mockito.any(OutputStream.class));
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .compress(true)
+                .compressionSkipRatio(0.9)
+                .file(file)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
 
-        // Verify the rotation.
-        callbackInOrder
-                .verify(callback)
+        // Write incompressible content and rotate.
+        byte[] payload = new byte[256 * 1024];
+        new Random(0).nextBytes(payload);
+        stream.write(payload);
+        stream.rotate(policy, now);
+
+        // Verify that the rotated file is left uncompressed.
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
                 .onSuccess(
                         Mockito.same(policy),
-                        Mockito.any(Instant.class),
+                        Mockito.same(now),
                         Mockito.eq(rotatedFile));
-        Assertions.assertThat(rotatedFile.length()).isEqualTo(maxByteCount);
-        Assertions.assertThat(file.length()).isEqualTo(1);
+        Assertions.assertThat(rotatedFile).hasBinaryContent(payload);
+        Assertions.assertThat(new File(rotatedFile.getPath() + ".gz")).doesNotExist();
+        Assertions.assertThat(new File(rotatedFile.getPath() + ".incompressible")).exists();
+        stream.close();
 
-        // Verify no more callback interactions.
-        Mockito.verifyNoMoreInteractions(callback);
+        // Verify that the recovery leaves the skipped file alone after a restart.
+        RotationCallback restartCallback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig restartConfig = RotationConfig
+                .builder(config)
+                .compress(true)
+                .callbacks(Collections.singleton(restartCallback))
+                .build();
+        RotatingFileOutputStream restartStream = new RotatingFileOutputStream(restartConfig);
+        Mockito
+                .verify(restartCallback, Mockito.after(200).never())
+                .onSuccess(Mockito.any(), Mockito.any(), Mockito.any());
+        Assertions.assertThat(rotatedFile).hasBinaryContent(payload);
 
         // Close the stream to avoid Windows failing to clean the temporary directory.
-        stream.close();
+        restartStream.close();
 
     }
 
     @Test
-    void test_empty_files_are_not_rotated() throws Exception {
+    void test_compression_dictionary_and_index() throws Exception {
 
         // Determine file names.
-        String className = RotatingFileOutputStream.class.getSimpleName();
-        File file = new File(tmpDir, className + ".log");
-        String fileName = file.getAbsolutePath();
-        String fileNamePattern = new File(tmpDir, className + "-%d{yyyy}.log").getAbsolutePath();
+        String fileNamePrefix = "compressionDictionary";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{HHmmss}.log").getAbsolutePath();
+        Instant instant1 = Instant.parse("2020-01-01T00:00:01Z");
+        Instant instant2 = Instant.parse("2020-01-01T00:00:02Z");
+        Instant instant3 = Instant.parse("2020-01-01T00:00:03Z");
+        File compressedFile1 = new File(tmpDir, fileNamePrefix + "-000001.log.gz");
+        File compressedFile2 = new File(tmpDir, fileNamePrefix + "-000002.log.gz");
+        File compressedFile3 = new File(tmpDir, fileNamePrefix + "-000003.log.gz");
 
         // Create the stream.
-        int maxByteCount = 1024;
-        SizeBasedRotationPolicy policy = new SizeBasedRotationPolicy(maxByteCount);
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
         RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
-        InOrder callbackInOrder = Mockito.inOrder(callback);
         RotationConfig config = RotationConfig
                 .builder()
                 .executorService(executorService)
-                .file(fileName)
+                .compress(true)
+                .compressionBlockSize(1024)
+                .compressionDictionary(true)
+                .compressionIndex(true)
+                .file(file)
                 .filePattern(fileNamePattern)
                 .policy(policy)
                 .callbacks(Collections.singleton(callback))
                 .build();
         RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
 
-        // Verify the initial file open.
-        callbackInOrder
-                .verify(callback)
-                .onOpen(Mockito.isNull(),
-                        Mockito.any(Instant.class),
-                        Mockito.any(OutputStream.class));
-
-        // Write some payload of size exceeding the threshold. This should trigger
-        // an attempt to rotate the initial file, but the actual rotation should
-        // have skipped since the file is empty.
-        LOGGER.trace("writing to file");
-        byte[] payload = new byte[2 * maxByteCount];
-        for (int byteIndex = 0; byteIndex < payload.length; byteIndex++) {
-            payload[byteIndex] = (byte) byteIndex;
-        }
-        stream.write(payload);
-        stream.flush();
-        Assertions.assertThat(file.length()).isEqualTo(payload.length);
+        // Write and rotate, which samples the dictionary.
+        byte[] payload1 = "first segment\n".getBytes(StandardCharsets.US_ASCII);
+        stream.write(payload1);
+        stream.rotate(policy, instant1);
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onSuccess(Mockito.same(policy), Mockito.same(instant1), Mockito.eq(compressedFile1));
 
-        // Verify the rotation trigger.
-        callbackInOrder
-                .verify(callback)
-                .onTrigger(Mockito.same(policy), Mockito.any(Instant.class));
+        // Write and rotate twice more, where each uses the preceding one as the dictionary.
+        byte[] payload2 = new byte[10_000];
+        Arrays.fill(payload2, (byte) 'x');
+        byte[] payload3 = "third segment\n".getBytes(StandardCharsets.US_ASCII);
+        stream.write(payload2);
+        stream.rotate(policy, instant2);
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onSuccess(Mockito.same(policy), Mockito.same(instant2), Mockito.eq(compressedFile2));
+        stream.write(payload3);
+        stream.rotate(policy, instant3);
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onSuccess(Mockito.same(policy), Mockito.same(instant3), Mockito.eq(compressedFile3));
 
-        // Verify the rotation skip.
-        Mockito.verifyNoMoreInteractions(callback);
+        // Verify the compressed files.
+        File dictionaryFile1 = GzipBlockInputStream.getDictionaryFile(tmpDir, GzipCompressor.getDictionaryId(payload1));
+        File dictionaryFile2 = GzipBlockInputStream.getDictionaryFile(tmpDir, GzipCompressor.getDictionaryId(payload2));
+        Assertions.assertThat(dictionaryFile1).hasBinaryContent(payload1);
+        Assertions.assertThat(dictionaryFile2).hasBinaryContent(payload2);
+        Assertions
+                .assertThat(tmpDir.listFiles((directory, fileName) -> fileName.endsWith(GzipBlockInputStream.DICTIONARY_FILE_SUFFIX)))
+                .containsExactlyInAnyOrder(dictionaryFile1, dictionaryFile2);
+        Assertions.assertThat(GzipBlockInputStream.readDictionaryId(compressedFile1)).isEqualTo(-1);
+        Assertions.assertThat(GzipBlockInputStream.readDictionaryId(compressedFile2)).isEqualTo(GzipCompressor.getDictionaryId(payload1));
+        Assertions.assertThat(GzipBlockInputStream.readDictionaryId(compressedFile3)).isEqualTo(GzipCompressor.getDictionaryId(payload2));
+        Assertions.assertThat(GzipCompressorTest.readFully(GzipBlockInputStream.open(compressedFile1))).isEqualTo(payload1);
+        Assertions.assertThat(GzipCompressorTest.readFully(GzipBlockInputStream.open(compressedFile2))).isEqualTo(payload2);
+        Assertions.assertThat(GzipCompressorTest.readFully(GzipBlockInputStream.open(compressedFile3))).isEqualTo(payload3);
+        Assertions.assertThat(GzipBlockIndex.load(compressedFile2).getBlockCount()).isEqualTo(10);
+        Assertions
+                .assertThat(GzipCompressorTest.readFully(GzipBlockInputStream.open(compressedFile2, 9_999)))
+                .isEqualTo(new byte[]{'x'});
 
         // Close the stream to avoid Windows failing to clean the temporary directory.
         stream.close();
@@ -346,101 +411,543 @@ class RotatingFileOutputStreamTest {
     }
 
     @Test
-    void test_adding_file_header() throws IOException {
+    void test_compression_dictionary_retention() throws Exception {
 
         // Determine file names.
-        String className = RotatingFileOutputStream.class.getSimpleName();
-        File file = new File(tmpDir, className + ".log");
-        String fileName = file.getAbsolutePath();
-        String fileNamePattern = new File(tmpDir, className + "-%d{yyyy}.log").getAbsolutePath();
-        File rotatedFile = new File(fileNamePattern.replace("%d{yyyy}", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))));
+        String fileNamePrefix = "compressionDictionaryRetention";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{HHmmss}.log").getAbsolutePath();
+        File staleDictionaryFile = GzipBlockInputStream.getDictionaryFile(tmpDir, 1);
+        Files.write(staleDictionaryFile.toPath(), new byte[]{1});
 
-        // Create the stream config.
-        int maxByteCount = 1024;
-        SizeBasedRotationPolicy policy = new SizeBasedRotationPolicy(maxByteCount);
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
         RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
-        InOrder callbackInOrder = Mockito.inOrder(callback);
         RotationConfig config = RotationConfig
                 .builder()
                 .executorService(executorService)
-                .file(fileName)
+                .compress(true)
+                .compressionDictionary(true)
+                .retentionMaxFileCount(1)
+                .file(file)
                 .filePattern(fileNamePattern)
                 .policy(policy)
                 .callbacks(Collections.singleton(callback))
                 .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
 
-        // Create the header injectors.
-        byte[] header1 = "header1".getBytes(StandardCharsets.UTF_8);
-        byte[] header2 = "header2".getBytes(StandardCharsets.UTF_8);
-        Assertions.assertThat(header1.length).isLessThan(maxByteCount);
-        Assertions.assertThat(header2.length).isLessThan(maxByteCount);
-        Mockito
-                .doAnswer(invocation -> {
-                    LOGGER.trace("injecting the 1st header");
-                    OutputStream outputStream = invocation.getArgument(2);
-                    outputStream.write(header1);
-                    return null;
-                })
-                .doAnswer(invocation -> {
-                    LOGGER.trace("injecting the 2nd header");
-                    OutputStream outputStream = invocation.getArgument(2);
-                    outputStream.write(header2);
-                    return null;
-                })
-                .when(callback)
-                .onOpen(Mockito.any(),      // null at start
-                        Mockito.any(Instant.class),
-                        Mockito.any(OutputStream.class));
+        // Write and rotate thrice.
+        byte[] payload = "payload\n".getBytes(StandardCharsets.US_ASCII);
+        File[] compressedFiles = new File[3];
+        for (int rotationIndex = 0; rotationIndex < compressedFiles.length; rotationIndex++) {
+            Instant instant = Instant.parse("2020-01-01T00:00:0" + (rotationIndex + 1) + "Z");
+            compressedFiles[rotationIndex] = new File(tmpDir, fileNamePrefix + "-00000" + (rotationIndex + 1) + ".log.gz");
+            stream.write(payload);
+            stream.rotate(policy, instant);
+            Mockito
+                    .verify(callback, Mockito.timeout(1_000))
+                    .onSuccess(Mockito.same(policy), Mockito.same(instant), Mockito.eq(compressedFiles[rotationIndex]));
+        }
 
-        // Create the footer injectors.
-        byte[] footer1 = "footer1".getBytes(StandardCharsets.UTF_8);
-        byte[] footer2 = "footer2".getBytes(StandardCharsets.UTF_8);
+        // Verify that only the dictionary in use is left.
         Mockito
-                .doAnswer(invocation -> {
-                    LOGGER.trace("injecting the 1st footer");
-                    OutputStream outputStream = invocation.getArgument(2);
-                    outputStream.write(footer1);
-                    return null;
-                })
-                .doAnswer(invocation -> {
-                    LOGGER.trace("injecting the 2nd footer");
-                    OutputStream outputStream = invocation.getArgument(2);
-                    outputStream.write(footer2);
-                    return null;
-                })
-                .when(callback)
-                .onClose(
-                        Mockito.any(),      // null on user-invoked close()
-                        Mockito.any(Instant.class),
-                        Mockito.any(OutputStream.class));
+                .verify(callback, Mockito.timeout(1_000))
+                .onDelete(Mockito.any(Instant.class), Mockito.eq(compressedFiles[1]));
+        File dictionaryFile = GzipBlockInputStream.getDictionaryFile(tmpDir, GzipCompressor.getDictionaryId(payload));
+        long deadlineMillis = System.currentTimeMillis() + 1_000;
+        while (staleDictionaryFile.exists()) {
+            Assertions.assertThat(System.currentTimeMillis()).isLessThan(deadlineMillis);
+            Thread.sleep(10);
+        }
+        Assertions.assertThat(dictionaryFile).hasBinaryContent(payload);
+        Assertions.assertThat(GzipCompressorTest.readFully(GzipBlockInputStream.open(compressedFiles[2]))).isEqualTo(payload);
+
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_compression_codec_lz4() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "compressionCodecLz4";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyy}.log").getAbsolutePath();
+        Instant now = Instant.now();
+        File rotatedFile = new File(
+                fileNamePattern.replace(
+                        "%d{yyyy}",
+                        String.valueOf(now.atZone(UtcHelper.ZONE_ID).getYear())));
+        File compressedFile = new File(rotatedFile.getPath() + ".lz4");
 
         // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .compress(true)
+                .compressionCodec(CompressionCodec.LZ4)
+                .file(file)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
         RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
 
-        // Verify the initial file open.
-        callbackInOrder
-                .verify(callback)
-                .onOpen(Mockito.isNull(),
-                        Mockito.any(Instant.class),
-                        Mockito.any(OutputStream.class));
-
-        // Write the 1st payload, should not exceed the size limit.
-        LOGGER.trace("writing the 1st payload");
-        byte[] payload1 = new byte[maxByteCount - header1.length];
-        for (int byteIndex = 0; byteIndex < payload1.length; byteIndex++) {
-            payload1[byteIndex] = (byte) (byteIndex % Byte.MAX_VALUE);
-        }
-        stream.write(payload1);
+        // Write and rotate.
+        byte[] payload = new byte[100_000];
+        Arrays.fill(payload, (byte) 'x');
+        stream.write(payload);
+        stream.rotate(policy, now);
 
-        // Write the 2nd payload.
-        LOGGER.trace("writing the 2nd payload");
-        byte[] payload2 = {(byte) (payload1[payload1.length - 1] + 1)};
-        stream.write(payload2);
+        // Verify the compressed file.
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onSuccess(Mockito.same(policy), Mockito.same(now), Mockito.eq(compressedFile));
+        Assertions.assertThat(rotatedFile).doesNotExist();
+        Assertions.assertThat(Lz4CompressorTest.decompress(Files.readAllBytes(compressedFile.toPath()))).isEqualTo(payload);
 
-        // Close the stream.
-        LOGGER.trace("closing stream");
+        // Close the stream to avoid Windows failing to clean the temporary directory.
         stream.close();
 
+    }
+
+    @Test
+    void test_retention() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "retention";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyyMMdd}.log").getAbsolutePath();
+        File rotatedFile1 = new File(tmpDir, fileNamePrefix + "-20200101.log");
+        File rotatedFile2 = new File(tmpDir, fileNamePrefix + "-20200102.log");
+        File rotatedFile3 = new File(tmpDir, fileNamePrefix + "-20200103.log");
+        File rotatedFile4 = new File(tmpDir, fileNamePrefix + "-20200104.log");
+        File unrelatedFile = new File(tmpDir, fileNamePrefix + "-unrelated.log");
+
+        // Create files rotated by a previous run.
+        byte[] payload = "rotated by a previous run".getBytes(StandardCharsets.UTF_8);
+        long lastModifiedMillis = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+        for (File rotatedFile : new File[]{rotatedFile1, rotatedFile2, rotatedFile3, unrelatedFile}) {
+            Files.write(rotatedFile.toPath(), payload);
+            Assertions.assertThat(rotatedFile.setLastModified(lastModifiedMillis)).isTrue();
+            lastModifiedMillis += 86_400_000L;
+        }
+
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .retentionMaxFileCount(2)
+                .file(file)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Verify the retention at start.
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onDelete(Mockito.any(Instant.class), Mockito.eq(rotatedFile1));
+        Assertions.assertThat(rotatedFile1).doesNotExist();
+        Assertions.assertThat(rotatedFile2).exists();
+        Assertions.assertThat(rotatedFile3).exists();
+
+        // Rotate and verify the retention.
+        stream.write(payload);
+        stream.rotate(policy, Instant.parse("2020-01-04T00:00:00Z"));
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onDelete(Mockito.any(Instant.class), Mockito.eq(rotatedFile2));
+        Assertions.assertThat(rotatedFile2).doesNotExist();
+        Assertions.assertThat(rotatedFile3).exists();
+        Assertions.assertThat(rotatedFile4).exists();
+        Assertions.assertThat(unrelatedFile).exists();
+
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_retention_compression_recovery() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "retentionCompressionRecovery";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyyMMdd}.log").getAbsolutePath();
+        File rotatedFile1 = new File(tmpDir, fileNamePrefix + "-20200101.log");
+        File compressedFile1 = new File(tmpDir, fileNamePrefix + "-20200101.log.gz");
+        File compressedFile2 = new File(tmpDir, fileNamePrefix + "-20200102.log.gz");
+
+        // Mimic a crash before compressing the older of two rotated files.
+        byte[] payload = "rotated by a previous run".getBytes(StandardCharsets.UTF_8);
+        Files.write(rotatedFile1.toPath(), payload);
+        Assertions.assertThat(rotatedFile1.setLastModified(Instant.parse("2020-01-01T00:00:00Z").toEpochMilli())).isTrue();
+        Files.write(compressedFile2.toPath(), payload);
+        Assertions.assertThat(compressedFile2.setLastModified(Instant.parse("2020-01-02T00:00:00Z").toEpochMilli())).isTrue();
+
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .compress(true)
+                .retentionMaxFileCount(1)
+                .file(file)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Verify that the recovered compression is still the oldest.
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onDelete(Mockito.any(Instant.class), Mockito.eq(compressedFile1));
+        Mockito
+                .verify(callback, Mockito.after(200).never())
+                .onDelete(Mockito.any(Instant.class), Mockito.eq(compressedFile2));
+        Assertions.assertThat(compressedFile2).exists();
+
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_disk_space_guard() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "diskSpaceGuard";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyyMMdd}.log").getAbsolutePath();
+        File[] rotatedFiles = {
+                new File(tmpDir, fileNamePrefix + "-20200101.log"),
+                new File(tmpDir, fileNamePrefix + "-20200102.log"),
+                new File(tmpDir, fileNamePrefix + "-20200103.log")
+        };
+
+        // Create files rotated by a previous run.
+        byte[] payload = "rotated by a previous run".getBytes(StandardCharsets.UTF_8);
+        long lastModifiedMillis = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+        for (File rotatedFile : rotatedFiles) {
+            Files.write(rotatedFile.toPath(), payload);
+            Assertions.assertThat(rotatedFile.setLastModified(lastModifiedMillis)).isTrue();
+            lastModifiedMillis += 86_400_000L;
+        }
+
+        // Create the stream simulating 100 bytes freed per deleted file.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .diskSpaceLowWatermark(100)
+                .diskSpaceHighWatermark(250)
+                .diskSpaceHardFloor(10)
+                .diskSpaceCheckInterval(Duration.ofMillis(10))
+                .file(file)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+        AtomicLong usableSpaceOffset = new AtomicLong(50);
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config) {
+            @Override
+            long readUsableSpace(FileStore fileStore) {
+                long deletedFileCount = Arrays.stream(rotatedFiles).filter(rotatedFile -> !rotatedFile.exists()).count();
+                return usableSpaceOffset.get() + 100 * deletedFileCount;
+            }
+        };
+
+        // Verify the oldest files are deleted until the high watermark.
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onDelete(Mockito.any(Instant.class), Mockito.eq(rotatedFiles[1]));
+        Assertions.assertThat(rotatedFiles[0]).doesNotExist();
+        Assertions.assertThat(rotatedFiles[1]).doesNotExist();
+        Assertions.assertThat(rotatedFiles[2]).exists();
+        stream.write(payload);
+
+        // Verify writes fail below the hard floor, despite deleting the rest.
+        usableSpaceOffset.set(-1_000);
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onFailure(
+                        Mockito.isNull(),
+                        Mockito.any(Instant.class),
+                        Mockito.eq(file),
+                        Mockito.any(RuntimeException.class));
+        Assertions
+                .assertThatThrownBy(() -> stream.write(payload))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("hard floor");
+
+        // Verify writes succeed once the space is freed.
+        usableSpaceOffset.set(1_000);
+        long deadlineMillis = System.currentTimeMillis() + 1_000;
+        for (;;) {
+            try {
+                stream.write(payload);
+                break;
+            } catch (IOException error) {
+                Assertions.assertThat(System.currentTimeMillis()).isLessThan(deadlineMillis);
+                Thread.sleep(10);
+            }
+        }
+        Assertions.assertThat(rotatedFiles[2]).doesNotExist();
+
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_disk_space_guard_with_separate_file_stores() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "diskSpaceGuardStores";
+        File activeDirectory = new File(tmpDir, "active");
+        File file = new File(activeDirectory, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, "archive/" + fileNamePrefix + "-%d{yyyyMMdd}.log").getAbsolutePath();
+        File[] rotatedFiles = {
+                new File(tmpDir, "archive/" + fileNamePrefix + "-20200101.log"),
+                new File(tmpDir, "archive/" + fileNamePrefix + "-20200102.log")
+        };
+
+        // Create files rotated by a previous run.
+        Assertions.assertThat(activeDirectory.mkdirs()).isTrue();
+        Assertions.assertThat(rotatedFiles[0].getParentFile().mkdirs()).isTrue();
+        byte[] payload = "rotated by a previous run".getBytes(StandardCharsets.UTF_8);
+        long lastModifiedMillis = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+        for (File rotatedFile : rotatedFiles) {
+            Files.write(rotatedFile.toPath(), payload);
+            Assertions.assertThat(rotatedFile.setLastModified(lastModifiedMillis)).isTrue();
+            lastModifiedMillis += 86_400_000L;
+        }
+
+        // Create the stream simulating separate file stores for the active
+        // and the rotated files, where the latter frees 100 bytes per deleted
+        // file.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .diskSpaceLowWatermark(100)
+                .diskSpaceHighWatermark(150)
+                .diskSpaceCheckInterval(Duration.ofMillis(10))
+                .file(file)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+        FileStore activeFileStore = Mockito.mock(FileStore.class);
+        FileStore segmentFileStore = Mockito.mock(FileStore.class);
+        AtomicLong activeUsableSpace = new AtomicLong(0);
+        AtomicLong segmentUsableSpaceOffset = new AtomicLong(1_000);
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config) {
+            @Override
+            FileStore readFileStore(File directory) {
+                return directory.equals(activeDirectory.getAbsoluteFile()) ? activeFileStore : segmentFileStore;
+            }
+            @Override
+            long readUsableSpace(FileStore fileStore) {
+                if (fileStore == activeFileStore) {
+                    return activeUsableSpace.get();
+                }
+                long deletedFileCount = Arrays.stream(rotatedFiles).filter(rotatedFile -> !rotatedFile.exists()).count();
+                return segmentUsableSpaceOffset.get() + 100 * deletedFileCount;
+            }
+        };
+
+        // Verify that rotated files are kept, while only the active file store is low.
+        Mockito
+                .verify(callback, Mockito.after(200).never())
+                .onDelete(Mockito.any(Instant.class), Mockito.any(File.class));
+        Assertions.assertThat(rotatedFiles).allMatch(File::exists);
+
+        // Verify that the oldest file is deleted, once the rotated file store is low.
+        segmentUsableSpaceOffset.set(50);
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onDelete(Mockito.any(Instant.class), Mockito.eq(rotatedFiles[0]));
+        Assertions.assertThat(rotatedFiles[1]).exists();
+
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_manifest() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "manifest";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyy}.log").getAbsolutePath();
+        Instant now = Instant.now();
+        File rotatedFile = new File(
+                fileNamePattern.replace(
+                        "%d{yyyy}",
+                        String.valueOf(now.atZone(UtcHelper.ZONE_ID).getYear())));
+        File compressedFile = new File(rotatedFile.getPath() + ".gz");
+
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .compress(true)
+                .manifest(true)
+                .file(file)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Write and rotate.
+        Instant firstWriteInstant = Instant.now();
+        byte[] payload = "foo\nbar\n".getBytes(StandardCharsets.UTF_8);
+        stream.write(payload);
+        stream.rotate(policy, now);
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onSuccess(Mockito.same(policy), Mockito.same(now), Mockito.eq(compressedFile));
+
+        // Verify the manifest.
+        List<SegmentManifest.Entry> entries = stream.getManifest().getEntries();
+        Assertions.assertThat(entries).hasSize(1);
+        SegmentManifest.Entry entry = entries.get(0);
+        Assertions.assertThat(entry.getFile()).isEqualTo(compressedFile);
+        Assertions.assertThat(entry.getFirstWriteInstant()).isBetween(firstWriteInstant, Instant.now());
+        Assertions.assertThat(entry.getByteCount()).isEqualTo(payload.length);
+        Assertions.assertThat(entry.getRecordCount()).isEqualTo(2);
+        Assertions.assertThat(entry.getCompressedLength()).isEqualTo(compressedFile.length());
+        Assertions
+                .assertThat(stream.getManifest().findEntries(firstWriteInstant, Instant.now()))
+                .containsExactly(entry);
+        Assertions.assertThat(SegmentManifest.load(config).getEntries()).containsExactly(entry);
+
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_manifest_compression_recovery() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "manifestCompressionRecovery";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyyMMdd}.log").getAbsolutePath();
+        File rotatedFile = new File(tmpDir, fileNamePrefix + "-20200101.log");
+        File compressedFile = new File(rotatedFile.getPath() + ".gz");
+
+        // Create the configuration.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .compress(true)
+                .manifest(true)
+                .file(file)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+
+        // Mimic a crash before compressing a recorded segment.
+        byte[] payload = "foo\nbar\n".getBytes(StandardCharsets.UTF_8);
+        Files.write(rotatedFile.toPath(), payload);
+        Instant firstWriteInstant = Instant.parse("2020-01-01T00:00:00Z");
+        SegmentManifest.load(config).appendSegment(SegmentManifest.Entry.scan(rotatedFile, firstWriteInstant));
+
+        // Verify that the recovery keeps the recorded first write instant.
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onSuccess(Mockito.isNull(), Mockito.any(Instant.class), Mockito.eq(compressedFile));
+        List<SegmentManifest.Entry> entries = stream.getManifest().getEntries();
+        Assertions.assertThat(entries).hasSize(1);
+        SegmentManifest.Entry entry = entries.get(0);
+        Assertions.assertThat(entry.getFile()).isEqualTo(compressedFile);
+        Assertions.assertThat(entry.getFirstWriteInstant()).isEqualTo(firstWriteInstant);
+        Assertions.assertThat(entry.getByteCount()).isEqualTo(payload.length);
+        Assertions.assertThat(entry.getRecordCount()).isEqualTo(2);
+
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_write_sensitive_policy() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "writeSensitivePolicy";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileName = file.getAbsolutePath();
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{yyyy}.log").getAbsolutePath();
+        File rotatedFile = new File(fileNamePattern.replace("%d{yyyy}", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))));
+
+        // Create the stream.
+        int maxByteCount = 1024;
+        SizeBasedRotationPolicy policy = new SizeBasedRotationPolicy(maxByteCount);
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        InOrder callbackInOrder = Mockito.inOrder(callback);
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(fileName)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Verify the initial file open.
+        callbackInOrder
+                .verify(callback)
+                .onOpen(Mockito.isNull(),
+                        Mockito.any(Instant.class),
+                        Mockito.any(OutputStream.class));
+
+        // Verify no rotations so far.
+        Mockito.verifyNoMoreInteractions(callback);
+
+        // Increase the size of the file just to the edge.
+        LOGGER.trace("writing to file");
+        for (int byteIndex = 0; byteIndex < maxByteCount; byteIndex++) {
+            stream.write(byteIndex);
+        }
+        Assertions.assertThat(file.length()).isEqualTo(maxByteCount);
+
+        // Verify no rotations so far.
+        Mockito.verifyNoMoreInteractions(callback);
+
+        // Push the file size off the threshold.
+        LOGGER.trace("writing more bytes to file");
+        stream.write(0xDEADBEEF);
+
         // Verify the rotation trigger.
         callbackInOrder
                 .verify(callback)
@@ -470,20 +977,212 @@ class RotatingFileOutputStreamTest {
                         Mockito.same(policy),
                         Mockito.any(Instant.class),
                         Mockito.eq(rotatedFile));
+        Assertions.assertThat(rotatedFile.length()).isEqualTo(maxByteCount);
+        Assertions.assertThat(file.length()).isEqualTo(1);
 
-        // Verify the file close.
-        callbackInOrder
-                .verify(callback)
-                .onClose(
-                        Mockito.isNull(),
-                        Mockito.any(Instant.class),
-                        Mockito.any(OutputStream.class));
+        // Verify no more callback interactions.
+        Mockito.verifyNoMoreInteractions(callback);
 
-        // Verify the rotated file.
-        long rotatedFileLength = rotatedFile.length();
-        int expectedRotatedFileLength = header1.length + payload1.length + footer1.length;
-        Assertions.assertThat(rotatedFileLength).isEqualTo(expectedRotatedFileLength);
-        byte[] rotatedFileBytes = readFileBytes(rotatedFile, expectedRotatedFileLength);
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_empty_files_are_not_rotated() throws Exception {
+
+        // Determine file names.
+        String className = RotatingFileOutputStream.class.getSimpleName();
+        File file = new File(tmpDir, className + ".log");
+        String fileName = file.getAbsolutePath();
+        String fileNamePattern = new File(tmpDir, className + "-%d{yyyy}.log").getAbsolutePath();
+
+        // Create the stream.
+        int maxByteCount = 1024;
+        SizeBasedRotationPolicy policy = new SizeBasedRotationPolicy(maxByteCount);
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        InOrder callbackInOrder = Mockito.inOrder(callback);
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(fileName)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Verify the initial file open.
+        callbackInOrder
+                .verify(callback)
+                .onOpen(Mockito.isNull(),
+                        Mockito.any(Instant.class),
+                        Mockito.any(OutputStream.class));
+
+        // Write some payload of size exceeding the threshold. This should trigger
+        // an attempt to rotate the initial file, but the actual rotation should
+        // have skipped since the file is empty.
+        LOGGER.trace("writing to file");
+        byte[] payload = new byte[2 * maxByteCount];
+        for (int byteIndex = 0; byteIndex < payload.length; byteIndex++) {
+            payload[byteIndex] = (byte) byteIndex;
+        }
+        stream.write(payload);
+        stream.flush();
+        Assertions.assertThat(file.length()).isEqualTo(payload.length);
+
+        // Verify the rotation trigger.
+        callbackInOrder
+                .verify(callback)
+                .onTrigger(Mockito.same(policy), Mockito.any(Instant.class));
+
+        // Verify the rotation skip.
+        Mockito.verifyNoMoreInteractions(callback);
+
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_adding_file_header() throws IOException {
+
+        // Determine file names.
+        String className = RotatingFileOutputStream.class.getSimpleName();
+        File file = new File(tmpDir, className + ".log");
+        String fileName = file.getAbsolutePath();
+        String fileNamePattern = new File(tmpDir, className + "-%d{yyyy}.log").getAbsolutePath();
+        File rotatedFile = new File(fileNamePattern.replace("%d{yyyy}", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))));
+
+        // Create the stream config.
+        int maxByteCount = 1024;
+        SizeBasedRotationPolicy policy = new SizeBasedRotationPolicy(maxByteCount);
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        InOrder callbackInOrder = Mockito.inOrder(callback);
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(fileName)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+
+        // Create the header injectors.
+        byte[] header1 = "header1".getBytes(StandardCharsets.UTF_8);
+        byte[] header2 = "header2".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThat(header1.length).isLessThan(maxByteCount);
+        Assertions.assertThat(header2.length).isLessThan(maxByteCount);
+        Mockito
+                .doAnswer(invocation -> {
+                    LOGGER.trace("injecting the 1st header");
+                    OutputStream outputStream = invocation.getArgument(2);
+                    outputStream.write(header1);
+                    return null;
+                })
+                .doAnswer(invocation -> {
+                    LOGGER.trace("injecting the 2nd header");
+                    OutputStream outputStream = invocation.getArgument(2);
+                    outputStream.write(header2);
+                    return null;
+                })
+                .when(callback)
+                .onOpen(Mockito.any(),      // null at start
+                        Mockito.any(Instant.class),
+                        Mockito.any(OutputStream.class));
+
+        // Create the footer injectors.
+        byte[] footer1 = "footer1".getBytes(StandardCharsets.UTF_8);
+        byte[] footer2 = "footer2".getBytes(StandardCharsets.UTF_8);
+        Mockito
+                .doAnswer(invocation -> {
+                    LOGGER.trace("injecting the 1st footer");
+                    OutputStream outputStream = invocation.getArgument(2);
+                    outputStream.write(footer1);
+                    return null;
+                })
+                .doAnswer(invocation -> {
+                    LOGGER.trace("injecting the 2nd footer");
+                    OutputStream outputStream = invocation.getArgument(2);
+                    outputStream.write(footer2);
+                    return null;
+                })
+                .when(callback)
+                .onClose(
+                        Mockito.any(),      // null on user-invoked close()
+                        Mockito.any(Instant.class),
+                        Mockito.any(OutputStream.class));
+
+        // Create the stream.
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Verify the initial file open.
+        callbackInOrder
+                .verify(callback)
+                .onOpen(Mockito.isNull(),
+                        Mockito.any(Instant.class),
+                        Mockito.any(OutputStream.class));
+
+        // Write the 1st payload, should not exceed the size limit.
+        LOGGER.trace("writing the 1st payload");
+        byte[] payload1 = new byte[maxByteCount - header1.length];
+        for (int byteIndex = 0; byteIndex < payload1.length; byteIndex++) {
+            payload1[byteIndex] = (byte) (byteIndex % Byte.MAX_VALUE);
+        }
+        stream.write(payload1);
+
+        // Write the 2nd payload.
+        LOGGER.trace("writing the 2nd payload");
+        byte[] payload2 = {(byte) (payload1[payload1.length - 1] + 1)};
+        stream.write(payload2);
+
+        // Close the stream.
+        LOGGER.trace("closing stream");
+        stream.close();
+
+        // Verify the rotation trigger.
+        callbackInOrder
+                .verify(callback)
+                .onTrigger(
+                        Mockito.same(policy),
+                        Mockito.any(Instant.class));
+
+        // Verify the rotation file close.
+        callbackInOrder
+                .verify(callback)
+                .onClose(
+                        Mockito.same(policy),
+                        Mockito.any(Instant.class),
+                        Mockito.any(OutputStream.class));
+
+        // Verify the rotation file open.
+        callbackInOrder
+                .verify(callback)
+                .onOpen(Mockito.same(policy),
+                        Mockito.any(Instant.class),
+                        Mockito.any(OutputStream.class));
+
+        // Verify the rotation.
+        callbackInOrder
+                .verify(callback)
+                .onSuccess(
+                        Mockito.same(policy),
+                        Mockito.any(Instant.class),
+                        Mockito.eq(rotatedFile));
+
+        // Verify the file close.
+        callbackInOrder
+                .verify(callback)
+                .onClose(
+                        Mockito.isNull(),
+                        Mockito.any(Instant.class),
+                        Mockito.any(OutputStream.class));
+
+        // Verify the rotated file.
+        long rotatedFileLength = rotatedFile.length();
+        int expectedRotatedFileLength = header1.length + payload1.length + footer1.length;
+        Assertions.assertThat(rotatedFileLength).isEqualTo(expectedRotatedFileLength);
+        byte[] rotatedFileBytes = readFileBytes(rotatedFile, expectedRotatedFileLength);
         byte[] expectedRotatedFileBytes = copyArrays(header1, payload1, footer1);
         Assertions.assertThat(rotatedFileBytes).isEqualTo(expectedRotatedFileBytes);
 
@@ -571,220 +1270,912 @@ class RotatingFileOutputStreamTest {
     }
 
     @Test
-    void test_maxBackupCount() throws Exception {
+    void test_maxBackupCount() throws Exception {
+
+        // Create the policy and the callback.
+        RotationPolicy policy = new SizeBasedRotationPolicy(1);
+        RotationCallback callback = Mockito.mock(RotationCallback.class);
+
+        // Create the stream.
+        File file = new File(tmpDir, "maxBackupCount.log");
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .maxBackupCount(3)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Determine the backup files.
+        File backupFile0 = new File(tmpDir, "maxBackupCount.log.0");
+        File backupFile1 = new File(tmpDir, "maxBackupCount.log.1");
+        File backupFile2 = new File(tmpDir, "maxBackupCount.log.2");
+        File backupFile3 = new File(tmpDir, "maxBackupCount.log.3");
+
+        // Write some without triggering rotation.
+        byte[] content1 = {'1'};
+        stream.write(content1);
+        stream.flush();
+
+        // Verify files.
+        Assertions.assertThat(file).hasBinaryContent(content1);
+        Assertions.assertThat(backupFile0).doesNotExist();
+        Assertions.assertThat(backupFile1).doesNotExist();
+        Assertions.assertThat(backupFile2).doesNotExist();
+        Assertions.assertThat(backupFile3).doesNotExist();
+
+        // Write some and trigger the 1st rotation.
+        byte[] content2 = {'2'};
+        stream.write(content2);
+        stream.flush();
+
+        // Verify the 1st rotation.
+        InOrder inOrder = Mockito.inOrder(callback);
+        inOrder
+                .verify(callback)
+                .onSuccess(
+                        Mockito.same(policy),
+                        Mockito.any(),
+                        Mockito.eq(backupFile0));
+
+        // Verify files after the 1st rotation.
+        Assertions.assertThat(file).hasBinaryContent(content2);
+        Assertions.assertThat(backupFile0).hasBinaryContent(content1);
+        Assertions.assertThat(backupFile1).doesNotExist();
+        Assertions.assertThat(backupFile2).doesNotExist();
+        Assertions.assertThat(backupFile3).doesNotExist();
+
+        // Write some and trigger the 2nd rotation.
+        byte[] content3 = {'3'};
+        stream.write(content3);
+        stream.flush();
+
+        // Verify the 2nd rotation.
+        inOrder
+                .verify(callback)
+                .onSuccess(
+                        Mockito.same(policy),
+                        Mockito.any(),
+                        Mockito.eq(backupFile0));
+
+        // Verify files after the 2nd rotation.
+        Assertions.assertThat(file).hasBinaryContent(content3);
+        Assertions.assertThat(backupFile0).hasBinaryContent(content2);
+        Assertions.assertThat(backupFile1).hasBinaryContent(content1);
+        Assertions.assertThat(backupFile2).doesNotExist();
+        Assertions.assertThat(backupFile3).doesNotExist();
+
+        // Write some and trigger the 3rd rotation.
+        byte[] content4 = {'4'};
+        stream.write(content4);
+        stream.flush();
+
+        // Verify the 3rd rotation.
+        inOrder
+                .verify(callback)
+                .onSuccess(
+                        Mockito.same(policy),
+                        Mockito.any(),
+                        Mockito.eq(backupFile0));
+
+        // Verify files after the 3rd rotation.
+        Assertions.assertThat(file).hasBinaryContent(content4);
+        Assertions.assertThat(backupFile0).hasBinaryContent(content3);
+        Assertions.assertThat(backupFile1).hasBinaryContent(content2);
+        Assertions.assertThat(backupFile2).hasBinaryContent(content1);
+        Assertions.assertThat(backupFile3).doesNotExist();
+
+        // Write some and trigger the 4th rotation.
+        byte[] content5 = {'5'};
+        stream.write(content5);
+        stream.flush();
+
+        // Verify the 4th rotation.
+        inOrder
+                .verify(callback)
+                .onSuccess(
+                        Mockito.same(policy),
+                        Mockito.any(),
+                        Mockito.eq(backupFile0));
+
+        // Verify files after the 4th rotation.
+        Assertions.assertThat(file).hasBinaryContent(content5);
+        Assertions.assertThat(backupFile0).hasBinaryContent(content4);
+        Assertions.assertThat(backupFile1).hasBinaryContent(content3);
+        Assertions.assertThat(backupFile2).hasBinaryContent(content2);
+        Assertions.assertThat(backupFile3).doesNotExist();
+
+        // Write some and trigger the 5th rotation.
+        byte[] content6 = {'6'};
+        stream.write(content6);
+        stream.flush();
+
+        // Verify the 5th rotation.
+        inOrder
+                .verify(callback)
+                .onSuccess(
+                        Mockito.same(policy),
+                        Mockito.any(),
+                        Mockito.eq(backupFile0));
+
+        // Verify files after the 5th rotation.
+        Assertions.assertThat(file).hasBinaryContent(content6);
+        Assertions.assertThat(backupFile0).hasBinaryContent(content5);
+        Assertions.assertThat(backupFile1).hasBinaryContent(content4);
+        Assertions.assertThat(backupFile2).hasBinaryContent(content3);
+        Assertions.assertThat(backupFile3).doesNotExist();
+
+        // Close the stream to avoid Windows failing to clean the temporary directory.
+        stream.close();
+
+    }
+
+    @Test
+    void test_rotation_and_write_failure_after_close() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "rotationAndWriteFailureAfterClose";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        String fileName = file.getAbsolutePath();
+        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{HHmmss-SSS}.log").getAbsolutePath();
+
+        // Create the stream config.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.mock(RotationCallback.class);
+        Mockito.when(callback.toString()).thenReturn("MockedCallback");
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(fileName)
+                .filePattern(fileNamePattern)
+                .policy(policy)
+                .callbacks(Collections.singleton(callback))
+                .build();
+
+        // Create the stream, write some, and close it.
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+        stream.write("payload".getBytes(StandardCharsets.UTF_8));
+        stream.close();
+
+        // Verify rotation failure.
+        InOrder inOrder = Mockito.inOrder(callback);
+        stream.rotate(null, Instant.now());
+        inOrder
+                .verify(callback)
+                .onFailure(
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.argThat(error -> {
+                            Throwable cause = error.getCause();
+                            return cause instanceof IOException &&
+                                    cause
+                                            .getMessage()
+                                            .contains("either closed or not initialized yet");
+                        }));
+
+        // Verify write(int) failure.
+        Assertions
+                .assertThatThrownBy(() -> stream.write(1))
+                .isInstanceOf(IOException.class)
+                .hasMessage("either closed or not initialized yet");
+
+        // Verify write(byte[]) failure.
+        Assertions
+                .assertThatThrownBy(() -> stream.write(new byte[]{0}))
+                .isInstanceOf(IOException.class)
+                .hasMessage("either closed or not initialized yet");
+
+        // Verify write(byte[], int, int) failure.
+        Assertions
+                .assertThatThrownBy(() -> stream.write(new byte[]{0}, 0, 1))
+                .isInstanceOf(IOException.class)
+                .hasMessage("either closed or not initialized yet");
+
+        // Verify no more failures were reported to the callback.
+        inOrder
+                .verify(callback, Mockito.never())
+                .onFailure(
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.any(),
+                        Mockito.any());
+
+    }
+
+    @Test
+    void test_sequenced_rotation() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "sequencedRotation";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        RotatingFilePattern filePattern = RotatingFilePattern
+                .builder()
+                .pattern(new File(tmpDir, fileNamePrefix + "-%d{yyyyMMdd}-%i.log").getAbsolutePath())
+                .timeZoneId(UtcHelper.ZONE_ID)
+                .build();
+        Instant instant1 = Instant.parse("2020-01-01T00:00:00Z");
+        Instant instant2 = Instant.parse("2020-01-01T12:00:00Z");
+        Instant instant3 = Instant.parse("2020-01-02T00:00:00Z");
+
+        // Create a file left by a previous run.
+        File existingFile = new File(tmpDir, fileNamePrefix + "-20200101-0.log");
+        byte[] existingPayload = "existing".getBytes(StandardCharsets.US_ASCII);
+        Files.write(existingFile.toPath(), existingPayload);
+
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .filePattern(filePattern)
+                .policy(policy)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Rotate multiple times within the same day, and then in the next day.
+        Instant[] instants = {instant1, instant1, instant2, instant3};
+        for (int rotationIndex = 0; rotationIndex < instants.length; rotationIndex++) {
+            stream.write(("payload" + rotationIndex).getBytes(StandardCharsets.US_ASCII));
+            stream.rotate(policy, instants[rotationIndex]);
+        }
+        stream.close();
+
+        // Verify the rotated files.
+        Assertions.assertThat(existingFile).hasBinaryContent(existingPayload);
+        Assertions.assertThat(new File(tmpDir, fileNamePrefix + "-20200101-1.log")).hasContent("payload0");
+        Assertions.assertThat(new File(tmpDir, fileNamePrefix + "-20200101-2.log")).hasContent("payload1");
+        Assertions.assertThat(new File(tmpDir, fileNamePrefix + "-20200101-3.log")).hasContent("payload2");
+        Assertions.assertThat(new File(tmpDir, fileNamePrefix + "-20200102-0.log")).hasContent("payload3");
+
+    }
+
+    @Test
+    void test_partitioned_rotation() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "partitionedRotation";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        RotatingFilePattern filePattern = RotatingFilePattern
+                .builder()
+                .pattern(new File(tmpDir, fileNamePrefix + "/%d{yyyy/MM/dd/HH}/app-%d{mmss}-%i.log").getAbsolutePath())
+                .timeZoneId(UtcHelper.ZONE_ID)
+                .build();
+        Instant instant1 = Instant.parse("2020-01-01T00:01:02Z");
+        Instant instant2 = Instant.parse("2020-01-01T01:02:03Z");
+        Instant instant3 = Instant.parse("2020-01-01T01:04:05Z");
+        File directory1 = new File(tmpDir, fileNamePrefix + "/2020/01/01/00");
+        File directory2 = new File(tmpDir, fileNamePrefix + "/2020/01/01/01");
+
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .filePattern(filePattern)
+                .policy(policy)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Rotate into the same directory twice.
+        stream.write("payload0".getBytes(StandardCharsets.US_ASCII));
+        stream.rotate(policy, instant1);
+        stream.write("payload1".getBytes(StandardCharsets.US_ASCII));
+        stream.rotate(policy, instant1);
+
+        // Rotate into a new directory.
+        stream.write("payload2".getBytes(StandardCharsets.US_ASCII));
+        stream.rotate(policy, instant2);
+
+        // Rotate into a cached directory deleted in the meantime.
+        Assertions.assertThat(new File(directory2, "app-0203-0.log").delete()).isTrue();
+        Files.delete(directory2.toPath());
+        stream.write("payload3".getBytes(StandardCharsets.US_ASCII));
+        stream.rotate(policy, instant3);
+        stream.close();
+
+        // Verify the rotated files.
+        Assertions.assertThat(new File(directory1, "app-0102-0.log")).hasContent("payload0");
+        Assertions.assertThat(new File(directory1, "app-0102-1.log")).hasContent("payload1");
+        Assertions.assertThat(new File(directory2, "app-0405-0.log")).hasContent("payload3");
+        Assertions.assertThat(config.getFilePattern().findFiles()).hasSize(3);
+
+    }
+
+    @Test
+    void test_tiered_storage() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "tieredStorage";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        RotatingFilePattern filePattern = RotatingFilePattern
+                .builder()
+                .pattern(new File(tmpDir, "archive/%d{yyyyMMdd}/" + fileNamePrefix + "-%i.log").getAbsolutePath())
+                .timeZoneId(UtcHelper.ZONE_ID)
+                .build();
+        Instant instant = Instant.parse("2020-01-01T00:00:00Z");
+        File rotatedFile = new File(tmpDir, "archive/20200101/" + fileNamePrefix + "-0.log");
+        File compressedFile = new File(rotatedFile.getPath() + ".gz");
+        File migratingFile = new File(tmpDir, fileNamePrefix + ".log.20200101%2F" + rotatedFile.getName() + ".migrating");
+
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .compress(true)
+                .tieredStorage(true)
+                .file(file)
+                .filePattern(filePattern)
+                .policy(policy)
+                .callback(callback)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Write and rotate.
+        byte[] payload = "payload".getBytes(StandardCharsets.US_ASCII);
+        stream.write(payload);
+        stream.rotate(policy, instant);
+
+        // Verify the migration along with the compression.
+        Mockito
+                .verify(callback, Mockito.timeout(5_000))
+                .onSuccess(Mockito.same(policy), Mockito.same(instant), Mockito.eq(compressedFile));
+        try (InputStream inputStream = GzipBlockInputStream.open(compressedFile)) {
+            Assertions.assertThat(GzipCompressorTest.readFully(inputStream)).isEqualTo(payload);
+        }
+        Assertions.assertThat(rotatedFile).doesNotExist();
+        Assertions.assertThat(migratingFile).doesNotExist();
+        stream.close();
+
+    }
+
+    @Test
+    void test_tiered_storage_recovery() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "tieredStorageRecovery";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        RotatingFilePattern filePattern = RotatingFilePattern
+                .builder()
+                .pattern(new File(tmpDir, "archive/%d{yyyyMMdd}/" + fileNamePrefix + "-%i.log").getAbsolutePath())
+                .timeZoneId(UtcHelper.ZONE_ID)
+                .build();
+        File rotatedFile = new File(tmpDir, "archive/20200101/" + fileNamePrefix + "-0.log");
+        File migratingFile = new File(tmpDir, fileNamePrefix + ".log.20200101%2F" + rotatedFile.getName() + ".migrating");
+        File staleTempFile = new File(tmpDir, "archive/20191231/" + fileNamePrefix + "-0.log.tmp");
+
+        // Leave a pending migration and a stale transfer output behind.
+        byte[] payload = "payload".getBytes(StandardCharsets.US_ASCII);
+        Files.write(migratingFile.toPath(), payload);
+        Assertions.assertThat(staleTempFile.getParentFile().mkdirs()).isTrue();
+        Files.write(staleTempFile.toPath(), payload);
+
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .tieredStorage(true)
+                .file(file)
+                .filePattern(filePattern)
+                .policy(policy)
+                .callback(callback)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Verify the recovered migration.
+        Mockito
+                .verify(callback, Mockito.timeout(1_000))
+                .onSuccess(Mockito.isNull(), Mockito.any(), Mockito.eq(rotatedFile));
+        Assertions.assertThat(rotatedFile).hasBinaryContent(payload);
+        Assertions.assertThat(migratingFile).doesNotExist();
+
+        // Verify the deletion of the stale transfer output.
+        long deadlineMillis = System.currentTimeMillis() + 1_000;
+        while (staleTempFile.exists() && System.currentTimeMillis() < deadlineMillis) {
+            Thread.sleep(10);
+        }
+        Assertions.assertThat(staleTempFile).doesNotExist();
+        stream.close();
+
+    }
+
+    @Test
+    void test_transferFile() throws Exception {
+        File srcFile = new File(tmpDir, "transferSrc.log");
+        File dstFile = new File(tmpDir, "transferDst.log");
+        byte[] content = new byte[3 * 1024 * 1024 + 1];
+        new Random(0).nextBytes(content);
+        Files.write(srcFile.toPath(), content);
+        Files.write(dstFile.toPath(), new byte[content.length + 1]);
+        RotatingFileOutputStream.transferFile(srcFile, dstFile, true);
+        Assertions.assertThat(dstFile).hasBinaryContent(content);
+        Assertions.assertThat(srcFile).hasBinaryContent(content);
+    }
+
+    @Test
+    void test_volume_placement() throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "volumePlacement";
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        RotatingFilePattern filePattern = RotatingFilePattern
+                .builder()
+                .pattern(new File(tmpDir, fileNamePrefix + "-%d{yyyyMMdd}-%i.log").getAbsolutePath())
+                .timeZoneId(UtcHelper.ZONE_ID)
+                .build();
+        Instant instant = Instant.parse("2020-01-01T00:00:00Z");
+        File volume1 = new File(tmpDir, "disk1");
+        File volume2 = new File(tmpDir, "disk2");
+        VolumePlacement volumePlacement =
+                new VolumePlacement(VolumePlacement.Strategy.ROUND_ROBIN, Arrays.asList(volume1, volume2));
+
+        // Verify that tiered storage is required.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Assertions
+                .assertThatThrownBy(() -> RotationConfig
+                        .builder()
+                        .executorService(executorService)
+                        .file(file)
+                        .filePattern(filePattern)
+                        .volumePlacement(volumePlacement)
+                        .policy(policy)
+                        .build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("volumePlacement requires tieredStorage");
+
+        // Create the stream.
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .filePattern(filePattern)
+                .volumePlacement(volumePlacement)
+                .tieredStorage(true)
+                .policy(policy)
+                .callback(callback)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Write and rotate, while verifying the link.
+        for (int rotationIndex = 0; rotationIndex < 3; rotationIndex++) {
+            File volume = rotationIndex % 2 == 0 ? volume1 : volume2;
+            File placedFile = VolumePlacement.resolve(volume, file);
+            Assertions.assertThat(Files.isSymbolicLink(file.toPath())).isTrue();
+            Assertions.assertThat(file.toPath().toRealPath()).isEqualTo(placedFile.toPath().toRealPath());
+            String payload = "payload" + rotationIndex;
+            stream.write(payload.getBytes(StandardCharsets.US_ASCII));
+            stream.flush();
+            Assertions.assertThat(file).hasContent(payload);
+            stream.rotate(policy, instant);
+            File rotatedFile = new File(tmpDir, fileNamePrefix + "-20200101-" + rotationIndex + ".log");
+            Mockito
+                    .verify(callback, Mockito.timeout(1_000))
+                    .onSuccess(Mockito.same(policy), Mockito.same(instant), Mockito.eq(rotatedFile));
+            Assertions.assertThat(rotatedFile).hasContent(payload);
+        }
+        stream.close();
+
+    }
+
+    @Test
+    void test_rotation_durability_file() throws Exception {
+        test_rotation_durability(RotationDurability.FILE, false);
+    }
+
+    @Test
+    void test_rotation_durability_file_and_directory() throws Exception {
+        test_rotation_durability(RotationDurability.FILE_AND_DIRECTORY, true);
+    }
+
+    private void test_rotation_durability(RotationDurability durability, boolean compress) throws Exception {
+
+        // Determine file names.
+        String fileNamePrefix = "rotationDurability-" + durability;
+        File file = new File(tmpDir, fileNamePrefix + ".log");
+        RotatingFilePattern filePattern = RotatingFilePattern
+                .builder()
+                .pattern(new File(tmpDir, "archive/" + fileNamePrefix + "-%d{yyyyMMdd}.log").getAbsolutePath())
+                .timeZoneId(UtcHelper.ZONE_ID)
+                .build();
+        Instant instant = Instant.parse("2020-01-01T00:00:00Z");
+        File rotatedFile = new File(tmpDir, "archive/" + fileNamePrefix + "-20200101.log");
+        File expectedFile = compress ? new File(rotatedFile.getPath() + ".gz") : rotatedFile;
+
+        // Create the stream.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .compress(compress)
+                .rotationDurability(durability)
+                .file(file)
+                .filePattern(filePattern)
+                .policy(policy)
+                .callback(callback)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+
+        // Write and rotate.
+        byte[] payload = "payload".getBytes(StandardCharsets.US_ASCII);
+        stream.write(payload);
+        stream.rotate(policy, instant);
+        stream.close();
+
+        // Verify the rotated file.
+        Mockito
+                .verify(callback, Mockito.timeout(5_000))
+                .onSuccess(Mockito.same(policy), Mockito.same(instant), Mockito.eq(expectedFile));
+        Mockito
+                .verify(callback, Mockito.never())
+                .onFailure(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        if (compress) {
+            try (InputStream inputStream = GzipBlockInputStream.open(expectedFile)) {
+                Assertions.assertThat(GzipCompressorTest.readFully(inputStream)).isEqualTo(payload);
+            }
+        } else {
+            Assertions.assertThat(expectedFile).hasBinaryContent(payload);
+        }
+
+    }
+
+    @Test
+    void test_segment_recycling() throws Exception {
+
+        // Create the stream.
+        File file = new File(tmpDir, "segmentRecycling.log");
+        File backupFile0 = new File(tmpDir, "segmentRecycling.log.0");
+        File backupFile1 = new File(tmpDir, "segmentRecycling.log.1");
+        File lengthFile = new File(tmpDir, "segmentRecycling.log.length");
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .maxBackupCount(2)
+                .segmentRecycling(true)
+                .policy(policy)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+        Instant instant = Instant.parse("2020-01-01T00:00:00Z");
+
+        // Fill the backups.
+        stream.write("aaaaaaaa".getBytes(StandardCharsets.US_ASCII));
+        stream.rotate(policy, instant);
+        stream.write("bbbbbbbb".getBytes(StandardCharsets.US_ASCII));
+        stream.rotate(policy, instant);
+        Assertions.assertThat(lengthFile).doesNotExist();
+
+        // Verify that the oldest backup is recycled.
+        Object oldestFileKey = readFileKey(backupFile1);
+        stream.write("cc".getBytes(StandardCharsets.US_ASCII));
+        stream.rotate(policy, instant);
+        Assertions.assertThat(readFileKey(file)).isEqualTo(oldestFileKey);
+        Assertions.assertThat(file).hasContent("aaaaaaaa");
+        Assertions.assertThat(backupFile0).hasContent("cc");
+        Assertions.assertThat(backupFile1).hasContent("bbbbbbbb");
+
+        // Verify that the recycled file is overwritten and its length is tracked on every write.
+        stream.write("dd".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(file).hasContent("ddaaaaaa");
+        Assertions.assertThat(lengthFile).hasBinaryContent(new byte[]{0, 0, 0, 0, 0, 0, 0, 2});
+
+        // Verify that the recycled file is truncated on rotation and close.
+        stream.rotate(policy, instant);
+        Assertions.assertThat(backupFile0).hasContent("dd");
+        Assertions.assertThat(backupFile1).hasContent("cc");
+        Assertions.assertThat(file).hasContent("bbbbbbbb");
+        stream.write("e".getBytes(StandardCharsets.US_ASCII));
+        stream.close();
+        Assertions.assertThat(file).hasContent("e");
+        Assertions.assertThat(lengthFile).doesNotExist();
+
+    }
+
+    @Test
+    void test_segment_recycling_recovery() throws Exception {
 
-        // Create the policy and the callback.
-        RotationPolicy policy = new SizeBasedRotationPolicy(1);
-        RotationCallback callback = Mockito.mock(RotationCallback.class);
+        // Simulate a crash while writing to a recycled file.
+        File file = new File(tmpDir, "segmentRecyclingRecovery.log");
+        File lengthFile = new File(tmpDir, "segmentRecyclingRecovery.log.length");
+        File retiredFile = new File(tmpDir, "segmentRecyclingRecovery.log.recycled");
+        Files.write(file.toPath(), "fffSTALE".getBytes(StandardCharsets.US_ASCII));
+        Files.write(lengthFile.toPath(), new byte[]{0, 0, 0, 0, 0, 0, 0, 3});
+        Files.write(retiredFile.toPath(), "STALE".getBytes(StandardCharsets.US_ASCII));
 
-        // Create the stream.
-        File file = new File(tmpDir, "maxBackupCount.log");
+        // Verify that the file is truncated to its logical length.
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
         RotationConfig config = RotationConfig
                 .builder()
                 .executorService(executorService)
                 .file(file)
-                .maxBackupCount(3)
+                .append(true)
+                .maxBackupCount(2)
+                .segmentRecycling(true)
                 .policy(policy)
-                .callbacks(Collections.singleton(callback))
                 .build();
         RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+        Assertions.assertThat(file).hasContent("fff");
+        Assertions.assertThat(lengthFile).doesNotExist();
+        Assertions.assertThat(retiredFile).doesNotExist();
+        stream.write("g".getBytes(StandardCharsets.US_ASCII));
+        stream.close();
+        Assertions.assertThat(file).hasContent("fffg");
 
-        // Determine the backup files.
-        File backupFile0 = new File(tmpDir, "maxBackupCount.log.0");
-        File backupFile1 = new File(tmpDir, "maxBackupCount.log.1");
-        File backupFile2 = new File(tmpDir, "maxBackupCount.log.2");
-        File backupFile3 = new File(tmpDir, "maxBackupCount.log.3");
-
-        // Write some without triggering rotation.
-        byte[] content1 = {'1'};
-        stream.write(content1);
-        stream.flush();
-
-        // Verify files.
-        Assertions.assertThat(file).hasBinaryContent(content1);
-        Assertions.assertThat(backupFile0).doesNotExist();
-        Assertions.assertThat(backupFile1).doesNotExist();
-        Assertions.assertThat(backupFile2).doesNotExist();
-        Assertions.assertThat(backupFile3).doesNotExist();
-
-        // Write some and trigger the 1st rotation.
-        byte[] content2 = {'2'};
-        stream.write(content2);
-        stream.flush();
+    }
 
-        // Verify the 1st rotation.
-        InOrder inOrder = Mockito.inOrder(callback);
-        inOrder
-                .verify(callback)
-                .onSuccess(
-                        Mockito.same(policy),
-                        Mockito.any(),
-                        Mockito.eq(backupFile0));
+    private static Object readFileKey(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    }
 
-        // Verify files after the 1st rotation.
-        Assertions.assertThat(file).hasBinaryContent(content2);
-        Assertions.assertThat(backupFile0).hasBinaryContent(content1);
-        Assertions.assertThat(backupFile1).doesNotExist();
-        Assertions.assertThat(backupFile2).doesNotExist();
-        Assertions.assertThat(backupFile3).doesNotExist();
+    @Test
+    void test_exact_size_rotation() throws Exception {
 
-        // Write some and trigger the 2nd rotation.
-        byte[] content3 = {'3'};
-        stream.write(content3);
-        stream.flush();
+        // Create the stream.
+        File file = new File(tmpDir, "exactSizeRotation.log");
+        RotationPolicy policy = new SizeBasedRotationPolicy(10, true);
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .maxBackupCount(5)
+                .policy(policy)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
 
-        // Verify the 2nd rotation.
-        inOrder
-                .verify(callback)
-                .onSuccess(
-                        Mockito.same(policy),
-                        Mockito.any(),
-                        Mockito.eq(backupFile0));
+        // Write across multiple boundaries at once, and then up to a boundary.
+        stream.write("0123456789abcdefghijABCDE".getBytes(StandardCharsets.US_ASCII));
+        stream.write("FGH".getBytes(StandardCharsets.US_ASCII), 0, 3);
+        stream.write('I');
+        Assertions.assertThat(file).hasContent("ABCDEFGHI");
+        stream.write('J');
+        stream.write("klm".getBytes(StandardCharsets.US_ASCII));
+        stream.close();
 
-        // Verify files after the 2nd rotation.
-        Assertions.assertThat(file).hasBinaryContent(content3);
-        Assertions.assertThat(backupFile0).hasBinaryContent(content2);
-        Assertions.assertThat(backupFile1).hasBinaryContent(content1);
-        Assertions.assertThat(backupFile2).doesNotExist();
-        Assertions.assertThat(backupFile3).doesNotExist();
+        // Verify the files.
+        Assertions.assertThat(new File(tmpDir, "exactSizeRotation.log.2")).hasContent("0123456789");
+        Assertions.assertThat(new File(tmpDir, "exactSizeRotation.log.1")).hasContent("abcdefghij");
+        Assertions.assertThat(new File(tmpDir, "exactSizeRotation.log.0")).hasContent("ABCDEFGHIJ");
+        Assertions.assertThat(file).hasContent("klm");
 
-        // Write some and trigger the 3rd rotation.
-        byte[] content4 = {'4'};
-        stream.write(content4);
-        stream.flush();
+    }
 
-        // Verify the 3rd rotation.
-        inOrder
-                .verify(callback)
-                .onSuccess(
-                        Mockito.same(policy),
-                        Mockito.any(),
-                        Mockito.eq(backupFile0));
+    @Test
+    void test_copy_truncate() throws Exception {
 
-        // Verify files after the 3rd rotation.
-        Assertions.assertThat(file).hasBinaryContent(content4);
-        Assertions.assertThat(backupFile0).hasBinaryContent(content3);
-        Assertions.assertThat(backupFile1).hasBinaryContent(content2);
-        Assertions.assertThat(backupFile2).hasBinaryContent(content1);
-        Assertions.assertThat(backupFile3).doesNotExist();
+        // Create the stream.
+        File file = new File(tmpDir, "copyTruncate.log");
+        String fileNamePattern = new File(tmpDir, "copyTruncate-%d{HHmmss}.log").getAbsolutePath();
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        Mockito.when(policy.toString()).thenReturn("MockedPolicy");
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .filePattern(RotatingFilePattern
+                        .builder()
+                        .pattern(fileNamePattern)
+                        .timeZoneId(UtcHelper.ZONE_ID)
+                        .build())
+                .copyTruncate(true)
+                .policy(policy)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+        stream.write("first".getBytes(StandardCharsets.US_ASCII));
+        Object fileKey = readFileKey(file);
+
+        // Follow the file as an external reader would do.
+        try (FileChannel readerChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            // Verify that the file is copied and truncated in place.
+            Instant instant = Instant.parse("2020-01-01T00:00:00Z");
+            stream.rotate(policy, instant);
+            File rotatedFile = new File(tmpDir, "copyTruncate-000000.log");
+            Assertions.assertThat(rotatedFile).hasContent("first");
+            Assertions.assertThat(readFileKey(file)).isEqualTo(fileKey);
+            Assertions.assertThat(readerChannel.size()).isZero();
+            Assertions.assertThat(new File(rotatedFile.getPath() + ".tmp")).doesNotExist();
+
+            // Verify that writes continue from the beginning of the same file.
+            stream.write("second".getBytes(StandardCharsets.US_ASCII));
+            stream.close();
+            Assertions.assertThat(file).hasContent("second");
+            Assertions.assertThat(readerChannel.size()).isEqualTo(6);
 
-        // Write some and trigger the 4th rotation.
-        byte[] content5 = {'5'};
-        stream.write(content5);
-        stream.flush();
+        }
 
-        // Verify the 4th rotation.
-        inOrder
-                .verify(callback)
-                .onSuccess(
-                        Mockito.same(policy),
-                        Mockito.any(),
-                        Mockito.eq(backupFile0));
+    }
 
-        // Verify files after the 4th rotation.
-        Assertions.assertThat(file).hasBinaryContent(content5);
-        Assertions.assertThat(backupFile0).hasBinaryContent(content4);
-        Assertions.assertThat(backupFile1).hasBinaryContent(content3);
-        Assertions.assertThat(backupFile2).hasBinaryContent(content2);
-        Assertions.assertThat(backupFile3).doesNotExist();
+    @Test
+    void test_multi_process() throws Exception {
+
+        // Create a stream per process sharing the file. Since policies are
+        // bound to a single stream, each stream gets its own.
+        File file = new File(tmpDir, "multiProcess.log");
+        String fileNamePattern = new File(tmpDir, "multiProcess-%d{yyyyMMddHHmmssSSS}.log").getAbsolutePath();
+        SizeBasedRotationPolicy policy1 = new SizeBasedRotationPolicy(4);
+        SizeBasedRotationPolicy policy2 = new SizeBasedRotationPolicy(4);
+        RotationConfig.Builder configBuilder = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .filePattern(fileNamePattern)
+                .multiProcess(true);
+        RotatingFileOutputStream stream1 = new RotatingFileOutputStream(configBuilder.policy(policy1).build());
+        RotatingFileOutputStream stream2 = new RotatingFileOutputStream(configBuilder.policies(Collections.singleton(policy2)).build());
+        Assertions.assertThat(new File(tmpDir, "multiProcess.log.control")).exists();
+
+        // Verify that the size is shared, and a single stream rotates.
+        stream1.write("12".getBytes(StandardCharsets.US_ASCII));
+        stream2.write("34".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(file).hasContent("1234");
+        stream1.write("5".getBytes(StandardCharsets.US_ASCII));
+        File[] rotatedFiles = tmpDir.listFiles((directory, fileName) ->
+                fileName.startsWith("multiProcess-") && fileName.endsWith(".log"));
+        Assertions.assertThat(rotatedFiles).hasSize(1);
+        Assertions.assertThat(rotatedFiles[0]).hasContent("1234");
+        Assertions.assertThat(file).hasContent("5");
+
+        // Verify that the other stream follows the rotation, instead of
+        // rotating the file once more.
+        stream2.rotate(policy2, Instant.EPOCH);
+        stream2.write("6".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(file).hasContent("56");
+        Assertions.assertThat(rotatedFiles[0]).hasContent("1234");
+        stream1.close();
+        stream2.close();
 
-        // Write some and trigger the 5th rotation.
-        byte[] content6 = {'6'};
-        stream.write(content6);
-        stream.flush();
+    }
 
-        // Verify the 5th rotation.
-        inOrder
-                .verify(callback)
-                .onSuccess(
-                        Mockito.same(policy),
-                        Mockito.any(),
-                        Mockito.eq(backupFile0));
+    @Test
+    void test_multi_process_with_stale_control_file() throws Exception {
 
-        // Verify files after the 5th rotation.
-        Assertions.assertThat(file).hasBinaryContent(content6);
-        Assertions.assertThat(backupFile0).hasBinaryContent(content5);
-        Assertions.assertThat(backupFile1).hasBinaryContent(content4);
-        Assertions.assertThat(backupFile2).hasBinaryContent(content3);
-        Assertions.assertThat(backupFile3).doesNotExist();
+        // Leave a stale size behind.
+        File file = new File(tmpDir, "multiProcessStale.log");
+        Files.write(file.toPath(), "abc".getBytes(StandardCharsets.US_ASCII));
+        try (RotationCoordinator coordinator = new RotationCoordinator(file)) {
+            coordinator.addSize(1_000);
+        }
 
-        // Close the stream to avoid Windows failing to clean the temporary directory.
+        // Verify that the size is reset by the only writer.
+        SizeBasedRotationPolicy policy = new SizeBasedRotationPolicy(100);
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .maxBackupCount(1)
+                .multiProcess(true)
+                .policy(policy)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
+        stream.write("d".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(new File(tmpDir, "multiProcessStale.log.0")).doesNotExist();
+        Assertions.assertThat(file).hasContent("abcd");
         stream.close();
 
     }
 
     @Test
-    void test_rotation_and_write_failure_after_close() throws Exception {
+    void test_multi_process_with_per_process_state() {
+        RotationConfig.Builder configBuilder = RotationConfig
+                .builder()
+                .file(new File(tmpDir, "multiProcessState.log"))
+                .filePattern(new File(tmpDir, "multiProcessState-%d{yyyyMMdd}.log").getAbsolutePath())
+                .multiProcess(true)
+                .policy(Mockito.mock(RotationPolicy.class));
+        Assertions
+                .assertThatThrownBy(() -> configBuilder.compress(true).build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("multiProcess and compress cannot be combined");
+        Assertions
+                .assertThatThrownBy(() -> configBuilder.compress(false).manifest(true).build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("multiProcess and manifest cannot be combined");
+        Assertions
+                .assertThatThrownBy(() -> configBuilder.manifest(false).retentionMaxFileCount(1).build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("multiProcess and retention limits cannot be combined");
+        Assertions
+                .assertThatThrownBy(() -> configBuilder.retentionMaxFileCount(0).diskSpaceLowWatermark(1).build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("multiProcess and diskSpaceLowWatermark cannot be combined");
+    }
 
-        // Determine file names.
-        String fileNamePrefix = "rotationAndWriteFailureAfterClose";
-        File file = new File(tmpDir, fileNamePrefix + ".log");
-        String fileName = file.getAbsolutePath();
-        String fileNamePattern = new File(tmpDir, fileNamePrefix + "-%d{HHmmss-SSS}.log").getAbsolutePath();
+    @Test
+    void test_multi_process_with_exact_size_policy() {
+        Assertions
+                .assertThatThrownBy(() -> RotationConfig
+                        .builder()
+                        .file(new File(tmpDir, "multiProcessExact.log"))
+                        .maxBackupCount(1)
+                        .multiProcess(true)
+                        .policy(new SizeBasedRotationPolicy(4, true))
+                        .build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("multiProcess and exact size-based policies cannot be combined");
+    }
 
-        // Create the stream config.
+    @Test
+    void test_lazy_open() throws Exception {
+
+        // Create the stream.
+        File file = new File(tmpDir, "lazyOpen.log");
         RotationPolicy policy = Mockito.mock(RotationPolicy.class);
         Mockito.when(policy.toString()).thenReturn("MockedPolicy");
-        RotationCallback callback = Mockito.mock(RotationCallback.class);
-        Mockito.when(callback.toString()).thenReturn("MockedCallback");
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
         RotationConfig config = RotationConfig
                 .builder()
                 .executorService(executorService)
-                .file(fileName)
-                .filePattern(fileNamePattern)
+                .file(file)
+                .maxBackupCount(1)
+                .lazyOpen(true)
                 .policy(policy)
-                .callbacks(Collections.singleton(callback))
+                .callback(callback)
                 .build();
-
-        // Create the stream, write some, and close it.
         RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
-        stream.write("payload".getBytes(StandardCharsets.UTF_8));
+
+        // Verify that neither the file is opened, nor the policy is started.
+        Assertions.assertThat(file).doesNotExist();
+        Mockito.verify(policy, Mockito.never()).start(Mockito.any());
+        Mockito.verify(callback, Mockito.never()).onOpen(Mockito.any(), Mockito.any(), Mockito.any());
+        stream.flush();
+        stream.rotate(policy, Instant.EPOCH);
+        Assertions.assertThat(file).doesNotExist();
+
+        // Verify that the first write opens the file.
+        stream.write("first".getBytes(StandardCharsets.US_ASCII));
+        Mockito.verify(policy).start(stream);
+        Mockito.verify(callback).onOpen(Mockito.isNull(), Mockito.any(), Mockito.any());
         stream.close();
+        Assertions.assertThat(file).hasContent("first");
 
-        // Verify rotation failure.
-        InOrder inOrder = Mockito.inOrder(callback);
-        stream.rotate(null, Instant.now());
-        inOrder
-                .verify(callback)
-                .onFailure(
-                        Mockito.any(),
-                        Mockito.any(),
-                        Mockito.any(),
-                        Mockito.argThat(error -> {
-                            Throwable cause = error.getCause();
-                            return cause instanceof IOException &&
-                                    cause
-                                            .getMessage()
-                                            .contains("either closed or not initialized yet");
-                        }));
+    }
 
-        // Verify write(int) failure.
-        Assertions
-                .assertThatThrownBy(() -> stream.write(1))
-                .isInstanceOf(IOException.class)
-                .hasMessage("either closed or not initialized yet");
+    @Test
+    void test_lazy_open_without_writes() throws Exception {
 
-        // Verify write(byte[]) failure.
-        Assertions
-                .assertThatThrownBy(() -> stream.write(new byte[]{0}))
-                .isInstanceOf(IOException.class)
-                .hasMessage("either closed or not initialized yet");
+        // Create the stream.
+        File file = new File(tmpDir, "lazyOpenWithoutWrites.log");
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+        RotationConfig config = RotationConfig
+                .builder()
+                .executorService(executorService)
+                .file(file)
+                .maxBackupCount(1)
+                .lazyOpen(true)
+                .policy(policy)
+                .callback(callback)
+                .build();
+        RotatingFileOutputStream stream = new RotatingFileOutputStream(config);
 
-        // Verify write(byte[], int, int) failure.
+        // Verify that close neither creates the file, nor allows writes.
+        stream.close();
+        Assertions.assertThat(file).doesNotExist();
+        Mockito.verify(policy, Mockito.never()).stop(Mockito.any());
+        Mockito.verify(callback, Mockito.never()).onClose(Mockito.any(), Mockito.any(), Mockito.any());
         Assertions
-                .assertThatThrownBy(() -> stream.write(new byte[]{0}, 0, 1))
+                .assertThatThrownBy(() -> stream.write(1))
                 .isInstanceOf(IOException.class)
                 .hasMessage("either closed or not initialized yet");
 
-        // Verify no more failures were reported to the callback.
-        inOrder
-                .verify(callback, Mockito.never())
-                .onFailure(
-                        Mockito.any(),
-                        Mockito.any(),
-                        Mockito.any(),
-                        Mockito.any());
-
     }
 
     @Test
@@ -828,10 +2219,10 @@ class RotatingFileOutputStreamTest {
         stream.write("payload".getBytes(StandardCharsets.UTF_8));
         stream.close();
 
-        // Verify the task scheduling.
+        // Verify the task scheduling, where policies share a single timer.
         InOrder inOrder = Mockito.inOrder(scheduledFuture, executorService);
         inOrder
-                .verify(executorService, Mockito.times(2))
+                .verify(executorService, Mockito.times(1))
                 .schedule(
                         Mockito.any(Runnable.class),
                         Mockito.anyLong(),
@@ -839,8 +2230,8 @@ class RotatingFileOutputStreamTest {
 
         // Verify the task cancellation.
         inOrder
-                .verify(scheduledFuture, Mockito.times(2))
-                .cancel(Mockito.eq(true));
+                .verify(scheduledFuture, Mockito.times(1))
+                .cancel(Mockito.eq(false));
 
         // Verify no more interactions.
         Mockito.verifyNoMoreInteractions(scheduledFuture);
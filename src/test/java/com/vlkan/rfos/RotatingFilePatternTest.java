@@ -16,11 +16,15 @@
 
 package com.vlkan.rfos;
 
+import org.assertj.core.api.Assertions;
 import org.assertj.core.api.ThrowableAssert;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.io.IOException;
 import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.LinkedHashMap;
 import java.util.Locale;
@@ -88,6 +92,95 @@ class RotatingFilePatternTest {
         }
     }
 
+    @Test
+    void test_findFiles(@TempDir File tmpDir) throws IOException {
+
+        // Create the pattern.
+        RotatingFilePattern pattern = RotatingFilePattern
+                .builder()
+                .pattern(new File(tmpDir, "app-%d{yyyyMMdd-HHmmss.SSS}.log").getAbsolutePath())
+                .locale(Locale.US)
+                .timeZoneId(UtcHelper.ZONE_ID)
+                .build();
+
+        // Create files.
+        File rotatedFile = pattern.create(Instant.parse("2020-01-02T03:04:05.678Z"));
+        File compressedFile = new File(rotatedFile.getPath() + ".gz");
+        File activeFile = new File(tmpDir, "app.log");
+        File unrelatedFile = new File(tmpDir, "app-main.log");
+        for (File file : new File[]{rotatedFile, compressedFile, activeFile, unrelatedFile}) {
+            Assertions.assertThat(file.createNewFile()).isTrue();
+        }
+
+        // Verify the matches.
+        Assertions
+                .assertThat(pattern.findFiles())
+                .containsExactlyInAnyOrder(rotatedFile, compressedFile);
+        Assertions.assertThat(pattern.findSuffix(rotatedFile)).isEmpty();
+        Assertions.assertThat(pattern.findSuffix(compressedFile)).isEqualTo(".gz");
+        Assertions.assertThat(pattern.findSuffix(activeFile)).isNull();
+        Assertions.assertThat(pattern.findSuffix(unrelatedFile)).isNull();
+
+    }
+
+    @Test
+    void test_sequence(@TempDir File tmpDir) throws IOException {
+
+        // Create the pattern.
+        RotatingFilePattern pattern = RotatingFilePattern
+                .builder()
+                .pattern(new File(tmpDir, "app-%d{yyyyMMdd}-%i.log").getAbsolutePath())
+                .locale(Locale.US)
+                .timeZoneId(UtcHelper.ZONE_ID)
+                .build();
+        Assertions.assertThat(pattern.isSequenced()).isTrue();
+
+        // Verify the rendering.
+        Instant instant = Instant.parse("2020-01-02T03:04:05.678Z");
+        Assertions.assertThat(pattern.create(instant)).isEqualTo(new File(tmpDir, "app-20200102-0.log"));
+        File sequencedFile = pattern.create(instant, 12);
+        Assertions.assertThat(sequencedFile).isEqualTo(new File(tmpDir, "app-20200102-12.log"));
+
+        // Verify the matches.
+        Assertions.assertThat(sequencedFile.createNewFile()).isTrue();
+        Assertions.assertThat(pattern.findFiles()).containsExactly(sequencedFile);
+
+    }
+
+    @Test
+    void test_date_time_cache() {
+
+        // Create a pattern whose output changes with the offset, where
+        // Amsterdam switches from +01:00 to +02:00 at 2020-03-29T01:00:00Z.
+        String dateTimePattern = "yyyyMMdd-HHmm-ss.SSSxxx";
+        ZoneId zoneId = ZoneId.of("Europe/Amsterdam");
+        RotatingFilePattern pattern = RotatingFilePattern
+                .builder()
+                .pattern("%d{yyyyMMdd-HH}/%d{" + dateTimePattern + "}")
+                .locale(Locale.US)
+                .timeZoneId(zoneId)
+                .build();
+        DateTimeFormatter hourFormatter = DateTimeFormatter.ofPattern("yyyyMMdd-HH").withZone(zoneId);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(dateTimePattern).withZone(zoneId);
+
+        // Verify instants around bucket boundaries in both directions.
+        Instant[] instants = {
+                Instant.parse("2020-03-29T00:59:59.998Z"),
+                Instant.parse("2020-03-29T00:59:59.999Z"),
+                Instant.parse("2020-03-29T01:00:00.000Z"),
+                Instant.parse("2020-03-29T01:00:00.001Z"),
+                Instant.parse("2020-03-29T01:00:00.001999Z"),
+                Instant.parse("2020-03-29T00:59:59.999Z"),
+                Instant.parse("2020-03-29T01:59:59.999Z"),
+                Instant.parse("2020-03-29T02:00:00.000Z")
+        };
+        for (Instant instant : instants) {
+            File expectedFile = new File(hourFormatter.format(instant) + "/" + formatter.format(instant));
+            assertThat(pattern.create(instant)).as("instant=%s", instant).isEqualTo(expectedFile);
+        }
+
+    }
+
     private static String formatInstant(String pattern, Instant instant) {
         return DateTimeFormatter
                 .ofPattern(pattern)
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import com.vlkan.rfos.policy.RotationPolicy;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.zip.GZIPOutputStream;
+
+class RotatingFileRangeInputStreamTest {
+
+    private static final Random RANDOM = new Random(0);
+
+    @TempDir
+    File tmpDir;
+
+    @Test
+    void test_file_listing_with_gzip() throws Exception {
+        test_file_listing(CompressionCodec.GZIP);
+    }
+
+    @Test
+    void test_file_listing_with_lz4() throws Exception {
+        test_file_listing(CompressionCodec.LZ4);
+    }
+
+    private void test_file_listing(CompressionCodec compressionCodec) throws Exception {
+
+        // Determine file names.
+        File file = new File(tmpDir, "listing.log");
+        String fileNamePattern = new File(tmpDir, "listing-%d{yyyyMMdd}.log").getAbsolutePath();
+        File rotatedFile1 = new File(tmpDir, "listing-20200101.log");
+        File uncompressedFile2 = new File(tmpDir, "listing-20200102.log");
+        File rotatedFile2 = new File(uncompressedFile2.getPath() + compressionCodec.getFileExtension());
+        File rotatedFile3 = new File(tmpDir, "listing-20200103.log");
+        RotationConfig config = createConfig(file, fileNamePattern, false, compressionCodec);
+
+        // Compress a file rotated by a previous run by recovering it.
+        // Exceed the prefetch capacity to exercise the back pressure.
+        byte[] content2 = generateContent(3 * 1024 * 1024);
+        Files.write(uncompressedFile2.toPath(), content2);
+        setLastModified(uncompressedFile2, "2020-01-03T00:00:00Z");
+        recoverCompression(config, rotatedFile2);
+
+        // Create the rest of the files rotated daily and the active file.
+        byte[] content1 = generateContent(1_000);
+        byte[] content3 = generateContent(100);
+        byte[] activeContent = generateContent(10);
+        Files.write(rotatedFile1.toPath(), content1);
+        Files.write(rotatedFile3.toPath(), content3);
+        Files.write(file.toPath(), activeContent);
+        setLastModified(rotatedFile1, "2020-01-02T00:00:00Z");
+        setLastModified(rotatedFile3, "2020-01-04T00:00:00Z");
+
+        // Verify a range spanning rotated files.
+        verifyRead(
+                config,
+                "2020-01-02T12:00:00Z",
+                "2020-01-03T12:00:00Z",
+                concat(content2, content3),
+                rotatedFile2,
+                rotatedFile3);
+
+        // Verify a range spanning the active file.
+        verifyRead(
+                config,
+                "2020-01-03T12:00:00Z",
+                "2020-01-05T00:00:00Z",
+                concat(content3, activeContent),
+                rotatedFile3,
+                file);
+
+        // Verify a range preceding all files.
+        verifyRead(config, "2019-01-01T00:00:00Z", "2019-01-01T00:00:00Z", content1, rotatedFile1);
+
+    }
+
+    @Test
+    void test_manifest() throws IOException {
+
+        // Create files rotated by the hour.
+        File file = new File(tmpDir, "manifest.log");
+        String fileNamePattern = new File(tmpDir, "manifest-%d{yyyyMMddHH}.log").getAbsolutePath();
+        File rotatedFile1 = new File(tmpDir, "manifest-2020010100.log.gz");
+        File rotatedFile2 = new File(tmpDir, "manifest-2020010101.log");
+        byte[] content1 = generateContent(200_000);
+        byte[] content2 = generateContent(300);
+        Files.write(rotatedFile1.toPath(), compress(content1));
+        Files.write(rotatedFile2.toPath(), content2);
+        RotationConfig config = createConfig(file, fileNamePattern, true, CompressionCodec.GZIP);
+
+        // Record the files, where the modification times are irrelevant.
+        SegmentManifest manifest = SegmentManifest.load(config);
+        manifest.appendSegment(new SegmentManifest.Entry(
+                rotatedFile1,
+                Instant.parse("2020-01-01T00:00:00Z"),
+                Instant.parse("2020-01-01T00:59:59Z"),
+                content1.length, 0, rotatedFile1.length(), 0));
+        manifest.appendSegment(new SegmentManifest.Entry(
+                rotatedFile2,
+                Instant.parse("2020-01-01T01:00:00Z"),
+                Instant.parse("2020-01-01T01:59:59Z"),
+                content2.length, 0, -1, 0));
+
+        // Verify the ranges.
+        verifyRead(config, "2020-01-01T00:30:00Z", "2020-01-01T00:45:00Z", content1, rotatedFile1);
+        verifyRead(config, "2020-01-01T00:30:00Z", "2020-01-01T01:15:00Z", concat(content1, content2), rotatedFile1, rotatedFile2);
+        verifyRead(config, "2020-01-01T03:00:00Z", "2020-01-01T04:00:00Z", new byte[0]);
+
+        // Verify that a file compressed after being recorded is read.
+        Files.write(new File(rotatedFile2.getPath() + ".gz").toPath(), compress(content2));
+        Files.delete(rotatedFile2.toPath());
+        verifyRead(config, "2020-01-01T01:15:00Z", "2020-01-01T01:30:00Z", content2, rotatedFile2);
+
+        // Verify that a file rotated, but not recorded yet, is read.
+        File rotatedFile3 = new File(tmpDir, "manifest-2020010102.log");
+        byte[] content3 = generateContent(400);
+        Files.write(rotatedFile3.toPath(), content3);
+        setLastModified(rotatedFile3, "2020-01-01T02:59:59Z");
+        verifyRead(config, "2020-01-01T02:15:00Z", "2020-01-01T02:30:00Z", content3, rotatedFile3);
+        verifyRead(config, "2020-01-01T01:15:00Z", "2020-01-01T02:30:00Z", concat(content2, content3), rotatedFile2, rotatedFile3);
+
+        // Verify that a deleted file is skipped.
+        Files.delete(rotatedFile1.toPath());
+        verifyRead(config, "2020-01-01T00:30:00Z", "2020-01-01T01:15:00Z", content2, rotatedFile1, rotatedFile2);
+
+    }
+
+    private static RotationConfig createConfig(
+            File file,
+            String fileNamePattern,
+            boolean manifest,
+            CompressionCodec compressionCodec) {
+        RotationPolicy policy = Mockito.mock(RotationPolicy.class);
+        return RotationConfig
+                .builder()
+                .file(file)
+                .filePattern(fileNamePattern)
+                .compress(true)
+                .compressionCodec(compressionCodec)
+                .manifest(manifest)
+                .policy(policy)
+                .build();
+    }
+
+    /**
+     * Compresses the rotated files left uncompressed by a previous run the
+     * way {@link RotatingFileOutputStream} does at start.
+     */
+    private static void recoverCompression(RotationConfig config, File compressedFile) throws IOException {
+        ScheduledExecutorService executorService = new ScheduledThreadPoolExecutor(1);
+        try {
+            RotationCallback callback = Mockito.spy(LoggingRotationCallback.getInstance());
+            RotationConfig recoveryConfig = RotationConfig
+                    .builder(config)
+                    .compress(true)
+                    .executorService(executorService)
+                    .callbacks(Collections.singleton(callback))
+                    .build();
+            RotatingFileOutputStream stream = new RotatingFileOutputStream(recoveryConfig);
+            Mockito
+                    .verify(callback, Mockito.timeout(5_000))
+                    .onSuccess(Mockito.isNull(), Mockito.any(Instant.class), Mockito.eq(compressedFile));
+            stream.close();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static void verifyRead(
+            RotationConfig config,
+            String fromInstant,
+            String toInstant,
+            byte[] expectedContent,
+            File... expectedFiles)
+            throws IOException {
+        try (RotatingFileRangeInputStream inputStream = RotatingFileRangeInputStream.open(
+                config,
+                Instant.parse(fromInstant),
+                Instant.parse(toInstant))) {
+            Assertions.assertThat(inputStream.getFiles()).containsExactly(expectedFiles);
+            Assertions.assertThat(GzipCompressorTest.readFully(inputStream)).isEqualTo(expectedContent);
+        }
+    }
+
+    private static void setLastModified(File file, String instant) {
+        Assertions.assertThat(file.setLastModified(Instant.parse(instant).toEpochMilli())).isTrue();
+    }
+
+    private static byte[] generateContent(int length) {
+        byte[] content = new byte[length];
+        for (int byteIndex = 0; byteIndex < length; byteIndex++) {
+            content[byteIndex] = (byte) ('a' + RANDOM.nextInt(26));
+        }
+        return content;
+    }
+
+    private static byte[] compress(byte[] content) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+            outputStream.write(content);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] content = new byte[first.length + second.length];
+        System.arraycopy(first, 0, content, 0, first.length);
+        System.arraycopy(second, 0, content, first.length, second.length);
+        return content;
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+class SegmentCatalogTest {
+
+    @Test
+    void test_pollExpired() {
+
+        // Populate the catalog out of order.
+        SegmentCatalog catalog = new SegmentCatalog();
+        catalog.add(new File("c"), 30, 3_000);
+        catalog.add(new File("a"), 10, 1_000);
+        catalog.add(new File("b"), 20, 2_000);
+        catalog.add(new File("d"), 40, 4_000);
+        Assertions.assertThat(catalog.size()).isEqualTo(4);
+        Assertions.assertThat(catalog.getTotalLength()).isEqualTo(100);
+
+        // Verify replacement.
+        catalog.add(new File("d"), 45, 4_000);
+        Assertions.assertThat(catalog.size()).isEqualTo(4);
+        Assertions.assertThat(catalog.getTotalLength()).isEqualTo(105);
+
+        // Verify no violations.
+        Assertions.assertThat(catalog.pollExpired(0, 0, Long.MIN_VALUE)).isNull();
+        Assertions.assertThat(catalog.pollExpired(105, 4, 1_000)).isNull();
+
+        // Verify the age limit.
+        Assertions.assertThat(catalog.pollExpired(0, 0, 1_001).getFile()).isEqualTo(new File("a"));
+        Assertions.assertThat(catalog.pollExpired(0, 0, 1_001)).isNull();
+
+        // Verify the count limit.
+        Assertions.assertThat(catalog.pollExpired(0, 2, Long.MIN_VALUE).getFile()).isEqualTo(new File("b"));
+        Assertions.assertThat(catalog.pollExpired(0, 2, Long.MIN_VALUE)).isNull();
+
+        // Verify the total length limit.
+        Assertions.assertThat(catalog.pollExpired(50, 0, Long.MIN_VALUE).getFile()).isEqualTo(new File("c"));
+        Assertions.assertThat(catalog.pollExpired(50, 0, Long.MIN_VALUE)).isNull();
+        Assertions.assertThat(catalog.getTotalLength()).isEqualTo(45);
+
+        // Verify removal.
+        catalog.remove(new File("d"));
+        Assertions.assertThat(catalog.size()).isZero();
+        Assertions.assertThat(catalog.getTotalLength()).isZero();
+        Assertions.assertThat(catalog.pollExpired(1, 1, Long.MAX_VALUE)).isNull();
+
+    }
+
+}
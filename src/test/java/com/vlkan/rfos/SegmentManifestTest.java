@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.zip.CRC32;
+
+class SegmentManifestTest {
+
+    @TempDir
+    File tmpDir;
+
+    @Test
+    void test_scan() throws IOException {
+        File file = new File(tmpDir, "segment.log");
+        byte[] content = "foo\nbar\nbaz".getBytes(StandardCharsets.US_ASCII);
+        Files.write(file.toPath(), content);
+        Instant lastWriteInstant = Instant.parse("2020-01-01T00:10:00Z");
+        Assertions.assertThat(file.setLastModified(lastWriteInstant.toEpochMilli())).isTrue();
+        Instant firstWriteInstant = Instant.parse("2020-01-01T00:00:00Z");
+        SegmentManifest.Entry entry = SegmentManifest.Entry.scan(file, firstWriteInstant);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        Assertions.assertThat(entry.getFile()).isEqualTo(file);
+        Assertions.assertThat(entry.getFirstWriteInstant()).isEqualTo(firstWriteInstant);
+        Assertions.assertThat(entry.getLastWriteInstant()).isEqualTo(lastWriteInstant);
+        Assertions.assertThat(entry.getByteCount()).isEqualTo(content.length);
+        Assertions.assertThat(entry.getRecordCount()).isEqualTo(2);
+        Assertions.assertThat(entry.getCompressedLength()).isEqualTo(-1);
+        Assertions.assertThat(entry.getChecksum()).isEqualTo(crc.getValue());
+    }
+
+    @Test
+    void test_append_and_load() throws IOException {
+
+        // Append records.
+        File manifestFile = new File(tmpDir, "test.log" + SegmentManifest.FILE_SUFFIX);
+        SegmentManifest manifest = SegmentManifest.load(manifestFile);
+        Assertions.assertThat(manifest.getEntries()).isEmpty();
+        SegmentManifest.Entry entry1 = createEntry("a", "2020-01-01T00:00:00Z", "2020-01-01T23:59:59Z");
+        SegmentManifest.Entry entry2 = createEntry("b", "2020-01-02T00:00:00Z", "2020-01-02T23:59:59Z");
+        SegmentManifest.Entry entry3 = createEntry("c", "2020-01-03T00:00:00Z", "2020-01-03T23:59:59Z");
+        manifest.appendSegment(entry1);
+        manifest.appendSegment(entry2);
+        manifest.appendSegment(entry3);
+        manifest.appendDeletion(entry1.getFile());
+        manifest.appendDeletion(new File("unknown"));
+        Assertions.assertThat(manifest.getEntries()).containsExactly(entry2, entry3);
+
+        // Verify the range queries.
+        Assertions
+                .assertThat(manifest.findEntries(
+                        Instant.parse("2020-01-02T12:00:00Z"),
+                        Instant.parse("2020-01-03T00:00:00Z")))
+                .containsExactly(entry2, entry3);
+        Assertions
+                .assertThat(manifest.findEntries(
+                        Instant.parse("2020-01-03T12:00:00Z"),
+                        Instant.parse("2020-01-04T00:00:00Z")))
+                .containsExactly(entry3);
+        Assertions
+                .assertThat(manifest.findEntries(
+                        Instant.parse("2020-01-01T00:00:00Z"),
+                        Instant.parse("2020-01-01T23:59:59Z")))
+                .isEmpty();
+
+        // Verify that a torn record is discarded.
+        Files.write(
+                manifestFile.toPath(),
+                "S\td\t2020".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        Assertions.assertThat(SegmentManifest.load(manifestFile).getEntries()).containsExactly(entry2, entry3);
+        Assertions.assertThat(Files.readAllLines(manifestFile.toPath())).hasSize(5);
+        SegmentManifest loadedManifest = SegmentManifest.load(manifestFile, true);
+        Assertions.assertThat(loadedManifest.getEntries()).containsExactly(entry2, entry3);
+        Assertions.assertThat(Files.readAllLines(manifestFile.toPath())).hasSize(4);
+
+        // Verify compaction.
+        loadedManifest.compact();
+        Assertions.assertThat(Files.readAllLines(manifestFile.toPath())).hasSize(4);
+        loadedManifest.appendDeletion(entry2.getFile());
+        loadedManifest.compact();
+        Assertions.assertThat(Files.readAllLines(manifestFile.toPath())).hasSize(1);
+        Assertions.assertThat(SegmentManifest.load(manifestFile).getEntries()).containsExactly(entry3);
+
+    }
+
+    private static SegmentManifest.Entry createEntry(String path, String firstWriteInstant, String lastWriteInstant) {
+        return new SegmentManifest.Entry(
+                new File(path),
+                Instant.parse(firstWriteInstant),
+                Instant.parse(lastWriteInstant),
+                100,
+                10,
+                path.hashCode(),
+                0xCAFEBABEL);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+class VolumePlacementTest {
+
+    private static final File VOLUME1 = new File("/disk1").getAbsoluteFile();
+
+    private static final File VOLUME2 = new File("/disk2").getAbsoluteFile();
+
+    private static final File VOLUME3 = new File("/disk3").getAbsoluteFile();
+
+    @Test
+    void test_round_robin() {
+        VolumePlacement placement = createPlacement(VolumePlacement.Strategy.ROUND_ROBIN);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME1);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME2);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME3);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME1);
+    }
+
+    @Test
+    void test_least_write_load() {
+
+        // Verify that the volumes with the fewest active files are picked.
+        VolumePlacement placement = createPlacement(VolumePlacement.Strategy.LEAST_WRITE_LOAD);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME1);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME2);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME3);
+
+        // Verify that ties are broken by the recent write load.
+        placement.release(VOLUME1, 300);
+        placement.release(VOLUME2, 100);
+        placement.release(VOLUME3, 200);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME2);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME3);
+
+        // Verify that the recent write load decays, i.e., the total written
+        // would have been 350 for the last volume.
+        placement.release(VOLUME2, 250);    // 100 / 2 + 250 = 300
+        placement.release(VOLUME3, 150);    // 200 / 2 + 150 = 250
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME3);
+
+    }
+
+    @Test
+    void test_acquire_existing_file() {
+        VolumePlacement placement = createPlacement(VolumePlacement.Strategy.LEAST_WRITE_LOAD);
+        File file = VolumePlacement.resolve(VOLUME2, new File("/var/log/app.log"));
+        Assertions.assertThat(file).isEqualTo(new File(VOLUME2, "var/log/app.log"));
+        Assertions.assertThat(placement.acquire(file)).isEqualTo(VOLUME2);
+        Assertions.assertThat(placement.acquire(new File("/var/log/app.log"))).isNull();
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME1);
+        Assertions.assertThat(placement.acquire()).isEqualTo(VOLUME3);
+    }
+
+    private static VolumePlacement createPlacement(VolumePlacement.Strategy strategy) {
+        return new VolumePlacement(strategy, Arrays.asList(VOLUME1, VOLUME2, VOLUME3));
+    }
+
+}
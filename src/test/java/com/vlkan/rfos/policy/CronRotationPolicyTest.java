@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos.policy;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+
+import static com.vlkan.rfos.policy.IntervalRotationPolicyTest.verifyTrigger;
+
+class CronRotationPolicyTest {
+
+    @Test
+    void test_invalid_expression() {
+        String[] invalidExpressions = {
+                "* * * *",
+                "60 * * * *",
+                "* 24 * * *",
+                "* * 0 * *",
+                "* * * 13 *",
+                "* * * * 8",
+                "*/0 * * * *",
+                "5-1 * * * *",
+                "a * * * *",
+                "1,,2 * * * *"
+        };
+        for (String invalidExpression : invalidExpressions) {
+            Assertions
+                    .assertThatThrownBy(() -> new CronRotationPolicy(invalidExpression))
+                    .as("invalidExpression=%s", invalidExpression)
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("invalid cron expression");
+        }
+        Assertions
+                .assertThatThrownBy(() -> new CronRotationPolicy("0 0 30 2 *"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("never matches");
+    }
+
+    @Test
+    void test_utc() {
+
+        // Verify steps.
+        CronRotationPolicy quarterlyPolicy = new CronRotationPolicy("*/15 * * * *");
+        verifyTrigger(quarterlyPolicy, "2020-01-01T10:07:30Z", "2020-01-01T10:15:00Z");
+        verifyTrigger(quarterlyPolicy, "2020-01-01T10:15:00Z", "2020-01-01T10:30:00Z");
+        verifyTrigger(quarterlyPolicy, "2020-01-01T23:50:00Z", "2020-01-02T00:00:00Z");
+
+        // Verify ranges and days of week, where 2020-01-03 is a Friday.
+        CronRotationPolicy weekdayPolicy = new CronRotationPolicy("0 9-17 * * 1-5");
+        verifyTrigger(weekdayPolicy, "2020-01-03T12:30:00Z", "2020-01-03T13:00:00Z");
+        verifyTrigger(weekdayPolicy, "2020-01-03T17:00:00Z", "2020-01-06T09:00:00Z");
+
+        // Verify that Sunday can be denoted by 7.
+        verifyTrigger(new CronRotationPolicy("0 0 * * 7"), "2020-01-01T00:00:00Z", "2020-01-05T00:00:00Z");
+
+        // Verify that either restricted day field matches.
+        CronRotationPolicy dayPolicy = new CronRotationPolicy("30 6 15 * 0");
+        verifyTrigger(dayPolicy, "2020-01-06T00:00:00Z", "2020-01-12T06:30:00Z");
+        verifyTrigger(dayPolicy, "2020-01-13T00:00:00Z", "2020-01-15T06:30:00Z");
+
+        // Verify leap days.
+        verifyTrigger(new CronRotationPolicy("0 0 29 2 *"), "2020-03-01T00:00:00Z", "2024-02-29T00:00:00Z");
+
+    }
+
+    @Test
+    void test_daylight_saving_time() {
+
+        // Amsterdam switches from CET (+01:00) to CEST (+02:00) at 2020-03-29T02:00 local time,
+        // and back at 2020-10-25T03:00 local time.
+        ZoneId zoneId = ZoneId.of("Europe/Amsterdam");
+        CronRotationPolicy policy = new CronRotationPolicy("30 2 * * *", zoneId);
+
+        // Verify that the skipped local time is shifted forward, i.e., to 03:30 CEST.
+        verifyTrigger(policy, "2020-03-28T12:00:00Z", "2020-03-29T01:30:00Z");
+        verifyTrigger(policy, "2020-03-29T01:30:00Z", "2020-03-30T00:30:00Z");
+
+        // Verify that the repeated local time triggers only once, i.e., at 02:30 CEST.
+        verifyTrigger(policy, "2020-10-24T12:00:00Z", "2020-10-25T00:30:00Z");
+        verifyTrigger(policy, "2020-10-25T00:30:00Z", "2020-10-26T01:30:00Z");
+
+        // Verify hourly triggers across the repeated hour, where 02:00 CET is
+        // skipped, since 02:00 CEST has already triggered.
+        CronRotationPolicy hourlyPolicy = new CronRotationPolicy("0 * * * *", zoneId);
+        verifyTrigger(hourlyPolicy, "2020-10-24T23:00:00Z", "2020-10-25T00:00:00Z");
+        verifyTrigger(hourlyPolicy, "2020-10-25T00:00:00Z", "2020-10-25T02:00:00Z");
+        verifyTrigger(hourlyPolicy, "2020-10-25T01:30:00Z", "2020-10-25T02:00:00Z");
+
+    }
+
+}
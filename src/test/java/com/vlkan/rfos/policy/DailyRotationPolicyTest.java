@@ -20,12 +20,11 @@ import com.vlkan.rfos.Clock;
 import com.vlkan.rfos.Rotatable;
 import com.vlkan.rfos.RotatingFilePattern;
 import com.vlkan.rfos.RotationConfig;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.stubbing.Answer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.time.Duration;
@@ -33,46 +32,69 @@ import java.time.Instant;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 class DailyRotationPolicyTest {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(DailyRotationPolicyTest.class);
+    private final AtomicLong nanoTime = new AtomicLong();
 
-    @Test
-    void test() {
+    private ScheduledFuture<?> tickFuture;
+
+    private ScheduledExecutorService executorService;
+
+    private TimerWheel wheel;
+
+    @BeforeEach
+    void setupExecutorService() {
+
+        // Create an executor running the submitted tasks immediately, and
+        // keeping the scheduled ticks for manual runs.
+        tickFuture = Mockito.mock(ScheduledFuture.class);
+        executorService = Mockito.mock(ScheduledExecutorService.class);
+        Mockito
+                .doReturn(tickFuture)
+                .when(executorService)
+                .schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.same(TimeUnit.NANOSECONDS));
+        Mockito
+                .doAnswer(invocation -> {
+                    Runnable task = invocation.getArgument(0);
+                    task.run();
+                    return null;
+                })
+                .when(executorService)
+                .execute(Mockito.any(Runnable.class));
+
+        // Create the wheel with a manual time source.
+        wheel = TimerWheel.getInstance(executorService, nanoTime::get);
 
-        // Create the scheduler mock.
-        ScheduledFuture<?> scheduledFuture = Mockito.mock(ScheduledFuture.class);
-        ScheduledExecutorService executorService = Mockito.mock(ScheduledExecutorService.class);
+    }
+
+    /**
+     * Verifies that the last tick is scheduled with the given delay, and runs
+     * it after advancing the time by the delay.
+     */
+    private void runTick(int scheduleCount, long delayNanos) {
+        ArgumentCaptor<Runnable> tickCaptor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito
+                .verify(executorService, Mockito.times(scheduleCount))
+                .schedule(tickCaptor.capture(), Mockito.anyLong(), Mockito.same(TimeUnit.NANOSECONDS));
         Mockito
-                .when(executorService.schedule(
-                        Mockito.any(Runnable.class),
-                        Mockito.anyLong(),
-                        Mockito.same(TimeUnit.NANOSECONDS)))
-                .thenAnswer(new Answer<ScheduledFuture<?>>() {
-
-                    private int invocationCount = 0;
-
-                    @Override
-                    public ScheduledFuture<?> answer(InvocationOnMock invocation) {
-                        Runnable runnable = invocation.getArgument(0);
-                        if (++invocationCount < 3) {
-                            runnable.run();
-                        } else {
-                            LOGGER.trace("skipping execution {invocationCount={}}", invocationCount);
-                        }
-                        return scheduledFuture;
-                    }
-
-                });
+                .verify(executorService, Mockito.atLeastOnce())
+                .schedule(Mockito.same(tickCaptor.getValue()), Mockito.eq(delayNanos), Mockito.same(TimeUnit.NANOSECONDS));
+        nanoTime.addAndGet(delayNanos);
+        tickCaptor.getValue().run();
+    }
+
+    @Test
+    void test() {
 
         // Create the clock mock.
         Clock clock = Mockito.mock(Clock.class);
         Instant midnight1 = Instant.parse("2017-12-29T00:00:00.000Z");
-        Duration waitPeriod1 = Duration.ofSeconds(1);
+        Duration waitPeriod1 = Duration.ofMillis(10);
         Instant now1 = midnight1.minus(waitPeriod1);
         Instant midnight2 = Instant.parse("2017-12-30T00:00:00.000Z");
-        Duration waitPeriod2 = Duration.ofSeconds(2);
+        Duration waitPeriod2 = Duration.ofMillis(20);
         Instant now2 = midnight2.minus(waitPeriod2);
         Mockito
                 .when(clock.now())
@@ -83,60 +105,118 @@ class DailyRotationPolicyTest {
                 .thenReturn(midnight1)
                 .thenReturn(midnight2);
 
-        // Create the config.
-        DailyRotationPolicy policy = DailyRotationPolicy.getInstance();
-        File file = Mockito.mock(File.class);
-        RotatingFilePattern filePattern = Mockito.mock(RotatingFilePattern.class);
-        RotationConfig config = RotationConfig
-                .builder()
-                .file(file)
-                .filePattern(filePattern)
-                .clock(clock)
-                .executorService(executorService)
-                .policy(policy)
-                .build();
-
         // Create the rotatable mock.
-        Rotatable rotatable = Mockito.mock(Rotatable.class);
-        Mockito.when(rotatable.getConfig()).thenReturn(config);
+        DailyRotationPolicy policy = DailyRotationPolicy.getInstance();
+        Rotatable rotatable = createRotatable(clock, policy);
 
         // Start policy.
         policy.start(rotatable);
+        Mockito.verify(rotatable, Mockito.never()).rotate(Mockito.any(), Mockito.any());
 
-        // Verify the 1st execution.
-        Mockito
-                .verify(executorService)
-                .schedule(
-                        Mockito.any(Runnable.class),
-                        Mockito.eq(waitPeriod1.toNanos()),
-                        Mockito.same(TimeUnit.NANOSECONDS));
-
-        // Verify the 1st rotation.
+        // Verify the 1st rotation, due at the first tick.
+        runTick(1, TimerWheel.TICK_NANOS);
         Mockito
                 .verify(rotatable)
                 .rotate(Mockito.same(policy), Mockito.eq(midnight1));
 
-        // Verify the 2nd execution.
-        Mockito
-                .verify(executorService, Mockito.atLeastOnce())
-                .schedule(
-                        Mockito.any(Runnable.class),
-                        Mockito.eq(waitPeriod2.toNanos()),
-                        Mockito.same(TimeUnit.NANOSECONDS));
-
-        // Verify the 2nd rotation.
+        // Verify the 2nd rotation, due at the next tick.
+        runTick(2, TimerWheel.TICK_NANOS);
         Mockito
                 .verify(rotatable)
                 .rotate(Mockito.same(policy), Mockito.eq(midnight2));
 
-        // Close the policy.
-        policy.stop();
+        // Stop the policy and verify the timeout cancellation.
+        policy.stop(rotatable);
+        Assertions.assertThat(wheel.getTimeoutCount()).isZero();
+        Mockito.verify(tickFuture).cancel(false);
 
-        // Verify the task cancellation.
+    }
+
+    @Test
+    void test_shared_instance() {
+
+        // Create rotatables sharing the policy.
+        Clock clock = Mockito.mock(Clock.class);
+        Instant now = Instant.parse("2017-12-28T12:00:00.000Z");
+        Mockito.when(clock.now()).thenReturn(now);
+        Mockito.when(clock.midnight()).thenReturn(Instant.parse("2017-12-29T00:00:00.000Z"));
+        DailyRotationPolicy policy = DailyRotationPolicy.getInstance();
+        Rotatable rotatable1 = createRotatable(clock, policy);
+        Rotatable rotatable2 = createRotatable(clock, policy);
+
+        // Start the policy for both.
+        policy.start(rotatable1);
+        policy.start(rotatable2);
+        Assertions.assertThat(wheel.getTimeoutCount()).isEqualTo(2);
+
+        // Verify that stopping one does not affect the other.
+        policy.stop(rotatable1);
+        Assertions.assertThat(wheel.getTimeoutCount()).isEqualTo(1);
+        policy.stop(rotatable2);
+        Assertions.assertThat(wheel.getTimeoutCount()).isZero();
+
+    }
+
+    @Test
+    void test_stagger() {
+
+        // Create the clock mock.
+        Clock clock = Mockito.mock(Clock.class);
+        Instant midnight = Instant.parse("2017-12-29T00:00:00.000Z");
+        Duration waitPeriod = Duration.ofMillis(10);
+        Mockito.when(clock.now()).thenReturn(midnight.minus(waitPeriod));
+        Mockito.when(clock.midnight()).thenReturn(midnight);
+
+        // Create the rotatable with a stagger window.
+        Duration stagger = Duration.ofMillis(300);
+        DailyRotationPolicy policy = DailyRotationPolicy.getInstance();
+        RotationConfig config = createConfig(clock, policy, new File("/tmp/stagger.log"), stagger);
+        Rotatable rotatable = createRotatable(config);
+
+        // Verify that the offset is deterministic and within the window.
+        long staggerNanos = TimeBasedRotationPolicy.getStaggerNanos(config);
+        Assertions.assertThat(staggerNanos).isBetween(0L, stagger.toNanos() - 1);
+        Assertions.assertThat(TimeBasedRotationPolicy.getStaggerNanos(config)).isEqualTo(staggerNanos);
+        Assertions
+                .assertThat(TimeBasedRotationPolicy.getStaggerNanos(
+                        createConfig(clock, policy, new File("/tmp/stagger2.log"), stagger)))
+                .isNotEqualTo(staggerNanos);
+
+        // Verify that the rotation is delayed to the tick of the offset, but
+        // records the midnight.
+        policy.start(rotatable);
+        long delayNanos = waitPeriod.toNanos() + staggerNanos;
+        long tickDelayNanos = (delayNanos + TimerWheel.TICK_NANOS - 1) / TimerWheel.TICK_NANOS * TimerWheel.TICK_NANOS;
+        runTick(1, tickDelayNanos);
         Mockito
-                .verify(scheduledFuture)
-                .cancel(Mockito.same(true));
+                .verify(rotatable)
+                .rotate(Mockito.same(policy), Mockito.eq(midnight));
+        policy.stop(rotatable);
+
+    }
+
+    private Rotatable createRotatable(Clock clock, RotationPolicy policy) {
+        RotationConfig config = createConfig(clock, policy, Mockito.mock(File.class), Duration.ZERO);
+        return createRotatable(config);
+    }
 
+    private RotationConfig createConfig(Clock clock, RotationPolicy policy, File file, Duration stagger) {
+        RotatingFilePattern filePattern = Mockito.mock(RotatingFilePattern.class);
+        return RotationConfig
+                .builder()
+                .file(file)
+                .filePattern(filePattern)
+                .clock(clock)
+                .executorService(executorService)
+                .rotationStagger(stagger)
+                .policy(policy)
+                .build();
+    }
+
+    private static Rotatable createRotatable(RotationConfig config) {
+        Rotatable rotatable = Mockito.mock(Rotatable.class);
+        Mockito.when(rotatable.getConfig()).thenReturn(config);
+        return rotatable;
     }
 
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos.policy;
+
+import com.vlkan.rfos.Clock;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+class IntervalRotationPolicyTest {
+
+    @Test
+    void test_invalid_interval() {
+        for (Duration invalidInterval : new Duration[]{Duration.ZERO, Duration.ofNanos(1), Duration.ofDays(2)}) {
+            Assertions
+                    .assertThatThrownBy(() -> new IntervalRotationPolicy(invalidInterval))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("invalid interval");
+        }
+    }
+
+    @Test
+    void test_utc() {
+        IntervalRotationPolicy policy = new IntervalRotationPolicy(Duration.ofMinutes(15));
+        verifyTrigger(policy, "2020-01-01T10:07:00Z", "2020-01-01T10:15:00Z");
+        verifyTrigger(policy, "2020-01-01T10:15:00Z", "2020-01-01T10:30:00Z");
+        verifyTrigger(policy, "2020-01-01T23:59:59.999Z", "2020-01-02T00:00:00Z");
+        // Verify that the clock going backwards is handled.
+        verifyTrigger(policy, "2019-12-31T10:07:00Z", "2019-12-31T10:15:00Z");
+    }
+
+    @Test
+    void test_interval_not_dividing_the_day() {
+        IntervalRotationPolicy policy = new IntervalRotationPolicy(Duration.ofHours(7));
+        verifyTrigger(policy, "2020-01-01T20:00:00Z", "2020-01-01T21:00:00Z");
+        verifyTrigger(policy, "2020-01-01T21:00:00Z", "2020-01-02T00:00:00Z");
+    }
+
+    @Test
+    void test_daylight_saving_time() {
+
+        // Amsterdam switches from CET (+01:00) to CEST (+02:00) at 2020-03-29T02:00 local time.
+        ZoneId zoneId = ZoneId.of("Europe/Amsterdam");
+        IntervalRotationPolicy policy = new IntervalRotationPolicy(Duration.ofHours(1), zoneId);
+        verifyTrigger(policy, "2020-03-28T23:30:00Z", "2020-03-29T00:00:00Z");
+        verifyTrigger(policy, "2020-03-29T00:30:00Z", "2020-03-29T01:00:00Z");
+        // The day has 23 hours and ends at the local midnight.
+        verifyTrigger(policy, "2020-03-29T21:30:00Z", "2020-03-29T22:00:00Z");
+
+        // Verify the alignment to the local start of day.
+        IntervalRotationPolicy dailyPolicy = new IntervalRotationPolicy(Duration.ofDays(1), zoneId);
+        verifyTrigger(dailyPolicy, "2020-03-29T12:00:00Z", "2020-03-29T22:00:00Z");
+        verifyTrigger(dailyPolicy, "2020-03-29T22:00:00Z", "2020-03-30T22:00:00Z");
+
+    }
+
+    static void verifyTrigger(TimeBasedRotationPolicy policy, String now, String expectedTriggerInstant) {
+        Clock clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.now()).thenReturn(Instant.parse(now));
+        Assertions
+                .assertThat(policy.getTriggerInstant(clock))
+                .as("now=%s", now)
+                .isEqualTo(Instant.parse(expectedTriggerInstant));
+    }
+
+}
@@ -19,19 +19,22 @@ package com.vlkan.rfos.policy;
 import com.vlkan.rfos.Clock;
 import com.vlkan.rfos.Rotatable;
 import com.vlkan.rfos.RotationConfig;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.time.Instant.EPOCH;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -50,32 +53,30 @@ class TimeBasedRotationPolicyTest {
         Clock clock = mock(Clock.class);
         when(clock.now()).thenReturn(EPOCH);
 
-        // Create an executor that runs *the first two* tasks immediately (i.e., without any delay!) and discards the rest.
-        // Why the first two?
-        // 1. The first time `start()` is run manually (by `RotatingFileOutputStream`), it will schedule a task.
-        // 2. When `start()` is run by the scheduled task, it will schedule a task, again.
-        // 3. We need to stop here, otherwise we will be looping around step #2.
+        // Create an executor that keeps the scheduled ticks for manual runs,
+        // and runs the submitted tasks immediately.
+        List<Runnable> ticks = new ArrayList<>();
         ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
         when(executor.schedule(any(Runnable.class), anyLong(), any()))
-                .thenAnswer(new Answer<ScheduledFuture<?>>() {
-
-                    private final AtomicInteger invocationCounter = new AtomicInteger(0);
-
-                    @Override
-                    public ScheduledFuture<?> answer(InvocationOnMock invocation) {
-                        if (invocationCounter.getAndIncrement() < 2) {
-                            Runnable task = invocation.getArgument(0);
-                            task.run();
-                        }
-                        return null;
-                    }
-
+                .thenAnswer(invocation -> {
+                    ticks.add(invocation.getArgument(0));
+                    return mock(ScheduledFuture.class);
                 });
+        doAnswer(invocation -> {
+            Runnable task = invocation.getArgument(0);
+            task.run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+
+        // Create the wheel with a manual time source.
+        AtomicLong nanoTime = new AtomicLong();
+        TimerWheel wheel = TimerWheel.getInstance(executor, nanoTime::get);
 
         // Create the rotation configuration
         RotationConfig config = mock(RotationConfig.class);
         when(config.getClock()).thenReturn(clock);
         when(config.getExecutorService()).thenReturn(executor);
+        when(config.getRotationStagger()).thenReturn(Duration.ZERO);
 
         // Create the rotatable
         Rotatable rotatable = mock(Rotatable.class);
@@ -85,6 +86,15 @@ class TimeBasedRotationPolicyTest {
         PerNanoRotationPolicy policy = new PerNanoRotationPolicy();
         policy.start(rotatable);
 
+        // Let the policy be triggered several times.
+        for (int tickIndex = 0; tickIndex < 5; tickIndex++) {
+            Assertions.assertThat(ticks).hasSize(tickIndex + 1);
+            nanoTime.addAndGet(TimerWheel.TICK_NANOS);
+            ticks.get(tickIndex).run();
+        }
+        policy.stop(rotatable);
+        Assertions.assertThat(wheel.getTimeoutCount()).isZero();
+
         // Verify there was only a single rotation
         verify(rotatable, times(1)).rotate(any(), any());
 
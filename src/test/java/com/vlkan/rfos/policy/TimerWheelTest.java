@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos.policy;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class TimerWheelTest {
+
+    private ScheduledThreadPoolExecutor executorService;
+
+    @BeforeEach
+    void setupExecutorService() {
+        executorService = Mockito.spy(new ScheduledThreadPoolExecutor(1));
+    }
+
+    @AfterEach
+    void stopExecutorService() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void test_batch() throws InterruptedException {
+
+        // Schedule many timeouts due at the same time.
+        TimerWheel wheel = TimerWheel.getInstance(executorService);
+        int timeoutCount = 10_000;
+        CountDownLatch latch = new CountDownLatch(timeoutCount);
+        long delayNanos = 2 * TimerWheel.TICK_NANOS;
+        for (int timeoutIndex = 0; timeoutIndex < timeoutCount; timeoutIndex++) {
+            wheel.schedule(latch::countDown, delayNanos);
+        }
+        Assertions.assertThat(wheel.getTimeoutCount()).isEqualTo(timeoutCount);
+
+        // Verify that all are submitted by a handful of ticks.
+        Assertions.assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(wheel.getTimeoutCount()).isZero();
+        // The executor submits by scheduling with no delay too, hence skip
+        // the timeouts while counting the ticks.
+        Mockito
+                .verify(executorService, Mockito.atMost(5))
+                .schedule(
+                        Mockito.<Runnable>argThat(task -> !(task instanceof TimerWheel.Timeout)),
+                        Mockito.anyLong(),
+                        Mockito.same(TimeUnit.NANOSECONDS));
+        Mockito
+                .verify(executorService, Mockito.times(timeoutCount))
+                .execute(Mockito.any(TimerWheel.Timeout.class));
+
+    }
+
+    @Test
+    void test_cancel() throws InterruptedException {
+
+        // Schedule two timeouts and cancel one.
+        TimerWheel wheel = TimerWheel.getInstance(executorService);
+        AtomicInteger cancelledRunCount = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        TimerWheel.Timeout cancelledTimeout = wheel.schedule(cancelledRunCount::incrementAndGet, 0);
+        wheel.schedule(latch::countDown, TimerWheel.TICK_NANOS);
+        cancelledTimeout.cancel();
+        cancelledTimeout.cancel();
+        Assertions.assertThat(wheel.getTimeoutCount()).isEqualTo(1);
+
+        // Verify that only the other one is run.
+        Assertions.assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(cancelledRunCount).hasValue(0);
+        Assertions.assertThat(wheel.getTimeoutCount()).isZero();
+
+    }
+
+    @Test
+    void test_long_delay() {
+
+        // Schedule a timeout spanning many rounds.
+        TimerWheel wheel = TimerWheel.getInstance(executorService);
+        TimerWheel.Timeout timeout = wheel.schedule(() -> {}, TimeUnit.DAYS.toNanos(1));
+        Assertions.assertThat(wheel.getTimeoutCount()).isEqualTo(1);
+
+        // Verify that cancelling the last timeout stops ticking.
+        timeout.cancel();
+        Assertions.assertThat(wheel.getTimeoutCount()).isZero();
+        Assertions
+                .assertThat(executorService.getQueue())
+                .allMatch(task -> ((Future<?>) task).isCancelled());
+
+    }
+
+    @Test
+    void test_park() {
+
+        // Create an executor keeping the scheduled ticks for manual runs.
+        ScheduledFuture<?> tickFuture = Mockito.mock(ScheduledFuture.class);
+        ScheduledExecutorService executorService = Mockito.mock(ScheduledExecutorService.class);
+        Mockito
+                .doReturn(tickFuture)
+                .when(executorService)
+                .schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.same(TimeUnit.NANOSECONDS));
+        AtomicLong nanoTime = new AtomicLong();
+        TimerWheel wheel = TimerWheel.getInstance(executorService, nanoTime::get);
+
+        // Verify that a distant timeout parks the tick until its deadline.
+        long delayNanos = TimeUnit.DAYS.toNanos(1);
+        wheel.schedule(() -> {}, delayNanos);
+        Mockito
+                .verify(executorService)
+                .schedule(Mockito.any(Runnable.class), Mockito.eq(delayNanos), Mockito.same(TimeUnit.NANOSECONDS));
+
+        // Verify that a nearer timeout wakes the tick up earlier.
+        Runnable task = () -> {};
+        wheel.schedule(task, TimerWheel.TICK_NANOS);
+        Mockito.verify(tickFuture).cancel(false);
+        ArgumentCaptor<Runnable> tickCaptor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito
+                .verify(executorService)
+                .schedule(tickCaptor.capture(), Mockito.eq(TimerWheel.TICK_NANOS), Mockito.same(TimeUnit.NANOSECONDS));
+
+        // Run the tick and verify that the due timeout is submitted, and the
+        // tick is parked until the distant deadline again.
+        nanoTime.addAndGet(TimerWheel.TICK_NANOS);
+        tickCaptor.getValue().run();
+        ArgumentCaptor<TimerWheel.Timeout> timeoutCaptor = ArgumentCaptor.forClass(TimerWheel.Timeout.class);
+        Mockito.verify(executorService).execute(timeoutCaptor.capture());
+        Assertions.assertThat(timeoutCaptor.getValue().task).isSameAs(task);
+        Assertions.assertThat(wheel.getTimeoutCount()).isEqualTo(1);
+        Mockito
+                .verify(executorService)
+                .schedule(
+                        Mockito.any(Runnable.class),
+                        Mockito.eq(delayNanos - TimerWheel.TICK_NANOS),
+                        Mockito.same(TimeUnit.NANOSECONDS));
+
+    }
+
+}
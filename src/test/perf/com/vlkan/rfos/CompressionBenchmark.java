@@ -0,0 +1,226 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+
+package com.vlkan.rfos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares compression of rotated files using different codecs and settings.
+ * <p>
+ * Every benchmark compresses the very same log-shaped file of
+ * {@link Source#FILE_LENGTH} bytes, hence the throughput in MB/s is
+ * {@code FILE_LENGTH / averageTime}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompressionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        RotatingFileOutputStreamBenchmark.run(CompressionBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class Source {
+
+        static final int FILE_LENGTH = 32 * 1024 * 1024;
+
+        File sourceFile;
+
+        File targetFile;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            sourceFile = File.createTempFile("rfos-compression-", ".log");
+            targetFile = new File(sourceFile.getAbsolutePath() + ".gz");
+            byte[] content = generateLogLines(FILE_LENGTH);
+            Files.write(sourceFile.toPath(), content);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            System.out.format(
+                    "%n[fileLength=%d] compressionRatio=%.4f%n",
+                    FILE_LENGTH, (double) targetFile.length() / FILE_LENGTH);
+            Files.deleteIfExists(sourceFile.toPath());
+            Files.deleteIfExists(targetFile.toPath());
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class Buffer {
+
+        @Param({"8192", "65536", "1048576"})
+        public int bufferSize;
+
+    }
+
+    /**
+     * Generates JSON log lines resembling the output of a structured logger.
+     */
+    static byte[] generateLogLines(int length) {
+        Random random = new Random(0);
+        String[] levels = {"DEBUG", "INFO", "INFO", "INFO", "WARN", "ERROR"};
+        String[] loggers = {"com.acme.http.RequestHandler", "com.acme.db.ConnectionPool", "com.acme.cache.Loader"};
+        StringBuilder builder = new StringBuilder(length + 512);
+        long epochMillis = 1_700_000_000_000L;
+        while (builder.length() < length) {
+            epochMillis += random.nextInt(50);
+            builder
+                    .append("{\"@timestamp\":").append(epochMillis)
+                    .append(",\"level\":\"").append(levels[random.nextInt(levels.length)])
+                    .append("\",\"logger\":\"").append(loggers[random.nextInt(loggers.length)])
+                    .append("\",\"thread\":\"worker-").append(random.nextInt(32))
+                    .append("\",\"traceId\":\"").append(Long.toHexString(random.nextLong()))
+                    .append("\",\"message\":\"request completed {status=").append(200 + random.nextInt(4) * 100)
+                    .append(", durationMillis=").append(random.nextInt(2_000))
+                    .append("}\"}\n");
+        }
+        byte[] bytes = builder.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] truncatedBytes = new byte[length];
+        System.arraycopy(bytes, 0, truncatedBytes, 0, length);
+        return truncatedBytes;
+    }
+
+    @Benchmark
+    public long gzipOutputStream(Source source, Buffer buffer) throws IOException {
+        return gzipOutputStream(source, buffer.bufferSize, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * {@link GZIPOutputStream} at its fastest setting, i.e., level 1.
+     */
+    @Benchmark
+    public long gzipOutputStreamBestSpeed(Source source) throws IOException {
+        return gzipOutputStream(source, RotationConfig.getDefaultCompressionBufferSize(), Deflater.BEST_SPEED);
+    }
+
+    private static long gzipOutputStream(Source source, int bufferSize, int level) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        try (InputStream inputStream = Files.newInputStream(source.sourceFile.toPath());
+             OutputStream outputStream = Files.newOutputStream(source.targetFile.toPath());
+             GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream) {
+                 {
+                     def.setLevel(level);
+                 }
+             }) {
+            int readByteCount;
+            while ((readByteCount = inputStream.read(buffer)) > 0) {
+                gzipOutputStream.write(buffer, 0, readByteCount);
+            }
+        }
+        return source.targetFile.length();
+    }
+
+    @Benchmark
+    public long gzipCompressor(Source source, Buffer buffer) throws IOException {
+        GzipCompressor compressor = new GzipCompressor(buffer.bufferSize, 0);
+        compressor.compress(source.sourceFile, source.targetFile, null, null);
+        return source.targetFile.length();
+    }
+
+    @Benchmark
+    public long lz4Compressor(Source source) throws IOException {
+        Lz4Compressor compressor = new Lz4Compressor();
+        compressor.compress(source.sourceFile, source.targetFile);
+        return source.targetFile.length();
+    }
+
+    /**
+     * Consecutive small segments of a log, where the tail of an earlier
+     * segment serves as the shared preset dictionary of the current one.
+     */
+    @State(Scope.Thread)
+    public static class Segments {
+
+        @Param({"16384", "262144"})
+        public int segmentLength;
+
+        @Param({"0", "4096"})
+        public int blockSize;
+
+        File sourceFile;
+
+        File targetFile;
+
+        byte[] dictionary;
+
+        long targetLength;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            byte[] content = generateLogLines(2 * segmentLength);
+            File previousFile = File.createTempFile("rfos-compression-previous-", ".log");
+            try {
+                Files.write(previousFile.toPath(), Arrays.copyOfRange(content, 0, segmentLength));
+                dictionary = GzipCompressor.readDictionary(previousFile);
+            } finally {
+                Files.delete(previousFile.toPath());
+            }
+            sourceFile = File.createTempFile("rfos-compression-", ".log");
+            targetFile = new File(sourceFile.getAbsolutePath() + ".gz");
+            Files.write(sourceFile.toPath(), Arrays.copyOfRange(content, segmentLength, content.length));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            System.out.format(
+                    "%n[segmentLength=%d, blockSize=%d] compressionRatio=%.4f%n",
+                    segmentLength, blockSize, (double) targetLength / segmentLength);
+            Files.deleteIfExists(sourceFile.toPath());
+            Files.deleteIfExists(targetFile.toPath());
+        }
+
+    }
+
+    @Benchmark
+    public long gzipSegment(Segments segments) throws IOException {
+        GzipCompressor compressor = new GzipCompressor(RotationConfig.getDefaultCompressionBufferSize(), segments.blockSize);
+        compressor.compress(segments.sourceFile, segments.targetFile, null, null);
+        return segments.targetLength = segments.targetFile.length();
+    }
+
+    @Benchmark
+    public long gzipSegmentWithDictionary(Segments segments) throws IOException {
+        GzipCompressor compressor = new GzipCompressor(RotationConfig.getDefaultCompressionBufferSize(), segments.blockSize);
+        compressor.compress(segments.sourceFile, segments.targetFile, segments.dictionary, null);
+        return segments.targetLength = segments.targetFile.length();
+    }
+
+}
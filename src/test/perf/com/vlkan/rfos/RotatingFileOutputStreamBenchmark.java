@@ -34,10 +34,14 @@ import java.util.concurrent.ThreadLocalRandom;
 public class RotatingFileOutputStreamBenchmark {
 
     public static void main(String[] args) throws Exception {
+        run(RotatingFileOutputStreamBenchmark.class);
+    }
+
+    static void run(Class<?> benchmarkClass) throws Exception {
         fixJavaClassPath();
         setLog4jConfig();
         ChainedOptionsBuilder optionsBuilder = new OptionsBuilder()
-                .include(RotatingFileOutputStreamBenchmark.class.getSimpleName())
+                .include(benchmarkClass.getSimpleName())
                 .forks(2)
                 .warmupIterations(3)
                 .warmupTime(TimeValue.seconds(20))
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018-2024 Volkan Yazıcı <volkan@yazi.ci>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permits and
+ * limitations under the License.
+ */
+package com.vlkan.rfos;
+
+import com.vlkan.rfos.policy.ByteMatchingRotationPolicy;
+import com.vlkan.rfos.policy.DailyRotationPolicy;
+import com.vlkan.rfos.policy.SizeBasedRotationPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time to create (and close) {@link #STREAM_COUNT} streams,
+ * e.g., one per tenant, with and without lazy open.
+ * <p>
+ * Each stream employs a time-based, a size-based, and a byte-matching
+ * policy, where the latter scans the existing file on start. Every
+ * invocation starts with a fresh directory, hence eagerly opened streams
+ * create {@link #STREAM_COUNT} empty files, whereas lazily opened ones
+ * create none.
+ * </p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class StartupBenchmark {
+
+    private static final int STREAM_COUNT = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        RotatingFileOutputStreamBenchmark.run(StartupBenchmark.class);
+    }
+
+    @Param({"false", "true"})
+    public boolean lazyOpen;
+
+    private ScheduledThreadPoolExecutor executorService;
+
+    private File directory;
+
+    private RotatingFileOutputStream[] streams;
+
+    @Setup(Level.Trial)
+    public void setUpExecutorService() {
+        executorService = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownExecutorService() {
+        executorService.shutdownNow();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpDirectory() throws IOException {
+        directory = Files.createTempDirectory("rfos-startup-").toFile();
+        streams = new RotatingFileOutputStream[STREAM_COUNT];
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownDirectory() throws IOException {
+        for (RotatingFileOutputStream stream : streams) {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public RotatingFileOutputStream[] createStreams() {
+        for (int streamIndex = 0; streamIndex < STREAM_COUNT; streamIndex++) {
+            String fileNamePrefix = "tenant-" + streamIndex;
+            RotationConfig config = RotationConfig
+                    .builder()
+                    .executorService(executorService)
+                    .file(new File(directory, fileNamePrefix + ".log"))
+                    .filePattern(new File(directory, fileNamePrefix + "-%d{yyyyMMdd-HHmmss.SSS}.log").getAbsolutePath())
+                    .policy(DailyRotationPolicy.getInstance())
+                    .policy(new SizeBasedRotationPolicy(1024 * 1024))
+                    .policy(new ByteMatchingRotationPolicy((byte) '\n', 10_000))
+                    .lazyOpen(lazyOpen)
+                    .build();
+            streams[streamIndex] = new RotatingFileOutputStream(config);
+        }
+        return streams;
+    }
+
+}